@@ -1,6 +1,13 @@
 package com.github.leftisttachyon.mazesurvival;
 
+import com.github.leftisttachyon.mazesurvival.game.Game;
 import com.github.leftisttachyon.mazesurvival.gui.MazePanel;
+import com.github.leftisttachyon.mazesurvival.replay.Replay;
+import com.github.leftisttachyon.mazesurvival.replay.ReplayPlayer;
+import com.github.leftisttachyon.mazesurvival.replay.ReplayRenderer;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
 import javax.swing.JFrame;
 import javax.swing.SwingUtilities;
 
@@ -12,14 +19,54 @@ import javax.swing.SwingUtilities;
 public class Main {
 
     /**
-     * The main method
+     * The main method. Pass {@code --replay <file>} to watch a recorded game,
+     * and add {@code --fast} to only simulate it as fast as possible and print
+     * how it ended, or {@code --render <dir>} to render it to PNG frames in
+     * the given directory without a window.
      *
      * @param args the command line arguments
+     * @throws IOException          if a replay cannot be read or rendered
+     * @throws InterruptedException if interrupted while rendering
      */
-    public static void main(String[] args) {
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int replayIdx = Arrays.asList(args).indexOf("--replay");
+        Replay replay = null;
+        if (replayIdx >= 0) {
+            if (replayIdx + 1 >= args.length) {
+                System.err.println("Usage: --replay <file> [--fast | --render <dir>]");
+                return;
+            }
+            replay = Replay.read(Paths.get(args[replayIdx + 1]));
+
+            if (Arrays.asList(args).contains("--fast")) {
+                long start = System.nanoTime();
+                Game game = new ReplayPlayer(replay).fastForward();
+                System.out.printf("Survived %s (%d ticks, %s), simulated in %.1f ms%n",
+                        Game.formatTime(game.getTick()), game.getTick(),
+                        game.isOver() ? "caught" : "not caught",
+                        (System.nanoTime() - start) / 1e6);
+                return;
+            }
+
+            int renderIdx = Arrays.asList(args).indexOf("--render");
+            if (renderIdx >= 0 && renderIdx + 1 < args.length) {
+                // before anything touches AWT
+                System.setProperty("java.awt.headless", "true");
+                long start = System.nanoTime();
+                int workers = Runtime.getRuntime().availableProcessors();
+                int frames = new ReplayRenderer(replay, 2, workers)
+                        .render(Paths.get(args[renderIdx + 1]));
+                double seconds = (System.nanoTime() - start) / 1e9;
+                System.out.printf("Rendered %d frames in %.1f s (%.0f frames/s) with %d workers%n",
+                        frames, seconds, frames / seconds, workers);
+                return;
+            }
+        }
+
+        Replay toShow = replay;
         SwingUtilities.invokeLater(() -> {
             JFrame frame = new JFrame("Maze Survival");
-            MazePanel panel = new MazePanel();
+            MazePanel panel = new MazePanel(toShow);
             frame.add(panel);
             frame.pack();
             frame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
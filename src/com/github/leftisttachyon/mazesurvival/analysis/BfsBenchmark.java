@@ -0,0 +1,133 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.game.Dots;
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link Dots#bfs(int, int, int, int)} with {@link BitBfs} on mazes
+ * of growing size. Both answer the same random distance queries, for a few
+ * seconds each, and the answers are checked to be equal. The dots are never
+ * moved, so they search rather than using a {@code DistanceOracle}.
+ *
+ * @author Jed Wang
+ */
+public final class BfsBenchmark {
+
+    /**
+     * How long each search is timed for at each size, in nanoseconds
+     */
+    private static final long TIME_LIMIT = TimeUnit.SECONDS.toNanos(3);
+
+    /**
+     * The largest maze size {@link Dots#bfs(int, int, int, int)} is run on;
+     * past this a single query takes minutes
+     */
+    private static final int BASELINE_LIMIT = 2048;
+
+    /**
+     * The most queries made of each search at each size
+     */
+    private static final int MAX_QUERIES = 20000;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private BfsBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the sizes of the mazes (30, 256, 1024, 2048, 4096 and
+     *             8192 by default)
+     */
+    public static void main(String[] args) {
+        int[] sizes = {30, 256, 1024, 2048, 4096, 8192};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%6s %10s %14s %14s %9s%n", "size", "queries", "Dots.bfs (us)", "BitBfs (us)", "speedup");
+        for (int size : sizes) {
+            Maze maze = new Maze(size, size, size);
+            Dots dots = new Dots(maze);
+            BitBfs search = new BitBfs(maze);
+
+            Random r = new Random(size);
+            int[] queries = new int[MAX_QUERIES * 4];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = r.nextInt(size);
+            }
+
+            int[] expected = new int[MAX_QUERIES], actual = new int[MAX_QUERIES];
+
+            // warms up both searches on the small mazes
+            if (size <= 256) {
+                run(dots, null, queries, MAX_QUERIES, expected);
+                run(null, search, queries, MAX_QUERIES, actual);
+            }
+
+            long oldNanos = 0;
+            int count = MAX_QUERIES;
+            if (size <= BASELINE_LIMIT) {
+                long start = System.nanoTime();
+                count = run(dots, null, queries, MAX_QUERIES, expected);
+                oldNanos = System.nanoTime() - start;
+            }
+
+            long start = System.nanoTime();
+            count = run(null, search, queries, count, actual);
+            long newNanos = System.nanoTime() - start;
+
+            double newMicros = newNanos / 1e3 / count;
+            if (size > BASELINE_LIMIT) {
+                System.out.printf("%6d %10d %14s %14.2f %9s%n", size, count, "-", newMicros, "-");
+                continue;
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (expected[i] != actual[i]) {
+                    throw new IllegalStateException("Distances differ at size " + size + ": "
+                            + expected[i] + " != " + actual[i]);
+                }
+            }
+            double oldMicros = oldNanos / 1e3 / count;
+            System.out.printf("%6d %10d %14.2f %14.2f %8.1fx%n", size, count, oldMicros, newMicros,
+                    oldMicros / newMicros);
+        }
+    }
+
+    /**
+     * Answers the given queries until they run out or the time limit is
+     * reached.
+     *
+     * @param dots    the dots to search with {@link Dots#bfs(int, int, int, int)},
+     *                or null to use the BitBfs
+     * @param search  the BitBfs to search with
+     * @param queries the queries, as (from row, from column, to row, to
+     *                column) groups
+     * @param count   the most queries to answer
+     * @param answers the array to put the answers in
+     * @return the amount of queries answered
+     */
+    private static int run(Dots dots, BitBfs search, int[] queries, int count, int[] answers) {
+        long end = System.nanoTime() + TIME_LIMIT;
+        for (int i = 0; i < count; i++) {
+            int q = i * 4;
+            answers[i] = dots != null
+                    ? dots.bfs(queries[q], queries[q + 1], queries[q + 2], queries[q + 3])
+                    : search.distance(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]);
+            if (System.nanoTime() - end > 0) {
+                return i + 1;
+            }
+        }
+        return count;
+    }
+}
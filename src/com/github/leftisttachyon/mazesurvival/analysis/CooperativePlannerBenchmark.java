@@ -0,0 +1,275 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.game.CooperativePlanner;
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Times {@link CooperativePlanner} with growing amounts of AIs chasing a user
+ * who flees from the nearest of them, and compares how often they catch the
+ * user with AIs that each take their own shortest path in priority order, as
+ * {@code Dots} does. A caught user starts again in a random free cell. Every
+ * planned round is checked: no two AIs may end up in the same cell or pass
+ * through each other.
+ *
+ * @author Jed Wang
+ */
+public final class CooperativePlannerBenchmark {
+
+    /**
+     * The amount of rounds of moves for each amount of AIs
+     */
+    private static final int ROUNDS = 5000;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private CooperativePlannerBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the size of the maze (the size of a game by default), then
+     *             the amounts of AIs (4, 8, 16, 32 and 64 by default)
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : Game.MAZE_HEIGHT;
+        int[] counts = {4, 8, 16, 32, 64};
+        if (args.length > 1) {
+            counts = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                counts[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        Maze maze = new Maze(size, size, size);
+        System.out.printf("%dx%d maze, %d rounds, a tick is %d ms%n", size, size, ROUNDS, Game.TICK_MILLIS);
+        System.out.printf("%4s %12s %12s %12s %10s %14s %14s%n", "AIs", "mean (us)", "p99 (us)", "max (us)",
+                "expanded", "caught alone", "caught jointly");
+        for (int count : counts) {
+            CooperativePlanner planner = new CooperativePlanner(maze, count);
+            long[] nanos = new long[ROUNDS];
+            // the first run warms up the planner
+            run(maze, count, planner, nanos);
+            long[] jointly = run(maze, count, planner, nanos);
+            long[] alone = run(maze, count, null, null);
+
+            Arrays.sort(nanos);
+            double mean = Arrays.stream(nanos).average().orElse(0) / 1e3;
+            System.out.printf("%4d %12.1f %12.1f %12.1f %10d %14d %14d%n", count, mean,
+                    nanos[(int) (ROUNDS * 0.99)] / 1e3, nanos[ROUNDS - 1] / 1e3, jointly[1] / ROUNDS,
+                    alone[0], jointly[0]);
+        }
+    }
+
+    /**
+     * Chases the user for {@link #ROUNDS} rounds.
+     *
+     * @param maze    the maze
+     * @param count   the amount of AIs
+     * @param planner the planner to plan the AIs with, or null to move each
+     *                along its own shortest path
+     * @param nanos   the array to put the time each round took to plan in, or
+     *                null
+     * @return the amount of times the user was caught, and the amount of
+     * (time, cell)s the planner expanded
+     */
+    private static long[] run(Maze maze, int count, CooperativePlanner planner, long[] nanos) {
+        Random r = new Random(count);
+        int width = maze.getColumns();
+        int[] rows = new int[count], cols = new int[count], moves = new int[count];
+        int[] targetRows = new int[count], targetCols = new int[count], wading = new int[count];
+        boolean[] occupied = new boolean[maze.getRows() * width];
+        BitBfs search = new BitBfs(maze);
+        int[] user = place(maze, r, rows, cols, count, occupied);
+        long caught = 0, expanded = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            flee(maze, r, user, rows, cols, count);
+            if (planner != null) {
+                Arrays.fill(targetRows, user[0]);
+                Arrays.fill(targetCols, user[1]);
+                long start = System.nanoTime();
+                planner.plan(count, rows, cols, targetRows, targetCols, wading, moves);
+                nanos[round] = System.nanoTime() - start;
+                expanded += planner.getExpanded();
+            } else {
+                moveAlone(maze, search, user, rows, cols, count, occupied, moves);
+            }
+            apply(maze, rows, cols, moves, count);
+
+            for (int i = 0; i < count; i++) {
+                if (rows[i] == user[0] && cols[i] == user[1]) {
+                    caught++;
+                    Arrays.fill(occupied, false);
+                    for (int j = 0; j < count; j++) {
+                        occupied[rows[j] * width + cols[j]] = true;
+                    }
+                    int cell;
+                    do {
+                        cell = r.nextInt(occupied.length);
+                    } while (occupied[cell]);
+                    user[0] = cell / width;
+                    user[1] = cell % width;
+                    break;
+                }
+            }
+        }
+        return new long[]{caught, expanded};
+    }
+
+    /**
+     * Places the user and the AIs in different random cells.
+     *
+     * @param maze     the maze
+     * @param r        the random number generator
+     * @param rows     the array to put the rows of the AIs in
+     * @param cols     the array to put the columns of the AIs in
+     * @param count    the amount of AIs
+     * @param occupied an array as big as the maze, all false
+     * @return the row and column of the user
+     */
+    private static int[] place(Maze maze, Random r, int[] rows, int[] cols, int count, boolean[] occupied) {
+        int width = maze.getColumns();
+        int[] user = new int[2];
+        for (int i = -1; i < count; i++) {
+            int cell;
+            do {
+                cell = r.nextInt(occupied.length);
+            } while (occupied[cell]);
+            occupied[cell] = true;
+            if (i < 0) {
+                user[0] = cell / width;
+                user[1] = cell % width;
+            } else {
+                rows[i] = cell / width;
+                cols[i] = cell % width;
+            }
+        }
+        Arrays.fill(occupied, false);
+        return user;
+    }
+
+    /**
+     * Moves the user to whichever open neighbor, or its own cell, is
+     * furthest from the nearest AI as the crow flies, picking among the
+     * furthest at random.
+     *
+     * @param maze  the maze
+     * @param r     the random number generator
+     * @param user  the row and column of the user
+     * @param rows  the rows of the AIs
+     * @param cols  the columns of the AIs
+     * @param count the amount of AIs
+     */
+    private static void flee(Maze maze, Random r, int[] user, int[] rows, int[] cols, int count) {
+        int bestDir = -1, best = -1, ties = 0;
+        for (int dir = -1; dir < 4; dir++) {
+            if (dir >= 0 && maze.getWall(user[0], user[1], dir)) {
+                continue;
+            }
+            int ur = user[0] + (dir < 0 ? 0 : dy(dir)), uc = user[1] + (dir < 0 ? 0 : dx(dir));
+            int nearest = Integer.MAX_VALUE;
+            for (int i = 0; i < count; i++) {
+                nearest = Math.min(nearest, Math.abs(rows[i] - ur) + Math.abs(cols[i] - uc));
+            }
+            if (nearest > best) {
+                best = nearest;
+                bestDir = dir;
+                ties = 1;
+            } else if (nearest == best && r.nextInt(++ties) == 0) {
+                bestDir = dir;
+            }
+        }
+        if (bestDir >= 0) {
+            user[0] += dy(bestDir);
+            user[1] += dx(bestDir);
+        }
+    }
+
+    /**
+     * Picks the moves of AIs that each head along their own shortest path to
+     * the user, in priority order, taking the next best move when another AI
+     * is in the way.
+     *
+     * @param maze     the maze
+     * @param search   the search to measure distances with
+     * @param user     the row and column of the user
+     * @param rows     the rows of the AIs
+     * @param cols     the columns of the AIs
+     * @param count    the amount of AIs
+     * @param occupied an array as big as the maze, all false
+     * @param moves    the array to put the moves in
+     */
+    private static void moveAlone(Maze maze, BitBfs search, int[] user, int[] rows, int[] cols, int count,
+                                  boolean[] occupied, int[] moves) {
+        int width = maze.getColumns();
+        int[] nRows = new int[4], nCols = new int[4], dirs = new int[4], distances = new int[4];
+        for (int i = 0; i < count; i++) {
+            occupied[rows[i] * width + cols[i]] = true;
+        }
+        for (int i = 0; i < count; i++) {
+            int n = 0;
+            for (int dir = 0; dir < 4; dir++) {
+                if (!maze.getWall(rows[i], cols[i], dir)) {
+                    nRows[n] = rows[i] + dy(dir);
+                    nCols[n] = cols[i] + dx(dir);
+                    dirs[n++] = dir;
+                }
+            }
+            search.distances(user[0], user[1], nRows, nCols, n, distances);
+            int pick = -1;
+            for (int k = 0; k < n; k++) {
+                if (!occupied[nRows[k] * width + nCols[k]] && (pick < 0 || distances[k] < distances[pick])) {
+                    pick = k;
+                }
+            }
+            moves[i] = pick < 0 ? CooperativePlanner.WAIT : dirs[pick];
+            if (pick >= 0) {
+                // the AIs move one at a time, so the cell left is free for
+                // the ones after
+                occupied[rows[i] * width + cols[i]] = false;
+                occupied[nRows[pick] * width + nCols[pick]] = true;
+            }
+        }
+        Arrays.fill(occupied, false);
+    }
+
+    /**
+     * Moves the AIs, checking that no two of them collide.
+     *
+     * @param maze  the maze
+     * @param rows  the rows of the AIs
+     * @param cols  the columns of the AIs
+     * @param moves the moves
+     * @param count the amount of AIs
+     */
+    private static void apply(Maze maze, int[] rows, int[] cols, int[] moves, int count) {
+        int width = maze.getColumns();
+        int[] before = new int[count], after = new int[count];
+        for (int i = 0; i < count; i++) {
+            before[i] = rows[i] * width + cols[i];
+            if (moves[i] != CooperativePlanner.WAIT) {
+                if (maze.getWall(rows[i], cols[i], moves[i])) {
+                    throw new IllegalStateException("AI " + i + " was moved through a wall");
+                }
+                rows[i] += dy(moves[i]);
+                cols[i] += dx(moves[i]);
+            }
+            after[i] = rows[i] * width + cols[i];
+        }
+        for (int i = 0; i < count; i++) {
+            for (int j = i + 1; j < count; j++) {
+                if (after[i] == after[j] || after[i] == before[j] && after[j] == before[i]) {
+                    throw new IllegalStateException("AIs " + i + " and " + j + " collided");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
+import com.github.leftisttachyon.mazesurvival.maze.DistanceOracle;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link DistanceOracle} with {@link BitBfs} on mazes of growing
+ * size, both perfect and braided as usual. Both answer the same random
+ * distance queries and the answers are checked to be equal. Braided mazes
+ * past the size of a game have too many shortcuts for an oracle.
+ *
+ * @author Jed Wang
+ */
+public final class DistanceOracleBenchmark {
+
+    /**
+     * How long the searches are timed for at each size, in nanoseconds
+     */
+    private static final long TIME_LIMIT = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * The amount of queries answered by each oracle
+     */
+    private static final int QUERIES = 1_000_000;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private DistanceOracleBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the sizes of the mazes (30, 256, 1024 and 2048 by default)
+     */
+    public static void main(String[] args) {
+        int[] sizes = {30, 256, 1024, 2048};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%6s %-8s %10s %10s %12s %14s %12s%n", "size", "maze", "shortcuts", "build (ms)",
+                "oracle (ns)", "BitBfs (ns)", "speedup");
+        for (int size : sizes) {
+            for (double braiding : new double[]{0, Maze.BRAIDING_FACTOR}) {
+                Maze maze = new Maze(size, size, size);
+                maze.generate(size, braiding);
+                String kind = braiding == 0 ? "perfect" : "braided";
+
+                long start = System.nanoTime();
+                DistanceOracle oracle = new DistanceOracle(maze);
+                double buildMillis = (System.nanoTime() - start) / 1e6;
+                if (!oracle.isExact()) {
+                    System.out.printf("%6d %-8s %10s %10.1f %12s%n", size, kind, "too many", buildMillis, "-");
+                    continue;
+                }
+
+                Random r = new Random(size);
+                int[] queries = new int[QUERIES * 4];
+                for (int i = 0; i < queries.length; i++) {
+                    queries[i] = r.nextInt(size);
+                }
+
+                // the oracle answers every query twice, to warm it up
+                int[] answers = new int[QUERIES];
+                for (int run = 0; run < 2; run++) {
+                    start = System.nanoTime();
+                    for (int q = 0; q < queries.length; q += 4) {
+                        answers[q >>> 2] = oracle.distance(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]);
+                    }
+                }
+                double oracleNanos = (double) (System.nanoTime() - start) / QUERIES;
+
+                BitBfs search = new BitBfs(maze);
+                long end = System.nanoTime() + TIME_LIMIT;
+                int count = 0;
+                start = System.nanoTime();
+                do {
+                    int q = count * 4;
+                    if (search.distance(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]) != answers[count]) {
+                        throw new IllegalStateException("The answers differ at size " + size + ", query " + count);
+                    }
+                    count++;
+                } while (count < QUERIES && System.nanoTime() - end < 0);
+                double searchNanos = (double) (System.nanoTime() - start) / count;
+
+                System.out.printf("%6d %-8s %10d %10.1f %12.1f %14.1f %11.1fx%n", size, kind,
+                        oracle.getShortcuts(), buildMillis, oracleNanos, searchNanos, searchNanos / oracleNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.maze.DistanceField;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Compares repairing a {@link DistanceField} after doors open or close with
+ * measuring it again from scratch, on mazes of growing size. A set of doors is
+ * toggled at random, in batches of each of {@link #BATCHES}; after each batch
+ * one field catches up with all of its toggles at once and another is
+ * rebuilt, and every so often the two are checked to be equal everywhere.
+ *
+ * @author Jed Wang
+ */
+public final class DynamicWallBenchmark {
+
+    /**
+     * The amount of doors in each maze
+     */
+    private static final int DOORS = 64;
+
+    /**
+     * The batches between checks that the repaired field is right
+     */
+    private static final int CHECK_EVERY = 25;
+
+    /**
+     * The amounts of toggles made between updates
+     */
+    private static final int[] BATCHES = {1, 8};
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private DynamicWallBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the amount of toggles for each size and batch (2000 by
+     *             default) and the sizes of the mazes (30, 256 and 1024 by
+     *             default)
+     */
+    public static void main(String[] args) {
+        int toggles = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        int[] sizes = {30, 256, 1024};
+        if (args.length > 1) {
+            sizes = new int[args.length - 1];
+            for (int i = 1; i < args.length; i++) {
+                sizes[i - 1] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%6s %6s %9s %12s %12s %12s %14s %9s%n", "size", "batch", "updates", "repair (us)",
+                "p99 (us)", "max (us)", "rebuild (us)", "speedup");
+        for (int size : sizes) {
+            for (int batch : BATCHES) {
+                run(size, batch, Math.max(1, toggles / batch));
+            }
+        }
+    }
+
+    /**
+     * Toggles doors in batches, repairing one field and rebuilding another
+     * after each batch.
+     *
+     * @param size    the size of the maze
+     * @param batch   the amount of toggles in each batch
+     * @param updates the amount of batches
+     */
+    private static void run(int size, int batch, int updates) {
+        Maze maze = new Maze(size, size, size);
+        Random r = new Random(size);
+        int[] rows = new int[DOORS], cols = new int[DOORS], dirs = new int[DOORS];
+        for (int i = 0; i < DOORS; i++) {
+            dirs[i] = r.nextBoolean() ? SOUTH : EAST;
+            rows[i] = r.nextInt(dirs[i] == SOUTH ? size - 1 : size);
+            cols[i] = r.nextInt(dirs[i] == EAST ? size - 1 : size);
+        }
+
+        DistanceField repaired = new DistanceField(maze, 0, 0);
+        DistanceField rebuilt = new DistanceField(maze, 0, 0);
+        long[] repairNanos = new long[updates];
+        long rebuildNanos = 0;
+        for (int i = 0; i < updates; i++) {
+            for (int t = 0; t < batch; t++) {
+                int door = r.nextInt(DOORS);
+                maze.setPassage(rows[door], cols[door], dirs[door],
+                        !maze.getWall(rows[door], cols[door], dirs[door]));
+            }
+
+            long start = System.nanoTime();
+            repaired.update();
+            repairNanos[i] = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            rebuilt.rebuild();
+            rebuildNanos += System.nanoTime() - start;
+
+            if ((i + 1) % CHECK_EVERY == 0 || i == updates - 1) {
+                check(repaired, rebuilt, size);
+            }
+        }
+
+        Arrays.sort(repairNanos);
+        double mean = Arrays.stream(repairNanos).sum() / 1e3 / updates;
+        double rebuild = rebuildNanos / 1e3 / updates;
+        System.out.printf("%6d %6d %9d %12.2f %12.2f %12.2f %14.2f %8.1fx  (%d repairs, %d rebuilds)%n",
+                size, batch, updates, mean, repairNanos[(int) (updates * 0.99)] / 1e3,
+                repairNanos[updates - 1] / 1e3, rebuild, rebuild / mean,
+                repaired.getRepairs(), repaired.getRebuilds() - 1);
+    }
+
+    /**
+     * Checks that a repaired field is the same as one measured from scratch.
+     *
+     * @param repaired the repaired field
+     * @param rebuilt  the field measured from scratch
+     * @param size     the size of the maze
+     */
+    private static void check(DistanceField repaired, DistanceField rebuilt, int size) {
+        for (int r = 0; r < size; r++) {
+            for (int c = 0; c < size; c++) {
+                int expected = rebuilt.getDistance(r, c), actual = repaired.getDistance(r, c);
+                if (expected != actual) {
+                    throw new IllegalStateException("Distances differ at size " + size + " at ("
+                            + r + ", " + c + "): " + expected + " != " + actual);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import java.util.Arrays;
+
+/**
+ * A histogram of non-negative values with buckets that grow with the values,
+ * in the manner of HdrHistogram. Values below {@link #SUB_BUCKETS} have a
+ * bucket each; above that, every power of two is split into
+ * {@code SUB_BUCKETS / 2} equal buckets, so a value is known to within about
+ * 1.6% no matter how large it is. The whole range of a long fits in under
+ * 4000 buckets, so recording never allocates and a histogram can be kept for
+ * hours of samples.<br>
+ * Percentiles are reported as the largest value in their bucket, so they
+ * never understate a latency. The maximum is exact.<br>
+ * A LatencyHistogram is not safe to use from more than one thread.
+ *
+ * @author Jed Wang
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The amount of linear buckets below the first power of two that is
+     * split, which sets the precision
+     */
+    public static final int SUB_BUCKETS = 128;
+
+    /**
+     * The bits of {@link #SUB_BUCKETS}
+     */
+    private static final int SUB_BITS = 7;
+
+    /**
+     * The amount of buckets each power of two above {@link #SUB_BUCKETS} is
+     * split into
+     */
+    private static final int HALF = SUB_BUCKETS / 2;
+
+    /**
+     * The amount of values in each bucket
+     */
+    private final long[] counts = new long[SUB_BUCKETS + (64 - SUB_BITS) * HALF];
+
+    /**
+     * The amount of values recorded
+     */
+    private long count = 0;
+
+    /**
+     * The sum of the values recorded
+     */
+    private long total = 0;
+
+    /**
+     * The largest value recorded
+     */
+    private long max = 0;
+
+    /**
+     * Records a value.
+     *
+     * @param value the value, which must not be negative
+     */
+    public void record(long value) {
+        if (value < 0) {
+            throw new IllegalArgumentException("Negative value: " + value);
+        }
+        counts[index(value)]++;
+        count++;
+        total += value;
+        if (value > max) {
+            max = value;
+        }
+    }
+
+    /**
+     * Adds every value recorded in another histogram to this one.
+     *
+     * @param other the histogram to add
+     */
+    public void add(LatencyHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        count += other.count;
+        total += other.total;
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Forgets every value recorded.
+     */
+    public void reset() {
+        Arrays.fill(counts, 0);
+        count = total = max = 0;
+    }
+
+    /**
+     * Returns the value that the given share of the values are at or below
+     *
+     * @param fraction the share of the values, between 0 and 1
+     * @return the largest value of the bucket the percentile falls in, or 0
+     * if nothing has been recorded
+     */
+    public long getPercentile(double fraction) {
+        if (count == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(fraction * count));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(max, highest(i));
+            }
+        }
+        return max;
+    }
+
+    /**
+     * Returns the amount of values recorded
+     *
+     * @return the amount of values recorded
+     */
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns the largest value recorded
+     *
+     * @return the largest value, or 0 if nothing has been recorded
+     */
+    public long getMax() {
+        return max;
+    }
+
+    /**
+     * Returns the mean of the values recorded
+     *
+     * @return the mean, or 0 if nothing has been recorded
+     */
+    public double getMean() {
+        return count == 0 ? 0 : (double) total / count;
+    }
+
+    /**
+     * Returns the bucket of a value
+     *
+     * @param value the value
+     * @return the index of its bucket
+     */
+    private static int index(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        // the value is shifted down until it is in [HALF, SUB_BUCKETS)
+        int shift = 64 - Long.numberOfLeadingZeros(value) - SUB_BITS;
+        return SUB_BUCKETS + (shift - 1) * HALF + (int) (value >>> shift) - HALF;
+    }
+
+    /**
+     * Returns the largest value that falls in a bucket
+     *
+     * @param index the index of the bucket
+     * @return the largest value in it
+     */
+    private static long highest(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / HALF + 1;
+        long sub = (index - SUB_BUCKETS) % HALF + HALF;
+        long top = (sub + 1) << shift;
+        // the last bucket ends at the largest long
+        return top <= 0 ? Long.MAX_VALUE : top - 1;
+    }
+}
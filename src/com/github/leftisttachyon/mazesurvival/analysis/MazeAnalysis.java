@@ -0,0 +1,513 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Statistics about the layout of a maze: how many cells are dead ends,
+ * corridors and junctions, how many loops braiding added, how long the
+ * longest path is and how far the spawn corners are from the rest of the
+ * maze.<br>
+ * The cells are classified a whole word of wall bits at a time, rows in
+ * parallel, and the breadth-first searches run in parallel with each other,
+ * each using a bitset for the visited cells and layer-by-layer frontiers
+ * instead of per-cell objects, so even very large mazes are analysed quickly.
+ *
+ * @author Jed Wang
+ */
+public final class MazeAnalysis {
+
+    /**
+     * The dimensions of the analysed maze
+     */
+    private final int height, width;
+
+    /**
+     * The amount of cells with zero, one, two and three or four open walls
+     */
+    private long isolated, deadEnds, corridors, junctions;
+
+    /**
+     * The amount of open walls between two cells
+     */
+    private long openEdges;
+
+    /**
+     * The amount of connected regions of the maze
+     */
+    private int components;
+
+    /**
+     * The length of the longest shortest path found, and the cells at its ends
+     */
+    private int diameter, diameterStart, diameterEnd;
+
+    /**
+     * For every spawn layout, the amount of cells at each distance from the
+     * user spawn
+     */
+    private final int[][] spawnDistances = new int[Game.SPAWN_LAYOUTS][];
+
+    /**
+     * For every spawn layout, the distance from the user spawn to the
+     * nearest AI spawn
+     */
+    private final int[] spawnGaps = new int[Game.SPAWN_LAYOUTS];
+
+    /**
+     * Creates a new MazeAnalysis. Use {@link #analyze(Maze)} instead.
+     *
+     * @param maze the maze to analyse
+     */
+    private MazeAnalysis(Maze maze) {
+        this.height = maze.getRows();
+        this.width = maze.getColumns();
+    }
+
+    /**
+     * Analyses the given maze. The maze must not be changed while it is
+     * analysed.
+     *
+     * @param maze the maze to analyse
+     * @return the statistics of the maze
+     */
+    public static MazeAnalysis analyze(Maze maze) {
+        MazeAnalysis analysis = new MazeAnalysis(maze);
+
+        CompletableFuture<?>[] tasks = new CompletableFuture<?>[Game.SPAWN_LAYOUTS + 2];
+        tasks[0] = CompletableFuture.runAsync(() -> analysis.countCells(maze));
+        tasks[1] = CompletableFuture.runAsync(() -> analysis.sweep(maze));
+        for (int layout = 0; layout < Game.SPAWN_LAYOUTS; layout++) {
+            final int l = layout;
+            tasks[layout + 2] = CompletableFuture.runAsync(() -> analysis.measureSpawn(maze, l));
+        }
+        CompletableFuture.allOf(tasks).join();
+
+        return analysis;
+    }
+
+    /**
+     * Generates a large maze and prints its statistics and how long
+     * generating and analysing it took.
+     *
+     * @param args the size of the maze (4096 by default) and its seed
+     *             (random by default)
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : new Random().nextLong();
+
+        long start = System.nanoTime();
+        Maze maze = new Maze(size, size, seed);
+        long generated = System.nanoTime();
+        MazeAnalysis analysis = analyze(maze);
+        long analysed = System.nanoTime();
+
+        System.out.printf("maze: %dx%d, seed %d%n", size, size, seed);
+        System.out.printf("generated in %.1f ms, analysed in %.1f ms%n",
+                (generated - start) / 1e6, (analysed - generated) / 1e6);
+        System.out.printf("dead ends: %d (%.2f%%), corridors: %d, junctions: %d, isolated: %d%n",
+                analysis.deadEnds, analysis.getDeadEndRatio() * 100, analysis.corridors,
+                analysis.junctions, analysis.isolated);
+        System.out.printf("components: %d, loops: %d, diameter: %d%n",
+                analysis.components, analysis.getLoops(), analysis.diameter);
+        for (int layout = 0; layout < Game.SPAWN_LAYOUTS; layout++) {
+            System.out.printf("layout %d: gap to AIs %d, mean distance %.1f, farthest %d%n", layout,
+                    analysis.spawnGaps[layout], analysis.getMeanSpawnDistance(layout),
+                    analysis.spawnDistances[layout].length - 1);
+        }
+    }
+
+    /**
+     * Counts the cells by how many open walls they have, and the open edges
+     * between cells.
+     *
+     * @param maze the maze to analyse
+     */
+    private void countCells(Maze maze) {
+        int wordsPerRow = maze.getWordsPerRow();
+        long[][] counts = IntStream.range(0, height).parallel().mapToObj(r -> {
+            long[] row = new long[6];
+            for (int w = 0; w < wordsPerRow; w++) {
+                int bits = Math.min(64, width - (w << 6));
+                long valid = bits == 64 ? -1L : (1L << bits) - 1;
+
+                long n = ~maze.getWallWord(NORTH, r, w) & valid,
+                        e = ~maze.getWallWord(EAST, r, w) & valid,
+                        s = ~maze.getWallWord(SOUTH, r, w) & valid,
+                        west = ~maze.getWallWord(WEST, r, w) & valid;
+
+                // adds up the four open bits of every cell at once
+                long half1 = n ^ e, carry1 = n & e,
+                        half2 = s ^ west, carry2 = s & west,
+                        ones = half1 ^ half2, carry3 = half1 & half2,
+                        twos = carry1 ^ carry2 ^ carry3,
+                        fours = carry1 & carry2 | carry1 & carry3 | carry2 & carry3;
+
+                row[0] += Long.bitCount(valid & ~ones & ~twos & ~fours);
+                row[1] += Long.bitCount(ones & ~twos & ~fours);
+                row[2] += Long.bitCount(~ones & twos);
+                row[3] += Long.bitCount(ones & twos | fours);
+                row[4] += Long.bitCount(e);
+                if (r < height - 1) {
+                    row[5] += Long.bitCount(s);
+                }
+            }
+            return row;
+        }).toArray(long[][]::new);
+
+        long edges = 0;
+        for (long[] row : counts) {
+            isolated += row[0];
+            deadEnds += row[1];
+            corridors += row[2];
+            junctions += row[3];
+            edges += row[4] + row[5];
+        }
+        openEdges = edges;
+    }
+
+    /**
+     * Finds the diameter with a double sweep, and counts the connected
+     * regions on the way.
+     *
+     * @param maze the maze to analyse
+     */
+    private void sweep(Maze maze) {
+        Search search = new Search(maze);
+        int far = search.run(0);
+        int count = 1;
+        for (int cell = search.nextUnvisited(0); cell >= 0;
+             cell = search.nextUnvisited(cell + 1)) {
+            search.run(cell);
+            count++;
+        }
+        components = count;
+
+        search.reset();
+        diameterStart = far;
+        diameterEnd = search.run(far);
+        diameter = search.getDepth();
+    }
+
+    /**
+     * Measures the distances from the user spawn of the given layout.
+     *
+     * @param maze   the maze to analyse
+     * @param layout the spawn layout
+     */
+    private void measureSpawn(Maze maze, int layout) {
+        Dimension dim = new Dimension(width, height);
+        Point user = Game.getUserSpawn(layout, dim), ai = Game.getAISpawn(layout, dim);
+
+        int[] rows = new int[4], cols = new int[4], distances = new int[4];
+        int count = 0;
+        for (int dy = 0; dy < 2; dy++) {
+            for (int dx = 0; dx < 2; dx++) {
+                int x = ai.x + dx, y = ai.y + dy;
+                if (x >= 0 && y >= 0 && x < width && y < height) {
+                    rows[count] = y;
+                    cols[count++] = x;
+                }
+            }
+        }
+        spawnDistances[layout] = new BitBfs(maze).layerSizes(user.y, user.x, rows, cols, count, distances);
+
+        int gap = -1;
+        for (int i = 0; i < count; i++) {
+            if (distances[i] >= 0 && (gap < 0 || distances[i] < gap)) {
+                gap = distances[i];
+            }
+        }
+        spawnGaps[layout] = gap;
+    }
+
+    /**
+     * Returns the amount of cells in the maze
+     *
+     * @return the amount of cells in the maze
+     */
+    public long getCells() {
+        return (long) height * width;
+    }
+
+    /**
+     * Returns the amount of cells with exactly one open wall
+     *
+     * @return the amount of dead ends
+     */
+    public long getDeadEnds() {
+        return deadEnds;
+    }
+
+    /**
+     * Returns the fraction of cells that are dead ends
+     *
+     * @return the dead end ratio, between 0 and 1
+     */
+    public double getDeadEndRatio() {
+        return (double) deadEnds / getCells();
+    }
+
+    /**
+     * Returns the amount of cells with exactly two open walls
+     *
+     * @return the amount of corridors
+     */
+    public long getCorridors() {
+        return corridors;
+    }
+
+    /**
+     * Returns the amount of cells with three or four open walls
+     *
+     * @return the amount of junctions
+     */
+    public long getJunctions() {
+        return junctions;
+    }
+
+    /**
+     * Returns the amount of cells with no open walls
+     *
+     * @return the amount of isolated cells
+     */
+    public long getIsolated() {
+        return isolated;
+    }
+
+    /**
+     * Returns the amount of open walls between two cells
+     *
+     * @return the amount of open edges
+     */
+    public long getOpenEdges() {
+        return openEdges;
+    }
+
+    /**
+     * Returns the amount of connected regions of the maze, which is 1 for
+     * any generated maze
+     *
+     * @return the amount of connected regions
+     */
+    public int getComponents() {
+        return components;
+    }
+
+    /**
+     * Returns the amount of independent loops in the maze, which is 0 for a
+     * perfect maze and grows with every wall braiding removes
+     *
+     * @return the amount of loops
+     */
+    public long getLoops() {
+        return openEdges - getCells() + components;
+    }
+
+    /**
+     * Returns the diameter of the maze found by a double sweep. This is
+     * exact for perfect mazes, and a close lower bound once loops exist.
+     *
+     * @return the diameter of the maze
+     */
+    public int getDiameter() {
+        return diameter;
+    }
+
+    /**
+     * Returns the ends of the path the diameter was measured along
+     *
+     * @return the two ends of the diameter, as {@code new Point(x, y)}
+     */
+    public Point[] getDiameterEnds() {
+        return new Point[]{
+                new Point(diameterStart % width, diameterStart / width),
+                new Point(diameterEnd % width, diameterEnd / width)
+        };
+    }
+
+    /**
+     * Returns, for the given spawn layout, the amount of cells at each
+     * distance from the user spawn
+     *
+     * @param layout the spawn layout
+     * @return the amount of cells at each distance, indexed by distance
+     */
+    public int[] getSpawnDistances(int layout) {
+        return spawnDistances[layout].clone();
+    }
+
+    /**
+     * Returns the mean distance from the user spawn of the given layout to
+     * the cells it can reach
+     *
+     * @param layout the spawn layout
+     * @return the mean distance from the user spawn
+     */
+    public double getMeanSpawnDistance(int layout) {
+        long sum = 0, count = 0;
+        int[] layers = spawnDistances[layout];
+        for (int d = 0; d < layers.length; d++) {
+            sum += (long) d * layers[d];
+            count += layers[d];
+        }
+        return (double) sum / count;
+    }
+
+    /**
+     * Returns the distance from the user spawn of the given layout to the
+     * nearest AI spawn, or -1 if they are not connected
+     *
+     * @param layout the spawn layout
+     * @return the distance between the spawns
+     */
+    public int getSpawnGap(int layout) {
+        return spawnGaps[layout];
+    }
+
+    /**
+     * A breadth-first search over the open walls of a maze that goes one
+     * layer of cells at a time, so only the frontier and a visited bitset
+     * are kept instead of a distance for every cell.
+     */
+    private static final class Search {
+
+        /**
+         * The maze being searched
+         */
+        private final Maze maze;
+
+        /**
+         * The width of the maze
+         */
+        private final int width;
+
+        /**
+         * The amount of cells in the maze
+         */
+        private final int cells;
+
+        /**
+         * The visited cells, one bit per cell index
+         */
+        private final long[] visited;
+
+        /**
+         * The cells of the current and next layers
+         */
+        private int[] current = new int[64], next = new int[64];
+
+        /**
+         * The amount of layers of the last search, less one
+         */
+        private int depth;
+
+        /**
+         * Creates a new Search.
+         *
+         * @param maze the maze to search
+         */
+        private Search(Maze maze) {
+            this.maze = maze;
+            this.width = maze.getColumns();
+            this.cells = Math.multiplyExact(maze.getRows(), width);
+            this.visited = new long[(cells + 63) >>> 6];
+        }
+
+        /**
+         * Searches from the given cell, skipping cells visited by earlier
+         * searches.
+         *
+         * @param start the index of the cell to start from
+         * @return the index of a cell farthest from the start
+         */
+        private int run(int start) {
+            visited[start >>> 6] |= 1L << start;
+            current[0] = start;
+            int size = 1, farthest = start;
+            depth = -1;
+
+            while (size > 0) {
+                depth++;
+                farthest = current[0];
+
+                int nextSize = 0;
+                for (int i = 0; i < size; i++) {
+                    int cell = current[i], r = cell / width, c = cell - r * width;
+                    int open = ~maze.getWalls(r, c);
+                    for (int dir = 0; dir < 4; dir++) {
+                        if ((open & 1 << dir) == 0) {
+                            continue;
+                        }
+                        int neighbor = cell + dx(dir) + dy(dir) * width;
+                        long bit = 1L << neighbor;
+                        if ((visited[neighbor >>> 6] & bit) != 0) {
+                            continue;
+                        }
+                        visited[neighbor >>> 6] |= bit;
+                        if (nextSize == next.length) {
+                            next = Arrays.copyOf(next, nextSize * 2);
+                        }
+                        next[nextSize++] = neighbor;
+                    }
+                }
+
+                int[] temp = current;
+                current = next;
+                next = temp;
+                size = nextSize;
+            }
+            return farthest;
+        }
+
+        /**
+         * Returns the index of the first unvisited cell at or after the
+         * given cell, or -1 if there is none
+         *
+         * @param from the index of the cell to start looking at
+         * @return the index of the first unvisited cell, or -1
+         */
+        private int nextUnvisited(int from) {
+            int word = from >>> 6;
+            if (from >= cells) {
+                return -1;
+            }
+            long bits = ~visited[word] & -1L << from;
+            while (bits == 0) {
+                if (++word == visited.length) {
+                    return -1;
+                }
+                bits = ~visited[word];
+            }
+            int cell = (word << 6) + Long.numberOfTrailingZeros(bits);
+            // the bits past the last cell are never visited
+            return cell < cells ? cell : -1;
+        }
+
+        /**
+         * Clears the visited cells so the next search sees the whole maze.
+         */
+        private void reset() {
+            Arrays.fill(visited, 0);
+        }
+
+        /**
+         * Returns the distance to the farthest cell of the last search
+         *
+         * @return the depth of the last search
+         */
+        private int getDepth() {
+            return depth;
+        }
+    }
+}
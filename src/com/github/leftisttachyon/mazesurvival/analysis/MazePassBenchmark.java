@@ -0,0 +1,228 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Compares the passes over a maze that work a word of cells at a time with
+ * the same passes done one cell at a time, on mazes of growing size: braiding
+ * a freshly carved maze, counting its dead ends and checking that both sides
+ * of every wall agree. Each pair is checked to give the same answer, and
+ * braiding to make the same maze.
+ *
+ * @author Jed Wang
+ */
+public final class MazePassBenchmark {
+
+    /**
+     * The amount of times each pass is timed at each size; the fastest time
+     * is reported
+     */
+    private static final int RUNS = 5;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private MazePassBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the sizes of the mazes (256, 1024 and 2048 by default)
+     */
+    public static void main(String[] args) {
+        int[] sizes = {256, 1024, 2048};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%6s %-10s %12s %12s %9s%n", "size", "pass", "cells (ms)", "words (ms)", "speedup");
+        for (int size : sizes) {
+            Maze maze = new Maze(size, size, size);
+
+            // braiding, from the same carved maze and random state each time
+            long scalar = Long.MAX_VALUE, words = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                maze.generate(size, 0);
+                long start = System.nanoTime();
+                int scalarCount = braidByCell(maze, new Random(run), Maze.BRAIDING_FACTOR);
+                scalar = Math.min(scalar, System.nanoTime() - start);
+                long[] expected = getWords(maze);
+
+                maze.generate(size, 0);
+                start = System.nanoTime();
+                int wordCount = maze.addLoops(new Random(run), Maze.BRAIDING_FACTOR);
+                words = Math.min(words, System.nanoTime() - start);
+                if (scalarCount != wordCount || !Arrays.equals(expected, getWords(maze))) {
+                    throw new IllegalStateException("Braiding differs at size " + size);
+                }
+            }
+            print(size, "braid", scalar, words);
+
+            // counting dead ends
+            scalar = words = Long.MAX_VALUE;
+            for (int run = 0; run < RUNS; run++) {
+                long start = System.nanoTime();
+                long scalarCount = countDeadEndsByCell(maze);
+                scalar = Math.min(scalar, System.nanoTime() - start);
+                start = System.nanoTime();
+                long wordCount = maze.countDeadEnds();
+                words = Math.min(words, System.nanoTime() - start);
+                if (scalarCount != wordCount) {
+                    throw new IllegalStateException("Dead ends differ at size " + size + ": "
+                            + scalarCount + " != " + wordCount);
+                }
+            }
+            print(size, "dead ends", scalar, words);
+
+            // checking symmetry, with one side of a wall near the end broken
+            // in every other run
+            scalar = words = Long.MAX_VALUE;
+            Random r = new Random(size);
+            for (int run = 0; run < RUNS; run++) {
+                int row = size - 1 - r.nextInt(Math.min(size, 4)), col = r.nextInt(size);
+                boolean broken = run % 2 == 1;
+                if (broken) {
+                    maze.setWall(row, col, WEST, !maze.getWall(row, col, WEST));
+                }
+                long start = System.nanoTime();
+                long scalarCell = findAsymmetryByCell(maze);
+                scalar = Math.min(scalar, System.nanoTime() - start);
+                start = System.nanoTime();
+                long wordCell = maze.findAsymmetry();
+                words = Math.min(words, System.nanoTime() - start);
+                if (scalarCell != wordCell || broken == (wordCell < 0)) {
+                    throw new IllegalStateException("Symmetry checks differ at size " + size + ": "
+                            + scalarCell + " != " + wordCell);
+                }
+                if (broken) {
+                    maze.setWall(row, col, WEST, !maze.getWall(row, col, WEST));
+                }
+            }
+            print(size, "symmetry", scalar, words);
+        }
+    }
+
+    /**
+     * Prints a row of the results.
+     *
+     * @param size   the size of the maze
+     * @param pass   the name of the pass
+     * @param scalar the time the pass took one cell at a time, in nanoseconds
+     * @param words  the time the pass took a word at a time, in nanoseconds
+     */
+    private static void print(int size, String pass, long scalar, long words) {
+        System.out.printf("%6d %-10s %12.2f %12.2f %8.1fx%n", size, pass, scalar / 1e6, words / 1e6,
+                (double) scalar / words);
+    }
+
+    /**
+     * Returns every word of every wall plane of a maze, to compare mazes by.
+     *
+     * @param maze the maze
+     * @return the words of the wall planes, plane by plane and row by row
+     */
+    private static long[] getWords(Maze maze) {
+        int wordsPerRow = (maze.getColumns() + 63) >>> 6;
+        long[] words = new long[4 * maze.getRows() * wordsPerRow];
+        int i = 0;
+        for (int wall = 0; wall < 4; wall++) {
+            for (int r = 0; r < maze.getRows(); r++) {
+                for (int w = 0; w < wordsPerRow; w++) {
+                    words[i++] = maze.getWallWord(wall, r, w);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Braids a maze one cell at a time, as generating did before braiding
+     * worked a word at a time. Walls are opened with
+     * {@link Maze#setPassage(int, int, int, boolean)}, which logs the
+     * change, where generating does not; that costs little next to finding
+     * the dead ends cell by cell.
+     *
+     * @param maze   the maze
+     * @param r      the source of the random choices
+     * @param factor the chance of braiding each dead end
+     * @return the amount of dead ends braided
+     */
+    private static int braidByCell(Maze maze, Random r, double factor) {
+        int height = maze.getRows(), width = maze.getColumns();
+        int[] canRemove = new int[4];
+        int braided = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (maze.isDeadEnd(y, x) && r.nextDouble() < factor) {
+                    int count = 0;
+                    if (maze.getWall(y, x, NORTH) && y != 0) {
+                        canRemove[count++] = NORTH;
+                    }
+                    if (maze.getWall(y, x, EAST) && x != width - 1) {
+                        canRemove[count++] = EAST;
+                    }
+                    if (maze.getWall(y, x, SOUTH) && y != height - 1) {
+                        canRemove[count++] = SOUTH;
+                    }
+                    if (maze.getWall(y, x, WEST) && x != 0) {
+                        canRemove[count++] = WEST;
+                    }
+                    maze.setPassage(y, x, canRemove[r.nextInt(count)], false);
+                    braided++;
+                }
+            }
+        }
+        return braided;
+    }
+
+    /**
+     * Counts the dead ends of a maze one cell at a time.
+     *
+     * @param maze the maze
+     * @return the amount of dead ends
+     */
+    private static long countDeadEndsByCell(Maze maze) {
+        long count = 0;
+        for (int y = 0; y < maze.getRows(); y++) {
+            for (int x = 0; x < maze.getColumns(); x++) {
+                if (maze.isDeadEnd(y, x)) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds a wall whose sides disagree, or an open wall on the edge, one
+     * cell at a time.
+     *
+     * @param maze the maze
+     * @return the index of the first cell with such a wall, or -1
+     */
+    private static long findAsymmetryByCell(Maze maze) {
+        int height = maze.getRows(), width = maze.getColumns();
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                for (int dir = 0; dir < 4; dir++) {
+                    int ny = y + dy(dir), nx = x + dx(dir);
+                    boolean facing = ny < 0 || nx < 0 || ny >= height || nx >= width
+                            || maze.getWall(ny, nx, opposite(dir));
+                    if (maze.getWall(y, x, dir) != facing) {
+                        return (long) y * width + x;
+                    }
+                }
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,123 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Compares a maze kept on the heap with the same maze kept off it: how long
+ * each takes to generate, how much heap and direct memory each keeps, how
+ * long a full garbage collection takes while each is alive, and how fast
+ * random cells can be read. The two mazes are checked to be the same. Mazes
+ * of more than {@code Integer.MAX_VALUE} cells are only made off the heap.
+ *
+ * @author Jed Wang
+ */
+public final class OffHeapBenchmark {
+
+    /**
+     * The amount of full collections timed with each maze; the median is
+     * reported
+     */
+    private static final int COLLECTIONS = 5;
+
+    /**
+     * The amount of random cells read from each maze
+     */
+    private static final int READS = 10_000_000;
+
+    /**
+     * The walls read, kept so that the reads are not optimized away
+     */
+    private static volatile int sink;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private OffHeapBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the size of the mazes (4096 by default) and the seed
+     *             (random by default)
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : new Random().nextLong();
+        boolean heapFits = (long) size * size <= Integer.MAX_VALUE;
+
+        System.out.printf("%dx%d, %d cells%n", size, size, (long) size * size);
+        System.out.printf("%-9s %13s %11s %13s %10s %10s %12s%n", "storage", "generate (s)", "heap (MB)",
+                "direct (MB)", "gc (ms)", "read (ns)", "dead ends");
+        long heapDeadEnds = -1;
+        for (boolean offHeap : new boolean[]{false, true}) {
+            if (!offHeap && !heapFits) {
+                continue;
+            }
+            long heapBefore = heapUsed(), directBefore = directUsed();
+            long start = System.nanoTime();
+            Maze maze = new Maze(size, size, seed, offHeap);
+            double generateSeconds = (System.nanoTime() - start) / 1e9;
+
+            long[] gcNanos = new long[COLLECTIONS];
+            for (int i = 0; i < COLLECTIONS; i++) {
+                start = System.nanoTime();
+                System.gc();
+                gcNanos[i] = System.nanoTime() - start;
+            }
+            Arrays.sort(gcNanos);
+            long heap = heapUsed() - heapBefore, direct = directUsed() - directBefore;
+
+            Random r = new Random(seed);
+            int walls = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < READS; i++) {
+                walls += maze.getWalls(r.nextInt(size), r.nextInt(size));
+            }
+            double readNanos = (double) (System.nanoTime() - start) / READS;
+            sink = walls;
+
+            long deadEnds = maze.countDeadEnds();
+            if (offHeap && heapDeadEnds >= 0 && deadEnds != heapDeadEnds) {
+                throw new IllegalStateException("The mazes differ: " + heapDeadEnds + " != " + deadEnds
+                        + " dead ends");
+            }
+            heapDeadEnds = deadEnds;
+            System.out.printf("%-9s %13.1f %11.1f %13.1f %10.1f %10.1f %12d%n", offHeap ? "off-heap" : "heap",
+                    generateSeconds, heap / 1e6, direct / 1e6, gcNanos[COLLECTIONS / 2] / 1e6, readNanos,
+                    deadEnds);
+            // lets the maze be collected before the next one is measured
+            maze = null;
+        }
+    }
+
+    /**
+     * Returns the heap in use after a full collection
+     *
+     * @return the bytes of heap in use
+     */
+    private static long heapUsed() {
+        System.gc();
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    /**
+     * Returns the direct memory in use
+     *
+     * @return the bytes of direct memory in use
+     */
+    private static long directUsed() {
+        long used = 0;
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            if (pool.getName().equals("direct")) {
+                used += pool.getMemoryUsed();
+            }
+        }
+        return used;
+    }
+}
@@ -0,0 +1,136 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.MazePyramid;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Times views of a large maze drawn by {@link MazePyramid} at zooms from
+ * {@link Cell#WIDTH} pixels per cell, as the game draws it, down to the whole
+ * maze in one view. At each zoom the view first waits for its tiles, which is
+ * how long a new zoom takes to sharpen, then is panned over the maze with the
+ * tiles kept. For comparison, the same views are painted with every wall in
+ * view drawn, as {@link Maze#paint(Graphics)} does, for as long as that takes
+ * less than a few seconds a frame.
+ *
+ * @author Jed Wang
+ */
+public final class PyramidBenchmark {
+
+    /**
+     * The size of the view, in pixels
+     */
+    private static final int VIEW_WIDTH = 1280, VIEW_HEIGHT = 720;
+
+    /**
+     * The amount of panned frames timed at each zoom
+     */
+    private static final int FRAMES = 60;
+
+    /**
+     * The most tiles kept
+     */
+    private static final int MAX_TILES = 1024;
+
+    /**
+     * The longest a frame with every wall drawn may take before such frames
+     * are no longer timed, in nanoseconds
+     */
+    private static final long DIRECT_LIMIT = 3_000_000_000L;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private PyramidBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the size of the maze (2048 by default)
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 2048;
+        Maze maze = new Maze(size, size, size);
+        MazePyramid pyramid = new MazePyramid(maze, MAX_TILES);
+        BufferedImage view = new BufferedImage(VIEW_WIDTH, VIEW_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g2D = view.createGraphics();
+        Random r = new Random(size);
+
+        System.out.printf("%dx%d maze, %d levels, %dx%d view%n", size, size, pyramid.getLevels(),
+                VIEW_WIDTH, VIEW_HEIGHT);
+        System.out.printf("%10s %12s %12s %12s %12s %8s%n", "px/cell", "load (ms)", "frame (ms)",
+                "p99 (ms)", "direct (ms)", "tiles");
+        double whole = Math.min((double) VIEW_WIDTH / size, (double) VIEW_HEIGHT / size);
+        boolean direct = true;
+        for (double cellPixels = Cell.WIDTH; cellPixels >= whole / 2 - 1e-9; cellPixels /= 2) {
+            double rowsInView = VIEW_HEIGHT / cellPixels, colsInView = VIEW_WIDTH / cellPixels;
+
+            long start = System.nanoTime();
+            while (!pyramid.paint(g2D, VIEW_WIDTH, VIEW_HEIGHT, 0, 0, cellPixels)) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+            }
+            double load = (System.nanoTime() - start) / 1e6;
+
+            // pan within the part of the maze loaded above
+            long[] nanos = new long[FRAMES];
+            double[] rows = new double[FRAMES], cols = new double[FRAMES];
+            for (int i = 0; i < FRAMES; i++) {
+                rows[i] = r.nextDouble() * Math.max(0, Math.min(size - rowsInView, rowsInView / 4));
+                cols[i] = r.nextDouble() * Math.max(0, Math.min(size - colsInView, colsInView / 4));
+            }
+            for (int i = 0; i < FRAMES; i++) {
+                long frame = System.nanoTime();
+                pyramid.paint(g2D, VIEW_WIDTH, VIEW_HEIGHT, rows[i], cols[i], cellPixels);
+                nanos[i] = System.nanoTime() - frame;
+            }
+            Arrays.sort(nanos);
+            double mean = Arrays.stream(nanos).average().orElse(0) / 1e6;
+
+            String directMillis = "-";
+            if (direct) {
+                long frame = System.nanoTime();
+                paintDirect(g2D, maze, rows[0], cols[0], cellPixels);
+                long took = System.nanoTime() - frame;
+                directMillis = String.format("%.2f", took / 1e6);
+                direct = took < DIRECT_LIMIT / 2;
+            }
+
+            System.out.printf("%10.3f %12.2f %12.2f %12.2f %12s %8d%n", cellPixels, load, mean,
+                    nanos[(int) (FRAMES * 0.99)] / 1e6, directMillis, pyramid.getTileCount());
+        }
+        g2D.dispose();
+    }
+
+    /**
+     * Paints a view with every wall in it drawn.
+     *
+     * @param g2D        the Graphics2D object to paint with
+     * @param maze       the maze
+     * @param row        the row at the top edge of the view
+     * @param col        the column at the left edge of the view
+     * @param cellPixels the pixels per cell on screen
+     */
+    private static void paintDirect(Graphics2D g2D, Maze maze, double row, double col, double cellPixels) {
+        Graphics2D g = (Graphics2D) g2D.create();
+        g.setColor(Color.WHITE);
+        g.fillRect(0, 0, VIEW_WIDTH, VIEW_HEIGHT);
+        double scale = cellPixels / Cell.WIDTH;
+        g.scale(scale, scale);
+        g.translate(-col * Cell.WIDTH, -row * Cell.WIDTH);
+        int toRow = (int) Math.min(maze.getRows(), Math.ceil(row + VIEW_HEIGHT / cellPixels) + 1);
+        int toCol = (int) Math.min(maze.getColumns(), Math.ceil(col + VIEW_WIDTH / cellPixels) + 1);
+        maze.paintWalls(g, (int) row, toRow, (int) col, toCol);
+        g.dispose();
+    }
+}
@@ -0,0 +1,431 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.game.Autopilot;
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.game.RenderSnapshot;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import javax.management.openmbean.CompositeData;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays games without a window for a long time, as fast as they can be
+ * simulated, and reports how the latency of ticks, AI moves and painting is
+ * distributed, along with garbage collection pauses and heap use. Games are
+ * played one after another on one thread by a random user or by the
+ * {@link Autopilot}, each until it is over or has lasted
+ * {@link #MAX_TICKS} ticks, and a frame is painted into an image every
+ * {@link #PAINT_TICKS} ticks as the window would.<br>
+ * Tick latency is also broken down by how far into a game the tick was,
+ * since the AIs move more and more often as a game goes on, and the run is
+ * split into equal stretches of wall time to show drift over the run. The
+ * report is plain text with one figure per column and no timestamps, so
+ * reports from two builds can be compared with diff.
+ *
+ * @author Jed Wang
+ */
+public final class SoakTest {
+
+    /**
+     * The most ticks a game may last, which is about 33 minutes of game time
+     */
+    public static final int MAX_TICKS = 200_000;
+
+    /**
+     * The ticks between painted frames, which is 50 frames a second of game
+     * time
+     */
+    public static final int PAINT_TICKS = 2;
+
+    /**
+     * The ticks between moves of the user
+     */
+    public static final int USER_MOVE_TICKS = 10;
+
+    /**
+     * The ticks of game time in each band that tick latency is broken down
+     * by; the AIs speed up every 1000 ticks
+     */
+    private static final int BAND_TICKS = 5000;
+
+    /**
+     * The amount of bands of game time; the last one holds every tick after
+     * the others
+     */
+    private static final int BANDS = 8;
+
+    /**
+     * The amount of equal stretches of wall time the run is split into
+     */
+    private static final int STRETCHES = 12;
+
+    /**
+     * The percentiles that are reported
+     */
+    private static final double[] PERCENTILES = {0.5, 0.99, 0.999};
+
+    /**
+     * Whether the user is played by the autopilot instead of moving at random
+     */
+    private final boolean autopilot;
+
+    /**
+     * The latency of ticks, AI moves and painting, in nanoseconds
+     */
+    private final LatencyHistogram ticks = new LatencyHistogram(), ais = new LatencyHistogram(),
+            paints = new LatencyHistogram();
+
+    /**
+     * The latency of ticks in each band of game time, in nanoseconds
+     */
+    private final LatencyHistogram[] bands = new LatencyHistogram[BANDS];
+
+    /**
+     * The length of garbage collection pauses, in nanoseconds; written by
+     * the threads that report collections
+     */
+    private final LatencyHistogram pauses = new LatencyHistogram();
+
+    /**
+     * The heap in use, sampled once a second, in bytes
+     */
+    private final LatencyHistogram heap = new LatencyHistogram();
+
+    /**
+     * The latency of ticks and the pauses in the current stretch, in
+     * nanoseconds
+     */
+    private final LatencyHistogram stretchTicks = new LatencyHistogram(), stretchPauses = new LatencyHistogram();
+
+    /**
+     * The rows of the report for the stretches that have ended
+     */
+    private final List<String> stretches = new ArrayList<>();
+
+    /**
+     * The amount of games played, and the amount in which the user was
+     * caught
+     */
+    private long games = 0, caught = 0;
+
+    /**
+     * Creates a new SoakTest.
+     *
+     * @param autopilot whether the user is played by the autopilot instead of
+     *                  moving at random
+     */
+    private SoakTest(boolean autopilot) {
+        this.autopilot = autopilot;
+        for (int i = 0; i < BANDS; i++) {
+            bands[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Plays games until the given time has passed.
+     *
+     * @param nanos how long to play for, in nanoseconds
+     * @param seed  the seed of the games and of the random user
+     */
+    private void run(long nanos, long seed) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        Random r = new Random(seed);
+        BufferedImage image = null;
+        Graphics2D g2D = null;
+
+        long start = System.nanoTime(), end = start + nanos;
+        long stretchNanos = nanos / STRETCHES, stretchEnd = start + stretchNanos;
+        long nextSample = start;
+        long stretchGames = 0, stretchGameTicks = 0;
+        int stretch = 0;
+        while (System.nanoTime() - end < 0) {
+            Game game = new Game(r.nextLong(), r.nextLong());
+            game.getDots().setParallel(false);
+            Autopilot pilot = autopilot ? new Autopilot(game.getDots()) : null;
+            if (image == null) {
+                Dimension dim = game.getMaze().getDimensions();
+                // the size of the window
+                image = new BufferedImage(dim.width * Cell.WIDTH + 40, dim.height * Cell.WIDTH + 50,
+                        BufferedImage.TYPE_INT_RGB);
+                g2D = image.createGraphics();
+                g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            }
+
+            while (!game.isOver() && game.getTick() < MAX_TICKS) {
+                long before = System.nanoTime();
+                if (game.getTick() % USER_MOVE_TICKS == 0) {
+                    int direction = pilot != null ? pilot.choose() : r.nextInt(4);
+                    if (direction >= 0) {
+                        game.moveUser(direction);
+                    }
+                }
+                game.tick();
+                long after = System.nanoTime(), took = after - before;
+                ticks.record(took);
+                stretchTicks.record(took);
+                bands[Math.min(BANDS - 1, (game.getTick() - 1) / BAND_TICKS)].record(took);
+                if (game.getAINanos() > 0) {
+                    ais.record(game.getAINanos());
+                }
+
+                if (game.getTick() % PAINT_TICKS == 0) {
+                    RenderSnapshot snapshot = new RenderSnapshot(game, game.isOver());
+                    long paintStart = System.nanoTime();
+                    g2D.setColor(Color.WHITE);
+                    g2D.fillRect(0, 0, image.getWidth(), image.getHeight());
+                    g2D.translate(20, 30);
+                    snapshot.paint(g2D);
+                    g2D.translate(-20, -30);
+                    paints.record(System.nanoTime() - paintStart);
+                }
+
+                if (after - nextSample >= 0) {
+                    heap.record(memory.getHeapMemoryUsage().getUsed());
+                    nextSample = after + TimeUnit.SECONDS.toNanos(1);
+                }
+                if (after - stretchEnd >= 0 && stretch < STRETCHES - 1) {
+                    endStretch(stretch++, stretchGames, stretchGameTicks, memory);
+                    stretchGames = stretchGameTicks = 0;
+                    stretchEnd += stretchNanos;
+                }
+                if (after - end >= 0) {
+                    break;
+                }
+            }
+
+            games++;
+            stretchGames++;
+            stretchGameTicks += game.getTick();
+            if (game.isOver()) {
+                caught++;
+            }
+        }
+        endStretch(stretch, stretchGames, stretchGameTicks, memory);
+        if (g2D != null) {
+            g2D.dispose();
+        }
+    }
+
+    /**
+     * Writes the row of a stretch of wall time that has ended and starts the
+     * next one.
+     *
+     * @param stretch   the index of the stretch
+     * @param games     the amount of games that ended in the stretch
+     * @param gameTicks the ticks those games lasted
+     * @param memory    the memory of the JVM
+     */
+    private void endStretch(int stretch, long games, long gameTicks, MemoryMXBean memory) {
+        synchronized (pauses) {
+            stretches.add(String.format(Locale.ROOT, "%-8d %9d %12d %10.1f %10.1f %10.1f %8d %10.1f %10.1f",
+                    stretch, games, gameTicks, micros(stretchTicks.getPercentile(0.5)),
+                    micros(stretchTicks.getPercentile(0.99)), micros(stretchTicks.getMax()),
+                    stretchPauses.getCount(), micros(stretchPauses.getMax()),
+                    memory.getHeapMemoryUsage().getUsed() / 1048576.0));
+            stretchPauses.reset();
+        }
+        stretchTicks.reset();
+    }
+
+    /**
+     * Records the pauses reported by the garbage collectors until the
+     * returned listeners are removed. The notifications are read as open
+     * data, so this works with any JVM that sends them and does nothing on
+     * one that does not. Collections named as concurrent do not stop the
+     * game, so they are left out.
+     *
+     * @return the collectors listened to and their listeners, for
+     * {@link #stopListening(List)}
+     */
+    private List<Object[]> listen() {
+        List<Object[]> listening = new ArrayList<>();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (!(gc instanceof NotificationEmitter)) {
+                continue;
+            }
+            NotificationListener listener = (Notification n, Object handback) -> {
+                if (!"com.sun.management.gc.notification".equals(n.getType())
+                        || !(n.getUserData() instanceof CompositeData)) {
+                    return;
+                }
+                CompositeData data = (CompositeData) n.getUserData();
+                String name = String.valueOf(data.get("gcName"));
+                if (name.contains("Concurrent") || name.contains("Cycles")) {
+                    return;
+                }
+                long millis = (Long) ((CompositeData) data.get("gcInfo")).get("duration");
+                synchronized (pauses) {
+                    pauses.record(TimeUnit.MILLISECONDS.toNanos(millis));
+                    stretchPauses.record(TimeUnit.MILLISECONDS.toNanos(millis));
+                }
+            };
+            ((NotificationEmitter) gc).addNotificationListener(listener, null, null);
+            listening.add(new Object[]{gc, listener});
+        }
+        return listening;
+    }
+
+    /**
+     * Stops recording the pauses of the garbage collectors.
+     *
+     * @param listening the collectors and listeners returned by
+     *                  {@link #listen()}
+     */
+    private static void stopListening(List<Object[]> listening) {
+        for (Object[] pair : listening) {
+            try {
+                ((NotificationEmitter) pair[0]).removeNotificationListener((NotificationListener) pair[1]);
+            } catch (javax.management.ListenerNotFoundException e) {
+                // already gone
+            }
+        }
+    }
+
+    /**
+     * Writes the report.
+     *
+     * @param out     the writer to write to
+     * @param minutes how long the run was meant to last, in minutes
+     * @param seed    the seed of the run
+     * @param seconds how long the run lasted, in seconds
+     */
+    private void report(PrintWriter out, double minutes, long seed, double seconds) {
+        out.println("# Maze Survival soak report");
+        out.printf(Locale.ROOT, "minutes    %.1f%n", minutes);
+        out.printf("user       %s%n", autopilot ? "autopilot" : "random");
+        out.printf("seed       %d%n", seed);
+        out.printf("java       %s %s%n", System.getProperty("java.vm.name"), System.getProperty("java.version"));
+        out.printf("collectors %s%n", collectorNames());
+        out.printf("max heap   %d MB%n", Runtime.getRuntime().maxMemory() / 1048576);
+        out.println();
+
+        out.printf("games      %d%n", games);
+        out.printf("caught     %d%n", caught);
+        out.printf("ticks      %d%n", ticks.getCount());
+        out.printf(Locale.ROOT, "ticks/s    %.0f%n", ticks.getCount() / seconds);
+        out.println();
+
+        out.printf("%-16s %12s %10s %10s %10s %10s %10s%n", "latency (us)", "count", "mean", "p50",
+                "p99", "p99.9", "max");
+        row(out, "tick", ticks);
+        row(out, "ai", ais);
+        row(out, "paint", paints);
+        synchronized (pauses) {
+            row(out, "gc pause", pauses);
+        }
+        out.println();
+
+        out.printf("%-16s %12s %10s %10s %10s %10s %10s%n", "tick by age (us)", "count", "mean", "p50",
+                "p99", "p99.9", "max");
+        for (int i = 0; i < BANDS; i++) {
+            String name = i == BANDS - 1 ? (i * BAND_TICKS) + "+"
+                    : (i * BAND_TICKS) + "-" + ((i + 1) * BAND_TICKS);
+            row(out, name, bands[i]);
+        }
+        out.println();
+
+        out.printf(Locale.ROOT, "heap (MB)        %12d %10.1f %10.1f %10.1f %10.1f %10.1f%n", heap.getCount(),
+                heap.getMean() / 1048576, heap.getPercentile(0.5) / 1048576.0,
+                heap.getPercentile(0.99) / 1048576.0, heap.getPercentile(0.999) / 1048576.0,
+                heap.getMax() / 1048576.0);
+        out.println();
+
+        out.printf("%-8s %9s %12s %10s %10s %10s %8s %10s %10s%n", "stretch", "games", "game ticks",
+                "p50 (us)", "p99 (us)", "max (us)", "gcs", "gc max", "heap (MB)");
+        for (String stretch : stretches) {
+            out.println(stretch);
+        }
+    }
+
+    /**
+     * Writes the row of a latency histogram.
+     *
+     * @param out       the writer to write to
+     * @param name      the name of the row
+     * @param histogram the histogram, in nanoseconds
+     */
+    private static void row(PrintWriter out, String name, LatencyHistogram histogram) {
+        out.printf(Locale.ROOT, "%-16s %12d %10.1f", name, histogram.getCount(), histogram.getMean() / 1e3);
+        for (double p : PERCENTILES) {
+            out.printf(Locale.ROOT, " %10.1f", micros(histogram.getPercentile(p)));
+        }
+        out.printf(Locale.ROOT, " %10.1f%n", micros(histogram.getMax()));
+    }
+
+    /**
+     * Converts nanoseconds to microseconds
+     *
+     * @param nanos the nanoseconds
+     * @return the microseconds
+     */
+    private static double micros(long nanos) {
+        return nanos / 1e3;
+    }
+
+    /**
+     * Returns the names of the garbage collectors
+     *
+     * @return the names, separated by commas
+     */
+    private static String collectorNames() {
+        StringBuilder names = new StringBuilder();
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(gc.getName());
+        }
+        return names.toString();
+    }
+
+    /**
+     * Runs the soak test and writes the report to a file and to the
+     * console.
+     *
+     * @param args how long to run for in minutes (60 by default), the file to
+     *             write the report to ({@code soak-report.txt} by default),
+     *             {@code random} or {@code autopilot} for the user (random
+     *             by default) and the seed (0 by default)
+     * @throws IOException if the report cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        double minutes = args.length > 0 ? Double.parseDouble(args[0]) : 60;
+        Path file = Paths.get(args.length > 1 ? args[1] : "soak-report.txt");
+        boolean autopilot = args.length > 2 && args[2].equalsIgnoreCase("autopilot");
+        long seed = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        System.setProperty("java.awt.headless", "true");
+
+        SoakTest test = new SoakTest(autopilot);
+        List<Object[]> listening = test.listen();
+        long start = System.nanoTime();
+        try {
+            test.run((long) (minutes * 60e9), seed);
+        } finally {
+            stopListening(listening);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        try (PrintWriter out = new PrintWriter(Files.newBufferedWriter(file, StandardCharsets.UTF_8))) {
+            test.report(out, minutes, seed, seconds);
+        }
+        System.out.print(new String(Files.readAllBytes(file), StandardCharsets.UTF_8));
+    }
+}
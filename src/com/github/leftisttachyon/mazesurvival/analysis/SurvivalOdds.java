@@ -0,0 +1,177 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.game.GameState;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Estimates how likely the user is to survive each of their possible moves.
+ * For each move, many games are played out from the current state with the
+ * user moving at random afterwards, and the share of playouts in which the
+ * user is not caught within a time limit is reported. Playouts run in
+ * parallel, each thread replaying saved states into its own game in the same
+ * maze, and are seeded so that the same estimate is given every time.
+ *
+ * @author Jed Wang
+ */
+public final class SurvivalOdds {
+
+    /**
+     * The ticks between the random moves of the user in a playout, which is
+     * about as often as a person presses a key
+     */
+    public static final int USER_MOVE_TICKS = 10;
+
+    /**
+     * A game that plays out states of another game, one per thread
+     */
+    private static final class Playout {
+
+        /**
+         * The game the states are played out in
+         */
+        private final Game game;
+
+        /**
+         * Creates a new Playout.
+         *
+         * @param maze the maze the states were saved in
+         */
+        private Playout(Maze maze) {
+            game = new Game(maze, 0);
+            // the playouts are already spread over every core
+            game.getDots().setParallel(false);
+        }
+
+        /**
+         * Plays out a move from the given state.
+         *
+         * @param start   the state to start from
+         * @param move    the first move of the user
+         * @param horizon the most ticks to play
+         * @param random  the source of the moves of the user
+         * @return whether the user survived
+         */
+        private boolean survives(GameState start, int move, int horizon, SplittableRandom random) {
+            game.load(start);
+            game.moveUser(move);
+            Maze maze = game.getMaze();
+            int end = start.getTick() + horizon;
+            while (!game.isOver() && game.getTick() < end) {
+                game.tick();
+                if (game.getTick() % USER_MOVE_TICKS == 0 && !game.isOver()) {
+                    int walls = maze.getWalls(game.getDots().getUserDot().getY(),
+                            game.getDots().getUserDot().getX());
+                    // moves through a random open side
+                    int open = Integer.bitCount(~walls & 0xF);
+                    if (open > 0) {
+                        int pick = random.nextInt(open);
+                        for (int dir = 0; dir < 4; dir++) {
+                            if ((walls & 1 << dir) == 0 && pick-- == 0) {
+                                game.moveUser(dir);
+                                break;
+                            }
+                        }
+                    }
+                }
+            }
+            return !game.isOver();
+        }
+    }
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private SurvivalOdds() {
+    }
+
+    /**
+     * Estimates the chance of surviving each move of the user.
+     *
+     * @param game     the game to estimate for, which is not changed
+     * @param playouts the amount of playouts of each move
+     * @param horizon  how many ticks the user has to survive for
+     * @param seed     the seed of the random moves of the user
+     * @return the chance of surviving each move, indexed by direction, or NaN
+     * for moves that are blocked by a wall
+     */
+    public static double[] estimate(Game game, int playouts, int horizon, long seed) {
+        if (playouts < 1) {
+            throw new IllegalArgumentException("Invalid amount of playouts: " + playouts);
+        }
+        GameState start = new GameState(game.getDots().getAIs().size());
+        game.save(start);
+
+        Maze maze = game.getMaze();
+        ThreadLocal<Playout> playout = ThreadLocal.withInitial(() -> new Playout(maze));
+        int walls = maze.getWalls(game.getDots().getUserDot().getY(), game.getDots().getUserDot().getX());
+
+        double[] odds = new double[4];
+        for (int dir = 0; dir < 4; dir++) {
+            if ((walls & 1 << dir) != 0) {
+                odds[dir] = Double.NaN;
+                continue;
+            }
+
+            int move = dir;
+            long survived = IntStream.range(0, playouts).parallel()
+                    .filter(i -> playout.get().survives(start, move, horizon,
+                            new SplittableRandom(seed ^ (long) move << 32 ^ i)))
+                    .count();
+            odds[dir] = (double) survived / playouts;
+        }
+        return odds;
+    }
+
+    /**
+     * Plays a seeded game for a while with a random user, then prints the
+     * chance of surviving each move and how long estimating took.
+     *
+     * @param args the amount of playouts of each move (1000 by default), the
+     *             ticks to survive (3000 by default) and the seed of the
+     *             game (random by default)
+     */
+    public static void main(String[] args) {
+        int playouts = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int horizon = args.length > 1 ? Integer.parseInt(args[1]) : 3000;
+        long seed = args.length > 2 ? Long.parseLong(args[2]) : new Random().nextLong();
+
+        Random r = new Random(seed);
+        Game game = new Game(r.nextLong(), r.nextLong());
+        while (game.getTick() < 500) {
+            game.moveUser(r.nextInt(4));
+            game.tick();
+        }
+        if (game.isOver()) {
+            System.out.println("The user was caught before the estimate; try another seed");
+            return;
+        }
+
+        // how long saving and loading take, which every playout does
+        GameState state = new GameState(game.getDots().getAIs().size());
+        Game copy = new Game(game.getMaze(), 0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 1_000_000; i++) {
+            game.save(state);
+            copy.load(state);
+        }
+        double copyNanos = (System.nanoTime() - start) / 1e6;
+
+        start = System.nanoTime();
+        double[] odds = estimate(game, playouts, horizon, seed);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        String[] names = {"north", "east", "south", "west"};
+        for (int dir = Cell.NORTH; dir <= Cell.WEST; dir++) {
+            System.out.printf("%-6s %s%n", names[dir],
+                    Double.isNaN(odds[dir]) ? "wall" : String.format("%.1f%%", odds[dir] * 100));
+        }
+        System.out.printf("%d playouts of %d ticks per move in %.2f s, save and load %.1f ns%n",
+                playouts, horizon, seconds, copyNanos);
+    }
+}
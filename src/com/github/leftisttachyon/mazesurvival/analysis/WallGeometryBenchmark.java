@@ -0,0 +1,129 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.WallGeometry;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Compares painting the walls of mazes of growing size as
+ * {@link Maze#paintWalls(Graphics2D, int, int, int, int)} does, with a line
+ * for each of its {@link WallGeometry merged segments}, with drawing a line
+ * for every solid side of every cell, as it used to. Each maze is painted
+ * whole into an image of its size, and the amounts of lines drawn are
+ * counted.
+ *
+ * @author Jed Wang
+ */
+public final class WallGeometryBenchmark {
+
+    /**
+     * How long each way of painting is timed for at each size, in
+     * nanoseconds
+     */
+    private static final long TIME_LIMIT = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private WallGeometryBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the sizes of the mazes (the size of a game, 100 and 300 by
+     *             default)
+     */
+    public static void main(String[] args) {
+        int[] sizes = {Game.MAZE_HEIGHT, 100, 300};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%6s %10s %10s %8s %14s %14s %14s %9s%n", "size", "lines", "segments", "fewer",
+                "build (ms)", "per-side (ms)", "merged (ms)", "speedup");
+        for (int size : sizes) {
+            Maze maze = new Maze(size, size, size);
+            BufferedImage image = new BufferedImage(size * Cell.WIDTH + 1, size * Cell.WIDTH + 1,
+                    BufferedImage.TYPE_INT_RGB);
+            Graphics2D g2D = image.createGraphics();
+
+            int lines = 0;
+            for (int i = 0; i < size; i++) {
+                for (int j = 0; j < size; j++) {
+                    lines += Integer.bitCount(maze.getWalls(i, j));
+                }
+            }
+            time(() -> new WallGeometry(maze, 0, size, 0, size));
+            double build = time(() -> new WallGeometry(maze, 0, size, 0, size));
+            int segments = new WallGeometry(maze, 0, size, 0, size).getSegmentCount();
+
+            time(() -> paintSides(g2D, maze));
+            double sides = time(() -> paintSides(g2D, maze));
+            time(() -> maze.paintWalls(g2D, 0, size, 0, size));
+            double merged = time(() -> maze.paintWalls(g2D, 0, size, 0, size));
+            g2D.dispose();
+
+            System.out.printf("%6d %10d %10d %7.1fx %14.3f %14.3f %14.3f %8.1fx%n", size, lines, segments,
+                    (double) lines / segments, build, sides, merged, sides / merged);
+        }
+    }
+
+    /**
+     * Runs something until the time limit passes.
+     *
+     * @param task what to run
+     * @return the average time it took, in milliseconds
+     */
+    private static double time(Runnable task) {
+        long start = System.nanoTime(), end = start + TIME_LIMIT;
+        int count = 0;
+        do {
+            task.run();
+            count++;
+        } while (System.nanoTime() - end < 0);
+        return (System.nanoTime() - start) / 1e6 / count;
+    }
+
+    /**
+     * Paints the walls of a maze with a line for every solid side of every
+     * cell.
+     *
+     * @param g2D  the Graphics2D object to paint with
+     * @param maze the maze
+     */
+    private static void paintSides(Graphics2D g2D, Maze maze) {
+        g2D.setStroke(new BasicStroke(3, BasicStroke.CAP_SQUARE,
+                BasicStroke.JOIN_MITER));
+
+        g2D.setColor(Color.BLACK);
+        for (int i = 0, y = 0; i < maze.getRows(); i++, y += Cell.WIDTH) {
+            for (int j = 0, x = 0; j < maze.getColumns(); j++, x += Cell.WIDTH) {
+                if (maze.getWall(i, j, NORTH)) {
+                    g2D.drawLine(x, y, x + Cell.WIDTH, y);
+                }
+                if (maze.getWall(i, j, EAST)) {
+                    g2D.drawLine(x + Cell.WIDTH, y, x + Cell.WIDTH,
+                            y + Cell.WIDTH);
+                }
+                if (maze.getWall(i, j, SOUTH)) {
+                    g2D.drawLine(x, y + Cell.WIDTH, x + Cell.WIDTH,
+                            y + Cell.WIDTH);
+                }
+                if (maze.getWall(i, j, WEST)) {
+                    g2D.drawLine(x, y, x, y + Cell.WIDTH);
+                }
+            }
+        }
+    }
+}
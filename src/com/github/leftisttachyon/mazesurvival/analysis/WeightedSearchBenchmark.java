@@ -0,0 +1,181 @@
+package com.github.leftisttachyon.mazesurvival.analysis;
+
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.Terrain;
+import com.github.leftisttachyon.mazesurvival.maze.WeightedSearch;
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Compares {@link WeightedSearch} with Dijkstra's algorithm over a
+ * {@code PriorityQueue<int[]>}, on mazes of growing size covered in terrain,
+ * and with {@link BitBfs} on the same mazes without it, which is what
+ * searching costs when every cell is floor. Both weighted searches answer the
+ * same random queries and the answers are checked to be equal.
+ *
+ * @author Jed Wang
+ */
+public final class WeightedSearchBenchmark {
+
+    /**
+     * How long each search is timed for at each size, in nanoseconds
+     */
+    private static final long TIME_LIMIT = TimeUnit.SECONDS.toNanos(2);
+
+    /**
+     * The share of the cells covered in terrain
+     */
+    private static final double COVERAGE = 0.3;
+
+    /**
+     * The most queries answered by each search
+     */
+    private static final int QUERIES = 100_000;
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private WeightedSearchBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the sizes of the mazes (30, 256 and 1024 by default)
+     */
+    public static void main(String[] args) {
+        int[] sizes = {30, 256, 1024};
+        if (args.length > 0) {
+            sizes = new int[args.length];
+            for (int i = 0; i < args.length; i++) {
+                sizes[i] = Integer.parseInt(args[i]);
+            }
+        }
+
+        System.out.printf("%6s %14s %14s %14s %9s %9s%n", "size", "BitBfs (us)", "Dial (us)",
+                "heap (us)", "vs heap", "vs BitBfs");
+        for (int size : sizes) {
+            Maze maze = new Maze(size, size, size);
+            Random r = new Random(size);
+            int[] queries = new int[QUERIES * 4];
+            for (int i = 0; i < queries.length; i++) {
+                queries[i] = r.nextInt(size);
+            }
+
+            BitBfs bfs = new BitBfs(maze);
+            int[] ignored = new int[QUERIES];
+            time(ignored, queries, q -> bfs.distance(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]));
+            double bfsMicros = time(ignored, queries,
+                    q -> bfs.distance(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]));
+
+            maze.setTerrain(Terrain.generate(size, size, size, COVERAGE));
+            WeightedSearch dial = new WeightedSearch(maze);
+            int[] answers = new int[QUERIES];
+            time(answers, queries, q -> dial.cost(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]));
+            double dialMicros = time(answers, queries,
+                    q -> dial.cost(queries[q], queries[q + 1], queries[q + 2], queries[q + 3]));
+
+            int[] heapAnswers = new int[QUERIES];
+            double heapMicros = time(heapAnswers, queries,
+                    q -> heapCost(maze, queries[q], queries[q + 1], queries[q + 2], queries[q + 3]));
+            for (int i = 0; i < QUERIES && heapAnswers[i] != Integer.MIN_VALUE; i++) {
+                if (heapAnswers[i] != answers[i]) {
+                    throw new IllegalStateException("The answers differ at size " + size + ", query " + i);
+                }
+            }
+
+            System.out.printf("%6d %14.2f %14.2f %14.2f %8.1fx %8.1fx%n", size, bfsMicros, dialMicros, heapMicros,
+                    heapMicros / dialMicros, dialMicros / bfsMicros);
+        }
+    }
+
+    /**
+     * A search that answers a query
+     */
+    private interface Query {
+
+        /**
+         * Answers a query
+         *
+         * @param q the index of the first of the four values of the query
+         * @return the answer
+         */
+        int answer(int q);
+    }
+
+    /**
+     * Answers queries until they run out or the time limit passes.
+     *
+     * @param answers the array to put the answers in, which is filled with
+     *                {@link Integer#MIN_VALUE} past the last one answered
+     * @param queries the queries, four values each
+     * @param search  the search to answer them with
+     * @return the average time per query, in microseconds
+     */
+    private static double time(int[] answers, int[] queries, Query search) {
+        long start = System.nanoTime(), end = start + TIME_LIMIT;
+        int count = 0;
+        do {
+            answers[count] = search.answer(count * 4);
+            count++;
+        } while (count < answers.length && System.nanoTime() - end < 0);
+        double micros = (System.nanoTime() - start) / 1e3 / count;
+        Arrays.fill(answers, count, answers.length, Integer.MIN_VALUE);
+        return micros;
+    }
+
+    /**
+     * Finds the cost of the cheapest path between two cells with Dijkstra's
+     * algorithm over a binary heap of {@code {cost, cell}} arrays, the way it
+     * is usually written.
+     *
+     * @param maze  the maze, with terrain
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @param toR   the ending row
+     * @param toC   the ending column
+     * @return the cost of the cheapest path, or -1 if there is none
+     */
+    private static int heapCost(Maze maze, int fromR, int fromC, int toR, int toC) {
+        int height = maze.getRows(), width = maze.getColumns();
+        Terrain terrain = maze.getTerrain();
+        int[] costs = new int[height * width];
+        Arrays.fill(costs, Integer.MAX_VALUE);
+        PriorityQueue<int[]> queue = new PriorityQueue<>((a, b) -> Integer.compare(a[0], b[0]));
+        int target = toR * width + toC;
+        costs[fromR * width + fromC] = 0;
+        queue.add(new int[]{0, fromR * width + fromC});
+        while (!queue.isEmpty()) {
+            int[] entry = queue.remove();
+            int cell = entry[1];
+            if (entry[0] != costs[cell]) {
+                continue;
+            }
+            if (cell == target) {
+                return entry[0];
+            }
+            int r = cell / width, c = cell % width;
+            // leaving a cell costs what the cell does
+            int next = entry[0] + terrain.getCost(r, c);
+            for (int dir = 0; dir < 4; dir++) {
+                int nr = r + dy(dir), nc = c + dx(dir);
+                if (nr < 0 || nc < 0 || nr >= height || nc >= width
+                        || maze.getWall(r, c, dir) || maze.getWall(nr, nc, opposite(dir))) {
+                    continue;
+                }
+                int neighbor = nr * width + nc;
+                if (next < costs[neighbor]) {
+                    costs[neighbor] = next;
+                    queue.add(new int[]{next, neighbor});
+                }
+            }
+        }
+        return -1;
+    }
+}
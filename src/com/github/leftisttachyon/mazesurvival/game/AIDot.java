@@ -18,47 +18,80 @@ public abstract class AIDot extends Dot {
      */
     protected int avoidMove = -1;
 
+    /**
+     * The direction this AIDot moved in the last time it was meant to move,
+     * or -1 if it could not move
+     */
+    private int lastDirection = -1;
+
+    /**
+     * The distance to the target after the last move, or -1 if it was not
+     * moved along a search
+     */
+    private int lastDistance = -1;
+
+    /**
+     * The dots of the game this AI dot plays in
+     */
+    protected final Dots dots;
+
     /**
      * Creates a new AI dot.
      *
+     * @param dots  the dots of the game this AI dot plays in
      * @param color the color of the AI dot
      */
-    public AIDot(Color color) {
+    public AIDot(Dots dots, Color color) {
         super(color);
+        this.dots = dots;
     }
 
     /**
      * Creates a new AI dot and places it at the given coordinates.
      *
+     * @param dots  the dots of the game this AI dot plays in
      * @param x     the x-coordinate to use
      * @param y     the y-coordinate to use
      * @param color the color of the AI dot
      */
-    public AIDot(int x, int y, Color color) {
+    public AIDot(Dots dots, int x, int y, Color color) {
         super(x, y, color);
+        this.dots = dots;
     }
 
     @Override
     public void moveOne(int direction) {
         super.moveOne(direction);
         avoidMove = Cell.opposite(direction);
+        lastDirection = direction;
+        lastDistance = -1;
+        dots.wadeInto(this);
         // System.out.println(getClass().getSimpleName() + " should avoid " + direction);
     }
 
     /**
      * Moves this AIDot in the best manner given the possible move candidates.
+     * The first candidate that is not occupied by another AIDot is chosen,
+     * preferring ones that do not go back the way this AIDot came. An AIDot
+     * that is still wading out of its cell spends the move doing so instead.
      *
      * @param candidates the candidates for moving this AIDot
      */
     public void moveOne(TreeMap<Integer, List<Integer>> candidates) {
-        int firstNotOccupied = -1;
+        clearLastMove();
+        if (wade()) {
+            return;
+        }
+        int firstNotOccupied = -1, firstDistance = -1;
         for(int key : candidates.keySet()) {
             for(int dir : candidates.get(key)) {
                 Point p = Dots.transform(new Point(x, y), dir, 1);
-                if(!Dots.isOccupied(p.y, p.x)) {
+                if(!dots.isOccupied(p.y, p.x)) {
                     firstNotOccupied = dir;
+                    firstDistance = key;
                     if(dir != avoidMove) {
                         moveOne(dir);
+                        lastDistance = key;
                         return;
                     }
                 }
@@ -67,11 +100,88 @@ public abstract class AIDot extends Dot {
 
         if (firstNotOccupied != -1) {
             moveOne(firstNotOccupied);
+            lastDistance = firstDistance;
         }
     }
 
+    /**
+     * Takes a move planned for this AIDot by a {@link CooperativePlanner}.
+     * The move is not taken if this AIDot is still wading out of its cell or
+     * another AIDot is in the way.
+     *
+     * @param direction the direction to move in, or
+     *                  {@link CooperativePlanner#WAIT}
+     */
+    void moveAlong(int direction) {
+        clearLastMove();
+        if (wade() || direction == CooperativePlanner.WAIT) {
+            return;
+        }
+        Point p = Dots.transform(new Point(x, y), direction, 1);
+        if (!dots.isOccupied(p.y, p.x)) {
+            moveOne(direction);
+        }
+    }
+
+    /**
+     * Forgets the last move, for when this AIDot was meant to move and may
+     * not.
+     */
+    void clearLastMove() {
+        lastDirection = -1;
+        lastDistance = -1;
+    }
+
+    /**
+     * Returns the direction this AIDot moved in the last time it was meant to
+     * move
+     *
+     * @return the direction of the last move, or -1 if it could not move
+     */
+    public int getLastDirection() {
+        return lastDirection;
+    }
+
+    /**
+     * Returns the distance from this AIDot to its target after its last move,
+     * as found by its search
+     *
+     * @return the distance after the last move, or -1 if it could not move or
+     * moved without a search
+     */
+    public int getLastDistance() {
+        return lastDistance;
+    }
+
+    /**
+     * Ranks the moves this AIDot could make. This only reads the given user
+     * state, the position of this AIDot and the maze, none of which change
+     * while the AIs plan, so the AIs may plan concurrently.
+     *
+     * @param user         the position of the user dot
+     * @param userLastMove the last move of the user
+     * @return a TreeMap of possible moves, in (weight, direction(s)) pairs
+     */
+    public TreeMap<Integer, List<Integer>> plan(Point user, int userLastMove) {
+        Point target = getTarget(user, userLastMove);
+        return dots.getBestMoves(y, x, target.y, target.x);
+    }
+
+    /**
+     * Determines the square this AIDot is heading for. Like
+     * {@link #plan(Point, int)}, this may be called concurrently.
+     *
+     * @param user         the position of the user dot
+     * @param userLastMove the last move of the user
+     * @return the square this AIDot is heading for
+     */
+    public abstract Point getTarget(Point user, int userLastMove);
+
     /**
      * Moves this dot one unit.
      */
-    public abstract void move();
+    public void move() {
+        Dot user = dots.getUserDot();
+        moveOne(plan(new Point(user.x, user.y), dots.getLastMove()));
+    }
 }
@@ -0,0 +1,363 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.awt.*;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Moves the AIs of a game within a fixed amount of time per tick. Each AI
+ * searches its way with a resumable search that is spread over as many ticks
+ * as it needs; when it is time to move and an AI has not finished searching,
+ * it keeps going in the direction it last moved in, and its search carries on
+ * towards the squares next to where it is now. A search is only started
+ * again when the target of its AI changes. This keeps ticks short no matter
+ * how big the maze is, but makes the AIs depend on timing, so games moved by
+ * a scheduler cannot be replayed.<br>
+ * When walls of the maze change, the searches that have reached either side
+ * of a changed wall are started again, and the others carry on.<br>
+ * Only the thread that runs the game may use its scheduler.
+ *
+ * @author Jed Wang
+ */
+public final class AIScheduler {
+
+    /**
+     * The search of an AI that is in progress or waiting to be used
+     */
+    private static final class Plan {
+
+        /**
+         * The search
+         */
+        private final BitBfs search;
+
+        /**
+         * The squares the AI could move to, and the directions to them
+         */
+        private final int[] rows = new int[4], cols = new int[4], dirs = new int[4];
+
+        /**
+         * The distances left after each move
+         */
+        private final int[] distances = new int[4];
+
+        /**
+         * The amount of squares the AI could move to
+         */
+        private int count;
+
+        /**
+         * The square the search starts from
+         */
+        private int targetR, targetC;
+
+        /**
+         * Stores whether a search has been started and not used yet
+         */
+        private boolean active = false;
+
+        /**
+         * Creates a new Plan.
+         *
+         * @param dots the dots of the game
+         */
+        private Plan(Dots dots) {
+            search = new BitBfs(dots.getMaze());
+        }
+    }
+
+    /**
+     * The dots of the game
+     */
+    private final Dots dots;
+
+    /**
+     * The plans of the AIs, in the same order as the AIs
+     */
+    private final Plan[] plans;
+
+    /**
+     * The time each tick may spend on the AIs, in nanoseconds
+     */
+    private final long budget;
+
+    /**
+     * The version of the maze the searches were checked against
+     */
+    private long version;
+
+    /**
+     * A change of the maze, as given by {@link Maze#getChange(long, int[])}
+     */
+    private final int[] change = new int[4];
+
+    /**
+     * The AI whose search is continued first in the next tick, so that no AI
+     * is always left with what remains of the budget
+     */
+    private int first = 0;
+
+    /**
+     * The amount of ticks that went over the budget
+     */
+    private long overruns = 0;
+
+    /**
+     * The amount of moves made in the last direction because a search had
+     * not finished
+     */
+    private long fallbacks = 0;
+
+    /**
+     * The amount of searches that finished and were moved along
+     */
+    private long searches = 0;
+
+    /**
+     * The amount of searches started again because walls changed
+     */
+    private long restarts = 0;
+
+    /**
+     * The amount of ticks run
+     */
+    private long ticks = 0;
+
+    /**
+     * The longest time a tick spent on the AIs, in nanoseconds
+     */
+    private long maxNanos = 0;
+
+    /**
+     * Creates a new AIScheduler.
+     *
+     * @param dots         the dots of the game
+     * @param budgetMicros the time each tick may spend on the AIs, in
+     *                     microseconds
+     */
+    public AIScheduler(Dots dots, long budgetMicros) {
+        if (budgetMicros <= 0) {
+            throw new IllegalArgumentException("Invalid budget: " + budgetMicros);
+        }
+        this.dots = dots;
+        this.budget = TimeUnit.MICROSECONDS.toNanos(budgetMicros);
+
+        List<AIDot> ais = dots.getAIs();
+        plans = new Plan[ais.size()];
+        for (int i = 0; i < plans.length; i++) {
+            plans[i] = new Plan(dots);
+        }
+        version = dots.getMaze().getVersion();
+    }
+
+    /**
+     * Spends this tick's budget on the searches of the AIs, and moves them if
+     * it is time to.
+     *
+     * @param move whether the AIs move this tick
+     */
+    public void tick(boolean move) {
+        long start = System.nanoTime(), deadline = start + budget;
+        List<AIDot> ais = dots.getAIs();
+        restartChanged(ais);
+
+        if (move) {
+            // searches for this move head for where the user is now; one
+            // still in progress carries on if its target has not moved
+            Dot userDot = dots.getUserDot();
+            Point user = new Point(userDot.x, userDot.y);
+            for (int i = 0; i < plans.length; i++) {
+                begin(plans[i], ais.get(i), user);
+            }
+        }
+
+        for (int n = 0; n < plans.length && System.nanoTime() - deadline < 0; n++) {
+            Plan plan = plans[(first + n) % plans.length];
+            if (plan.active && !plan.search.isFinished()) {
+                plan.search.resume(deadline);
+            }
+        }
+        first = (first + 1) % plans.length;
+
+        if (move) {
+            // in list order, as in Dots.moveAIs
+            for (int i = 0; i < plans.length; i++) {
+                moveAI(plans[i], ais.get(i));
+            }
+        }
+
+        long nanos = System.nanoTime() - start;
+        ticks++;
+        if (nanos > budget) {
+            overruns++;
+        }
+        maxNanos = Math.max(maxNanos, nanos);
+    }
+
+    /**
+     * Starts the search of an AI, unless one that is still in progress is
+     * for the same target. A finished search is kept to be moved along.
+     *
+     * @param plan the plan of the AI
+     * @param ai   the AI
+     * @param user the position of the user dot
+     */
+    private void begin(Plan plan, AIDot ai, Point user) {
+        Point target = ai.getTarget(user, dots.getLastMove());
+        if (plan.active && (plan.search.isFinished()
+                || plan.targetR == target.y && plan.targetC == target.x)) {
+            return;
+        }
+        plan.targetR = target.y;
+        plan.targetC = target.x;
+        restart(plan, ai);
+    }
+
+    /**
+     * Starts the search of an AI from its target again, against the walls
+     * as they are now.
+     *
+     * @param plan the plan of the AI
+     * @param ai   the AI
+     */
+    private void restart(Plan plan, AIDot ai) {
+        plan.count = dots.getNeighbors(ai.y, ai.x, plan.rows, plan.cols, plan.dirs);
+        plan.search.begin(plan.targetR, plan.targetC, plan.rows, plan.cols, plan.count);
+        plan.active = true;
+    }
+
+    /**
+     * Starts the searches that read walls which have changed since the last
+     * tick again.
+     *
+     * @param ais the AIs
+     */
+    private void restartChanged(List<AIDot> ais) {
+        Maze maze = dots.getMaze();
+        long now = maze.getVersion();
+        if (now == version) {
+            return;
+        }
+
+        boolean all = !maze.hasChangesSince(version);
+        for (int i = 0; i < plans.length; i++) {
+            Plan plan = plans[i];
+            if (!plan.active) {
+                continue;
+            }
+            boolean changed = all;
+            for (long v = version + 1; v <= now && !changed; v++) {
+                maze.getChange(v, change);
+                changed = plan.search.isVisited(change[0], change[1]);
+            }
+            if (changed) {
+                restarts++;
+                restart(plan, ais.get(i));
+            }
+        }
+        version = now;
+    }
+
+    /**
+     * Moves an AI along its finished search, or in its last direction if the
+     * search has not finished, pointing the search at the squares next to
+     * the one it moved to. An AI that is wading out of its cell keeps its
+     * search for when it can move.
+     *
+     * @param plan the plan of the AI
+     * @param ai   the AI
+     */
+    private void moveAI(Plan plan, AIDot ai) {
+        if (ai.wade()) {
+            ai.clearLastMove();
+            return;
+        }
+        if (plan.search.isFinished()) {
+            for (int i = 0; i < plan.count; i++) {
+                plan.distances[i] = plan.search.getDistance(i);
+            }
+            plan.active = false;
+            searches++;
+            ai.moveOne(Dots.rank(plan.dirs, plan.distances, plan.count));
+            return;
+        }
+
+        ai.clearLastMove();
+        int last = ai.avoidMove < 0 ? -1 : Cell.opposite(ai.avoidMove);
+        for (int i = 0; i < plan.count; i++) {
+            Point to = Dots.transform(new Point(ai.x, ai.y), plan.dirs[i], 1);
+            if (plan.dirs[i] == last && !dots.isOccupied(to.y, to.x)) {
+                fallbacks++;
+                ai.moveOne(last);
+                // the search is from the target, so only the squares it is
+                // looking for move with the AI
+                plan.count = dots.getNeighbors(ai.y, ai.x, plan.rows, plan.cols, plan.dirs);
+                if (!plan.search.retarget(plan.rows, plan.cols, plan.count)) {
+                    restart(plan, ai);
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Returns the amount of ticks that spent longer on the AIs than the
+     * budget allows
+     *
+     * @return the amount of ticks over the budget
+     */
+    public long getOverruns() {
+        return overruns;
+    }
+
+    /**
+     * Returns the amount of moves an AI made in its last direction because
+     * its search had not finished
+     *
+     * @return the amount of fallback moves
+     */
+    public long getFallbacks() {
+        return fallbacks;
+    }
+
+    /**
+     * Returns the amount of searches that finished and were moved along
+     *
+     * @return the amount of finished searches
+     */
+    public long getSearches() {
+        return searches;
+    }
+
+    /**
+     * Returns the amount of searches started again because walls they had
+     * read changed
+     *
+     * @return the amount of restarted searches
+     */
+    public long getRestarts() {
+        return restarts;
+    }
+
+    /**
+     * Returns the amount of ticks run
+     *
+     * @return the amount of ticks run
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the longest time a tick spent on the AIs
+     *
+     * @return the longest time a tick spent on the AIs, in nanoseconds
+     */
+    public long getMaxNanos() {
+        return maxNanos;
+    }
+}
@@ -0,0 +1,329 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * A bot that plays as the user, for soak tests and for showing the game off.
+ * Each time it is asked for a move it finds, with a breadth-first search from
+ * every AI at once, how soon the nearest AI can reach each square. The squares
+ * the user can reach sooner than any AI are safe, and the bot heads for
+ * whichever neighboring square leads into the most safe squares. The user and
+ * the AIs are assumed to move equally fast, which is cautious since the AIs
+ * move slower than the user until late in a game.<br>
+ * Every buffer is allocated up front, so choosing a move does not allocate.
+ * The walls of the maze are read when the autopilot is created, and only the
+ * squares whose walls changed are read again afterwards.
+ *
+ * @author Jed Wang
+ */
+public final class Autopilot {
+
+    /**
+     * The system property that makes the GUI play by itself, moving the user
+     * every given amount of ticks
+     */
+    public static final String PROPERTY = "mazesurvival.autopilot";
+
+    /**
+     * Marks squares that have not been reached
+     */
+    private static final int UNREACHED = Integer.MAX_VALUE;
+
+    /**
+     * The order that neighboring squares are tried in, as in {@link Dots}
+     */
+    private static final int[] MOVE_ORDER = {NORTH, SOUTH, WEST, EAST};
+
+    /**
+     * The dots of the game
+     */
+    private final Dots dots;
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The version of the maze that {@link #exits} was read at
+     */
+    private long version;
+
+    /**
+     * A change of the maze, as given by {@link Maze#getChange(long, int[])}
+     */
+    private final int[] change = new int[4];
+
+    /**
+     * The sides of each square that can be moved through, as a mask with the
+     * bit {@code 1 << direction} set for each
+     */
+    private final byte[] exits;
+
+    /**
+     * The difference in square index of a move in each direction
+     */
+    private final int[] steps = new int[4];
+
+    /**
+     * The distance from each square to the nearest AI
+     */
+    private final int[] aiDistances;
+
+    /**
+     * The distance from the user to each safe square
+     */
+    private final int[] userDistances;
+
+    /**
+     * The first move on the way from the user to each safe square
+     */
+    private final byte[] firstMoves;
+
+    /**
+     * The queue of both searches, as square indices
+     */
+    private final int[] queue;
+
+    /**
+     * The amount of safe squares each first move leads into
+     */
+    private final int[] regionSizes = new int[4];
+
+    /**
+     * Creates a new Autopilot.
+     *
+     * @param dots the dots of the game to play
+     */
+    public Autopilot(Dots dots) {
+        this.dots = dots;
+        maze = dots.getMaze();
+        height = maze.getRows();
+        width = maze.getColumns();
+
+        int size = height * width;
+        exits = new byte[size];
+        readAllExits();
+        for (int dir = 0; dir < 4; dir++) {
+            steps[dir] = dy(dir) * width + dx(dir);
+        }
+
+        aiDistances = new int[size];
+        userDistances = new int[size];
+        firstMoves = new byte[size];
+        queue = new int[size];
+    }
+
+    /**
+     * Chooses the next move of the user.
+     *
+     * @return the direction to move the user in, or -1 if every move leads
+     * straight into an AI
+     */
+    public int choose() {
+        readChangedExits();
+        mapThreats();
+
+        Dot user = dots.getUserDot();
+        int start = user.y * width + user.x;
+        measureRegions(start);
+
+        int best = -1, bestSize = 0, bestMargin = -1;
+        int open = exits[start];
+        for (int dir : MOVE_ORDER) {
+            if ((open & 1 << dir) == 0) {
+                continue;
+            }
+
+            int next = start + steps[dir];
+            int size = regionSizes[dir], margin = aiDistances[next];
+            // the largest region first, then the square furthest from the AIs
+            if (margin > 0 && (size > bestSize || size == bestSize && margin > bestMargin)) {
+                best = dir;
+                bestSize = size;
+                bestMargin = margin;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Reads the sides of every square that can be moved through.
+     */
+    private void readAllExits() {
+        version = maze.getVersion();
+        for (int r = 0; r < height; r++) {
+            for (int c = 0; c < width; c++) {
+                readExits(r, c);
+            }
+        }
+    }
+
+    /**
+     * Reads the sides that can be moved through again for the squares whose
+     * walls changed since they were last read.
+     */
+    private void readChangedExits() {
+        long now = maze.getVersion();
+        if (now == version) {
+            return;
+        }
+        if (!maze.hasChangesSince(version)) {
+            readAllExits();
+            return;
+        }
+        for (long v = version + 1; v <= now; v++) {
+            maze.getChange(v, change);
+            readExits(change[0], change[1]);
+        }
+        version = now;
+    }
+
+    /**
+     * Reads the sides of a square that can be moved through.
+     *
+     * @param r the row of the square
+     * @param c the column of the square
+     */
+    private void readExits(int r, int c) {
+        int walls = maze.getWalls(r, c), open = 0;
+        for (int dir = 0; dir < 4; dir++) {
+            int nr = r + dy(dir), nc = c + dx(dir);
+            if ((walls & 1 << dir) == 0 && nr >= 0 && nr < height && nc >= 0 && nc < width) {
+                open |= 1 << dir;
+            }
+        }
+        exits[r * width + c] = (byte) open;
+    }
+
+    /**
+     * Finds the distance from every square to the nearest AI.
+     */
+    private void mapThreats() {
+        Arrays.fill(aiDistances, UNREACHED);
+        int head = 0, tail = 0;
+        for (AIDot ai : dots.getAIs()) {
+            int idx = ai.y * width + ai.x;
+            if (aiDistances[idx] != 0) {
+                aiDistances[idx] = 0;
+                queue[tail++] = idx;
+            }
+        }
+
+        while (head < tail) {
+            int idx = queue[head++];
+            int open = exits[idx], next = aiDistances[idx] + 1;
+            for (int dir = 0; dir < 4; dir++) {
+                if ((open & 1 << dir) != 0) {
+                    int to = idx + steps[dir];
+                    if (aiDistances[to] == UNREACHED) {
+                        aiDistances[to] = next;
+                        queue[tail++] = to;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the safe squares that can be reached from the given square
+     * through safe squares only, by the first move taken.
+     *
+     * @param start the square of the user
+     */
+    private void measureRegions(int start) {
+        Arrays.fill(userDistances, UNREACHED);
+        Arrays.fill(regionSizes, 0);
+        userDistances[start] = 0;
+        firstMoves[start] = -1;
+        int head = 0, tail = 0;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int idx = queue[head++];
+            int open = exits[idx], next = userDistances[idx] + 1;
+            for (int dir : MOVE_ORDER) {
+                if ((open & 1 << dir) == 0) {
+                    continue;
+                }
+                int to = idx + steps[dir];
+                // only squares the user reaches before any AI are safe
+                if (userDistances[to] == UNREACHED && next < aiDistances[to]) {
+                    userDistances[to] = next;
+                    byte first = idx == start ? (byte) dir : firstMoves[idx];
+                    firstMoves[to] = first;
+                    regionSizes[first]++;
+                    queue[tail++] = to;
+                }
+            }
+        }
+    }
+
+    /**
+     * Plays games without a window with the autopilot as the user, and prints
+     * how many games and ticks it gets through per second.
+     *
+     * @param args the amount of games (1000 by default), the amount of ticks
+     *             between moves of the user (1 by default) and the most ticks
+     *             a game may last (30000 by default)
+     */
+    public static void main(String[] args) {
+        int games = args.length > 0 ? Integer.parseInt(args[0]) : 1000;
+        int moveTicks = args.length > 1 ? Integer.parseInt(args[1]) : 1;
+        int maxTicks = args.length > 2 ? Integer.parseInt(args[2]) : 30000;
+
+        AtomicLong ticks = new AtomicLong(), chooseNanos = new AtomicLong(), chooses = new AtomicLong();
+        AtomicLong maxChoose = new AtomicLong(), caught = new AtomicLong();
+        long start = System.nanoTime();
+        IntStream.range(0, games).parallel().forEach(i -> {
+            Random r = new Random(i);
+            Game game = new Game(r.nextLong(), r.nextLong());
+            // the games are already spread over every core
+            game.getDots().setParallel(false);
+            Autopilot autopilot = new Autopilot(game.getDots());
+            long nanos = 0, worst = 0;
+            int moves = 0;
+            while (!game.isOver() && game.getTick() < maxTicks) {
+                if (game.getTick() % moveTicks == 0) {
+                    long before = System.nanoTime();
+                    int direction = autopilot.choose();
+                    long took = System.nanoTime() - before;
+                    nanos += took;
+                    worst = Math.max(worst, took);
+                    moves++;
+                    if (direction >= 0) {
+                        game.moveUser(direction);
+                    }
+                }
+                game.tick();
+            }
+
+            ticks.addAndGet(game.getTick());
+            chooseNanos.addAndGet(nanos);
+            chooses.addAndGet(moves);
+            maxChoose.accumulateAndGet(worst, Math::max);
+            if (game.isOver()) {
+                caught.incrementAndGet();
+            }
+        });
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d games (%d caught) in %.2f s: %.0f games/s, %.0f ticks/s%n", games,
+                caught.get(), seconds, games / seconds, ticks.get() / seconds);
+        System.out.printf("mean survival %s, choose mean %.2f us, max %.2f us%n",
+                Game.formatTime((int) (ticks.get() / games)),
+                chooseNanos.get() / 1e3 / Math.max(1, chooses.get()), maxChoose.get() / 1e3);
+    }
+}
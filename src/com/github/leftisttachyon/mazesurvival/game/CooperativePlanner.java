@@ -0,0 +1,512 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.util.Arrays;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Plans the moves of many AIs together so that they spread out instead of
+ * queueing behind each other, with windowed hierarchical cooperative A*. The
+ * AIs are planned one at a time in priority order, each with an A* search
+ * over (cell, time) for the next {@link #WINDOW} moves that may move or wait
+ * at every step. The cells the AIs before it will be in at each of those
+ * times are reserved in a space-time table, so a path may neither enter a
+ * reserved cell nor swap cells with another AI; when an AI has been planned,
+ * its own path is reserved for the ones after it.<br>
+ * The search is guided by the true distance to the target in the maze
+ * without the other AIs, which comes from a breadth-first search back from
+ * the target that only goes as far as the A* search has asked, and picks up
+ * where it left off the next time. These searches are kept while the walls
+ * and targets stay the same. Every step costs one and the distance changes
+ * by one per move, so the open states only ever span three values of
+ * {@code cost + distance} and are kept in a ring of three stacks.<br>
+ * Every buffer is allocated when the planner is created, apart from the
+ * backward searches, which are each allocated the first time there are that
+ * many different targets. Terrain is not taken into account beyond the moves
+ * each AI must still spend wading. A planner may only be used by one thread
+ * at a time.
+ *
+ * @author Jed Wang
+ */
+public final class CooperativePlanner {
+
+    /**
+     * The amount of moves planned ahead
+     */
+    public static final int WINDOW = 8;
+
+    /**
+     * The move that stays in place
+     */
+    public static final int WAIT = -1;
+
+    /**
+     * The distance of cells the target cannot be reached from
+     */
+    private static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The search back from a target, which is resumed as more of its
+     * distances are needed
+     */
+    private final class Field {
+
+        /**
+         * The distance from each cell to the target, for cells whose
+         * {@link #seen} is {@link #mark}
+         */
+        private final int[] distances = new int[cells];
+
+        /**
+         * The search that last reached each cell
+         */
+        private final int[] seen = new int[cells];
+
+        /**
+         * The cells in the order they were reached
+         */
+        private final int[] queue = new int[cells];
+
+        /**
+         * The current search
+         */
+        private int mark = 0;
+
+        /**
+         * The position in {@link #queue} of the next cell to expand, and of
+         * the end
+         */
+        private int head, tail;
+
+        /**
+         * The target
+         */
+        private int target = -1;
+
+        /**
+         * The version of the maze the search is for
+         */
+        private long version;
+
+        /**
+         * The round this field was last used in
+         */
+        private long used;
+
+        /**
+         * Starts the search again from the given target.
+         *
+         * @param target the target
+         */
+        private void reset(int target) {
+            if (++mark == 0) {
+                Arrays.fill(seen, 0);
+                mark = 1;
+            }
+            this.target = target;
+            version = maze.getVersion();
+            head = tail = 0;
+            queue[tail++] = target;
+            seen[target] = mark;
+            distances[target] = 0;
+        }
+
+        /**
+         * Returns the distance from a cell to the target, searching further
+         * back from the target if it has not been reached yet
+         *
+         * @param cell the cell
+         * @return the distance, or {@link #UNREACHABLE}
+         */
+        private int distance(int cell) {
+            while (seen[cell] != mark && head < tail) {
+                int from = queue[head++];
+                int r = from / width, c = from - r * width;
+                int walls = maze.getWalls(r, c);
+                for (int dir = 0; dir < 4; dir++) {
+                    int nr = r + dy(dir), nc = c + dx(dir);
+                    if ((walls & 1 << dir) != 0 || nr < 0 || nc < 0 || nr >= height || nc >= width
+                            || maze.getWall(nr, nc, opposite(dir))) {
+                        continue;
+                    }
+                    int neighbor = nr * width + nc;
+                    if (seen[neighbor] != mark) {
+                        seen[neighbor] = mark;
+                        distances[neighbor] = distances[from] + 1;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+            return seen[cell] == mark ? distances[cell] : UNREACHABLE;
+        }
+    }
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The dimensions of the maze, and its amount of cells
+     */
+    private final int height, width, cells;
+
+    /**
+     * The most AIs that can be planned at once
+     */
+    private final int maxAIs;
+
+    /**
+     * The round each (time, cell) was last reserved in, indexed by
+     * {@code time * cells + cell}
+     */
+    private final long[] reservedIn;
+
+    /**
+     * The AI that reserved each (time, cell), indexed like
+     * {@link #reservedIn}
+     */
+    private final int[] reservedBy;
+
+    /**
+     * The current round of planning
+     */
+    private long round = 0;
+
+    /**
+     * The search that last reached each (time, cell), indexed like
+     * {@link #reservedIn}
+     */
+    private final long[] reached;
+
+    /**
+     * The (time, cell) each (time, cell) was reached from
+     */
+    private final int[] parents;
+
+    /**
+     * The current search
+     */
+    private long search = 0;
+
+    /**
+     * The open (time, cell)s, in a ring of stacks indexed by
+     * {@code (cost + distance) % 3}
+     */
+    private final int[][] open = new int[3][];
+
+    /**
+     * The amount of (time, cell)s in each stack of {@link #open}
+     */
+    private final int[] openSizes = new int[3];
+
+    /**
+     * The backward searches, one per target, which are created as they are
+     * needed
+     */
+    private final Field[] fields;
+
+    /**
+     * The amount of (time, cell)s expanded by the last round
+     */
+    private int expanded;
+
+    /**
+     * Creates a new CooperativePlanner.
+     *
+     * @param maze   the maze the AIs are in
+     * @param maxAIs the most AIs that will be planned at once
+     */
+    public CooperativePlanner(Maze maze, int maxAIs) {
+        if (maxAIs < 1) {
+            throw new IllegalArgumentException("Invalid amount of AIs: " + maxAIs);
+        }
+        this.maze = maze;
+        this.height = maze.getRows();
+        this.width = maze.getColumns();
+        this.cells = Math.multiplyExact(height, width);
+        this.maxAIs = maxAIs;
+        int states = Math.multiplyExact(cells, WINDOW + 1);
+        reservedIn = new long[states];
+        reservedBy = new int[states];
+        reached = new long[states];
+        parents = new int[states];
+        for (int i = 0; i < open.length; i++) {
+            open[i] = new int[states];
+        }
+        fields = new Field[maxAIs];
+    }
+
+    /**
+     * Plans the next move of every AI, in order of priority.
+     *
+     * @param count      the amount of AIs
+     * @param rows       the row each AI is in
+     * @param cols       the column each AI is in
+     * @param targetRows the row each AI is heading for
+     * @param targetCols the column each AI is heading for
+     * @param waits      the moves each AI must still spend wading before it
+     *                   can move
+     * @param moves      the array to put the direction of each move in, or
+     *                   {@link #WAIT}
+     */
+    public void plan(int count, int[] rows, int[] cols, int[] targetRows, int[] targetCols, int[] waits,
+                     int[] moves) {
+        if (count > maxAIs) {
+            throw new IllegalArgumentException("Planning " + count + " AIs, but at most " + maxAIs + " can be");
+        }
+        round++;
+        expanded = 0;
+        // until an AI is planned, the ones before it must keep out of where
+        // it is now
+        for (int i = 0; i < count; i++) {
+            int cell = cell(rows[i], cols[i]);
+            for (int t = 0, hold = Math.min(WINDOW, Math.max(1, waits[i])); t <= hold; t++) {
+                reserve(t, cell, i);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            moves[i] = planOne(i, cell(rows[i], cols[i]), cell(targetRows[i], targetCols[i]), waits[i]);
+        }
+    }
+
+    /**
+     * Plans one AI and reserves its path.
+     *
+     * @param ai     the index of the AI
+     * @param start  the cell it is in
+     * @param target the cell it is heading for
+     * @param wait   the moves it must spend wading first
+     * @return the direction of its next move, or {@link #WAIT}
+     */
+    private int planOne(int ai, int start, int target, int wait) {
+        for (int t = 1; t <= WINDOW; t++) {
+            int state = t * cells + start;
+            if (reservedIn[state] == round && reservedBy[state] == ai) {
+                reservedIn[state] = 0;
+            }
+        }
+
+        Field field = field(target);
+        int end = field.distance(start) == UNREACHABLE ? -1 : search(ai, start, target, wait, field);
+        if (end < 0) {
+            // nowhere to go; stay for as long as no one else needs the cell
+            for (int t = 1; t <= WINDOW && isFree(t, start, ai); t++) {
+                reserve(t, start, ai);
+            }
+            return WAIT;
+        }
+
+        int endTime = end / cells, endCell = end - endTime * cells;
+        // an AI that reaches its target stays on it
+        for (int t = endTime + 1; t <= WINDOW && isFree(t, endCell, ai); t++) {
+            reserve(t, endCell, ai);
+        }
+        int next = end;
+        for (int state = end; state >= cells; state = parents[state]) {
+            reserve(state / cells, state % cells, ai);
+            next = state;
+        }
+        int nextCell = next % cells;
+        if (nextCell == start) {
+            return WAIT;
+        }
+        for (int dir = 0; dir < 4; dir++) {
+            if (nextCell == start + dy(dir) * width + dx(dir)) {
+                return dir;
+            }
+        }
+        throw new IllegalStateException("The path does not start next to the AI");
+    }
+
+    /**
+     * Finds the best path for an AI over the window with A*.
+     *
+     * @param ai     the index of the AI
+     * @param start  the cell it is in
+     * @param target the cell it is heading for
+     * @param wait   the moves it must spend wading first
+     * @param field  the distances to the target
+     * @return the (time, cell) the path ends at, either the target or the end
+     * of the window, or -1 if every path runs into another AI
+     */
+    private int search(int ai, int start, int target, int wait, Field field) {
+        search++;
+        Arrays.fill(openSizes, 0);
+        reached[start] = search;
+        push(field.distance(start), start);
+        int pending = 1;
+        for (int f = field.distance(start); pending > 0; f++) {
+            int b = f % 3;
+            int[] stack = open[b];
+            // moving towards the target leaves f as it is, so this stack may
+            // grow while it is emptied
+            while (openSizes[b] > 0) {
+                int state = stack[--openSizes[b]];
+                pending--;
+                int t = state / cells, cell = state - t * cells;
+                if (cell == target || t == WINDOW) {
+                    return state;
+                }
+                expanded++;
+
+                int r = cell / width, c = cell - r * width;
+                int walls = wait > t ? 0xF : maze.getWalls(r, c);
+                for (int dir : Dots.MOVE_ORDER) {
+                    int nr = r + dy(dir), nc = c + dx(dir);
+                    if ((walls & 1 << dir) != 0 || nr < 0 || nc < 0 || nr >= height || nc >= width
+                            || maze.getWall(nr, nc, opposite(dir))) {
+                        continue;
+                    }
+                    int neighbor = nr * width + nc;
+                    if (isFree(t + 1, neighbor, ai) && !isSwap(t, cell, neighbor, ai)) {
+                        pending += open(state, t + 1, neighbor, t + 1 + field.distance(neighbor));
+                    }
+                }
+                if (isFree(t + 1, cell, ai)) {
+                    pending += open(state, t + 1, cell, t + 1 + field.distance(cell));
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Opens a (time, cell) if it has not been reached yet in this search.
+     *
+     * @param parent the (time, cell) it is reached from
+     * @param t      the time
+     * @param cell   the cell
+     * @param f      the cost so far plus the distance left
+     * @return 1 if it was opened, otherwise 0
+     */
+    private int open(int parent, int t, int cell, int f) {
+        int state = t * cells + cell;
+        if (reached[state] == search) {
+            return 0;
+        }
+        reached[state] = search;
+        parents[state] = parent;
+        push(f, state);
+        return 1;
+    }
+
+    /**
+     * Pushes a (time, cell) onto the stack of its f.
+     *
+     * @param f     the cost so far plus the distance left
+     * @param state the (time, cell)
+     */
+    private void push(int f, int state) {
+        int b = f % 3;
+        open[b][openSizes[b]++] = state;
+    }
+
+    /**
+     * Returns the search back from the given target, starting a new one in
+     * the least recently used slot if there is none for the current walls.
+     *
+     * @param target the target
+     * @return the search
+     */
+    private Field field(int target) {
+        Field oldest = null;
+        for (int i = 0; i < fields.length; i++) {
+            Field field = fields[i];
+            if (field == null) {
+                field = fields[i] = new Field();
+            }
+            if (field.target == target && field.version == maze.getVersion()) {
+                field.used = round;
+                return field;
+            }
+            if (oldest == null || field.used < oldest.used) {
+                oldest = field;
+            }
+            if (field.target < 0) {
+                break;
+            }
+        }
+        oldest.reset(target);
+        oldest.used = round;
+        return oldest;
+    }
+
+    /**
+     * Determines whether an AI may be in a cell at a time.
+     *
+     * @param t    the time
+     * @param cell the cell
+     * @param ai   the AI
+     * @return whether no other AI has reserved it
+     */
+    private boolean isFree(int t, int cell, int ai) {
+        int state = t * cells + cell;
+        return reservedIn[state] != round || reservedBy[state] == ai;
+    }
+
+    /**
+     * Determines whether moving between two cells would swap places with
+     * another AI, which would pass through it.
+     *
+     * @param t    the time of the move
+     * @param from the cell moved from
+     * @param to   the cell moved to
+     * @param ai   the AI
+     * @return whether another AI moves from {@code to} to {@code from}
+     */
+    private boolean isSwap(int t, int from, int to, int ai) {
+        int before = t * cells + to, after = (t + 1) * cells + from;
+        return reservedIn[before] == round && reservedBy[before] != ai
+                && reservedIn[after] == round && reservedBy[after] == reservedBy[before];
+    }
+
+    /**
+     * Reserves a cell at a time for an AI.
+     *
+     * @param t    the time
+     * @param cell the cell
+     * @param ai   the AI
+     */
+    private void reserve(int t, int cell, int ai) {
+        int state = t * cells + cell;
+        reservedIn[state] = round;
+        reservedBy[state] = ai;
+    }
+
+    /**
+     * Returns the index of a cell, checking that it is in the maze
+     *
+     * @param r the row
+     * @param c the column
+     * @return the index of the cell
+     */
+    private int cell(int r, int c) {
+        if (r < 0 || c < 0 || r >= height || c >= width) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + r
+                    + ", " + c);
+        }
+        return r * width + c;
+    }
+
+    /**
+     * Returns the amount of (time, cell)s the last round of planning
+     * expanded
+     *
+     * @return the amount of expanded (time, cell)s
+     */
+    public int getExpanded() {
+        return expanded;
+    }
+
+    /**
+     * Returns the maze the AIs are planned in
+     *
+     * @return the maze
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+}
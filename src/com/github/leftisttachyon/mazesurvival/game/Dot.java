@@ -28,6 +28,23 @@ public class Dot {
      */
     protected Color color;
 
+    /**
+     * The count of times this dot entered each cell, indexed by
+     * {@code y * visitsWidth + x}, or null if they are not counted
+     */
+    private int[] visits = null;
+
+    /**
+     * The height and width of the maze {@link #visits} is for
+     */
+    private int visitsHeight, visitsWidth;
+
+    /**
+     * The amount of moves this dot must still spend getting out of the cell
+     * it is in
+     */
+    private int wading = 0;
+
     /**
      * Creates a new dot and places it at the default location of (0, 0).
      *
@@ -56,6 +73,18 @@ public class Dot {
      * @param g2D the Graphics2D object to use to paint the dot
      */
     public void paint(Graphics2D g2D) {
+        paint(g2D, x, y, color);
+    }
+
+    /**
+     * Paints a dot of the given color at the given coordinates.
+     *
+     * @param g2D   the Graphics2D object to use to paint the dot
+     * @param x     the x-coordinate of the dot
+     * @param y     the y-coordinate of the dot
+     * @param color the color of the dot
+     */
+    public static void paint(Graphics2D g2D, int x, int y, Color color) {
         g2D.setColor(color);
         int cX = x * Cell.WIDTH + Cell.WIDTH / 2,
                 cY = y * Cell.WIDTH + Cell.WIDTH / 2;
@@ -150,5 +179,77 @@ public class Dot {
                 x--;
                 break;
         }
+        if (visits != null) {
+            if (y < 0 || x < 0 || y >= visitsHeight || x >= visitsWidth) {
+                throw new IllegalStateException("Moved out of the counted "
+                        + visitsHeight + "x" + visitsWidth + " maze to " + y + ", " + x);
+            }
+            visits[y * visitsWidth + x]++;
+        }
+    }
+
+    /**
+     * Makes this dot spend the given amount of moves getting out of the cell
+     * it is in before it can move again.
+     *
+     * @param moves the moves to spend, or 0 to let it move freely
+     */
+    public void setWading(int moves) {
+        wading = moves;
+    }
+
+    /**
+     * Returns the amount of moves this dot must still spend getting out of
+     * the cell it is in
+     *
+     * @return the moves left to spend wading
+     */
+    public int getWading() {
+        return wading;
+    }
+
+    /**
+     * Returns whether this dot must spend its next move getting out of the
+     * cell it is in
+     *
+     * @return whether this dot is wading
+     */
+    public boolean isWading() {
+        return wading > 0;
+    }
+
+    /**
+     * Spends a move getting out of the cell this dot is in, if it must.
+     *
+     * @return whether the move was spent wading, in which case this dot may
+     * not move
+     */
+    public boolean wade() {
+        if (wading > 0) {
+            wading--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Counts the cells this dot enters with {@link #moveOne(int)} from now on.
+     *
+     * @param visits the counts to add to, indexed by {@code y * width + x},
+     *               or null to stop counting
+     * @param height the height of the maze
+     * @param width  the width of the maze
+     * @throws IllegalArgumentException if there is not a count for every
+     *                                  cell of the maze
+     */
+    public void setVisits(int[] visits, int height, int width) {
+        if (visits != null && (height < 0 || width < 0
+                || visits.length != (long) height * width)) {
+            throw new IllegalArgumentException("The counts do not fit a "
+                    + height + "x" + width + " maze: " + visits.length);
+        }
+        this.visits = visits;
+        this.visitsHeight = height;
+        this.visitsWidth = width;
     }
 }
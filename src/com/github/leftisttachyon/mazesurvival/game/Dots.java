@@ -1,12 +1,18 @@
 package com.github.leftisttachyon.mazesurvival.game;
 
+import com.github.leftisttachyon.mazesurvival.maze.BitBfs;
 import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.DistanceField;
+import com.github.leftisttachyon.mazesurvival.maze.DistanceOracle;
 import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.Terrain;
+import com.github.leftisttachyon.mazesurvival.maze.WeightedSearch;
 
 import java.awt.*;
 import java.util.List;
 import java.util.Queue;
 import java.util.*;
+import java.util.stream.Collectors;
 
 import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
 
@@ -20,85 +26,114 @@ import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
  */
 public class Dots {
 
-    /**
-     * All static methods
-     */
-    private Dots() {
-    }
-
     /**
      * The list of AIs in this game
      */
-    private static final List<AIDot> AIs;
+    private final List<AIDot> ais;
 
     /**
      * The dot controlled by the user
      */
-    private static final Dot USER;
+    private final Dot userDot;
 
     /**
      * The last move of the user
      */
-    private static int lastMove = 0;
+    private int lastMove = 0;
+
+    /**
+     * Stores whether the AIs plan their moves in parallel
+     */
+    private boolean parallel = true;
+
+    /**
+     * Stores whether the AIs plan their moves together
+     */
+    private boolean cooperative = false;
+
+    /**
+     * The planner that plans the AIs together, or null if it has not been
+     * needed yet
+     */
+    private CooperativePlanner planner = null;
+
+    /**
+     * The order that moves are ranked in when they are equally good
+     */
+    static final int[] MOVE_ORDER = {NORTH, SOUTH, WEST, EAST};
+
+    /**
+     * The searches used by {@link #getBestMoves(int, int, int, int)}, one per
+     * thread since the AIs plan in parallel
+     */
+    private final ThreadLocal<BitBfs> searches = new ThreadLocal<>();
+
+    /**
+     * The searches used by {@link #getBestMoves(int, int, int, int)} when
+     * the maze has terrain, one per thread
+     */
+    private final ThreadLocal<WeightedSearch> weightedSearches = new ThreadLocal<>();
+
+    /**
+     * The distance oracle of the maze, which answers distances without
+     * searching when the maze has few enough loops; built before the AIs
+     * plan, only while the walls are as the maze was generated
+     */
+    private volatile DistanceOracle oracle = null;
 
     /**
      * The maze object to use for navigation.
      */
-    private static Maze maze;
+    private Maze maze;
 
-    static {
-        AIs = Arrays.asList(
-                Red.RED,
-                Blue.BLUE,
-                Pink.PINK,
-                Orange.ORANGE);
-        USER = new Dot(Color.BLACK);
+    /**
+     * Creates the dots for a new game, all placed at (0, 0).
+     *
+     * @param maze the maze to use for navigation
+     */
+    public Dots(Maze maze) {
+        this.maze = maze;
+        ais = Arrays.asList(
+                new Red(),
+                new Blue(),
+                new Pink(),
+                new Orange());
+        userDot = new Dot(Color.BLACK);
     }
 
     /**
      * The red dot AI
      */
-    private static class Red extends AIDot {
-
-        /**
-         * The only Red to be created
-         */
-        private static final Red RED = new Red();
+    private class Red extends AIDot {
 
         /**
          * Creates a new Red instance.
          */
         private Red() {
-            super(Color.RED);
+            super(Dots.this, Color.RED);
         }
 
         @Override
-        public void move() {
-            TreeMap<Integer, List<Integer>> bestMoves = getBestMoves(y, x, USER.y, USER.x);
-            moveOne(bestMoves);
+        public Point getTarget(Point user, int userLastMove) {
+            return user;
         }
     }
 
     /**
      * The blue dot AI
      */
-    private static class Blue extends AIDot {
-
-        /**
-         * The only Blue to be created
-         */
-        private static final Blue BLUE = new Blue();
+    private class Blue extends AIDot {
 
         /**
          * Creates a new Blue instance.
          */
         private Blue() {
-            super(Color.BLUE);
+            super(Dots.this, Color.BLUE);
         }
 
         @Override
-        public void move() {
-            Point plus2 = transform(new Point(USER.x, USER.y), lastMove, 2);
+        public Point getTarget(Point user, int userLastMove) {
+            Point plus2 = transform(user, userLastMove, 2);
             int dy = plus2.y - y, dx = plus2.x - x;
             int _y = dy + plus2.y, _x = dx + plus2.x;
             if (_y < 0) {
@@ -111,69 +146,80 @@ public class Dots {
             Dimension dim = maze.getDimensions();
 
             // moveOne(getNextMove(y, x, _y % dim.height, _x % dim.width));
-            TreeMap<Integer, List<Integer>> bestMoves = getBestMoves(y, x, _y % dim.height, _x % dim.width);
-            moveOne(bestMoves);
+            return new Point(_x % dim.width, _y % dim.height);
         }
     }
 
     /**
      * The pink dot AI
      */
-    private static class Pink extends AIDot {
-
-        /**
-         * The only Pink to be created
-         */
-        private static final Pink PINK = new Pink();
+    private class Pink extends AIDot {
 
         /**
          * Creates a new Pink instance.
          */
-        public Pink() {
-            super(Color.PINK);
+        private Pink() {
+            super(Dots.this, Color.PINK);
         }
 
         @Override
-        public void move() {
-            Point to = transformAndTrim(new Point(USER.x, USER.y), lastMove, 4);
+        public Point getTarget(Point user, int userLastMove) {
+            Point to = transformAndTrim(user, userLastMove, 4);
             // moveOne(getNextMove(y, x, to.y, to.x));
 
-            TreeMap<Integer, List<Integer>> bestMoves = getBestMoves(y, x, to.y, to.x);
-            moveOne(bestMoves);
+            return to;
         }
     }
 
     /**
      * The orange dot AI
      */
-    private static class Orange extends AIDot {
+    private class Orange extends AIDot {
 
         /**
-         * The only Orange to be created
+         * Creates a new Orange instance.
          */
-        private static final Orange ORANGE = new Orange();
+        private Orange() {
+            super(Dots.this, Color.ORANGE);
+        }
 
         /**
-         * Creates a new Orange instance.
+         * The distances to the corner this dot retreats to, which only
+         * change when walls do
          */
-        public Orange() {
-            super(Color.ORANGE);
-        }
+        private DistanceField retreat = null;
 
         @Override
-        public void move() {
-            int dist = Math.abs(x - USER.x) + Math.abs(y - USER.y);
-            TreeMap<Integer, List<Integer>> bestMoves;
+        public Point getTarget(Point user, int userLastMove) {
+            int dist = Math.abs(x - user.x) + Math.abs(y - user.y);
             if (dist > 8) {
                 // direction = getNextMove(y, x, USER.y, USER.x);
-                bestMoves = getBestMoves(y, x, USER.y, USER.x);
+                return user;
             } else {
                 // direction = getNextMove(y, x, maze.getDimensions().height - 1, 0);
-                bestMoves = getBestMoves(y, x, maze.getDimensions().height - 1, 0);
+                return new Point(0, maze.getDimensions().height - 1);
             }
+        }
 
-            // moveOne(direction);
-            moveOne(bestMoves);
+        @Override
+        public TreeMap<Integer, List<Integer>> plan(Point user, int userLastMove) {
+            Point target = getTarget(user, userLastMove);
+            // the retreat is measured in steps, which terrain does not fit
+            if (target == user || maze.getTerrain() != null) {
+                return getBestMoves(y, x, target.y, target.x);
+            }
+
+            if (retreat == null || retreat.getMaze() != maze) {
+                retreat = new DistanceField(maze, target.y, target.x);
+            }
+            int[] rows = new int[4], cols = new int[4], dirs = new int[4];
+            int count = getNeighbors(y, x, rows, cols, dirs);
+            int[] distances = new int[4];
+            for (int i = 0; i < count; i++) {
+                int d = retreat.getDistance(rows[i], cols[i]);
+                distances[i] = d == DistanceField.UNREACHABLE ? -1 : d;
+            }
+            return rank(dirs, distances, count);
         }
     }
 
@@ -182,50 +228,169 @@ public class Dots {
      *
      * @param g2D the Graphics2D object to use
      */
-    public static void paint(Graphics2D g2D) {
-        for (AIDot dot : AIs) {
+    public void paint(Graphics2D g2D) {
+        for (AIDot dot : ais) {
             dot.paint(g2D);
         }
 
-        USER.paint(g2D);
+        userDot.paint(g2D);
     }
 
     /**
-     * Moves the AI dots.
+     * Moves the AI dots. This happens in two phases: first every AI ranks its
+     * moves in parallel, against positions that stay fixed until all of them
+     * are done; then the AIs take their moves one at a time in list order, so
+     * an AI earlier in the list gets priority over a cell. The outcome does
+     * not depend on how the planning was scheduled. AIs that are wading out
+     * of their cells do not plan. AIs that plan together are planned one
+     * after another instead; see {@link #setCooperative(boolean)}.
      */
-    public static void moveAIs() {
+    public void moveAIs() {
         if (maze == null) {
             throw new IllegalStateException("maze is null!");
         }
 
         // System.out.println("Moving!");
 
-        for (AIDot dot : AIs) {
-            dot.move();
+        Point user = new Point(userDot.x, userDot.y);
+        int userLastMove = lastMove;
+        if (cooperative) {
+            moveTogether(user, userLastMove);
+            return;
+        }
+
+        updateOracle();
+        List<TreeMap<Integer, List<Integer>>> plans = (parallel ? ais.parallelStream() : ais.stream())
+                .map(dot -> dot.isWading() ? new TreeMap<Integer, List<Integer>>()
+                        : dot.plan(user, userLastMove))
+                .collect(Collectors.toList());
+
+        for (int i = 0; i < ais.size(); i++) {
+            ais.get(i).moveOne(plans.get(i));
+        }
+    }
+
+    /**
+     * Moves the AI dots along paths planned together by a
+     * {@link CooperativePlanner}, with the AIs earlier in the list planned
+     * first.
+     *
+     * @param user         the position of the user dot
+     * @param userLastMove the last move of the user
+     */
+    private void moveTogether(Point user, int userLastMove) {
+        int count = ais.size();
+        if (planner == null || planner.getMaze() != maze) {
+            planner = new CooperativePlanner(maze, count);
+        }
+        int[] rows = new int[count], cols = new int[count], targetRows = new int[count],
+                targetCols = new int[count], waits = new int[count], moves = new int[count];
+        for (int i = 0; i < count; i++) {
+            AIDot ai = ais.get(i);
+            Point target = ai.getTarget(user, userLastMove);
+            rows[i] = ai.y;
+            cols[i] = ai.x;
+            targetRows[i] = target.y;
+            targetCols[i] = target.x;
+            waits[i] = ai.getWading();
+        }
+        planner.plan(count, rows, cols, targetRows, targetCols, waits, moves);
+        for (int i = 0; i < count; i++) {
+            ais.get(i).moveAlong(moves[i]);
         }
     }
 
+    /**
+     * Returns the last move of the user
+     *
+     * @return the last move of the user
+     */
+    public int getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * Sets the last move of the user, which some AIs aim by
+     *
+     * @param lastMove the last move of the user
+     */
+    void setLastMove(int lastMove) {
+        this.lastMove = lastMove;
+    }
+
+    /**
+     * Sets whether the AIs plan their moves in parallel. Planning on one
+     * thread is better when many games are played at once, and gives the
+     * same moves.
+     *
+     * @param parallel whether the AIs plan in parallel
+     */
+    public void setParallel(boolean parallel) {
+        this.parallel = parallel;
+    }
+
+    /**
+     * Sets whether the AIs plan their moves together, so that they spread out
+     * rather than follow each other, instead of each heading along its own
+     * shortest path. AIs with a time budget always plan on their own.
+     *
+     * @param cooperative whether the AIs plan their moves together
+     * @see CooperativePlanner
+     */
+    public void setCooperative(boolean cooperative) {
+        this.cooperative = cooperative;
+    }
+
+    /**
+     * Returns whether the AIs plan their moves together
+     *
+     * @return whether the AIs plan their moves together
+     */
+    public boolean isCooperative() {
+        return cooperative;
+    }
+
     /**
      * Returns the dot that is controlled by the user
      *
      * @return the dot that is controlled by the user
      */
-    public static Dot getUserDot() {
-        return USER;
+    public Dot getUserDot() {
+        return userDot;
+    }
+
+    /**
+     * Returns the maze used for navigation
+     *
+     * @return the maze used for navigation
+     */
+    public Maze getMaze() {
+        return maze;
     }
 
     /**
-     * Sets the maze to use for navigation
+     * Sets the maze to use for navigation. If it is not the size of the old
+     * one, the dots stop counting their visits, as the counts are for the
+     * old size.
      *
      * @param maze the maze to use for navigation
      */
-    public static void setMaze(Maze maze) {
-        Dots.maze = maze;
+    public void setMaze(Maze maze) {
+        if (this.maze != null && !maze.getDimensions().equals(this.maze.getDimensions())) {
+            userDot.setVisits(null, 0, 0);
+            for (AIDot ai : ais) {
+                ai.setVisits(null, 0, 0);
+            }
+        }
+        this.maze = maze;
     }
 
     /**
      * Returns optimal moves for moving from the first given square to the
-     * second one. This algorithm relies on breadth first search.
+     * second one. The distances come from the distance oracle of the maze if
+     * it is up to date, and otherwise from a breadth first search from the
+     * second square. In a maze with terrain, moves are ranked by the cost of
+     * the cheapest path after them instead, from a {@link WeightedSearch}.
      *
      * @param fromR the starting row
      * @param fromC the starting column
@@ -233,7 +398,7 @@ public class Dots {
      * @param toC   the ending column
      * @return a TreeMap of possible moves, in (weight, direction(s)) pairs
      */
-    public static TreeMap<Integer, List<Integer>> getBestMoves(int fromR, int fromC, int toR, int toC) {
+    public TreeMap<Integer, List<Integer>> getBestMoves(int fromR, int fromC, int toR, int toC) {
         if (maze == null) {
             throw new IllegalStateException("maze is null!");
         }
@@ -252,52 +417,144 @@ public class Dots {
             throw new IllegalArgumentException("Invalid ending column: " + toC);
         }
 
-        Cell c = maze.getCell(fromR, fromC);
-        TreeMap<Integer, List<Integer>> output = new TreeMap<>();
-        if (fromR - 1 >= 0 && !c.getWall(NORTH)) {
-            int temp = bfs(fromR - 1, fromC, toR, toC);
-            ArrayList<Integer> list = new ArrayList<>();
-            list.add(NORTH);
-            output.put(temp, list);
-        }
-        if (fromR + 1 < dim.height && !c.getWall(SOUTH)) {
-            int temp = bfs(fromR + 1, fromC, toR, toC);
-            if (output.containsKey(temp)) {
-                output.get(temp).add(SOUTH);
-            } else {
-                ArrayList<Integer> list = new ArrayList<>();
-                list.add(SOUTH);
-                output.put(temp, list);
+        // one search from the destination finds the distances from all the
+        // neighbors at once, since the walls of a maze are the same from both
+        // sides
+        int[] rows = new int[4], cols = new int[4], dirs = new int[4];
+        int count = getNeighbors(fromR, fromC, rows, cols, dirs);
+        int[] distances = new int[4];
+        if (maze.getTerrain() != null) {
+            getWeightedSearch().costs(toR, toC, rows, cols, count, distances);
+            return rank(dirs, distances, count);
+        }
+        DistanceOracle current = getOracle();
+        if (current != null) {
+            for (int i = 0; i < count; i++) {
+                distances[i] = current.distance(rows[i], cols[i], toR, toC);
             }
+        } else {
+            getSearch().distances(toR, toC, rows, cols, count, distances);
         }
-        if (fromC - 1 >= 0 && !c.getWall(WEST)) {
-            int temp = bfs(fromR, fromC - 1, toR, toC);
-            if (output.containsKey(temp)) {
-                output.get(temp).add(WEST);
-            } else {
-                ArrayList<Integer> list = new ArrayList<>();
-                list.add(WEST);
-                output.put(temp, list);
+
+        return rank(dirs, distances, count);
+    }
+
+    /**
+     * Finds the squares that can be moved to from the given square, in the
+     * order that equally good moves are ranked in.
+     *
+     * @param r    the row of the square
+     * @param c    the column of the square
+     * @param rows the array to put the rows of the neighbors in
+     * @param cols the array to put the columns of the neighbors in
+     * @param dirs the array to put the directions of the neighbors in
+     * @return the amount of neighbors
+     */
+    int getNeighbors(int r, int c, int[] rows, int[] cols, int[] dirs) {
+        Dimension dim = maze.getDimensions();
+        int count = 0;
+        int walls = maze.getWalls(r, c);
+        for (int dir : MOVE_ORDER) {
+            int nr = r + dy(dir), nc = c + dx(dir);
+            if ((walls & 1 << dir) == 0 && nr >= 0 && nr < dim.height && nc >= 0 && nc < dim.width) {
+                rows[count] = nr;
+                cols[count] = nc;
+                dirs[count++] = dir;
             }
         }
-        if (fromC + 1 < dim.width && !c.getWall(EAST)) {
-            int temp = bfs(fromR, fromC + 1, toR, toC);
-            if (output.containsKey(temp)) {
-                output.get(temp).add(EAST);
-            } else {
-                ArrayList<Integer> list = new ArrayList<>();
-                list.add(EAST);
-                output.put(temp, list);
+        return count;
+    }
+
+    /**
+     * Ranks moves by the distances left after taking them. Moves that cannot
+     * reach the destination are left out.
+     *
+     * @param dirs      the directions of the moves
+     * @param distances the distances left after each move, or -1
+     * @param count     the amount of moves
+     * @return a TreeMap of possible moves, in (weight, direction(s)) pairs
+     */
+    static TreeMap<Integer, List<Integer>> rank(int[] dirs, int[] distances, int count) {
+        TreeMap<Integer, List<Integer>> output = new TreeMap<>();
+        for (int i = 0; i < count; i++) {
+            if (distances[i] >= 0) {
+                output.computeIfAbsent(distances[i], k -> new ArrayList<>()).add(dirs[i]);
             }
         }
-
         return output;
     }
 
+    /**
+     * Returns the distance oracle of the maze, if it is up to date and can
+     * answer distances
+     *
+     * @return the oracle, or null if distances must be searched for
+     */
+    private DistanceOracle getOracle() {
+        DistanceOracle current = oracle;
+        return current != null && current.getMaze() == maze && current.isCurrent() && current.isExact()
+                ? current : null;
+    }
+
+    /**
+     * Builds the distance oracle of a newly generated maze. Once its walls
+     * change, as doors do, the oracle is dropped and distances are searched
+     * for instead: building it again takes a search from every shortcut,
+     * which is far too slow to do every time a door opens or closes.
+     */
+    private void updateOracle() {
+        DistanceOracle current = oracle;
+        if (current != null && current.getMaze() == maze && current.isCurrent()) {
+            return;
+        }
+        oracle = maze.getVersion() == maze.getGeneratedVersion() ? new DistanceOracle(maze) : null;
+    }
+
+    /**
+     * Returns the search of the calling thread for the current maze
+     *
+     * @return a BitBfs over the current maze
+     */
+    private BitBfs getSearch() {
+        BitBfs search = searches.get();
+        if (search == null || search.getMaze() != maze) {
+            search = new BitBfs(maze);
+            searches.set(search);
+        }
+        return search;
+    }
+
+    /**
+     * Returns the weighted search of the calling thread for the current maze
+     * and terrain
+     *
+     * @return a WeightedSearch over the current maze
+     */
+    private WeightedSearch getWeightedSearch() {
+        WeightedSearch search = weightedSearches.get();
+        if (search == null || search.getMaze() != maze || search.getTerrain() != maze.getTerrain()) {
+            search = new WeightedSearch(maze);
+            weightedSearches.set(search);
+        }
+        return search;
+    }
+
+    /**
+     * Makes a dot that has just moved spend as many more moves getting out
+     * of the cell it entered as the terrain of the maze asks for.
+     *
+     * @param dot the dot
+     */
+    void wadeInto(Dot dot) {
+        Terrain terrain = maze.getTerrain();
+        dot.setWading(terrain == null ? 0 : terrain.getCost(dot.y, dot.x) - Terrain.FLOOR);
+    }
+
     /**
      * Performs a breadth-first search between the first given square to the
      * second one. Determines, then returns, the length of the shortest path
-     * between the two squares.
+     * between the two squares. Once the AIs have moved, the distance oracle
+     * of the maze answers instead when it is up to date.
      *
      * @param fromR the starting row
      * @param fromC the starting column
@@ -306,7 +563,7 @@ public class Dots {
      * @return the length of the shortest path to get from the first given
      * square to the second one.
      */
-    public static int bfs(int fromR, int fromC, int toR, int toC) {
+    public int bfs(int fromR, int fromC, int toR, int toC) {
         if (maze == null) {
             throw new IllegalStateException("maze is null!");
         }
@@ -325,6 +582,14 @@ public class Dots {
             throw new IllegalArgumentException("Invalid ending column: " + toC);
         }
 
+        DistanceOracle current = getOracle();
+        if (current != null) {
+            int distance = current.distance(fromR, fromC, toR, toC);
+            if (distance >= 0) {
+                return distance;
+            }
+        }
+
         HashSet<Point> visited = new HashSet<>();
         Queue<int[]> q = new LinkedList<>();
         q.add(new int[]{fromR, fromC, 0});
@@ -359,9 +624,9 @@ public class Dots {
      *
      * @return if the user-controlled dot is overlapping with an AI-controlled dots
      */
-    public static boolean isOverlapping() {
-        for (AIDot dot : AIs) {
-            if (dot.x == USER.x && dot.y == USER.y) {
+    public boolean isOverlapping() {
+        for (AIDot dot : ais) {
+            if (dot.x == userDot.x && dot.y == userDot.y) {
                 return true;
             }
         }
@@ -370,12 +635,14 @@ public class Dots {
     }
 
     /**
-     * Moves the user dot in the given direction one unit.
+     * Moves the user dot in the given direction one unit, into whatever
+     * terrain is there.
      *
      * @param direction the direction to move the user dot in
      */
-    public static void moveUserDot(int direction) {
-        USER.moveOne(direction);
+    public void moveUserDot(int direction) {
+        userDot.moveOne(direction);
+        wadeInto(userDot);
         lastMove = direction;
     }
 
@@ -412,7 +679,7 @@ public class Dots {
      * @return the newly transformed Point, guaranteed to be within the bounds of the
      * internally stored maze
      */
-    public static Point transformAndTrim(Point start, int direction, int units) {
+    public Point transformAndTrim(Point start, int direction, int units) {
         if (maze == null) {
             throw new IllegalStateException("maze is null!");
         }
@@ -458,8 +725,8 @@ public class Dots {
      * @param c the column of the square
      * @return whether the given square is occupied by an AIDot
      */
-    public static boolean isOccupied(int r, int c) {
-        for (AIDot dot : AIs) {
+    public boolean isOccupied(int r, int c) {
+        for (AIDot dot : ais) {
             if (dot.x == c && dot.y == r) {
                 return true;
             }
@@ -473,7 +740,7 @@ public class Dots {
      *
      * @return the list of AIs
      */
-    public static List<AIDot> getAIs() {
-        return AIs;
+    public List<AIDot> getAIs() {
+        return ais;
     }
 }
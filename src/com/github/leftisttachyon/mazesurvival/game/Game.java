@@ -0,0 +1,726 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.Terrain;
+import com.github.leftisttachyon.mazesurvival.maze.VisitHeatmap;
+import com.github.leftisttachyon.mazesurvival.maze.WallGeometry;
+import com.github.leftisttachyon.mazesurvival.telemetry.Telemetry;
+
+import java.awt.*;
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * A single game of Maze Survival, simulated in discrete ticks.<br>
+ * Every random choice is drawn from the maze seed and the spawn seed, and
+ * user moves are applied between ticks, so a game can be reproduced exactly
+ * from its seeds and the ticks at which the user moved.
+ *
+ * @author Jed Wang
+ */
+public final class Game {
+
+    /**
+     * The length of a tick in milliseconds
+     */
+    public static final int TICK_MILLIS = 10;
+
+    /**
+     * The height of the maze that games are played in
+     */
+    public static final int MAZE_HEIGHT = 30;
+
+    /**
+     * The width of the maze that games are played in
+     */
+    public static final int MAZE_WIDTH = 30;
+
+    /**
+     * The amount of ways the dots can be placed at the start of a game
+     */
+    public static final int SPAWN_LAYOUTS = 4;
+
+    /**
+     * The system property that sets the time each tick may spend moving the
+     * AIs, in microseconds. The AIs take as long as they need if it is not
+     * set.
+     *
+     * @see #setAIBudget(long)
+     */
+    public static final String AI_BUDGET_PROPERTY = "mazesurvival.aiBudgetMicros";
+
+    /**
+     * The system property that sets the amount of doors in the maze, which
+     * open and close one at a time, one every {@link #DOOR_TICKS} ticks.
+     * There are no doors if it is not set.
+     *
+     * @see #setDoors(int, int, long)
+     */
+    public static final String DOORS_PROPERTY = "mazesurvival.doors";
+
+    /**
+     * The ticks between doors opening or closing when the amount of doors is
+     * set by {@link #DOORS_PROPERTY}
+     */
+    public static final int DOOR_TICKS = 100;
+
+    /**
+     * The system property that sets the share of the cells of the maze that
+     * are covered in mud or water. There is no terrain if it is not set.
+     *
+     * @see #setTerrain(double, long)
+     */
+    public static final String TERRAIN_PROPERTY = "mazesurvival.terrain";
+
+    /**
+     * The system property that, when true, makes the AIs plan their moves
+     * together
+     *
+     * @see Dots#setCooperative(boolean)
+     */
+    public static final String COOPERATIVE_PROPERTY = "mazesurvival.cooperative";
+
+    /**
+     * The system property that names the directory to write a heatmap of the
+     * cells the dots entered to when the program exits, as
+     * {@link VisitHeatmap#writeTo(java.nio.file.Path, int)} does. No heatmap
+     * is kept if it is not set.
+     */
+    public static final String HEATMAP_PROPERTY = "mazesurvival.heatmap";
+
+    /**
+     * The system property that, when true, shades the maze in the window by
+     * how often the dots of earlier games entered each cell
+     */
+    public static final String HEATMAP_OVERLAY_PROPERTY = "mazesurvival.heatmap.overlay";
+
+    /**
+     * The names of the dots, in the order the tracks of a heatmap of games
+     * count them: the user, then the AIs
+     */
+    public static final List<String> DOT_NAMES = Collections.unmodifiableList(
+            Arrays.asList("user", "red", "blue", "pink", "orange"));
+
+    /**
+     * The maze this game is played in
+     */
+    private final Maze maze;
+
+    /**
+     * The dots playing in this game
+     */
+    private final Dots dots;
+
+    /**
+     * The seed used to place the dots
+     */
+    private final long spawnSeed;
+
+    /**
+     * The amount of ticks that have passed
+     */
+    private int tick = 0;
+
+    /**
+     * The delay for the AIs to move, in milliseconds
+     */
+    private int moveDelay = 500;
+
+    /**
+     * The time since the AIs last moved, in milliseconds
+     */
+    private int sinceAIMove = 0;
+
+    /**
+     * Stores whether the game is over or not
+     */
+    private boolean over = false;
+
+    /**
+     * The scheduler that moves the AIs within a time budget, or null if they
+     * take as long as they need
+     */
+    private AIScheduler scheduler = null;
+
+    /**
+     * The passages between squares that open and close, each as
+     * {@code square << 2 | direction}, or null if there are none
+     */
+    private int[] doors = null;
+
+    /**
+     * The ticks between doors opening or closing
+     */
+    private int doorTicks;
+
+    /**
+     * The door that opens or closes next
+     */
+    private int nextDoor = 0;
+
+    /**
+     * The walls of the maze as segments, made again when they change, or
+     * null if they have not been made yet
+     */
+    private WallGeometry walls = null;
+
+    /**
+     * The time the last tick spent moving the AIs, in nanoseconds
+     */
+    private long aiNanos = 0;
+
+    /**
+     * The telemetry this game reports to, or null if it does not
+     */
+    private Telemetry telemetry = null;
+
+    /**
+     * The id of this game in its telemetry
+     */
+    private int telemetryId = -1;
+
+    /**
+     * The heatmap this game adds its visits to when it ends, or null
+     */
+    private VisitHeatmap heatmap = null;
+
+    /**
+     * The visits of each dot this game has counted, in the order of
+     * {@link #DOT_NAMES}
+     */
+    private int[][] visits = null;
+
+    /**
+     * Creates a new game with random seeds.
+     */
+    public Game() {
+        this(new Random().nextLong(), new Random().nextLong());
+    }
+
+    /**
+     * Creates a new game from the given seeds.
+     *
+     * @param mazeSeed  the seed to generate the maze from
+     * @param spawnSeed the seed to place the dots with
+     */
+    public Game(long mazeSeed, long spawnSeed) {
+        this(new Maze(MAZE_HEIGHT, MAZE_WIDTH, mazeSeed), spawnSeed);
+    }
+
+    /**
+     * Creates a new game in the given maze.
+     *
+     * @param maze      the maze to play in
+     * @param spawnSeed the seed to place the dots with
+     */
+    public Game(Maze maze, long spawnSeed) {
+        this.maze = maze;
+        this.spawnSeed = spawnSeed;
+
+        this.dots = new Dots(maze);
+        setDotPositions(new Random(spawnSeed));
+    }
+
+    /**
+     * Sets the positions of the dots
+     *
+     * @param r the Random object to use
+     */
+    private void setDotPositions(Random r) {
+        Dimension dim = maze.getDimensions();
+        int layout = r.nextInt(SPAWN_LAYOUTS);
+        dots.getUserDot().setPosition(getUserSpawn(layout, dim));
+        Point aiTopLeft = getAISpawn(layout, dim);
+
+        List<Point> aiPos = Arrays.asList(new Point(0, 0), new Point(0, 1), new Point(1, 0), new Point(1, 1));
+        Collections.shuffle(aiPos, r);
+        List<AIDot> ais = dots.getAIs();
+        for (int i = 0; i < ais.size(); i++) {
+            Point p = aiPos.get(i);
+            ais.get(i).setPosition(aiTopLeft.x + p.x, aiTopLeft.y + p.y);
+        }
+    }
+
+    /**
+     * Returns where the user dot starts in the given spawn layout
+     *
+     * @param layout the spawn layout
+     * @param dim    the dimensions of the maze
+     * @return the starting position of the user dot
+     */
+    public static Point getUserSpawn(int layout, Dimension dim) {
+        switch (layout) {
+            case 0: // AIs in top left, I'm in bottom right
+                return new Point(dim.width - 1, dim.height - 1);
+            case 1: // AIs in top right, I'm in bottom left
+                return new Point(0, dim.height - 1);
+            case 2: // AIs in bottom right, I'm in top left
+                return new Point(0, 0);
+            case 3: // AIs in bottom left, I'm in top right
+                return new Point(dim.width - 1, 0);
+            default:
+                throw new IllegalArgumentException("Invalid spawn layout: " + layout);
+        }
+    }
+
+    /**
+     * Returns the top left corner of the 2x2 square the AIs start in in the
+     * given spawn layout
+     *
+     * @param layout the spawn layout
+     * @param dim    the dimensions of the maze
+     * @return the top left corner of where the AIs start
+     */
+    public static Point getAISpawn(int layout, Dimension dim) {
+        switch (layout) {
+            case 0:
+                return new Point(0, 0);
+            case 1:
+                return new Point(dim.width - 2, 0);
+            case 2:
+                return new Point(dim.width - 2, dim.height - 2);
+            case 3:
+                return new Point(0, dim.height - 2);
+            default:
+                throw new IllegalArgumentException("Invalid spawn layout: " + layout);
+        }
+    }
+
+    /**
+     * Limits the time each tick may spend moving the AIs. AIs that run out of
+     * time keep going in the direction they last moved in, so a game with a
+     * budget depends on timing and cannot be replayed.
+     *
+     * @param micros the time each tick may spend on the AIs, in microseconds,
+     *               or 0 to let them take as long as they need
+     * @see AIScheduler
+     */
+    public void setAIBudget(long micros) {
+        scheduler = micros > 0 ? new AIScheduler(dots, micros) : null;
+    }
+
+    /**
+     * Returns the scheduler that moves the AIs within a time budget
+     *
+     * @return the scheduler, or null if the AIs have no budget
+     */
+    public AIScheduler getAIScheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Makes some of the walls of the maze into doors, which open and close
+     * while the game is played: every given amount of ticks, the next door in
+     * turn is opened if it is closed and closed if it is open. Doors are
+     * picked from the walls between squares, open or not, and both sides of a
+     * door always match. The doors are picked from the seed and toggled on
+     * fixed ticks, but the walls they change are not part of a
+     * {@link GameState}, so a game with doors cannot be loaded.
+     *
+     * @param count       the amount of doors
+     * @param periodTicks the ticks between doors opening or closing
+     * @param seed        the seed to pick the doors with
+     */
+    public void setDoors(int count, int periodTicks, long seed) {
+        int height = maze.getRows(), width = maze.getColumns();
+        // each square has a wall to the east and one to the south, except
+        // along the edges
+        int walls = (height - 1) * width + height * (width - 1);
+        if (count < 1 || count > walls) {
+            throw new IllegalArgumentException("Invalid amount of doors: " + count);
+        }
+        if (periodTicks < 1) {
+            throw new IllegalArgumentException("Invalid ticks between doors: " + periodTicks);
+        }
+
+        Random r = new Random(seed);
+        doors = r.ints(0, walls).distinct().limit(count).map(i -> {
+            if (i < (height - 1) * width) {
+                return i << 2 | SOUTH;
+            }
+            i -= (height - 1) * width;
+            return (i / (width - 1) * width + i % (width - 1)) << 2 | EAST;
+        }).toArray();
+        doorTicks = periodTicks;
+        nextDoor = 0;
+    }
+
+    /**
+     * Opens the next door in turn if it is closed, or closes it.
+     */
+    private void toggleDoor() {
+        int door = doors[nextDoor];
+        nextDoor = (nextDoor + 1) % doors.length;
+        int square = door >>> 2, dir = door & 3;
+        int r = square / maze.getColumns(), c = square % maze.getColumns();
+        maze.setPassage(r, c, dir, !maze.getWall(r, c, dir));
+    }
+
+    /**
+     * Returns whether some of the walls of the maze open and close
+     *
+     * @return whether this game has doors
+     */
+    public boolean hasDoors() {
+        return doors != null;
+    }
+
+    /**
+     * Covers some of the maze in mud and water, which take more than one move
+     * to get out of, for the user and the AIs alike. The AIs head along the
+     * cheapest paths rather than the shortest ones, unless they have an AI
+     * budget, in which case they search by steps. How long each dot has left
+     * to wade is not part of a {@link GameState}, so a game with terrain
+     * cannot be loaded.
+     *
+     * @param coverage the share of the cells to cover, at least 0 and less
+     *                 than 1
+     * @param seed     the seed to lay the terrain with
+     * @see Terrain#generate(int, int, long, double)
+     */
+    public void setTerrain(double coverage, long seed) {
+        maze.setTerrain(Terrain.generate(maze.getRows(), maze.getColumns(), seed, coverage));
+    }
+
+    /**
+     * Returns whether the maze has terrain
+     *
+     * @return whether this game has terrain
+     */
+    public boolean hasTerrain() {
+        return maze.getTerrain() != null;
+    }
+
+    /**
+     * Saves the state of this game.
+     *
+     * @param state the state to save into
+     */
+    public void save(GameState state) {
+        List<AIDot> ais = dots.getAIs();
+        if (state.getAICount() != ais.size()) {
+            throw new IllegalArgumentException("The state is for " + state.getAICount() + " AIs");
+        }
+
+        int[] values = state.values;
+        values[GameState.TICK] = tick;
+        values[GameState.MOVE_DELAY] = moveDelay;
+        values[GameState.SINCE_AI_MOVE] = sinceAIMove;
+        values[GameState.OVER] = over ? 1 : 0;
+        Dot user = dots.getUserDot();
+        values[GameState.USER] = user.x;
+        values[GameState.USER + 1] = user.y;
+        values[GameState.LAST_MOVE] = dots.getLastMove();
+        for (int i = 0, idx = GameState.AIS; i < ais.size(); i++, idx += GameState.AI_VALUES) {
+            AIDot ai = ais.get(i);
+            values[idx] = ai.x;
+            values[idx + 1] = ai.y;
+            values[idx + 2] = ai.avoidMove;
+        }
+    }
+
+    /**
+     * Puts this game in the given state, which must have been saved from a
+     * game in the same maze. Games with an AI budget cannot be put in another
+     * state, since their searches belong to the state they were started in,
+     * and neither can games with doors or terrain, since the walls and how
+     * long dots have left to wade are not part of a state.
+     *
+     * @param state the state to load
+     */
+    public void load(GameState state) {
+        if (scheduler != null) {
+            throw new IllegalStateException("Games with an AI budget cannot be loaded");
+        }
+        if (doors != null) {
+            throw new IllegalStateException("Games with doors cannot be loaded");
+        }
+        if (hasTerrain()) {
+            throw new IllegalStateException("Games with terrain cannot be loaded");
+        }
+        List<AIDot> ais = dots.getAIs();
+        if (state.getAICount() != ais.size()) {
+            throw new IllegalArgumentException("The state is for " + state.getAICount() + " AIs");
+        }
+
+        int[] values = state.values;
+        tick = values[GameState.TICK];
+        moveDelay = values[GameState.MOVE_DELAY];
+        sinceAIMove = values[GameState.SINCE_AI_MOVE];
+        over = values[GameState.OVER] != 0;
+        dots.getUserDot().setPosition(values[GameState.USER], values[GameState.USER + 1]);
+        dots.setLastMove(values[GameState.LAST_MOVE]);
+        for (int i = 0, idx = GameState.AIS; i < ais.size(); i++, idx += GameState.AI_VALUES) {
+            AIDot ai = ais.get(i);
+            ai.setPosition(values[idx], values[idx + 1]);
+            ai.avoidMove = values[idx + 2];
+        }
+    }
+
+    /**
+     * Reports the ticks, moves and end of this game to the given telemetry,
+     * starting with the start of this game.
+     *
+     * @param telemetry the telemetry to report to
+     */
+    public void setTelemetry(Telemetry telemetry) {
+        this.telemetry = telemetry;
+        Dimension dim = maze.getDimensions();
+        telemetryId = telemetry.gameStarted(dim.height, dim.width, maze.getSeed(), spawnSeed);
+    }
+
+    /**
+     * Counts the cells each dot enters from now on, and adds them to the
+     * given heatmap when this game ends.
+     *
+     * @param heatmap the heatmap, for mazes of this size and with a track for
+     *                each of the {@link #DOT_NAMES}
+     */
+    public void setHeatmap(VisitHeatmap heatmap) {
+        Dimension dim = maze.getDimensions();
+        if (heatmap.getHeight() != dim.height || heatmap.getWidth() != dim.width
+                || !heatmap.getTracks().equals(DOT_NAMES)) {
+            throw new IllegalArgumentException("The heatmap does not fit this game");
+        }
+        this.heatmap = heatmap;
+        visits = heatmap.newCounts();
+        dots.getUserDot().setVisits(visits[0], dim.height, dim.width);
+        List<AIDot> ais = dots.getAIs();
+        for (int i = 0; i < ais.size(); i++) {
+            ais.get(i).setVisits(visits[i + 1], dim.height, dim.width);
+        }
+    }
+
+    /**
+     * Creates the heatmap asked for with {@link #HEATMAP_PROPERTY}.
+     *
+     * @return an empty heatmap for games in mazes of the default size, or
+     * null if no heatmap is asked for
+     */
+    public static VisitHeatmap heatmapFromProperties() {
+        return System.getProperty(HEATMAP_PROPERTY) == null ? null
+                : new VisitHeatmap(MAZE_HEIGHT, MAZE_WIDTH, DOT_NAMES);
+    }
+
+    /**
+     * Writes a heatmap to the directory named by {@link #HEATMAP_PROPERTY},
+     * reporting rather than throwing any failure, so that this can be done
+     * on the way out of the program.
+     *
+     * @param heatmap the heatmap to write
+     */
+    public static void writeHeatmap(VisitHeatmap heatmap) {
+        try {
+            heatmap.writeTo(Paths.get(System.getProperty(HEATMAP_PROPERTY)), Cell.WIDTH);
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Adds the visits of this game to its heatmap, once it is over.
+     */
+    private void addVisits() {
+        if (over) {
+            flushVisits();
+        }
+    }
+
+    /**
+     * Adds the visits counted so far to the heatmap and stops counting them,
+     * whether or not this game is over. A game that ends adds its visits by
+     * itself; one that is abandoned, such as when its player leaves or the
+     * program exits, must be flushed so that they are not lost. Does nothing
+     * if the visits have already been added. Must be called by the thread
+     * that runs the game, or once it has stopped.
+     */
+    public void flushVisits() {
+        if (heatmap == null) {
+            return;
+        }
+        dots.getUserDot().setVisits(null, 0, 0);
+        for (AIDot ai : dots.getAIs()) {
+            ai.setVisits(null, 0, 0);
+        }
+        heatmap.add(visits);
+        heatmap = null;
+    }
+
+    /**
+     * Advances this game by one tick. The AIs move once their delay has
+     * passed, and the delay shrinks by 25 ms every 10 seconds.
+     */
+    public void tick() {
+        if (over) {
+            return;
+        }
+
+        long start = telemetry == null ? 0 : System.nanoTime();
+        tick++;
+        if (tick % 1000 == 0) {
+            moveDelay -= 25;
+        }
+        if (doors != null && tick % doorTicks == 0) {
+            toggleDoor();
+        }
+
+        sinceAIMove += TICK_MILLIS;
+        boolean aiTurn = sinceAIMove >= moveDelay;
+        if (aiTurn) {
+            sinceAIMove = 0;
+        }
+
+        if (scheduler != null) {
+            long aiStart = System.nanoTime();
+            scheduler.tick(aiTurn);
+            aiNanos = System.nanoTime() - aiStart;
+        } else if (aiTurn) {
+            long aiStart = System.nanoTime();
+            dots.moveAIs();
+            aiNanos = System.nanoTime() - aiStart;
+        } else {
+            aiNanos = 0;
+        }
+        if (aiTurn && dots.isOverlapping()) {
+            over = true;
+            addVisits();
+        }
+
+        if (telemetry != null) {
+            if (aiTurn) {
+                List<AIDot> ais = dots.getAIs();
+                for (int i = 0; i < ais.size(); i++) {
+                    AIDot ai = ais.get(i);
+                    telemetry.aiMove(telemetryId, tick, i, ai.getLastDirection(), ai.getLastDistance());
+                }
+            }
+            telemetry.tick(telemetryId, tick, System.nanoTime() - start);
+            if (over) {
+                telemetry.gameEnded(telemetryId, tick, (long) tick * TICK_MILLIS);
+            }
+        }
+    }
+
+    /**
+     * Moves the user dot in the given direction, if there is no wall in the
+     * way. If the user dot is still wading out of its cell, the move is spent
+     * doing so instead.
+     *
+     * @param direction the direction to move the user dot in
+     * @return whether the user dot moved
+     */
+    public boolean moveUser(int direction) {
+        if (over) {
+            return false;
+        }
+
+        Dot user = dots.getUserDot();
+        if (maze.getCell(user.getY(), user.getX()).getWall(direction) || user.wade()) {
+            return false;
+        }
+
+        dots.moveUserDot(direction);
+        if (dots.isOverlapping()) {
+            over = true;
+            addVisits();
+        }
+        if (telemetry != null) {
+            telemetry.userMove(telemetryId, tick, direction);
+            if (over) {
+                telemetry.gameEnded(telemetryId, tick, (long) tick * TICK_MILLIS);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the maze this game is played in
+     *
+     * @return the maze this game is played in
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * Returns the walls of the maze as they are now, as segments that do not
+     * change with them, so that other threads can paint them. They are only
+     * made again after a door changes. Must be called by the thread that
+     * runs the game.
+     *
+     * @return the walls of the whole maze
+     */
+    public WallGeometry getWalls() {
+        if (walls == null || walls.getVersion() != maze.getVersion()) {
+            walls = new WallGeometry(maze, 0, maze.getRows(), 0, maze.getColumns());
+        }
+        return walls;
+    }
+
+    /**
+     * Returns the dots playing in this game
+     *
+     * @return the dots playing in this game
+     */
+    public Dots getDots() {
+        return dots;
+    }
+
+    /**
+     * Returns the seed used to place the dots
+     *
+     * @return the seed used to place the dots
+     */
+    public long getSpawnSeed() {
+        return spawnSeed;
+    }
+
+    /**
+     * Returns the amount of ticks that have passed
+     *
+     * @return the amount of ticks that have passed
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns the time the last tick spent moving the AIs or, with an AI
+     * budget, searching for their moves
+     *
+     * @return the time spent on the AIs, in nanoseconds, or 0 if they did not
+     * move
+     */
+    public long getAINanos() {
+        return aiNanos;
+    }
+
+    /**
+     * Returns whether the game is over or not
+     *
+     * @return whether the game is over or not
+     */
+    public boolean isOver() {
+        return over;
+    }
+
+    /**
+     * Formats the time represented by the given amount of ticks as
+     * hours:minutes:seconds.centiseconds
+     *
+     * @param ticks the amount of ticks
+     * @return the formatted time
+     */
+    public static String formatTime(int ticks) {
+        int centis = ticks * TICK_MILLIS / 10;
+        return String.format("%02d:%02d:%02d.%02d", centis / 360000,
+                centis / 6000 % 60, centis / 100 % 60, centis % 100);
+    }
+}
@@ -0,0 +1,121 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+/**
+ * Everything about a game that changes as it is played, packed into a few
+ * ints: the tick, the AI timing, the positions of the dots, the last move of
+ * the user and the move each AI avoids. The maze is not part of the state, so
+ * a state can be saved from one game and loaded into any other game in the
+ * same maze, and copying a state is a single array copy.
+ *
+ * @author Jed Wang
+ * @see Game#save(GameState)
+ * @see Game#load(GameState)
+ */
+public final class GameState {
+
+    /**
+     * The index of the tick
+     */
+    static final int TICK = 0;
+
+    /**
+     * The index of the delay for the AIs to move
+     */
+    static final int MOVE_DELAY = 1;
+
+    /**
+     * The index of the time since the AIs last moved
+     */
+    static final int SINCE_AI_MOVE = 2;
+
+    /**
+     * The index of whether the game is over, as 1 or 0
+     */
+    static final int OVER = 3;
+
+    /**
+     * The index of the x-coordinate of the user, followed by its
+     * y-coordinate
+     */
+    static final int USER = 4;
+
+    /**
+     * The index of the last move of the user
+     */
+    static final int LAST_MOVE = 6;
+
+    /**
+     * The index of the first AI, which is followed by its y-coordinate and
+     * the move it avoids, and then by the other AIs
+     */
+    static final int AIS = 7;
+
+    /**
+     * The amount of values stored for each AI
+     */
+    static final int AI_VALUES = 3;
+
+    /**
+     * The values of the state
+     */
+    final int[] values;
+
+    /**
+     * Creates a new GameState for a game with the given amount of AIs.
+     *
+     * @param ais the amount of AIs
+     */
+    public GameState(int ais) {
+        values = new int[AIS + ais * AI_VALUES];
+    }
+
+    /**
+     * Makes this state equal to the given one.
+     *
+     * @param other the state to copy
+     */
+    public void copyFrom(GameState other) {
+        if (other.values.length != values.length) {
+            throw new IllegalArgumentException("The states have different amounts of AIs");
+        }
+        System.arraycopy(other.values, 0, values, 0, values.length);
+    }
+
+    /**
+     * Returns a copy of this state
+     *
+     * @return a copy of this state
+     */
+    public GameState copy() {
+        GameState copy = new GameState(getAICount());
+        copy.copyFrom(this);
+        return copy;
+    }
+
+    /**
+     * Returns the amount of AIs in this state
+     *
+     * @return the amount of AIs
+     */
+    public int getAICount() {
+        return (values.length - AIS) / AI_VALUES;
+    }
+
+    /**
+     * Returns the tick of this state
+     *
+     * @return the tick
+     */
+    public int getTick() {
+        return values[TICK];
+    }
+
+    /**
+     * Returns whether the game is over in this state
+     *
+     * @return whether the game is over
+     */
+    public boolean isOver() {
+        return values[OVER] != 0;
+    }
+}
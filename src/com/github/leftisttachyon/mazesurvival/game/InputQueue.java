@@ -0,0 +1,106 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A bounded queue of user moves that one thread offers to and another thread
+ * polls from, without locks. Only a single thread may offer and only a single
+ * thread may poll at any time.
+ *
+ * @author Jed Wang
+ */
+public final class InputQueue {
+
+    /**
+     * The ring buffer holding the moves
+     */
+    private final int[] buffer;
+
+    /**
+     * The mask that turns a sequence number into an index of the buffer
+     */
+    private final int mask;
+
+    /**
+     * The sequence number of the next move to poll, written only by the
+     * consumer
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence number of the next move to offer, written only by the
+     * producer
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The last head seen by the producer, so it does not have to read the
+     * head on every offer
+     */
+    private long headCache = 0;
+
+    /**
+     * The last tail seen by the consumer, so it does not have to read the
+     * tail on every poll
+     */
+    private long tailCache = 0;
+
+    /**
+     * Creates a new InputQueue.
+     *
+     * @param capacity the most moves the queue holds, rounded up to a power of
+     *                 two
+     */
+    public InputQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 30) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new int[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Adds a move to the queue. Must only be called by the producer thread.
+     *
+     * @param direction the direction of the move
+     * @return whether the move was added; false if the queue is full
+     */
+    public boolean offer(int direction) {
+        long t = tail.get();
+        if (t - headCache >= buffer.length) {
+            headCache = head.get();
+            if (t - headCache >= buffer.length) {
+                return false;
+            }
+        }
+
+        buffer[(int) t & mask] = direction;
+        // publishes the move written above
+        tail.lazySet(t + 1);
+        return true;
+    }
+
+    /**
+     * Removes the oldest move from the queue. Must only be called by the
+     * consumer thread.
+     *
+     * @return the direction of the move, or -1 if the queue is empty
+     */
+    public int poll() {
+        long h = head.get();
+        if (h >= tailCache) {
+            tailCache = tail.get();
+            if (h >= tailCache) {
+                return -1;
+            }
+        }
+
+        int direction = buffer[(int) h & mask];
+        head.lazySet(h + 1);
+        return direction;
+    }
+}
@@ -0,0 +1,130 @@
+package com.github.leftisttachyon.mazesurvival.game;
+
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.WallGeometry;
+
+import java.awt.*;
+import java.util.List;
+
+/**
+ * An immutable copy of everything needed to draw a game at one tick. The
+ * simulation publishes a new snapshot every tick, so the renderer never reads
+ * state that is being changed under it.
+ *
+ * @author Jed Wang
+ */
+public final class RenderSnapshot {
+
+    /**
+     * The maze of the game, whose walls change during a game if it has doors,
+     * so only its terrain and overlay are painted from it
+     */
+    private final Maze maze;
+
+    /**
+     * The walls of the maze at the tick the snapshot was taken at
+     */
+    private final WallGeometry walls;
+
+    /**
+     * The tick the snapshot was taken at
+     */
+    private final int tick;
+
+    /**
+     * Stores whether the game was over
+     */
+    private final boolean over;
+
+    /**
+     * The positions of the dots, in painting order
+     */
+    private final int[] xs, ys;
+
+    /**
+     * The colors of the dots, in painting order
+     */
+    private final Color[] colors;
+
+    /**
+     * Takes a snapshot of the given game. Must be called by the thread that
+     * runs the game.
+     *
+     * @param game the game to take a snapshot of
+     * @param over whether the game should be drawn as over
+     */
+    public RenderSnapshot(Game game, boolean over) {
+        this.maze = game.getMaze();
+        this.walls = game.getWalls();
+        this.tick = game.getTick();
+        this.over = over;
+
+        Dots dots = game.getDots();
+        List<AIDot> ais = dots.getAIs();
+        int size = ais.size() + 1;
+        xs = new int[size];
+        ys = new int[size];
+        colors = new Color[size];
+        for (int i = 0; i < ais.size(); i++) {
+            AIDot dot = ais.get(i);
+            xs[i] = dot.x;
+            ys[i] = dot.y;
+            colors[i] = dot.color;
+        }
+
+        // the user dot is painted last, on top of the AIs
+        Dot user = dots.getUserDot();
+        xs[size - 1] = user.x;
+        ys[size - 1] = user.y;
+        colors[size - 1] = user.color;
+    }
+
+    /**
+     * Paints the maze and the dots with the given Graphics2D object
+     *
+     * @param g2D the Graphics2D object to use
+     */
+    public void paint(Graphics2D g2D) {
+        maze.paint(g2D, walls);
+        paintDots(g2D);
+    }
+
+    /**
+     * Paints only the dots with the given Graphics2D object, for when the
+     * maze has already been painted
+     *
+     * @param g2D the Graphics2D object to use
+     */
+    public void paintDots(Graphics2D g2D) {
+        for (int i = 0; i < xs.length; i++) {
+            Dot.paint(g2D, xs[i], ys[i], colors[i]);
+        }
+    }
+
+    /**
+     * Returns the maze of the game
+     *
+     * @return the maze of the game
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * Returns the tick the snapshot was taken at
+     *
+     * @return the tick the snapshot was taken at
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns whether the game was over
+     *
+     * @return whether the game was over
+     */
+    public boolean isOver() {
+        return over;
+    }
+}
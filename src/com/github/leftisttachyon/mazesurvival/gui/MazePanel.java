@@ -1,382 +1,576 @@
-package com.github.leftisttachyon.mazesurvival.gui;
-
-import com.github.leftisttachyon.mazesurvival.game.AIDot;
-import com.github.leftisttachyon.mazesurvival.game.Dot;
-import com.github.leftisttachyon.mazesurvival.game.Dots;
-import com.github.leftisttachyon.mazesurvival.maze.Cell;
-import com.github.leftisttachyon.mazesurvival.maze.Maze;
-
-import javax.swing.*;
-import java.awt.*;
-import java.awt.event.KeyAdapter;
-import java.awt.event.KeyEvent;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.NoninvertibleTransformException;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Random;
-import java.util.concurrent.Executors;
-import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.TimeUnit;
-
-import static java.awt.event.KeyEvent.*;
-
-/**
- * The class that controls the graphics of this application
- *
- * @author Jed Wang
- */
-public final class MazePanel extends JPanel implements Runnable {
-
-    /**
-     * The internal Maze object
-     */
-    private Maze maze;
-
-    /**
-     * Stores whether the arrow keys are pressed
-     */
-    private boolean[] pressed;
-
-    /**
-     * Stores the time survived
-     */
-    private int[] times;
-
-    /**
-     * Stores whether the game is over or not
-     */
-    private boolean gameOver = false;
-
-    /**
-     * A frame counter
-     */
-    private int frameCnt = -1;
-
-    /**
-     * The internal ScheduledExecutorService that controls timing
-     */
-    private ScheduledExecutorService service;
-
-    /**
-     * The delay for the AIs to move
-     */
-    private int moveDelay = 500;
-
-    /**
-     * The delay for change for AIs
-     */
-    private int moveDelayDelay = 0;
-
-    /**
-     * Creates a new MazePanel.
-     */
-    public MazePanel() {
-        maze = new Maze(30, 30);
-        add(maze);
-
-        Dots.setMaze(maze);
-        setDotPositions();
-
-        // 0=UP, 1=RIGHT, 2=DOWN, 3=LEFT
-        pressed = new boolean[4];
-
-        addKeyListener(new KeyAdapter() {
-            @Override
-            public void keyPressed(KeyEvent e) {
-                // System.out.println("Pressed " + e.getKeyCode());
-                if (gameOver) {
-                    if (frameCnt >= 400) {
-                        restart();
-                    }
-                    return;
-                }
-
-                Dot user = Dots.getUserDot();
-                Cell c = maze.getCell(user.getY(), user.getX());
-
-                switch (e.getKeyCode()) {
-                    case VK_UP:
-                        if (!pressed[0] && !c.getWall(Cell.NORTH)) {
-                            Dots.moveUserDot(Cell.NORTH);
-                            pressed[0] = true;
-                        } else {
-                            return;
-                        }
-                        break;
-                    case VK_RIGHT:
-                        if (!pressed[1] && !c.getWall(Cell.EAST)) {
-                            Dots.moveUserDot(Cell.EAST);
-                            pressed[1] = true;
-                        } else {
-                            return;
-                        }
-                        break;
-                    case VK_DOWN:
-                        if (!pressed[2] && !c.getWall(Cell.SOUTH)) {
-                            Dots.moveUserDot(Cell.SOUTH);
-                            pressed[2] = true;
-                        } else {
-                            return;
-                        }
-                        break;
-                    case VK_LEFT:
-                        if (!pressed[3] && !c.getWall(Cell.WEST)) {
-                            Dots.moveUserDot(Cell.WEST);
-                            pressed[3] = true;
-                        } else {
-                            return;
-                        }
-                        break;
-                }
-
-                if (Dots.isOverlapping()) {
-                    gameOver = true;
-                    service.shutdownNow();
-
-                    service = Executors.newSingleThreadScheduledExecutor();
-                    service.scheduleAtFixedRate(() -> {
-                        try {
-                            repaint();
-                        } catch (Exception exp) {
-                            exp.printStackTrace();
-                        }
-                    }, 0, 16, TimeUnit.MILLISECONDS);
-                }
-            }
-
-            @Override
-            public void keyReleased(KeyEvent e) {
-                // System.out.println("Released " + e.getKeyCode());
-
-                if (gameOver) {
-                    return;
-                }
-
-                switch (e.getKeyCode()) {
-                    case VK_UP:
-                        pressed[0] = false;
-                        break;
-                    case VK_RIGHT:
-                        pressed[1] = false;
-                        break;
-                    case VK_DOWN:
-                        pressed[2] = false;
-                        break;
-                    case VK_LEFT:
-                        pressed[3] = false;
-                        break;
-                }
-            }
-        });
-
-        times = new int[4];
-
-        revalidate();
-    }
-
-    /**
-     * Resets this maze panel to its original state and starts a game anew.
-     */
-    private void restart() {
-        gameOver = false;
-        frameCnt = -1;
-        moveDelay = 500;
-        moveDelayDelay = 0;
-
-        maze = new Maze(30, 30);
-
-        Dots.setMaze(maze);
-        setDotPositions();
-
-        times = new int[4];
-
-        revalidate();
-
-        service.shutdown();
-
-        run();
-    }
-
-    @Override
-    public void paint(Graphics g) {
-        // System.out.println("Painting");
-
-        Graphics2D g2D = (Graphics2D) g;
-        g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
-                RenderingHints.VALUE_ANTIALIAS_ON);
-        g2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
-                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
-
-        g2D.setColor(Color.WHITE);
-        g2D.fillRect(0, 0, getWidth(), getHeight());
-
-        g2D.setFont(new Font("Consolas", Font.PLAIN, 15));
-        if (frameCnt < 300) {
-            g2D.setColor(Color.BLACK);
-            g2D.drawString(String.format("%02d:%02d:%02d.%02d", times[0], times[1], times[2], times[3]), 20, 20);
-        }
-
-        AffineTransform transform = AffineTransform.getTranslateInstance(20, 30);
-        g2D.transform(transform);
-
-        maze.paint(g2D);
-
-        Dots.paint(g2D);
-
-        if (gameOver) {
-            if (frameCnt < 400) {
-                frameCnt++;
-            }
-
-            Dimension dim = maze.getDimensions();
-            int totalWidth = getWidth(), totalHeight = getHeight();
-
-            g2D.setColor(new Color(255, 255, 255, frameCnt >= 255 ? 255 : frameCnt));
-            g2D.fillRect(-3, -3, totalWidth + 6, totalHeight + 6);
-
-            try {
-                g2D.transform(transform.createInverse());
-            } catch (NoninvertibleTransformException e) {
-                e.printStackTrace();
-            }
-
-            if (frameCnt >= 300) {
-                g2D.setColor(Color.BLACK);
-
-                g2D.setFont(new Font("Consolas", Font.PLAIN, 30));
-                FontMetrics metrics = g2D.getFontMetrics();
-                String s = String.format("%02d:%02d:%02d.%02d", times[0], times[1], times[2], times[3]);
-                int width = metrics.stringWidth(s);
-                int bottom = (totalHeight + metrics.getHeight()) / 2, top = bottom - metrics.getHeight();
-
-                g2D.drawString(s, (totalWidth - width) / 2, bottom);
-
-                g2D.setFont(new Font("Consolas", Font.PLAIN, 15));
-                metrics = g2D.getFontMetrics();
-                s = "Your time:";
-                width = metrics.stringWidth(s);
-
-                g2D.drawString(s, (totalWidth - width) / 2, top);
-
-                if (frameCnt >= 400) {
-                    g2D.setFont(new Font("Consolas", Font.PLAIN, 14));
-                    metrics = g2D.getFontMetrics();
-                    s = "Press any key to retry";
-                    width = metrics.stringWidth(s);
-
-                    g2D.drawString(s, (totalWidth - width) / 2, bottom + metrics.getHeight() + 15);
-                }
-            }
-        }
-    }
-
-    /**
-     * Sets the positions of the dots
-     */
-    private void setDotPositions() {
-        Random r = new Random();
-        Point aiTopLeft;
-        Dimension dim = maze.getDimensions();
-        switch (r.nextInt(4)) {
-            case 0: // AIs in top left, I'm in bottom right
-                Dots.getUserDot().setPosition(dim.width - 1, dim.height - 1);
-                aiTopLeft = new Point(0, 0);
-                break;
-            case 1: // AIs in top right, I'm in bottom left
-                Dots.getUserDot().setPosition(0, dim.height - 1);
-                aiTopLeft = new Point(dim.width - 2, 0);
-                break;
-            case 2: // AIs in bottom right, I'm in top left
-                Dots.getUserDot().setPosition(0, 0);
-                aiTopLeft = new Point(dim.width - 2, dim.height - 2);
-                break;
-            case 3: // AIs in bottom left, I'm in top right
-                Dots.getUserDot().setPosition(dim.width - 1, 0);
-                aiTopLeft = new Point(0, dim.height - 2);
-                break;
-            default:
-                throw new IllegalStateException("java.util.Random gave an unexpected value");
-        }
-
-        java.util.List<Point> aiPos = Arrays.asList(new Point(0, 0), new Point(0, 1), new Point(1, 0), new Point(1, 1));
-        Collections.shuffle(aiPos);
-        List<AIDot> ais = Dots.getAIs();
-        for (int i = 0; i < ais.size(); i++) {
-            Point p = aiPos.get(i);
-            ais.get(i).setPosition(aiTopLeft.x + p.x, aiTopLeft.y + p.y);
-        }
-    }
-
-    @Override
-    public void run() {
-        service = Executors.newScheduledThreadPool(3);
-        // repaint
-        service.scheduleAtFixedRate(() -> {
-            try {
-                repaint();
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }, 0, 16, TimeUnit.MILLISECONDS);
-
-        // move things
-        service.schedule(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    Dots.moveAIs();
-
-                    if (Dots.isOverlapping()) {
-                        gameOver = true;
-                        service.shutdownNow();
-
-                        service = Executors.newSingleThreadScheduledExecutor();
-                        service.scheduleAtFixedRate(() -> {
-                            try {
-                                repaint();
-                            } catch (Exception e) {
-                                e.printStackTrace();
-                            }
-                        }, 0, 16, TimeUnit.MILLISECONDS);
-                    }
-
-                    if (!gameOver) service.schedule(this, moveDelay, TimeUnit.MILLISECONDS);
-                } catch (Exception e) {
-                    e.printStackTrace();
-                }
-            }
-        }, moveDelay, TimeUnit.MILLISECONDS);
-
-        // update
-        service.scheduleAtFixedRate(() -> {
-            try {
-                times[3]++;
-                if (times[3] >= 100) {
-                    times[3] -= 100;
-                    times[2]++;
-                }
-                if (times[2] >= 60) {
-                    times[2] -= 60;
-                    times[1]++;
-                }
-                if (times[1] >= 60) {
-                    times[1] -= 60;
-                    times[0]++;
-                }
-
-                // System.out.println(moveDelay + " " + moveDelayDelay);
-
-                moveDelayDelay++;
-                if (moveDelayDelay >= 1000) {
-                    moveDelay -= 25;
-                    moveDelayDelay = 0;
-                }
-            } catch (Exception e) {
-                e.printStackTrace();
-            }
-        }, 0, 10, TimeUnit.MILLISECONDS);
-    }
-
-}
+package com.github.leftisttachyon.mazesurvival.gui;
+
+import com.github.leftisttachyon.mazesurvival.game.Autopilot;
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.game.InputQueue;
+import com.github.leftisttachyon.mazesurvival.game.RenderSnapshot;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.MazePool;
+import com.github.leftisttachyon.mazesurvival.maze.VisitHeatmap;
+import com.github.leftisttachyon.mazesurvival.replay.Replay;
+import com.github.leftisttachyon.mazesurvival.replay.ReplayPlayer;
+import com.github.leftisttachyon.mazesurvival.replay.ReplayWriter;
+import com.github.leftisttachyon.mazesurvival.telemetry.Telemetry;
+
+import javax.swing.*;
+import java.awt.*;
+import java.awt.event.KeyAdapter;
+import java.awt.event.KeyEvent;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static java.awt.event.KeyEvent.*;
+
+/**
+ * The class that controls the graphics of this application
+ *
+ * @author Jed Wang
+ */
+public final class MazePanel extends JPanel implements Runnable {
+
+    /**
+     * The system property that names the directory to record games to. Games
+     * are not recorded if it is not set.
+     */
+    public static final String REPLAY_DIR_PROPERTY = "mazesurvival.replays";
+
+    /**
+     * The game being played
+     */
+    private Game game;
+
+    /**
+     * The mazes for the games to come, or null if a replay is being watched
+     */
+    private final MazePool mazes;
+
+    /**
+     * The maze of the next game to start, which may still be being generated
+     */
+    private CompletableFuture<Maze> nextMaze;
+
+    /**
+     * The player of the replay being watched, or null if a game is being
+     * played
+     */
+    private ReplayPlayer player;
+
+    /**
+     * The writer the current game is recorded with, or null if it is not
+     * being recorded
+     */
+    private ReplayWriter recorder;
+
+    /**
+     * The ticks between moves of the autopilot, or 0 if the user plays
+     */
+    private final int autopilotTicks = Integer.getInteger(Autopilot.PROPERTY, 0);
+
+    /**
+     * The bot that plays the current game, or null if the user plays
+     */
+    private Autopilot autopilot;
+
+    /**
+     * The telemetry the games and frames are reported to, or null if there is
+     * none or a replay is being watched
+     */
+    private final Telemetry telemetry;
+
+    /**
+     * The heatmap the games add their visits to, or null if there is none
+     */
+    private final VisitHeatmap heatmap;
+
+    /**
+     * The latest snapshot of the game, published by the tick thread and drawn
+     * by the EDT, or null while the maze of the game is being generated
+     */
+    private volatile RenderSnapshot snapshot;
+
+    /**
+     * The moves of the user, from the EDT to the tick thread
+     */
+    private InputQueue inputs = new InputQueue(64);
+
+    /**
+     * Stores whether the arrow keys are pressed
+     */
+    private boolean[] pressed;
+
+    /**
+     * Stores whether the game is over or not
+     */
+    private volatile boolean gameOver = false;
+
+    /**
+     * A frame counter
+     */
+    private int frameCnt = -1;
+
+    /**
+     * The internal ScheduledExecutorService that controls timing
+     */
+    private ScheduledExecutorService service;
+
+    /**
+     * Creates a new MazePanel.
+     */
+    public MazePanel() {
+        this(null);
+    }
+
+    /**
+     * Creates a new MazePanel that shows the given replay instead of letting
+     * the user play.
+     *
+     * @param replay the replay to show, or null to let the user play
+     */
+    public MazePanel(Replay replay) {
+        Dimension dim;
+        if (replay == null) {
+            telemetry = Telemetry.fromProperties();
+            if (telemetry != null) {
+                // writes out what is left when the window is closed
+                Runtime.getRuntime().addShutdownHook(new Thread(telemetry::close));
+            }
+            heatmap = Game.heatmapFromProperties();
+            if (heatmap != null) {
+                Runtime.getRuntime().addShutdownHook(new Thread(this::writeHeatmap));
+            }
+            mazes = new MazePool(Game.MAZE_HEIGHT, Game.MAZE_WIDTH, 2);
+            mazes.fill();
+            nextMaze = mazes.take();
+            startGame();
+            dim = new Dimension(Game.MAZE_WIDTH, Game.MAZE_HEIGHT);
+        } else {
+            telemetry = null;
+            heatmap = null;
+            mazes = null;
+            player = new ReplayPlayer(replay);
+            game = player.getGame();
+            snapshot = new RenderSnapshot(game, false);
+            dim = game.getMaze().getDimensions();
+        }
+        // the size of the maze with the gaps of the layout around it
+        setPreferredSize(new Dimension(dim.width * Cell.WIDTH + 40, dim.height * Cell.WIDTH + 50));
+
+        // 0=UP, 1=RIGHT, 2=DOWN, 3=LEFT
+        pressed = new boolean[4];
+
+        addKeyListener(new KeyAdapter() {
+            @Override
+            public void keyPressed(KeyEvent e) {
+                // System.out.println("Pressed " + e.getKeyCode());
+                if (gameOver) {
+                    if (frameCnt >= 400) {
+                        restart();
+                    }
+                    return;
+                }
+
+                if (player != null) {
+                    return;
+                }
+
+                switch (e.getKeyCode()) {
+                    case VK_UP:
+                        if (!pressed[0]) {
+                            inputs.offer(Cell.NORTH);
+                            pressed[0] = true;
+                        }
+                        break;
+                    case VK_RIGHT:
+                        if (!pressed[1]) {
+                            inputs.offer(Cell.EAST);
+                            pressed[1] = true;
+                        }
+                        break;
+                    case VK_DOWN:
+                        if (!pressed[2]) {
+                            inputs.offer(Cell.SOUTH);
+                            pressed[2] = true;
+                        }
+                        break;
+                    case VK_LEFT:
+                        if (!pressed[3]) {
+                            inputs.offer(Cell.WEST);
+                            pressed[3] = true;
+                        }
+                        break;
+                }
+            }
+
+            @Override
+            public void keyReleased(KeyEvent e) {
+                // System.out.println("Released " + e.getKeyCode());
+
+                if (gameOver) {
+                    return;
+                }
+
+                switch (e.getKeyCode()) {
+                    case VK_UP:
+                        pressed[0] = false;
+                        break;
+                    case VK_RIGHT:
+                        pressed[1] = false;
+                        break;
+                    case VK_DOWN:
+                        pressed[2] = false;
+                        break;
+                    case VK_LEFT:
+                        pressed[3] = false;
+                        break;
+                }
+            }
+        });
+
+        revalidate();
+    }
+
+    /**
+     * Starts a new game in the next maze if it has been generated. The game
+     * is recorded if a replay directory is set and a replay can reproduce
+     * it: its AIs have no time budget and plan on their own, and its maze has
+     * neither doors nor terrain. Called by the EDT while the game is not
+     * running, and by the tick thread otherwise.
+     *
+     * @return whether the game was started
+     */
+    private boolean startGame() {
+        if (!nextMaze.isDone()) {
+            return false;
+        }
+        Maze maze;
+        try {
+            maze = nextMaze.join();
+        } catch (CompletionException e) {
+            e.printStackTrace();
+            nextMaze = mazes.take();
+            return false;
+        }
+
+        game = new Game(maze, new Random().nextLong());
+        game.setAIBudget(Long.getLong(Game.AI_BUDGET_PROPERTY, 0));
+        int doors = Integer.getInteger(Game.DOORS_PROPERTY, 0);
+        if (doors > 0) {
+            game.setDoors(doors, Game.DOOR_TICKS, new Random().nextLong());
+        }
+        String terrain = System.getProperty(Game.TERRAIN_PROPERTY);
+        if (terrain != null) {
+            game.setTerrain(Double.parseDouble(terrain), new Random().nextLong());
+        }
+        game.getDots().setCooperative(Boolean.getBoolean(Game.COOPERATIVE_PROPERTY));
+        if (telemetry != null) {
+            game.setTelemetry(telemetry);
+        }
+        if (heatmap != null) {
+            game.setHeatmap(heatmap);
+            if (Boolean.getBoolean(Game.HEATMAP_OVERLAY_PROPERTY)) {
+                maze.setOverlay(heatmap, VisitHeatmap.ALL);
+            }
+        }
+        autopilot = autopilotTicks > 0 ? new Autopilot(game.getDots()) : null;
+
+        String dir = System.getProperty(REPLAY_DIR_PROPERTY);
+        // games with an AI budget depend on timing, and replays do not hold
+        // doors, terrain or how the AIs plan, so none of them can be replayed
+        if (dir != null && game.getAIScheduler() == null && !game.hasDoors() && !game.hasTerrain()
+                && !game.getDots().isCooperative()) {
+            Path path = Paths.get(dir, "replay-" + System.currentTimeMillis() + ".msr");
+            Dimension dim = game.getMaze().getDimensions();
+            try {
+                recorder = ReplayWriter.open(path, dim.height, dim.width,
+                        game.getMaze().getSeed(), game.getSpawnSeed());
+            } catch (IOException e) {
+                e.printStackTrace();
+                recorder = null;
+            }
+        }
+
+        snapshot = new RenderSnapshot(game, false);
+        return true;
+    }
+
+    /**
+     * Applies and records the moves the user made since the last tick, or
+     * the move of the autopilot if it is its turn. Only called by the tick
+     * thread.
+     */
+    private void applyInputs() {
+        int direction;
+        while ((direction = inputs.poll()) >= 0) {
+            applyMove(direction);
+        }
+
+        if (autopilot != null && game.getTick() % autopilotTicks == 0) {
+            direction = autopilot.choose();
+            if (direction >= 0) {
+                applyMove(direction);
+            }
+        }
+    }
+
+    /**
+     * Moves the user and records the move if it was made.
+     *
+     * @param direction the direction to move the user in
+     */
+    private void applyMove(int direction) {
+        if (!game.moveUser(direction) || recorder == null) {
+            return;
+        }
+
+        try {
+            recorder.writeMove(game.getTick(), direction);
+        } catch (IOException e) {
+            e.printStackTrace();
+            stopRecording();
+        }
+    }
+
+    /**
+     * Ends the game: records its end and only keeps repainting. Only called by
+     * the tick thread.
+     */
+    private void endGame() {
+        // the next mazes are generated while the game over screen fades in
+        if (mazes != null) {
+            mazes.fill();
+        }
+
+        // before shutting down, which interrupts this thread and would close
+        // the channel of the recorder
+        if (recorder != null) {
+            try {
+                recorder.writeEnd(game.getTick());
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            stopRecording();
+        }
+
+        service.shutdownNow();
+
+        service = Executors.newSingleThreadScheduledExecutor();
+        service.scheduleAtFixedRate(() -> {
+            try {
+                repaint();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 0, 16, TimeUnit.MILLISECONDS);
+        // publishes the new service to the EDT, which restarts the game
+        gameOver = true;
+    }
+
+    /**
+     * Stops the tick thread and writes the heatmap, with the visits of the
+     * game being played. Run on the way out of the program.
+     */
+    private void writeHeatmap() {
+        ScheduledExecutorService ticks = service;
+        if (ticks != null) {
+            ticks.shutdownNow();
+            try {
+                ticks.awaitTermination(1, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        Game current = game;
+        if (current != null) {
+            current.flushVisits();
+        }
+        Game.writeHeatmap(heatmap);
+    }
+
+    /**
+     * Closes the writer the current game is recorded with.
+     */
+    private void stopRecording() {
+        try {
+            recorder.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        recorder = null;
+    }
+
+    /**
+     * Resets this maze panel to its original state and starts a game anew.
+     */
+    private void restart() {
+        gameOver = false;
+        frameCnt = -1;
+
+        inputs = new InputQueue(64);
+        if (player == null) {
+            if (game != null) {
+                game.flushVisits();
+            }
+            game = null;
+            snapshot = null;
+            nextMaze = mazes.take();
+            // starts right away unless the maze is still being generated, in
+            // which case the tick thread starts it once it is ready
+            startGame();
+        } else {
+            player = new ReplayPlayer(player.getReplay());
+            game = player.getGame();
+            snapshot = new RenderSnapshot(game, false);
+        }
+
+        revalidate();
+
+        service.shutdown();
+
+        run();
+    }
+
+    @Override
+    public void paint(Graphics g) {
+        // System.out.println("Painting");
+
+        long start = telemetry == null ? 0 : System.nanoTime();
+        RenderSnapshot frame = paintFrame((Graphics2D) g);
+        if (telemetry != null && frame != null) {
+            telemetry.paint(frame.getTick(), System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Paints the latest snapshot of the game.
+     *
+     * @param g2D the Graphics2D object to paint with
+     * @return the snapshot that was painted, or null if there was none
+     */
+    private RenderSnapshot paintFrame(Graphics2D g2D) {
+        g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                RenderingHints.VALUE_ANTIALIAS_ON);
+        g2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+
+        g2D.setColor(Color.WHITE);
+        g2D.fillRect(0, 0, getWidth(), getHeight());
+
+        // everything is drawn from one snapshot so that frames are consistent
+        RenderSnapshot frame = snapshot;
+        if (frame == null) {
+            g2D.setFont(new Font("Consolas", Font.PLAIN, 15));
+            g2D.setColor(Color.BLACK);
+            g2D.drawString("Generating maze...", 20, 20);
+            return null;
+        }
+
+        g2D.setFont(new Font("Consolas", Font.PLAIN, 15));
+        if (frameCnt < 300) {
+            g2D.setColor(Color.BLACK);
+            g2D.drawString(Game.formatTime(frame.getTick()), 20, 20);
+        }
+
+        AffineTransform transform = AffineTransform.getTranslateInstance(20, 30);
+        g2D.transform(transform);
+
+        frame.paint(g2D);
+
+        if (frame.isOver()) {
+            if (frameCnt < 400) {
+                frameCnt++;
+            }
+
+            Dimension dim = frame.getMaze().getDimensions();
+            int totalWidth = getWidth(), totalHeight = getHeight();
+
+            g2D.setColor(new Color(255, 255, 255, frameCnt >= 255 ? 255 : frameCnt));
+            g2D.fillRect(-3, -3, totalWidth + 6, totalHeight + 6);
+
+            try {
+                g2D.transform(transform.createInverse());
+            } catch (NoninvertibleTransformException e) {
+                e.printStackTrace();
+            }
+
+            if (frameCnt >= 300) {
+                g2D.setColor(Color.BLACK);
+
+                g2D.setFont(new Font("Consolas", Font.PLAIN, 30));
+                FontMetrics metrics = g2D.getFontMetrics();
+                String s = Game.formatTime(frame.getTick());
+                int width = metrics.stringWidth(s);
+                int bottom = (totalHeight + metrics.getHeight()) / 2, top = bottom - metrics.getHeight();
+
+                g2D.drawString(s, (totalWidth - width) / 2, bottom);
+
+                g2D.setFont(new Font("Consolas", Font.PLAIN, 15));
+                metrics = g2D.getFontMetrics();
+                s = "Your time:";
+                width = metrics.stringWidth(s);
+
+                g2D.drawString(s, (totalWidth - width) / 2, top);
+
+                if (frameCnt >= 400) {
+                    g2D.setFont(new Font("Consolas", Font.PLAIN, 14));
+                    metrics = g2D.getFontMetrics();
+                    s = "Press any key to retry";
+                    width = metrics.stringWidth(s);
+
+                    g2D.drawString(s, (totalWidth - width) / 2, bottom + metrics.getHeight() + 15);
+                }
+            }
+        }
+        return frame;
+    }
+
+    @Override
+    public void run() {
+        service = Executors.newScheduledThreadPool(2);
+        // repaint
+        service.scheduleAtFixedRate(() -> {
+            try {
+                repaint();
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, 0, 16, TimeUnit.MILLISECONDS);
+
+        // move things
+        service.scheduleAtFixedRate(() -> {
+            try {
+                if (game == null && !startGame()) {
+                    // the maze is still being generated
+                    return;
+                }
+
+                boolean over;
+                if (player == null) {
+                    applyInputs();
+                    game.tick();
+                    over = game.isOver();
+                } else {
+                    player.step();
+                    over = player.isFinished();
+                }
+                snapshot = new RenderSnapshot(game, over);
+
+                if (over) {
+                    endGame();
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        }, Game.TICK_MILLIS, Game.TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+}
@@ -0,0 +1,97 @@
+package com.github.leftisttachyon.mazesurvival.io;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads and writes variable-length integers. Each byte holds seven bits of
+ * the value, least significant first, and its high bit is set when more
+ * bytes follow, so small values take a single byte.
+ *
+ * @author Jed Wang
+ */
+public final class VarInts {
+
+    /**
+     * The most bytes a variable-length int can take up
+     */
+    public static final int MAX_INT_BYTES = 5;
+
+    /**
+     * All static methods
+     */
+    private VarInts() {
+    }
+
+    /**
+     * Writes the given value as a variable-length integer. The value is
+     * treated as unsigned.
+     *
+     * @param buffer the buffer to write to
+     * @param value  the value to write
+     */
+    public static void putVarInt(ByteBuffer buffer, int value) {
+        while ((value & ~0x7F) != 0) {
+            buffer.put((byte) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        buffer.put((byte) value);
+    }
+
+    /**
+     * Reads a variable-length integer.
+     *
+     * @param buffer the buffer to read from
+     * @return the value that was read
+     * @throws BufferUnderflowException if the buffer ends in the middle of
+     *                                  the value
+     */
+    public static int getVarInt(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = buffer.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed variable-length int");
+    }
+
+    /**
+     * Returns the amount of bytes the given value takes up when written as a
+     * variable-length integer
+     *
+     * @param value the value to measure
+     * @return the amount of bytes the value takes up
+     */
+    public static int sizeOf(int value) {
+        int size = 1;
+        while ((value & ~0x7F) != 0) {
+            value >>>= 7;
+            size++;
+        }
+        return size;
+    }
+
+    /**
+     * Maps a signed value onto an unsigned one so that values close to zero
+     * stay small when written as a variable-length integer.
+     *
+     * @param value the value to encode
+     * @return the zigzag-encoded value
+     */
+    public static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Reverses {@link #zigzag(int)}
+     *
+     * @param value the zigzag-encoded value
+     * @return the original signed value
+     */
+    public static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+}
@@ -0,0 +1,679 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.util.Arrays;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * A breadth-first search over the wall planes of a maze that holds the
+ * frontier as bits, in the same layout as the planes. Each layer is found by
+ * masking the frontier words with the open walls of every direction and
+ * shifting them into the neighboring cells, so a word of 64 cells is expanded
+ * with a handful of operations. Only the words the frontier actually touches
+ * are visited. The walls of mazes kept off the heap are read through the
+ * maze, a little more slowly.<br>
+ * A BitBfs can be reused for any amount of searches, but not by more than
+ * one thread at a time.
+ *
+ * @author Jed Wang
+ */
+public final class BitBfs {
+
+    /**
+     * The amount of frontier words expanded between looks at the clock
+     */
+    private static final int CHUNK = 64;
+
+    /**
+     * The amount of visited words cleared between looks at the clock
+     */
+    private static final int CLEAR_CHUNK = 4096;
+
+    /**
+     * The results of {@link #step(long, boolean)}: a new layer was reached,
+     * there were no more cells to reach, or the deadline passed partway
+     * through a layer
+     */
+    private static final int NEXT_LAYER = 0, EXHAUSTED = 1, PAUSED = 2;
+
+    /**
+     * The maze being searched
+     */
+    private final Maze maze;
+
+    /**
+     * The wall planes of the maze, indexed by direction, or null if they are
+     * off the heap
+     */
+    private final long[][] walls;
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The amount of words in each row
+     */
+    private final int wordsPerRow;
+
+    /**
+     * The bits of the last word of a row that belong to cells
+     */
+    private final long lastWordMask;
+
+    /**
+     * The cells that have been reached
+     */
+    private final long[] visited;
+
+    /**
+     * The cells of the current and the next layer
+     */
+    private long[] frontier, next;
+
+    /**
+     * The indexes of the words of the current and the next layer that have
+     * any cells
+     */
+    private int[] active = new int[64], nextActive = new int[64];
+
+    /**
+     * The index within its row of each word in {@link #active} and
+     * {@link #nextActive}
+     */
+    private int[] activeW = new int[64], nextActiveW = new int[64];
+
+    /**
+     * The amount of words in {@link #active} and {@link #nextActive}
+     */
+    private int activeCount, nextActiveCount;
+
+    /**
+     * The position in {@link #active} of the next word of the current layer
+     * to expand
+     */
+    private int expanded = 0;
+
+    /**
+     * The indexes of the words of {@link #visited} that are not empty
+     */
+    private int[] touched = new int[64];
+
+    /**
+     * The amount of words in {@link #touched}
+     */
+    private int touchedCount = 0;
+
+    /**
+     * The distance of the current layer from the start
+     */
+    private int layer;
+
+    /**
+     * The cells a resumable search is finding the distances to, and those
+     * distances
+     */
+    private int[] targetRows = new int[0], targetCols = new int[0], targetDistances = new int[0];
+
+    /**
+     * The amount of targets, and the amount that have not been reached
+     */
+    private int targetCount, remaining;
+
+    /**
+     * Stores whether the resumable search has finished
+     */
+    private boolean finished = true;
+
+    /**
+     * The cell a resumable search starts from once the last search has been
+     * cleared, or -1 if it has started
+     */
+    private int startR = -1, startC;
+
+    /**
+     * Creates a new BitBfs.
+     *
+     * @param maze the maze to search
+     */
+    public BitBfs(Maze maze) {
+        this.maze = maze;
+        this.height = maze.getRows();
+        this.width = maze.getColumns();
+        this.wordsPerRow = maze.getWordsPerRow();
+        if (maze.isOffHeap()) {
+            this.walls = null;
+        } else {
+            this.walls = new long[4][];
+            for (int wall = 0; wall < 4; wall++) {
+                walls[wall] = maze.getWallPlane(wall);
+            }
+        }
+        int bits = width & 63;
+        this.lastWordMask = bits == 0 ? -1L : (1L << bits) - 1;
+
+        int words = Math.multiplyExact(height, wordsPerRow);
+        this.visited = new long[words];
+        this.frontier = new long[words];
+        this.next = new long[words];
+    }
+
+    /**
+     * Returns the length of the shortest path between two cells
+     *
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @param toR   the ending row
+     * @param toC   the ending column
+     * @return the length of the shortest path, or -1 if there is none
+     */
+    public int distance(int fromR, int fromC, int toR, int toC) {
+        checkCell(toR, toC);
+        start(fromR, fromC);
+        int idx = toR * wordsPerRow + (toC >>> 6);
+        long bit = 1L << toC;
+        do {
+            if ((visited[idx] & bit) != 0) {
+                return layer;
+            }
+        } while (step());
+        return -1;
+    }
+
+    /**
+     * Finds the lengths of the shortest paths from one cell to several
+     * others. The search stops as soon as all of them are reached.
+     *
+     * @param fromR     the starting row
+     * @param fromC     the starting column
+     * @param rows      the rows of the cells to find the distances to
+     * @param cols      the columns of the cells to find the distances to
+     * @param count     the amount of cells to find the distances to
+     * @param distances the array to put the distances in, with -1 for cells
+     *                  that cannot be reached
+     */
+    public void distances(int fromR, int fromC, int[] rows, int[] cols, int count, int[] distances) {
+        begin(fromR, fromC, rows, cols, count);
+        resume(0, false);
+        System.arraycopy(targetDistances, 0, distances, 0, count);
+    }
+
+    /**
+     * Starts a search for the lengths of the shortest paths from one cell to
+     * several others that can be spread over many calls to
+     * {@link #resume(long)}. Any earlier search is abandoned.
+     *
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @param rows  the rows of the cells to find the distances to
+     * @param cols  the columns of the cells to find the distances to
+     * @param count the amount of cells to find the distances to
+     */
+    public void begin(int fromR, int fromC, int[] rows, int[] cols, int count) {
+        checkCell(fromR, fromC);
+        for (int i = 0; i < count; i++) {
+            checkCell(rows[i], cols[i]);
+        }
+
+        if (targetRows.length < count) {
+            targetRows = new int[count];
+            targetCols = new int[count];
+            targetDistances = new int[count];
+        }
+        System.arraycopy(rows, 0, targetRows, 0, count);
+        System.arraycopy(cols, 0, targetCols, 0, count);
+        Arrays.fill(targetDistances, 0, count, -1);
+        targetCount = remaining = count;
+        finished = false;
+        // the last search is cleared by resume, so that a big one can be
+        // cleared a bit at a time
+        startR = fromR;
+        startC = fromC;
+    }
+
+    /**
+     * Changes the cells the search started by
+     * {@link #begin(int, int, int[], int[], int)} is finding the distances
+     * to, keeping what it has searched so far, as the search only depends on
+     * where it starts. The layer each cell was reached in is not kept, so
+     * this can only be done while the search has reached none of the new
+     * cells.
+     *
+     * @param rows  the rows of the cells to find the distances to
+     * @param cols  the columns of the cells to find the distances to
+     * @param count the amount of cells to find the distances to
+     * @return whether the cells were changed; if not, the search has to be
+     * begun again
+     */
+    public boolean retarget(int[] rows, int[] cols, int count) {
+        for (int i = 0; i < count; i++) {
+            checkCell(rows[i], cols[i]);
+        }
+        if (startR < 0) {
+            if (finished) {
+                return false;
+            }
+            for (int i = 0; i < count; i++) {
+                if ((visited[rows[i] * wordsPerRow + (cols[i] >>> 6)] & 1L << cols[i]) != 0) {
+                    return false;
+                }
+            }
+        }
+
+        if (targetRows.length < count) {
+            targetRows = new int[count];
+            targetCols = new int[count];
+            targetDistances = new int[count];
+        }
+        System.arraycopy(rows, 0, targetRows, 0, count);
+        System.arraycopy(cols, 0, targetCols, 0, count);
+        Arrays.fill(targetDistances, 0, count, -1);
+        targetCount = remaining = count;
+        if (startR < 0 && count == 0) {
+            finished = true;
+        }
+        return true;
+    }
+
+    /**
+     * Continues the search started by
+     * {@link #begin(int, int, int[], int[], int)} until it finishes or the
+     * given time passes. Some of the search is always done, so a search
+     * always makes progress.
+     *
+     * @param deadline the {@link System#nanoTime()} to stop at
+     * @return whether the search has finished
+     */
+    public boolean resume(long deadline) {
+        return resume(deadline, true);
+    }
+
+    /**
+     * Continues the search started by
+     * {@link #begin(int, int, int[], int[], int)}.
+     *
+     * @param deadline the {@link System#nanoTime()} to stop at
+     * @param timed    whether to stop at the deadline at all
+     * @return whether the search has finished
+     */
+    private boolean resume(long deadline, boolean timed) {
+        if (startR >= 0) {
+            if (!clear(deadline, timed)) {
+                return false;
+            }
+            init(startR, startC);
+            startR = -1;
+            findTargets();
+        }
+
+        while (!finished) {
+            int result = step(deadline, timed);
+            if (result == PAUSED) {
+                break;
+            } else if (result == EXHAUSTED) {
+                finished = true;
+                break;
+            }
+            findTargets();
+            if (timed && System.nanoTime() - deadline >= 0) {
+                break;
+            }
+        }
+        return finished;
+    }
+
+    /**
+     * Records the distances to the targets that the current layer reached,
+     * and finishes the search once all have been reached.
+     */
+    private void findTargets() {
+        for (int i = 0; i < targetCount; i++) {
+            if (targetDistances[i] < 0
+                    && (visited[targetRows[i] * wordsPerRow + (targetCols[i] >>> 6)] & 1L << targetCols[i]) != 0) {
+                targetDistances[i] = layer;
+                remaining--;
+            }
+        }
+        if (remaining == 0) {
+            finished = true;
+        }
+    }
+
+    /**
+     * Returns whether the search started by
+     * {@link #begin(int, int, int[], int[], int)} has finished
+     *
+     * @return whether the search has finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the distance to a target of the search started by
+     * {@link #begin(int, int, int[], int[], int)}, once it has finished
+     *
+     * @param target the index of the target
+     * @return the distance to the target, or -1 if it cannot be reached
+     */
+    public int getDistance(int target) {
+        if (!finished) {
+            throw new IllegalStateException("The search has not finished");
+        }
+        return targetDistances[target];
+    }
+
+    /**
+     * Searches the whole maze from the given cell and returns the amount of
+     * cells at each distance from it
+     *
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @return the amount of cells at each distance, indexed by distance
+     */
+    public int[] layerSizes(int fromR, int fromC) {
+        return layerSizes(fromR, fromC, null, null, 0, null);
+    }
+
+    /**
+     * Searches the whole maze from the given cell and returns the amount of
+     * cells at each distance from it, finding the distances to the given
+     * cells on the way
+     *
+     * @param fromR     the starting row
+     * @param fromC     the starting column
+     * @param rows      the rows of the cells to find the distances to
+     * @param cols      the columns of the cells to find the distances to
+     * @param count     the amount of cells to find the distances to
+     * @param distances the array to put the distances in, with -1 for cells
+     *                  that cannot be reached
+     * @return the amount of cells at each distance, indexed by distance
+     * @see #distances(int, int, int[], int[], int, int[])
+     */
+    public int[] layerSizes(int fromR, int fromC, int[] rows, int[] cols, int count, int[] distances) {
+        for (int i = 0; i < count; i++) {
+            checkCell(rows[i], cols[i]);
+        }
+        if (count > 0) {
+            Arrays.fill(distances, 0, count, -1);
+        }
+        start(fromR, fromC);
+
+        int[] sizes = new int[64];
+        do {
+            if (layer == sizes.length) {
+                sizes = Arrays.copyOf(sizes, layer * 2);
+            }
+            int size = 0;
+            for (int i = 0; i < activeCount; i++) {
+                size += Long.bitCount(frontier[active[i]]);
+            }
+            sizes[layer] = size;
+            for (int i = 0; i < count; i++) {
+                if (distances[i] < 0
+                        && (visited[rows[i] * wordsPerRow + (cols[i] >>> 6)] & 1L << cols[i]) != 0) {
+                    distances[i] = layer;
+                }
+            }
+        } while (step());
+        return Arrays.copyOf(sizes, layer + 1);
+    }
+
+    /**
+     * Returns the cells that can be reached from the given cell, in the same
+     * layout as a wall plane: bit {@code c % 64} of word
+     * {@code r * wordsPerRow + c / 64} is set if the cell at row r and column
+     * c can be reached
+     *
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @return the reachable cells
+     */
+    public long[] reachable(int fromR, int fromC) {
+        start(fromR, fromC);
+        while (step()) {
+            // the visited cells are what is wanted
+        }
+        return visited.clone();
+    }
+
+    /**
+     * Clears the last search, abandoning any resumable search, and puts the
+     * given cell in the first layer.
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     */
+    private void start(int r, int c) {
+        checkCell(r, c);
+        clear(0, false);
+        startR = -1;
+        targetCount = remaining = 0;
+        init(r, c);
+    }
+
+    /**
+     * Clears the last search, a chunk of words at a time.
+     *
+     * @param deadline the {@link System#nanoTime()} to stop at
+     * @param timed    whether to stop at the deadline at all
+     * @return whether everything has been cleared
+     */
+    private boolean clear(long deadline, boolean timed) {
+        for (int i = 0; i < activeCount; i++) {
+            frontier[active[i]] = 0;
+        }
+        for (int i = 0; i < nextActiveCount; i++) {
+            next[nextActive[i]] = 0;
+        }
+        activeCount = nextActiveCount = expanded = 0;
+
+        while (touchedCount > 0) {
+            int end = Math.max(0, touchedCount - CLEAR_CHUNK);
+            for (int i = touchedCount - 1; i >= end; i--) {
+                visited[touched[i]] = 0;
+            }
+            touchedCount = end;
+            if (timed && touchedCount > 0 && System.nanoTime() - deadline >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Puts the given cell in the first layer of a cleared search.
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     */
+    private void init(int r, int c) {
+        int idx = r * wordsPerRow + (c >>> 6);
+        touch(idx);
+        visited[idx] = frontier[idx] = 1L << c;
+        active[0] = idx;
+        activeW[0] = c >>> 6;
+        activeCount = 1;
+        layer = 0;
+        finished = false;
+    }
+
+    /**
+     * Moves the search on by one layer.
+     *
+     * @return whether the new layer has any cells
+     */
+    private boolean step() {
+        return step(0, false) == NEXT_LAYER;
+    }
+
+    /**
+     * Moves the search on by one layer, or by part of a layer if the given
+     * time passes first. The words of a layer are expanded in chunks, so a
+     * search can stop soon after its deadline even on a huge maze.
+     *
+     * @param deadline the {@link System#nanoTime()} to stop at
+     * @param timed    whether to stop at the deadline at all
+     * @return {@link #NEXT_LAYER}, {@link #EXHAUSTED} or {@link #PAUSED}
+     */
+    private int step(long deadline, boolean timed) {
+        long[] north = plane(NORTH), east = plane(EAST), south = plane(SOUTH), west = plane(WEST);
+        while (expanded < activeCount) {
+            int end = Math.min(activeCount, expanded + CHUNK);
+            for (int i = expanded; i < end; i++) {
+                int idx = active[i];
+                long cells = frontier[idx];
+                frontier[idx] = 0;
+                int w = activeW[i];
+
+                long toEast = cells & ~word(east, EAST, idx), toWest = cells & ~word(west, WEST, idx);
+                long sideways = toEast << 1 | toWest >>> 1;
+                if (sideways != 0) {
+                    add(idx, w, sideways);
+                }
+                if (toEast < 0 && w + 1 < wordsPerRow) {
+                    add(idx + 1, w + 1, 1L);
+                }
+                if ((toWest & 1) != 0 && w > 0) {
+                    add(idx - 1, w - 1, Long.MIN_VALUE);
+                }
+                long toSouth = cells & ~word(south, SOUTH, idx);
+                if (toSouth != 0 && idx + wordsPerRow < visited.length) {
+                    add(idx + wordsPerRow, w, toSouth);
+                }
+                long toNorth = cells & ~word(north, NORTH, idx);
+                if (toNorth != 0 && idx >= wordsPerRow) {
+                    add(idx - wordsPerRow, w, toNorth);
+                }
+            }
+            expanded = end;
+            if (timed && expanded < activeCount && System.nanoTime() - deadline >= 0) {
+                return PAUSED;
+            }
+        }
+
+        long[] tempWords = frontier;
+        frontier = next;
+        next = tempWords;
+        int[] tempActive = active;
+        active = nextActive;
+        nextActive = tempActive;
+        tempActive = activeW;
+        activeW = nextActiveW;
+        nextActiveW = tempActive;
+        activeCount = nextActiveCount;
+        nextActiveCount = expanded = 0;
+
+        if (activeCount == 0) {
+            return EXHAUSTED;
+        }
+        layer++;
+        return NEXT_LAYER;
+    }
+
+    /**
+     * Returns a wall plane of the maze
+     *
+     * @param wall the wall plane to get
+     * @return the wall plane, or null if it is off the heap
+     */
+    private long[] plane(int wall) {
+        return walls == null ? null : walls[wall];
+    }
+
+    /**
+     * Returns a word of a wall plane of the maze
+     *
+     * @param plane the wall plane, or null if it is off the heap
+     * @param wall  the direction of the wall plane
+     * @param idx   the index of the word
+     * @return the word
+     */
+    private long word(long[] plane, int wall, int idx) {
+        return plane != null ? plane[idx] : maze.getWord(wall, idx);
+    }
+
+    /**
+     * Remembers that the given word of {@link #visited} is about to stop
+     * being empty, so the next search only has to clear the words this one
+     * touched.
+     *
+     * @param idx the index of the word
+     */
+    private void touch(int idx) {
+        if (visited[idx] == 0) {
+            if (touchedCount == touched.length) {
+                touched = Arrays.copyOf(touched, touchedCount * 2);
+            }
+            touched[touchedCount++] = idx;
+        }
+    }
+
+    /**
+     * Adds the given cells of a word to the next layer, unless they have
+     * already been reached.
+     *
+     * @param idx   the index of the word
+     * @param w     the index of the word in its row
+     * @param cells the cells to add
+     */
+    private void add(int idx, int w, long cells) {
+        if (w == wordsPerRow - 1) {
+            cells &= lastWordMask;
+        }
+        cells &= ~visited[idx];
+        if (cells == 0) {
+            return;
+        }
+
+        touch(idx);
+        visited[idx] |= cells;
+        if (next[idx] == 0) {
+            if (nextActiveCount == nextActive.length) {
+                nextActive = Arrays.copyOf(nextActive, nextActiveCount * 2);
+                nextActiveW = Arrays.copyOf(nextActiveW, nextActiveCount * 2);
+            }
+            nextActiveW[nextActiveCount] = w;
+            nextActive[nextActiveCount++] = idx;
+        }
+        next[idx] |= cells;
+    }
+
+    /**
+     * Checks that the given cell is inside the maze.
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @throws IndexOutOfBoundsException if the cell is outside of the maze
+     */
+    private void checkCell(int r, int c) {
+        if (r < 0 || c < 0 || r >= height || c >= width) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + r
+                    + ", " + c);
+        }
+    }
+
+    /**
+     * Determines whether the search that last ran has reached the given cell.
+     * A search only reads the walls of the cells it has reached, so a search
+     * that has not reached either side of a changed wall is still correct.
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @return whether the cell has been reached
+     */
+    public boolean isVisited(int r, int c) {
+        checkCell(r, c);
+        return (visited[r * wordsPerRow + (c >>> 6)] & 1L << c) != 0;
+    }
+
+    /**
+     * Returns the maze this searches
+     *
+     * @return the maze this searches
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+}
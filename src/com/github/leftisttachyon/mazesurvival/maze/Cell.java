@@ -1,9 +1,8 @@
 package com.github.leftisttachyon.mazesurvival.maze;
 
-import java.util.Arrays;
-
 /**
- * A class that represents a cell in the maze
+ * A class that represents a cell in the maze. A cell does not store its walls
+ * itself, it reads and writes them in its maze.
  *
  * @author Jed Wang
  */
@@ -35,14 +34,9 @@ public final class Cell {
     public static final int WIDTH = 20;
 
     /**
-     * An array of booleans that represent the walls
-     */
-    private final boolean[] walls;
-
-    /**
-     * A boolean that stores whether this cell has been visited or not
+     * The maze this cell belongs to
      */
-    private boolean visited;
+    private final Maze maze;
 
     /**
      * The coordinates of this cell.
@@ -50,13 +44,15 @@ public final class Cell {
     public final int x, y;
 
     /**
-     * Creates a new Cell
+     * Creates a new Cell, which reads and writes the walls of the given cell
+     * of the given maze
      *
+     * @param maze the maze the cell belongs to
      * @param x the x-coordinate of this cell
      * @param y the y-coordinate of this cell
      */
-    public Cell(int x, int y) {
-        this.walls = new boolean[4];
+    Cell(Maze maze, int x, int y) {
+        this.maze = maze;
         this.x = x;
         this.y = y;
     }
@@ -68,7 +64,7 @@ public final class Cell {
      * @param solid whether the wall should be solid
      */
     public void setWall(int wall, boolean solid) {
-        walls[wall] = solid;
+        maze.setWall(y, x, wall, solid);
     }
 
     /**
@@ -78,35 +74,39 @@ public final class Cell {
      * @return the solidity of the given wall
      */
     public boolean getWall(int wall) {
-        return walls[wall];
+        return maze.getWall(y, x, wall);
     }
 
     /**
-     * Sets the visited state of this cell
+     * Returns the opposite direction of the given one
      *
-     * @param visited the state to set the visited state of this cell to
+     * @param direction the direction to flip
+     * @return the opposite direction of the given one
      */
-    public void setVisited(boolean visited) {
-        this.visited = visited;
+    public static int opposite(int direction) {
+        return (direction + 2) % 4;
     }
 
     /**
-     * Returns whether this cell has been visited or not
+     * Returns the change in x-coordinate of moving one unit in the given
+     * direction
      *
-     * @return whether this cell has been visited or not
+     * @param direction the direction to move in
+     * @return the change in x-coordinate
      */
-    public boolean isVisited() {
-        return visited;
+    public static int dx(int direction) {
+        return direction == EAST ? 1 : direction == WEST ? -1 : 0;
     }
 
     /**
-     * Returns the opposite direction of the given one
+     * Returns the change in y-coordinate of moving one unit in the given
+     * direction
      *
-     * @param direction the direction to flip
-     * @return the opposite direction of the given one
+     * @param direction the direction to move in
+     * @return the change in y-coordinate
      */
-    public static int opposite(int direction) {
-        return (direction + 2) % 4;
+    public static int dy(int direction) {
+        return direction == SOUTH ? 1 : direction == NORTH ? -1 : 0;
     }
 
     /**
@@ -116,18 +116,13 @@ public final class Cell {
      * @return whether this Cell is a dead end
      */
     public boolean isDeadEnd() {
-        int solids = 0;
-        for (boolean solid : walls) {
-            if (solid) {
-                solids++;
-            }
-        }
-        return solids >= 3;
+        return maze.isDeadEnd(y, x);
     }
 
     @Override
     public String toString() {
-        return "[Cell x=" + x + " y=" + y + " walls="
-                + Arrays.toString(walls) + "]";
+        return "[Cell x=" + x + " y=" + y + " walls=["
+                + getWall(NORTH) + ", " + getWall(EAST) + ", "
+                + getWall(SOUTH) + ", " + getWall(WEST) + "]]";
     }
 }
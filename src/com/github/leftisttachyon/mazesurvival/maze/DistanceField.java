@@ -0,0 +1,527 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.util.Arrays;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * The distances from one cell to every other cell of a maze, kept correct as
+ * walls change without searching the whole maze again. Two cells are
+ * connected when neither side of the wall between them is solid. When a
+ * passage opens, the distances that get shorter are spread out from it; when
+ * a passage closes, only the cells whose every shortest path went through it
+ * are searched again, starting from the cells around them. Either way the work
+ * is proportional to the cells whose distance changes, and a change that
+ * affects more than {@link #REBUILD_SHARE} of the maze is handled with a
+ * single full search instead. Changes made since the last catch-up are
+ * repaired one at a time, each against the walls as they were right after
+ * it, which are worked out by undoing the later changes from the log.<br>
+ * A field catches up with the maze whenever it is read. It is not safe to
+ * use from more than one thread.
+ *
+ * @author Jed Wang
+ */
+public final class DistanceField {
+
+    /**
+     * The distance of cells that cannot be reached
+     */
+    public static final int UNREACHABLE = Integer.MAX_VALUE;
+
+    /**
+     * The share of the maze that a single repair may touch before the whole
+     * field is rebuilt
+     */
+    public static final double REBUILD_SHARE = 0.25;
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The cell the distances are measured from
+     */
+    private final int source;
+
+    /**
+     * The distance to each cell
+     */
+    private final int[] distances;
+
+    /**
+     * A queue of cells
+     */
+    private final int[] queue;
+
+    /**
+     * The cells whose distance a closed passage made unknown, in the order
+     * they were found
+     */
+    private final int[] affected;
+
+    /**
+     * Marks the cells in {@link #affected} and the cells queued to be checked
+     */
+    private final byte[] marks;
+
+    /**
+     * The most cells a repair may touch
+     */
+    private final int repairLimit;
+
+    /**
+     * The version of the maze the distances are for
+     */
+    private long version;
+
+    /**
+     * The walls of each cell as they were at the change being repaired, as
+     * masks like {@link Maze#getWalls(int, int)} gives, for the cells whose
+     * {@link #stamps} are the current {@link #stamp}; the other cells have
+     * not changed since
+     */
+    private final byte[] pastWalls;
+
+    /**
+     * The catch-up each cell's {@link #pastWalls} were last set in
+     */
+    private final int[] stamps;
+
+    /**
+     * The current catch-up; no cell has it outside of one
+     */
+    private int stamp = 1;
+
+    /**
+     * A change of the maze, as given by {@link Maze#getChange(long, int[])}
+     */
+    private final int[] change = new int[4];
+
+    /**
+     * The amount of repairs and full rebuilds made
+     */
+    private long repairs = 0, rebuilds = 0;
+
+    /**
+     * Creates a new DistanceField.
+     *
+     * @param maze the maze
+     * @param r    the row of the cell to measure from
+     * @param c    the column of the cell to measure from
+     */
+    public DistanceField(Maze maze, int r, int c) {
+        this.maze = maze;
+        height = maze.getRows();
+        width = maze.getColumns();
+        if (r < 0 || c < 0 || r >= height || c >= width) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + r + ", " + c);
+        }
+        source = r * width + c;
+
+        int size = Math.multiplyExact(height, width);
+        distances = new int[size];
+        queue = new int[size];
+        affected = new int[size];
+        marks = new byte[size];
+        pastWalls = new byte[size];
+        stamps = new int[size];
+        repairLimit = Math.max(16, (int) (size * REBUILD_SHARE));
+        rebuild();
+    }
+
+    /**
+     * Returns the distance from the source cell to the given cell
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @return the distance, or {@link #UNREACHABLE} if there is no path
+     */
+    public int getDistance(int r, int c) {
+        update();
+        return distances[r * width + c];
+    }
+
+    /**
+     * Catches up with the changes made to the walls of the maze.
+     */
+    public void update() {
+        long now = maze.getVersion();
+        if (now == version) {
+            return;
+        }
+        if (!maze.hasChangesSince(version)) {
+            rebuild();
+            return;
+        }
+
+        // every change flips a wall side, so undoing the changes from the
+        // newest gives the walls as they were before the first one
+        for (long v = now; v > version; v--) {
+            maze.getChange(v, change);
+            int cell = change[0] * width + change[1];
+            if (stamps[cell] != stamp) {
+                stamps[cell] = stamp;
+                pastWalls[cell] = (byte) maze.getWalls(change[0], change[1]);
+            }
+            pastWalls[cell] ^= 1 << change[2];
+        }
+
+        for (long v = version + 1; v <= now; v++) {
+            maze.getChange(v, change);
+            int r = change[0], c = change[1], wall = change[2];
+            pastWalls[r * width + c] ^= 1 << wall;
+            int nr = r + dy(wall), nc = c + dx(wall);
+            if (nr < 0 || nc < 0 || nr >= height || nc >= width) {
+                // the edge of the maze
+                continue;
+            }
+            int from = r * width + c, to = nr * width + nc;
+            // the passage is what both sides say after this change; changes
+            // to one side at a time are caught when the other side changes
+            boolean open = (walls(r, c) & 1 << wall) == 0 && (walls(nr, nc) & 1 << opposite(wall)) == 0;
+            boolean repaired = open ? opened(from, to) : closed(from, to);
+            if (!repaired) {
+                nextStamp();
+                version = now;
+                rebuild();
+                return;
+            }
+        }
+        nextStamp();
+        version = now;
+    }
+
+    /**
+     * Ends a catch-up, so that every cell reads its walls from the maze
+     * again.
+     */
+    private void nextStamp() {
+        if (++stamp == 0) {
+            // the stamps have wrapped around, so old ones could pass for new
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+    }
+
+    /**
+     * Returns the walls of a cell as they were at the change being repaired
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @return the mask of the solid walls of the cell
+     */
+    private int walls(int r, int c) {
+        int cell = r * width + c;
+        return stamps[cell] == stamp ? pastWalls[cell] : maze.getWalls(r, c);
+    }
+
+    /**
+     * Shortens the distances that a new passage between two cells makes
+     * shorter.
+     *
+     * @param a one of the cells
+     * @param b the other cell
+     * @return false if the repair touched too many cells
+     */
+    private boolean opened(int a, int b) {
+        if (distances[a] > distances[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        if (distances[a] == UNREACHABLE || distances[a] + 1 >= distances[b]) {
+            return true;
+        }
+
+        repairs++;
+        distances[b] = distances[a] + 1;
+        int head = 0, tail = 0;
+        queue[tail++] = b;
+        while (head < tail) {
+            if (tail > repairLimit) {
+                return false;
+            }
+            int cell = queue[head++];
+            int next = distances[cell] + 1, open = exits(cell);
+            for (int dir = 0; dir < 4; dir++) {
+                if ((open & 1 << dir) != 0) {
+                    int to = neighbor(cell, dir);
+                    if (next < distances[to]) {
+                        distances[to] = next;
+                        queue[tail++] = to;
+                    }
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Lengthens the distances that a passage between two cells closing makes
+     * longer: finds the cells that have no shortest path left, then measures
+     * them again from the cells around them.
+     *
+     * @param a one of the cells
+     * @param b the other cell
+     * @return false if the repair touched too many cells
+     */
+    private boolean closed(int a, int b) {
+        if (distances[a] > distances[b]) {
+            int t = a;
+            a = b;
+            b = t;
+        }
+        // only a passage to a cell one further away is on a shortest path
+        if (distances[a] == UNREACHABLE || distances[b] != distances[a] + 1 || hasParent(b)) {
+            return true;
+        }
+
+        repairs++;
+        int count = findOrphans(b);
+        if (count < 0) {
+            return false;
+        }
+
+        // the orphans are measured again from their neighbors that kept their
+        // distance, nearest first; sorting the starts is enough, since every
+        // distance found afterwards is one more than the one before it
+        int starts = 0;
+        for (int i = 0; i < count; i++) {
+            int cell = affected[i], best = UNREACHABLE, open = exits(cell);
+            for (int dir = 0; dir < 4; dir++) {
+                if ((open & 1 << dir) != 0) {
+                    int from = neighbor(cell, dir);
+                    if (marks[from] == 0 && distances[from] != UNREACHABLE) {
+                        best = Math.min(best, distances[from] + 1);
+                    }
+                }
+            }
+            if (best != UNREACHABLE) {
+                distances[cell] = best;
+                marks[cell] = 3;
+                queue[starts++] = cell;
+            }
+        }
+        sortByDistance(starts);
+
+        // merges the sorted starts with the cells found from them, which are
+        // queued after the starts; a start that is found at a shorter
+        // distance is only taken from the found cells
+        int next = 0, head = starts, tail = starts;
+        while (next < starts || head < tail) {
+            int cell;
+            if (head == tail || next < starts && distances[queue[next]] <= distances[queue[head]]) {
+                cell = queue[next++];
+                if (marks[cell] != 3) {
+                    continue;
+                }
+            } else {
+                cell = queue[head++];
+                if (marks[cell] == 0) {
+                    // already settled
+                    continue;
+                }
+            }
+            marks[cell] = 0;
+
+            int dist = distances[cell] + 1, open = exits(cell);
+            for (int dir = 0; dir < 4; dir++) {
+                if ((open & 1 << dir) != 0) {
+                    int to = neighbor(cell, dir);
+                    if (marks[to] != 0 && dist < distances[to]) {
+                        distances[to] = dist;
+                        marks[to] = 1;
+                        queue[tail++] = to;
+                    }
+                }
+            }
+        }
+
+        // orphans that were cut off from the source stay unreachable
+        for (int i = 0; i < count; i++) {
+            marks[affected[i]] = 0;
+        }
+        return true;
+    }
+
+    /**
+     * Finds the cells whose every shortest path goes through the given cell,
+     * which has just lost its last one, and forgets their distances. The
+     * cells are put in {@link #affected} and marked.
+     *
+     * @param orphan the cell that lost its shortest path
+     * @return the amount of cells found, or -1 if there were too many
+     */
+    private int findOrphans(int orphan) {
+        // candidates are checked in order of distance, so that every parent
+        // of a candidate that is an orphan has been found before it
+        int head = 0, tail = 0, count = 0;
+        queue[tail++] = orphan;
+        marks[orphan] = 2;
+        while (head < tail) {
+            if (tail > repairLimit) {
+                for (int i = 0; i < tail; i++) {
+                    marks[queue[i]] = 0;
+                }
+                return -1;
+            }
+            int cell = queue[head++];
+            if (cell != orphan && hasParent(cell)) {
+                // another shortest path is left
+                marks[cell] = 0;
+                continue;
+            }
+            marks[cell] = 1;
+            affected[count++] = cell;
+
+            int child = distances[cell] + 1, open = exits(cell);
+            for (int dir = 0; dir < 4; dir++) {
+                if ((open & 1 << dir) != 0) {
+                    int to = neighbor(cell, dir);
+                    if (marks[to] == 0 && distances[to] == child) {
+                        marks[to] = 2;
+                        queue[tail++] = to;
+                    }
+                }
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            distances[affected[i]] = UNREACHABLE;
+        }
+        return count;
+    }
+
+    /**
+     * Determines whether a cell has a neighbor one closer to the source that
+     * is not an orphan.
+     *
+     * @param cell the cell
+     * @return whether the cell still has a shortest path
+     */
+    private boolean hasParent(int cell) {
+        int parent = distances[cell] - 1, open = exits(cell);
+        for (int dir = 0; dir < 4; dir++) {
+            if ((open & 1 << dir) != 0) {
+                int from = neighbor(cell, dir);
+                if (distances[from] == parent && marks[from] != 1) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Sorts the first cells of {@link #queue} by distance. Repairs are local,
+     * so an insertion sort is quick enough.
+     *
+     * @param count the amount of cells to sort
+     */
+    private void sortByDistance(int count) {
+        for (int i = 1; i < count; i++) {
+            int cell = queue[i], dist = distances[cell], j = i - 1;
+            while (j >= 0 && distances[queue[j]] > dist) {
+                queue[j + 1] = queue[j];
+                j--;
+            }
+            queue[j + 1] = cell;
+        }
+    }
+
+    /**
+     * Measures every distance with a full breadth-first search.
+     */
+    public void rebuild() {
+        rebuilds++;
+        version = maze.getVersion();
+        Arrays.fill(distances, UNREACHABLE);
+        Arrays.fill(marks, (byte) 0);
+        distances[source] = 0;
+        int head = 0, tail = 0;
+        queue[tail++] = source;
+        while (head < tail) {
+            int cell = queue[head++];
+            int next = distances[cell] + 1, open = exits(cell);
+            for (int dir = 0; dir < 4; dir++) {
+                if ((open & 1 << dir) != 0) {
+                    int to = neighbor(cell, dir);
+                    if (distances[to] == UNREACHABLE) {
+                        distances[to] = next;
+                        queue[tail++] = to;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the passages out of a cell, as a mask with the bit
+     * {@code 1 << direction} set for each
+     *
+     * @param cell the cell
+     * @return the passages out of the cell
+     */
+    private int exits(int cell) {
+        int r = cell / width, c = cell - r * width;
+        int walls = walls(r, c), open = 0;
+        if (r > 0 && (walls & 1 << NORTH) == 0 && (walls(r - 1, c) & 1 << SOUTH) == 0) {
+            open |= 1 << NORTH;
+        }
+        if (c + 1 < width && (walls & 1 << EAST) == 0 && (walls(r, c + 1) & 1 << WEST) == 0) {
+            open |= 1 << EAST;
+        }
+        if (r + 1 < height && (walls & 1 << SOUTH) == 0 && (walls(r + 1, c) & 1 << NORTH) == 0) {
+            open |= 1 << SOUTH;
+        }
+        if (c > 0 && (walls & 1 << WEST) == 0 && (walls(r, c - 1) & 1 << EAST) == 0) {
+            open |= 1 << WEST;
+        }
+        return open;
+    }
+
+    /**
+     * Returns the neighbor of a cell in the given direction
+     *
+     * @param cell the cell
+     * @param dir  the direction
+     * @return the neighbor
+     */
+    private int neighbor(int cell, int dir) {
+        return cell + dy(dir) * width + dx(dir);
+    }
+
+    /**
+     * Returns the maze the distances are in
+     *
+     * @return the maze
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * Returns the amount of changes that were repaired in place
+     *
+     * @return the amount of repairs
+     */
+    public long getRepairs() {
+        return repairs;
+    }
+
+    /**
+     * Returns the amount of times every distance was measured again,
+     * including when the field was created
+     *
+     * @return the amount of rebuilds
+     */
+    public long getRebuilds() {
+        return rebuilds;
+    }
+}
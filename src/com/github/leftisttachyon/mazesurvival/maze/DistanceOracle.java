@@ -0,0 +1,373 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.util.Arrays;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Answers the length of the shortest path between any two cells of a maze
+ * without searching it, for mazes that are a tree plus a few extra passages.
+ * A spanning tree of the passages is found once with a depth-first search,
+ * and the distance between two cells in the tree comes from the depth of
+ * their lowest common ancestor, which is the shallowest cell between them in
+ * the Euler tour of the tree. That minimum is found from a sparse table over
+ * blocks of the tour plus a scan of at most two blocks.<br>
+ * Every passage left out of the tree is a shortcut. A shortest path either
+ * stays in the tree, or goes through one end of some shortcut, so the
+ * distances from one end of every shortcut to every cell are measured too,
+ * and a query takes the best of the tree and each shortcut. A perfect maze has
+ * no shortcuts, so its queries take well under a microsecond however large it
+ * is; a braided maze needs {@code shortcuts * cells} distances, and if that
+ * is more than {@link #MAX_SHORTCUT_DISTANCES} the oracle is not built and
+ * {@link #isExact()} is false.<br>
+ * Two cells are connected when neither side of the wall between them is
+ * solid. An oracle describes the maze as it was when it was created; see
+ * {@link #isCurrent()}. Once created it is safe to query from any amount of
+ * threads.
+ *
+ * @author Jed Wang
+ */
+public final class DistanceOracle {
+
+    /**
+     * The most distances from the ends of shortcuts that are kept
+     */
+    public static final long MAX_SHORTCUT_DISTANCES = 1L << 24;
+
+    /**
+     * The bits of the amount of tour entries in a block
+     */
+    private static final int BLOCK_SHIFT = 5;
+
+    /**
+     * The distance kept for cells a shortcut cannot reach; small enough that
+     * two of them can be added
+     */
+    private static final int FAR = Integer.MAX_VALUE / 2;
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The version of the maze this oracle was built at
+     */
+    private final long version;
+
+    /**
+     * The width of the maze
+     */
+    private final int width;
+
+    /**
+     * Whether the oracle was built
+     */
+    private final boolean exact;
+
+    /**
+     * The depths of the cells in the order the tour passes them, with -1
+     * between the trees of a maze whose cells are not all connected
+     */
+    private int[] tour;
+
+    /**
+     * The position of each cell in {@link #tour} where it is first reached
+     */
+    private int[] first;
+
+    /**
+     * The smallest depth in each run of {@code 2^level} blocks of the tour,
+     * indexed by level, then by the first block
+     */
+    private int[][] table;
+
+    /**
+     * The amount of passages outside the spanning tree
+     */
+    private int shortcuts;
+
+    /**
+     * The distance from each measured end of a shortcut to each cell,
+     * indexed by {@code cell * shortcuts + shortcut}
+     */
+    private int[] shortcutDistances;
+
+    /**
+     * Builds an oracle for the current walls of a maze.
+     *
+     * @param maze the maze
+     */
+    public DistanceOracle(Maze maze) {
+        this.maze = maze;
+        this.version = maze.getVersion();
+        this.width = maze.getColumns();
+        int cells = Math.multiplyExact(maze.getRows(), width);
+
+        // a spanning forest has at most cells - 1 passages, so the rest are
+        // shortcuts; there is no point building a tree if they are already
+        // too many
+        long passages = countPassages();
+        if (Math.max(0, passages - (cells - 1)) * cells > MAX_SHORTCUT_DISTANCES) {
+            exact = false;
+            return;
+        }
+
+        int[] ends = buildTour(cells);
+        exact = (long) shortcuts * cells <= MAX_SHORTCUT_DISTANCES;
+        if (!exact) {
+            tour = first = null;
+            return;
+        }
+        buildTable();
+        measureShortcuts(ends, cells);
+    }
+
+    /**
+     * Counts the open passages of the maze, a word at a time.
+     *
+     * @return the amount of passages open on both sides
+     */
+    private long countPassages() {
+        int height = maze.getRows(), wordsPerRow = maze.getWordsPerRow();
+        long count = 0;
+        for (int r = 0; r < height; r++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                long east = ~maze.getWallWord(EAST, r, w);
+                long west = w + 1 < wordsPerRow ? ~maze.getWallWord(WEST, r, w + 1) : 0;
+                east &= ~maze.getWallWord(WEST, r, w) >>> 1 | west << 63;
+                count += Long.bitCount(east);
+                if (r + 1 < height) {
+                    count += Long.bitCount(~maze.getWallWord(SOUTH, r, w) & ~maze.getWallWord(NORTH, r + 1, w));
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Walks a depth-first spanning tree of every group of connected cells,
+     * recording the Euler tour, and collects one end of every passage left
+     * out of the trees. A tree of t cells takes up {@code 2t - 1} entries of
+     * the tour, so with the separators the tour has {@code 2 * cells - 1}.
+     *
+     * @param cells the amount of cells of the maze
+     * @return the ends of the shortcuts, the first {@link #shortcuts} of which
+     * are used
+     */
+    private int[] buildTour(int cells) {
+        int height = maze.getRows();
+        first = new int[cells];
+        Arrays.fill(first, -1);
+        tour = new int[Math.addExact(cells, cells) - 1];
+        int length = 0;
+        int[] stack = new int[cells];
+        byte[] next = new byte[cells];
+        int[] ends = new int[16];
+
+        for (int root = 0; root < cells; root++) {
+            if (first[root] >= 0) {
+                continue;
+            }
+            if (length > 0) {
+                tour[length++] = -1;
+            }
+            int top = 0;
+            stack[0] = root;
+            first[root] = length;
+            tour[length++] = 0;
+            while (top >= 0) {
+                int cell = stack[top];
+                int dir = next[cell];
+                if (dir == 4) {
+                    top--;
+                    if (top >= 0) {
+                        tour[length++] = top;
+                    }
+                    continue;
+                }
+                next[cell]++;
+
+                int r = cell / width, c = cell - r * width;
+                int nr = r + dy(dir), nc = c + dx(dir);
+                if (nr < 0 || nc < 0 || nr >= height || nc >= width
+                        || maze.getWall(r, c, dir) || maze.getWall(nr, nc, opposite(dir))) {
+                    continue;
+                }
+                int neighbor = nr * width + nc;
+                if (first[neighbor] < 0) {
+                    stack[++top] = neighbor;
+                    first[neighbor] = length;
+                    tour[length++] = top;
+                } else if (cell < neighbor && (top == 0 || stack[top - 1] != neighbor)) {
+                    // a passage out of the tree, which is seen from both
+                    // ends; only the lower one is kept
+                    if (shortcuts == ends.length) {
+                        ends = Arrays.copyOf(ends, shortcuts * 2);
+                    }
+                    ends[shortcuts++] = cell;
+                }
+            }
+        }
+        return ends;
+    }
+
+    /**
+     * Builds the sparse table over the minimums of the blocks of the tour.
+     */
+    private void buildTable() {
+        int blocks = ((tour.length - 1) >>> BLOCK_SHIFT) + 1;
+        int levels = 32 - Integer.numberOfLeadingZeros(blocks);
+        table = new int[levels][];
+        int[] mins = new int[blocks];
+        Arrays.fill(mins, Integer.MAX_VALUE);
+        for (int i = 0; i < tour.length; i++) {
+            int block = i >>> BLOCK_SHIFT;
+            mins[block] = Math.min(mins[block], tour[i]);
+        }
+        table[0] = mins;
+        for (int level = 1; level < levels; level++) {
+            int[] below = table[level - 1], row = new int[blocks - (1 << level) + 1];
+            int half = 1 << (level - 1);
+            for (int i = 0; i < row.length; i++) {
+                row[i] = Math.min(below[i], below[i + half]);
+            }
+            table[level] = row;
+        }
+    }
+
+    /**
+     * Measures the distance from one end of every shortcut to every cell,
+     * with a breadth-first search each.
+     *
+     * @param ends  the ends of the shortcuts
+     * @param cells the amount of cells of the maze
+     */
+    private void measureShortcuts(int[] ends, int cells) {
+        int height = maze.getRows();
+        shortcutDistances = new int[shortcuts * cells];
+        Arrays.fill(shortcutDistances, FAR);
+        int[] queue = new int[cells];
+        for (int s = 0; s < shortcuts; s++) {
+            int head = 0, tail = 0;
+            queue[tail++] = ends[s];
+            shortcutDistances[ends[s] * shortcuts + s] = 0;
+            while (head < tail) {
+                int cell = queue[head++];
+                int r = cell / width, c = cell - r * width;
+                int distance = shortcutDistances[cell * shortcuts + s] + 1;
+                int walls = maze.getWalls(r, c);
+                for (int dir = 0; dir < 4; dir++) {
+                    int nr = r + dy(dir), nc = c + dx(dir);
+                    if ((walls & 1 << dir) != 0 || nr < 0 || nc < 0 || nr >= height || nc >= width
+                            || maze.getWall(nr, nc, opposite(dir))) {
+                        continue;
+                    }
+                    int neighbor = nr * width + nc;
+                    if (shortcutDistances[neighbor * shortcuts + s] == FAR) {
+                        shortcutDistances[neighbor * shortcuts + s] = distance;
+                        queue[tail++] = neighbor;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the length of the shortest path between two cells
+     *
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @param toR   the ending row
+     * @param toC   the ending column
+     * @return the length of the shortest path, or -1 if there is none
+     * @throws IllegalStateException if the maze had too many shortcuts for
+     *                               the oracle to be built
+     */
+    public int distance(int fromR, int fromC, int toR, int toC) {
+        if (!exact) {
+            throw new IllegalStateException("The maze has too many passages outside the tree");
+        }
+        int a = fromR * width + fromC, b = toR * width + toC;
+        int i = first[a], j = first[b];
+        int ancestor = i <= j ? minDepth(i, j) : minDepth(j, i);
+        if (ancestor < 0) {
+            return -1;
+        }
+        int best = tour[i] + tour[j] - 2 * ancestor;
+        for (int s = 0, da = a * shortcuts, db = b * shortcuts; s < shortcuts; s++) {
+            best = Math.min(best, shortcutDistances[da + s] + shortcutDistances[db + s]);
+        }
+        return best;
+    }
+
+    /**
+     * Returns the smallest depth in a range of the tour
+     *
+     * @param from the first position
+     * @param to   the last position, not before the first
+     * @return the smallest depth, which is -1 if the range crosses from one
+     * tree to another
+     */
+    private int minDepth(int from, int to) {
+        int fromBlock = (from >>> BLOCK_SHIFT) + 1, toBlock = to >>> BLOCK_SHIFT;
+        int min = Integer.MAX_VALUE;
+        if (fromBlock > toBlock) {
+            for (int i = from; i <= to; i++) {
+                min = Math.min(min, tour[i]);
+            }
+            return min;
+        }
+        for (int i = from, end = fromBlock << BLOCK_SHIFT; i < end; i++) {
+            min = Math.min(min, tour[i]);
+        }
+        for (int i = toBlock << BLOCK_SHIFT; i <= to; i++) {
+            min = Math.min(min, tour[i]);
+        }
+        if (fromBlock < toBlock) {
+            int level = 31 - Integer.numberOfLeadingZeros(toBlock - fromBlock);
+            min = Math.min(min, Math.min(table[level][fromBlock], table[level][toBlock - (1 << level)]));
+        }
+        return min;
+    }
+
+    /**
+     * Returns whether the oracle was built. It is not if the maze has so
+     * many passages outside its spanning tree that measuring from all of them
+     * would take more than {@link #MAX_SHORTCUT_DISTANCES} distances.
+     *
+     * @return whether {@link #distance(int, int, int, int)} can be used
+     */
+    public boolean isExact() {
+        return exact;
+    }
+
+    /**
+     * Returns whether the walls of the maze are still the ones the oracle
+     * was built for
+     *
+     * @return whether the maze has not changed since
+     */
+    public boolean isCurrent() {
+        return maze.getVersion() == version;
+    }
+
+    /**
+     * Returns the amount of passages outside the spanning tree, from one end
+     * of each of which distances are measured
+     *
+     * @return the amount of shortcuts
+     */
+    public int getShortcuts() {
+        return shortcuts;
+    }
+
+    /**
+     * Returns the maze
+     *
+     * @return the maze
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+}
@@ -1,23 +1,38 @@
 package com.github.leftisttachyon.mazesurvival.maze;
 
 import java.awt.*;
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Random;
 
 import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
 
 /**
- * A class that represents a maze
+ * A class that represents a maze.<br>
+ * The walls are stored in one bit plane per direction: each row of cells takes
+ * up {@link #getWordsPerRow()} longs of a plane, with the cell in column c at
+ * bit {@code c % 64} of word {@code c / 64}, and a set bit meaning the wall is
+ * solid. The bits past the last column are always set. This keeps even very
+ * large mazes compact and lets whole words of cells be examined at once.<br>
+ * The planes are long arrays on the heap, or, for mazes created off-heap,
+ * direct buffers outside it that are addressed with long indices, so a maze
+ * can have more than {@code Integer.MAX_VALUE} cells and costs the garbage
+ * collector nothing however large it is. Both kinds of maze are read and
+ * changed through the same methods, and generate the same layouts.
  *
  * @author Jed Wang
  */
 public final class Maze extends Component {
 
     /**
-     * The matrix of cells that compose the maze
+     * The wall planes, indexed by direction, then by row and word, or null if
+     * they are kept off the heap
      */
-    private Cell[][] maze;
+    private final long[][] walls;
+
+    /**
+     * The wall planes kept off the heap, or null if they are on it
+     */
+    private final OffHeapPlanes offHeap;
 
     /**
      * The height of this maze
@@ -30,76 +45,303 @@ public final class Maze extends Component {
     private final int width;
 
     /**
-     * Creates a new Maze and initializes it.
+     * The amount of longs each row takes up in a wall plane
+     */
+    private final int wordsPerRow;
+
+    /**
+     * The seed that the current layout of this maze was generated from
+     */
+    private long seed;
+
+    /**
+     * The chance that each dead end of a new maze gets a wall knocked out,
+     * which makes loops
+     */
+    public static final double BRAIDING_FACTOR = 0.6;
+
+    /**
+     * The most cells that can be carved at once; larger mazes are carved in
+     * tiles
+     */
+    private static final long MAX_CARVE_CELLS = Integer.MAX_VALUE - 8;
+
+    /**
+     * The side of the tiles that mazes too large to carve at once are carved
+     * in, in cells
+     */
+    private static final int CARVE_TILE = 1024;
+
+    /**
+     * The amount of wall changes remembered by {@link #getChange(long, int[])}
+     */
+    public static final int CHANGE_LOG_SIZE = 1024;
+
+    /**
+     * The sides of walls that were changed, each packed as
+     * {@code cell << 3 | wall << 1 | solid}, indexed by version modulo
+     * {@link #CHANGE_LOG_SIZE}
+     */
+    private final long[] changes = new long[CHANGE_LOG_SIZE];
+
+    /**
+     * The amount of wall changes made since this maze was created, only
+     * changed by the thread that changes the walls, but read by any
+     */
+    private volatile long version = 0;
+
+    /**
+     * The version this maze was last generated at; changes before it cannot
+     * be looked up
+     */
+    private long generatedAt = 0;
+
+    /**
+     * The terrain of this maze, or null if every cell is floor
+     */
+    private volatile Terrain terrain = null;
+
+    /**
+     * The heatmap drawn under the walls, or null
+     */
+    private volatile VisitHeatmap overlay = null;
+
+    /**
+     * The track of {@link #overlay} that is drawn
+     */
+    private volatile int overlayTrack = VisitHeatmap.ALL;
+
+    /**
+     * The walls of the whole maze as merged segments, made again when the
+     * walls change, or null if they have not been painted yet
+     */
+    private volatile WallGeometry geometry = null;
+
+    /**
+     * The most cells a maze can have for the segments of all of its walls to
+     * be kept; larger mazes find the segments of the cells being painted each
+     * time
+     */
+    public static final long MAX_GEOMETRY_CELLS = 1 << 20;
+
+    /**
+     * Creates a new Maze and initializes it with a random seed.
      *
      * @param height the height of the maze
      * @param width the width of the maze
      */
     public Maze(int height, int width) {
+        this(height, width, new Random().nextLong());
+    }
+
+    /**
+     * Creates a new Maze and initializes it from the given seed. Two mazes
+     * of the same size created from the same seed are identical. Mazes of
+     * more than {@code Integer.MAX_VALUE} cells are kept off the heap.
+     *
+     * @param height the height of the maze
+     * @param width the width of the maze
+     * @param seed the seed to generate the maze from
+     */
+    public Maze(int height, int width, long seed) {
+        this(height, width, seed, (long) height * width > Integer.MAX_VALUE);
+    }
+
+    /**
+     * Creates a new Maze, keeping its walls on or off the heap, and
+     * initializes it from the given seed. The layout does not depend on where
+     * the walls are kept.
+     *
+     * @param height the height of the maze
+     * @param width the width of the maze
+     * @param seed the seed to generate the maze from
+     * @param offHeap whether to keep the walls off the heap
+     */
+    public Maze(int height, int width, long seed, boolean offHeap) {
+        if (height < 1 || width < 1) {
+            throw new IllegalArgumentException("Invalid dimensions: " + height + "x" + width);
+        }
+
         this.height = height;
         this.width = width;
+        this.wordsPerRow = (width + 63) >>> 6;
+        if (offHeap) {
+            this.walls = null;
+            this.offHeap = new OffHeapPlanes((long) height * wordsPerRow);
+        } else {
+            this.walls = new long[4][Math.multiplyExact(height, wordsPerRow)];
+            this.offHeap = null;
+        }
 
         setPreferredSize(new Dimension(width * Cell.WIDTH + 30, height * Cell.WIDTH + 40));
 
-        generate();
+        generate(seed);
     }
 
     /**
-     * Finds and returns a list of all of the unvisited neighbors of the given
-     * cell, represented by a number
+     * Generates a new maze inside this maze instance from a random seed.
      *
-     * @param y the y-coordinate of the cell
-     * @param x the x-coordinate of the cell
-     * @return the list of all of the unvisited neighbors of the given cell,
-     * represented by a number
+     * @see #generate(long)
      */
-    public List<Integer> getUnvisitedNeighbors(int y, int x) {
-        if (y < 0 || x < 0 || y >= height || x >= width) {
-            throw new IllegalArgumentException("indexes out of bounds: " + y
-                    + ", " + x);
-        }
-        ArrayList<Integer> output = new ArrayList<>();
-        if (y + 1 < height && !maze[y + 1][x].isVisited()) {
-            output.add(SOUTH);
-        }
-        if (y - 1 >= 0 && !maze[y - 1][x].isVisited()) {
-            output.add(NORTH);
-        }
-        if (x + 1 < width && !maze[y][x + 1].isVisited()) {
-            output.add(EAST);
-        }
-        if (x - 1 >= 0 && !maze[y][x - 1].isVisited()) {
-            output.add(WEST);
-        }
-        return output;
+    public void generate() {
+        generate(new Random().nextLong());
     }
 
     /**
      * Generates a new maze inside this maze instance. Implements the Growing
      * Tree algorithm, which is described
      * <a href="http://weblog.jamisbuck.org/2011/1/27/maze-generation-growing-tree-algorithm">here</a>.
+     * With assertions enabled, the new maze is checked with
+     * {@link MazeValidator}.
+     *
+     * @param seed the seed for the random choices made while generating
      */
-    public void generate() {
-        maze = new Cell[height][width];
-        for (int i = 0; i < height; i++) {
-            for (int j = 0; j < width; j++) {
-                maze[i][j] = new Cell(j, i);
+    public void generate(long seed) {
+        generate(seed, BRAIDING_FACTOR);
+    }
 
-                maze[i][j].setWall(NORTH, true);
-                maze[i][j].setWall(EAST, true);
-                maze[i][j].setWall(SOUTH, true);
-                maze[i][j].setWall(WEST, true);
+    /**
+     * Generates a new maze inside this maze instance, knocking a wall out of
+     * the given share of the dead ends to make loops. Without braiding, the
+     * maze is perfect: there is exactly one path between any two cells. Any
+     * terrain is removed.
+     *
+     * @param seed     the seed for the random choices made while generating
+     * @param braiding the chance of braiding each dead end, between 0 and 1
+     * @see #generate(long)
+     */
+    public void generate(long seed, double braiding) {
+        if (!(braiding >= 0 && braiding <= 1)) {
+            throw new IllegalArgumentException("Invalid braiding: " + braiding);
+        }
+        this.seed = seed;
+        // whatever was derived from the old layout must be rebuilt
+        generatedAt = ++version;
+        terrain = null;
+        Random r = new Random(seed);
+        carve(r);
+        braid(r, braiding);
+        assert MazeValidator.check(this);
+    }
+
+    /**
+     * Closes every wall, then carves a perfect maze with the Growing Tree
+     * algorithm. Mazes with more cells than can be carved at once are carved
+     * in tiles. Changes are not logged.
+     *
+     * @param r the source of the random choices
+     */
+    void carve(Random r) {
+        if (offHeap == null) {
+            for (long[] plane : walls) {
+                Arrays.fill(plane, -1L);
             }
+        } else {
+            offHeap.fill(-1L);
         }
 
-        Random r = new Random();
-        ArrayList<Cell> cList = new ArrayList<>();
-        Cell first = maze[r.nextInt(height)][r.nextInt(width)];
-        first.setVisited(true);
-        cList.add(first);
-        while (!cList.isEmpty()) {
-            // System.out.println("cList size: " + cList.size());
+        long cells = (long) height * width;
+        if (cells > MAX_CARVE_CELLS) {
+            carveTiles(r, CARVE_TILE);
+        } else {
+            carveRegion(r, 0, 0, height, width, new CellList((int) cells), new long[(int) ((cells + 63) >>> 6)]);
+        }
+    }
 
+    /**
+     * Carves a perfect maze into each tile of this maze in turn, then joins
+     * the tiles into one perfect maze by opening a passage at a random place
+     * along the edges of a random spanning tree of the tiles. Only one tile's
+     * worth of carving state is kept, so mazes of billions of cells can be
+     * carved with little memory.
+     *
+     * @param r    the source of the random choices
+     * @param tile the side of a tile
+     */
+    void carveTiles(Random r, int tile) {
+        int tileRows = (height - 1) / tile + 1, tileCols = (width - 1) / tile + 1;
+        int tiles = Math.multiplyExact(tileRows, tileCols);
+        CellList cList = new CellList(tile * tile);
+        long[] visited = new long[(tile * tile + 63) >>> 6];
+        for (int t = 0; t < tiles; t++) {
+            int r0 = t / tileCols * tile, c0 = t % tileCols * tile;
+            cList.clear();
+            Arrays.fill(visited, 0);
+            carveRegion(r, r0, c0, Math.min(tile, height - r0), Math.min(tile, width - c0), cList, visited);
+        }
+
+        // Kruskal's algorithm over the edges between tiles, each edge being
+        // 2 * tile for the one to the east or 2 * tile + 1 for the one below
+        int[] edges = new int[Math.multiplyExact(tiles, 2)];
+        for (int i = 0; i < edges.length; i++) {
+            edges[i] = i;
+        }
+        for (int i = edges.length - 1; i > 0; i--) {
+            int j = r.nextInt(i + 1), temp = edges[i];
+            edges[i] = edges[j];
+            edges[j] = temp;
+        }
+        int[] parent = new int[tiles];
+        for (int i = 0; i < tiles; i++) {
+            parent[i] = i;
+        }
+        for (int edge : edges) {
+            int t = edge >>> 1;
+            boolean south = (edge & 1) != 0;
+            int row = t / tileCols, col = t % tileCols;
+            if (south ? row + 1 == tileRows : col + 1 == tileCols) {
+                continue;
+            }
+            int a = findTile(parent, t), b = findTile(parent, south ? t + tileCols : t + 1);
+            if (a == b) {
+                continue;
+            }
+            parent[a] = b;
+
+            int r0 = row * tile, c0 = col * tile;
+            if (south) {
+                openPassage(r0 + tile - 1, c0 + r.nextInt(Math.min(tile, width - c0)), SOUTH);
+            } else {
+                openPassage(r0 + r.nextInt(Math.min(tile, height - r0)), c0 + tile - 1, EAST);
+            }
+        }
+    }
+
+    /**
+     * Finds the root of a tile in the spanning tree being built by
+     * {@link #carveTiles(Random, int)}, halving the path on the way.
+     *
+     * @param parent the union-find of the tiles
+     * @param t      the tile
+     * @return its root
+     */
+    private static int findTile(int[] parent, int t) {
+        while (parent[t] != t) {
+            parent[t] = parent[parent[t]];
+            t = parent[t];
+        }
+        return t;
+    }
+
+    /**
+     * Carves a perfect maze into the given rows and columns, whose walls must
+     * all be closed, with the Growing Tree algorithm.
+     *
+     * @param r       the source of the random choices
+     * @param r0      the first row
+     * @param c0      the first column
+     * @param rows    the amount of rows
+     * @param cols    the amount of columns
+     * @param cList   an empty list that can hold every cell of the region
+     * @param visited a cleared bitset with a bit for every cell of the region
+     */
+    private void carveRegion(Random r, int r0, int c0, int rows, int cols, CellList cList, long[] visited) {
+        int[] unvisited = new int[4];
+
+        int first = r.nextInt(rows) * cols + r.nextInt(cols);
+        visited[first >>> 6] |= 1L << first;
+        cList.add(first);
+        while (cList.size() > 0) {
             int idx;
             //<editor-fold defaultstate="collapsed" desc="set idx">
             double rand = r.nextDouble();
@@ -111,105 +353,390 @@ public final class Maze extends Component {
                 idx = r.nextInt(cList.size());
             }
             //</editor-fold>
-            Cell c = cList.get(idx);
+            int cell = cList.get(idx);
+            int cy = cell / cols, cx = cell - cy * cols;
 
-            List<Integer> unvisited = getUnvisitedNeighbors(c.y, c.x);
-            if (unvisited.isEmpty()) {
+            int count = 0;
+            if (cy + 1 < rows && !isVisited(visited, cell + cols)) {
+                unvisited[count++] = SOUTH;
+            }
+            if (cy - 1 >= 0 && !isVisited(visited, cell - cols)) {
+                unvisited[count++] = NORTH;
+            }
+            if (cx + 1 < cols && !isVisited(visited, cell + 1)) {
+                unvisited[count++] = EAST;
+            }
+            if (cx - 1 >= 0 && !isVisited(visited, cell - 1)) {
+                unvisited[count++] = WEST;
+            }
+            if (count == 0) {
                 cList.remove(idx);
                 continue;
             }
 
-            int neighborDir = unvisited.get(r.nextInt(unvisited.size()));
-            Cell neighbor;
-            switch (neighborDir) {
-                case WEST:
-                    neighbor = maze[c.y][c.x - 1];
-                    break;
-                case EAST:
-                    neighbor = maze[c.y][c.x + 1];
-                    break;
-                case SOUTH:
-                    neighbor = maze[c.y + 1][c.x];
-                    break;
-                case NORTH:
-                    neighbor = maze[c.y - 1][c.x];
-                    break;
-                default:
-                    throw new IllegalStateException("Unknown direction: " + neighborDir);
-            }
-
-            neighbor.setVisited(true);
-
-            c.setWall(neighborDir, false);
-            neighbor.setWall(Cell.opposite(neighborDir), false);
-
-            cList.add(neighbor);
-        } // done with initial maze generation
-
-        final double braidingFactor = 0.6;
-        for (Cell[] cells : maze) {
-            for (Cell c : cells) {
-                if (c.isDeadEnd() && r.nextDouble() < braidingFactor) {
-                    List<Integer> canRemove = new ArrayList<>();
-                    if (c.getWall(NORTH) && c.y != 0) {
-                        canRemove.add(NORTH);
+            int neighborDir = unvisited[r.nextInt(count)];
+            int next = cell + dy(neighborDir) * cols + dx(neighborDir);
+
+            visited[next >>> 6] |= 1L << next;
+            openPassage(r0 + cy, c0 + cx, neighborDir);
+
+            cList.add(next);
+        }
+    }
+
+    /**
+     * Determines whether a cell of a region being carved has been visited
+     *
+     * @param visited the bitset of visited cells
+     * @param cell    the index of the cell in the region
+     * @return whether the cell has been visited
+     */
+    private static boolean isVisited(long[] visited, int cell) {
+        return (visited[cell >>> 6] & 1L << cell) != 0;
+    }
+
+    /**
+     * Knocks a wall out of the given share of the dead ends of this maze, as
+     * the last step of {@link #generate(long, double)} does, so that the step
+     * can be run on its own: adding loops to {@code generate(seed, 0)} with a
+     * source that has made the same choices makes the same maze as
+     * generating with braiding. Whatever was derived from the old layout
+     * must be rebuilt.
+     *
+     * @param r      the source of the random choices
+     * @param factor the chance of braiding each dead end, between 0 and 1
+     * @return the amount of dead ends braided
+     */
+    public int addLoops(Random r, double factor) {
+        if (!(factor >= 0 && factor <= 1)) {
+            throw new IllegalArgumentException("Invalid braiding: " + factor);
+        }
+        generatedAt = ++version;
+        return braid(r, factor);
+    }
+
+    /**
+     * Adds loops to the maze by knocking a random wall out of some of the
+     * dead ends, visiting the cells row by row. The dead ends of a whole word
+     * of cells are found at once, and only they are visited; since knocking
+     * out a wall can only stop the cell to the east from being a dead end
+     * among the cells still to visit in the word, that one cell is checked
+     * again. The random choices are the same as visiting every cell in turn,
+     * so the same mazes are made. Changes are not logged.
+     *
+     * @param r      the source of the random choices
+     * @param factor the chance of braiding each dead end
+     * @return the amount of dead ends braided
+     */
+    int braid(Random r, double factor) {
+        int[] canRemove = new int[4];
+        int braided = 0;
+        for (int y = 0; y < height; y++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                long dead = getDeadEndWord(y, w);
+                while (dead != 0) {
+                    int bit = Long.numberOfTrailingZeros(dead);
+                    dead &= dead - 1;
+                    if (r.nextDouble() >= factor) {
+                        continue;
+                    }
+
+                    int x = w << 6 | bit;
+                    int count = 0;
+                    if (getWall(y, x, NORTH) && y != 0) {
+                        canRemove[count++] = NORTH;
                     }
-                    if (c.getWall(EAST) && c.x != width - 1) {
-                        canRemove.add(EAST);
+                    if (getWall(y, x, EAST) && x != width - 1) {
+                        canRemove[count++] = EAST;
                     }
-                    if (c.getWall(SOUTH) && c.y != height - 1) {
-                        canRemove.add(SOUTH);
+                    if (getWall(y, x, SOUTH) && y != height - 1) {
+                        canRemove[count++] = SOUTH;
                     }
-                    if (c.getWall(WEST) && c.x != 0) {
-                        canRemove.add(WEST);
+                    if (getWall(y, x, WEST) && x != 0) {
+                        canRemove[count++] = WEST;
                     }
-                    int toRemove = canRemove.get(r.nextInt(canRemove.size()));
-                    c.setWall(toRemove, false);
-                    switch (toRemove) {
-                        case NORTH:
-                            maze[c.y - 1][c.x].setWall(SOUTH, false);
-                            break;
-                        case EAST:
-                            maze[c.y][c.x + 1].setWall(WEST, false);
-                            break;
-                        case SOUTH:
-                            maze[c.y + 1][c.x].setWall(NORTH, false);
-                            break;
-                        case WEST:
-                            maze[c.y][c.x - 1].setWall(EAST, false);
-                            break;
+                    int toRemove = canRemove[r.nextInt(count)];
+                    openPassage(y, x, toRemove);
+                    braided++;
+                    if (toRemove == EAST && bit < 63 && !isDeadEnd(y, x + 1)) {
+                        dead &= ~(2L << bit);
                     }
                 }
             }
         }
+        return braided;
+    }
+
+    /**
+     * Opens both sides of the wall between a cell and its neighbor without
+     * logging the change.
+     *
+     * @param r   the row of the cell
+     * @param c   the column of the cell
+     * @param dir the direction of the neighbor
+     */
+    void openPassage(int r, int c, int dir) {
+        setBit(dir, r, c, false);
+        setBit(Cell.opposite(dir), r + dy(dir), c + dx(dir), false);
+    }
+
+    /**
+     * The list of cells the Growing Tree algorithm picks from. Cells are only
+     * ever added to the end, and the list supports getting and removing the
+     * cell at any index in logarithmic time, which keeps generating large
+     * mazes fast while picking exactly the same cells as an ArrayList would.
+     */
+    private static final class CellList {
+
+        /**
+         * Every cell that was ever added, in order
+         */
+        private final int[] cells;
+
+        /**
+         * A Fenwick tree counting which of the added cells are still present
+         */
+        private final int[] tree;
+
+        /**
+         * The largest power of two not above the capacity
+         */
+        private final int topBit;
+
+        /**
+         * The amount of cells that were ever added
+         */
+        private int added = 0;
+
+        /**
+         * The amount of cells that are present
+         */
+        private int size = 0;
+
+        /**
+         * Creates a new CellList.
+         *
+         * @param capacity the most cells that will ever be added
+         */
+        CellList(int capacity) {
+            cells = new int[capacity];
+            tree = new int[capacity + 1];
+            topBit = Integer.highestOneBit(capacity);
+        }
+
+        /**
+         * Removes every cell from this list, so that it can be used again.
+         */
+        void clear() {
+            Arrays.fill(tree, 0);
+            added = size = 0;
+        }
+
+        /**
+         * Adds a cell to the end of this list.
+         *
+         * @param cell the cell to add
+         */
+        void add(int cell) {
+            cells[added++] = cell;
+            for (int i = added; i < tree.length; i += i & -i) {
+                tree[i]++;
+            }
+            size++;
+        }
+
+        /**
+         * Returns the position in {@link #cells} of the cell at the given
+         * index of this list
+         *
+         * @param idx the index of the cell
+         * @return the position of the cell
+         */
+        private int find(int idx) {
+            // the largest position whose prefix count is at most idx
+            int pos = 0, remaining = idx;
+            for (int step = topBit; step > 0; step >>>= 1) {
+                int next = pos + step;
+                if (next < tree.length && tree[next] <= remaining) {
+                    pos = next;
+                    remaining -= tree[next];
+                }
+            }
+            return pos;
+        }
+
+        /**
+         * Returns the cell at the given index
+         *
+         * @param idx the index of the cell
+         * @return the cell at the given index
+         */
+        int get(int idx) {
+            return cells[find(idx)];
+        }
+
+        /**
+         * Removes the cell at the given index.
+         *
+         * @param idx the index of the cell
+         */
+        void remove(int idx) {
+            for (int i = find(idx) + 1; i < tree.length; i += i & -i) {
+                tree[i]--;
+            }
+            size--;
+        }
+
+        /**
+         * Returns the amount of cells in this list
+         *
+         * @return the amount of cells in this list
+         */
+        int size() {
+            return size;
+        }
     }
 
     @Override
     public void paint(Graphics g) {
+        paint(g, 0, height);
+    }
+
+    /**
+     * Paints the given rows of this maze, where the rest of it would be if it
+     * were painted whole. Walls are painted 3 pixels wide, so they reach a
+     * little into the rows around the given ones. The terrain and the
+     * overlay, if any, are painted under them.
+     *
+     * @param g       the Graphics object to paint with
+     * @param fromRow the first row to paint
+     * @param toRow   the row after the last one to paint
+     */
+    public void paint(Graphics g, int fromRow, int toRow) {
         Graphics2D g2D = (Graphics2D) g;
+        paintGround(g2D, fromRow, toRow);
+        paintWalls(g2D, fromRow, toRow, 0, width);
+    }
+
+    /**
+     * Paints this maze whole with the given walls instead of the ones it has
+     * now, so that a thread can paint it while another changes its walls.
+     * The walls must have been made from this maze by the thread that
+     * changes them.
+     *
+     * @param g2D   the Graphics2D object to paint with
+     * @param walls the walls of the whole maze
+     */
+    public void paint(Graphics2D g2D, WallGeometry walls) {
+        if (walls.getMaze() != this) {
+            throw new IllegalArgumentException("The walls are of another maze");
+        }
+        paintGround(g2D, 0, height);
+        paintSegments(g2D, walls, 0, height, 0, width);
+    }
+
+    /**
+     * Paints the terrain and the overlay, if any, of the given rows.
+     *
+     * @param g2D     the Graphics2D object to paint with
+     * @param fromRow the first row to paint
+     * @param toRow   the row after the last one to paint
+     */
+    private void paintGround(Graphics2D g2D, int fromRow, int toRow) {
+        Terrain ground = terrain;
+        if (ground != null) {
+            ground.paint(g2D, fromRow, toRow);
+        }
+        VisitHeatmap heatmap = overlay;
+        if (heatmap != null) {
+            heatmap.paint(g2D, overlayTrack, fromRow, toRow);
+        }
+    }
+
+    /**
+     * Paints the walls of the cells in the given rows and columns, where they
+     * would be if this maze were painted whole. The walls are drawn as
+     * {@link WallGeometry merged segments}, which are kept between calls
+     * until the walls change.
+     *
+     * @param g2D     the Graphics2D object to paint with
+     * @param fromRow the first row to paint
+     * @param toRow   the row after the last one to paint
+     * @param fromCol the first column to paint
+     * @param toCol   the column after the last one to paint
+     */
+    public void paintWalls(Graphics2D g2D, int fromRow, int toRow, int fromCol, int toCol) {
+        WallGeometry segments;
+        if ((long) height * width <= MAX_GEOMETRY_CELLS) {
+            segments = geometry;
+            if (segments == null || segments.getVersion() != version) {
+                segments = new WallGeometry(this, 0, height, 0, width);
+                geometry = segments;
+            }
+        } else {
+            segments = new WallGeometry(this, fromRow, toRow, fromCol, toCol);
+        }
+        paintSegments(g2D, segments, fromRow, toRow, fromCol, toCol);
+    }
+
+    /**
+     * Paints the given walls of the cells in the given rows and columns, 3
+     * pixels wide and black.
+     *
+     * @param g2D      the Graphics2D object to paint with
+     * @param segments the walls
+     * @param fromRow  the first row to paint
+     * @param toRow    the row after the last one to paint
+     * @param fromCol  the first column to paint
+     * @param toCol    the column after the last one to paint
+     */
+    private static void paintSegments(Graphics2D g2D, WallGeometry segments,
+                                      int fromRow, int toRow, int fromCol, int toCol) {
         g2D.setStroke(new BasicStroke(3, BasicStroke.CAP_SQUARE,
                 BasicStroke.JOIN_MITER));
-
         g2D.setColor(Color.BLACK);
-        for (int i = 0, y = 0; i < height; i++, y += Cell.WIDTH) {
-            for (int j = 0, x = 0; j < width; j++, x += Cell.WIDTH) {
-                Cell c = maze[i][j];
-                if (c.getWall(NORTH)) {
-                    g2D.drawLine(x, y, x + Cell.WIDTH, y);
-                }
-                if (c.getWall(EAST)) {
-                    g2D.drawLine(x + Cell.WIDTH, y, x + Cell.WIDTH,
-                            y + Cell.WIDTH);
-                }
-                if (c.getWall(SOUTH)) {
-                    g2D.drawLine(x, y + Cell.WIDTH, x + Cell.WIDTH,
-                            y + Cell.WIDTH);
-                }
-                if (c.getWall(WEST)) {
-                    g2D.drawLine(x, y, x, y + Cell.WIDTH);
-                }
-            }
+        segments.paint(g2D, fromRow, toRow, fromCol, toCol);
+    }
+
+    /**
+     * Lays terrain over this maze, which stays until the maze is generated
+     * again. Terrain is not a wall change, so it does not change the
+     * {@link #getVersion() version}; anything derived from the costs should
+     * remember the terrain it was derived from.
+     *
+     * @param terrain the terrain, of the same size, or null for none
+     */
+    public void setTerrain(Terrain terrain) {
+        if (terrain != null && (terrain.getHeight() != height || terrain.getWidth() != width)) {
+            throw new IllegalArgumentException("The terrain is for mazes of " + terrain.getHeight() + "x"
+                    + terrain.getWidth() + ", not " + height + "x" + width);
+        }
+        this.terrain = terrain;
+    }
+
+    /**
+     * Returns the terrain of this maze
+     *
+     * @return the terrain, or null if every cell is floor
+     */
+    public Terrain getTerrain() {
+        return terrain;
+    }
+
+    /**
+     * Sets the heatmap whose visits are shaded under the walls when this maze
+     * is painted.
+     *
+     * @param heatmap the heatmap, of mazes of the same size, or null for none
+     * @param track   the track to shade, or {@link VisitHeatmap#ALL}
+     */
+    public void setOverlay(VisitHeatmap heatmap, int track) {
+        if (heatmap != null && (heatmap.getHeight() != height || heatmap.getWidth() != width)) {
+            throw new IllegalArgumentException("The heatmap is for mazes of " + heatmap.getHeight() + "x"
+                    + heatmap.getWidth() + ", not " + height + "x" + width);
         }
+        overlayTrack = track;
+        overlay = heatmap;
     }
 
     /**
@@ -220,7 +747,354 @@ public final class Maze extends Component {
      * @return the cell at the given row and column
      */
     public Cell getCell(int r, int c) {
-        return maze[r][c];
+        if (r < 0 || c < 0 || r >= height || c >= width) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + r
+                    + ", " + c);
+        }
+        return new Cell(this, c, r);
+    }
+
+    /**
+     * Returns the solidity of the given wall of the given cell
+     *
+     * @param r    the row of the cell
+     * @param c    the column of the cell
+     * @param wall the wall to get
+     * @return the solidity of the given wall
+     */
+    public boolean getWall(int r, int c, int wall) {
+        return (getWord(wall, index(r, c >>> 6)) & 1L << c) != 0;
+    }
+
+    /**
+     * Sets the given wall of the given cell to the given solidity. Only this
+     * side of the wall is changed, not the side of the neighboring cell; see
+     * {@link #setPassage(int, int, int, boolean)} to change both. A change is
+     * recorded in the change log if the wall was not already that solid.
+     *
+     * @param r     the row of the cell
+     * @param c     the column of the cell
+     * @param wall  the wall to set
+     * @param solid whether the wall should be solid
+     */
+    public void setWall(int r, int c, int wall, boolean solid) {
+        if (getWall(r, c, wall) == solid) {
+            return;
+        }
+        setBit(wall, r, c, solid);
+        version++;
+        changes[(int) (version % CHANGE_LOG_SIZE)] = ((long) r * width + c) << 3 | wall << 1 | (solid ? 1 : 0);
+    }
+
+    /**
+     * Opens or closes the passage between the given cell and its neighbor in
+     * the given direction, changing both sides of the wall.
+     *
+     * @param r     the row of the cell
+     * @param c     the column of the cell
+     * @param wall  the direction of the neighbor
+     * @param solid whether the wall should be solid
+     */
+    public void setPassage(int r, int c, int wall, boolean solid) {
+        int nr = r + dy(wall), nc = c + dx(wall);
+        if (nr < 0 || nc < 0 || nr >= height || nc >= width) {
+            throw new IllegalArgumentException("The wall " + wall + " of (" + r + ", " + c
+                    + ") is on the edge of the maze");
+        }
+        setWall(r, c, wall, solid);
+        setWall(nr, nc, Cell.opposite(wall), solid);
+    }
+
+    /**
+     * Returns the amount of wall changes made to this maze. Anything derived
+     * from the walls can remember the version it was derived at, and later
+     * catch up with {@link #getChange(long, int[])}.
+     *
+     * @return the version of the walls
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the version this maze was last generated at. The walls have
+     * not changed since it was generated while this is its
+     * {@link #getVersion() version}.
+     *
+     * @return the version of the walls as they were generated
+     */
+    public long getGeneratedVersion() {
+        return generatedAt;
+    }
+
+    /**
+     * Determines whether every wall change made after the given version can
+     * still be looked up. If not, whatever was derived at that version has to
+     * be rebuilt from scratch, because the maze was regenerated or too many
+     * changes have been made since.
+     *
+     * @param since the version to catch up from
+     * @return whether the changes since then can be looked up
+     */
+    public boolean hasChangesSince(long since) {
+        return since >= generatedAt && version - since <= CHANGE_LOG_SIZE;
+    }
+
+    /**
+     * Looks up a wall change.
+     *
+     * @param version the version the change made, which must be after a
+     *                version that {@link #hasChangesSince(long)} is true for
+     * @param out     the array to put the row, column, wall and solidity (1
+     *                or 0) of the change in
+     */
+    public void getChange(long version, int[] out) {
+        if (version > this.version || !hasChangesSince(version - 1)) {
+            throw new IllegalArgumentException("Change " + version + " is not known");
+        }
+        long change = changes[(int) (version % CHANGE_LOG_SIZE)];
+        long cell = change >>> 3;
+        out[0] = (int) (cell / width);
+        out[1] = (int) (cell % width);
+        out[2] = (int) (change >>> 1 & 3);
+        out[3] = (int) (change & 1);
+    }
+
+    /**
+     * Returns the walls of the given cell as a mask with the bit
+     * {@code 1 << direction} set for each solid wall
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @return the mask of the solid walls of the cell
+     */
+    public int getWalls(int r, int c) {
+        long idx = index(r, c >>> 6);
+        return (int) (getWord(NORTH, idx) >>> c & 1) << NORTH
+                | (int) (getWord(EAST, idx) >>> c & 1) << EAST
+                | (int) (getWord(SOUTH, idx) >>> c & 1) << SOUTH
+                | (int) (getWord(WEST, idx) >>> c & 1) << WEST;
+    }
+
+    /**
+     * Returns a word of the given wall plane: the walls of 64 consecutive
+     * cells of a row, where bit i belongs to column {@code word * 64 + i}.
+     * The bits past the last column are always set.
+     *
+     * @param wall the wall plane to read
+     * @param r    the row
+     * @param word the index of the word in the row
+     * @return the word of the wall plane
+     */
+    public long getWallWord(int wall, int r, int word) {
+        return getWord(wall, index(r, word));
+    }
+
+    /**
+     * Returns a word of the given wall plane by its index in the plane
+     *
+     * @param wall the wall plane to read
+     * @param idx  the index of the word, {@code row * wordsPerRow + word}
+     * @return the word of the wall plane
+     */
+    long getWord(int wall, long idx) {
+        return offHeap == null ? walls[wall][(int) idx] : offHeap.get(wall, idx);
+    }
+
+    /**
+     * Returns the index of a word in a wall plane
+     *
+     * @param r    the row
+     * @param word the index of the word in the row
+     * @return the index of the word in the plane
+     */
+    private long index(int r, int word) {
+        return (long) r * wordsPerRow + word;
+    }
+
+    /**
+     * Returns the given wall plane itself, for searches that scan it
+     *
+     * @param wall the wall plane to get
+     * @return the wall plane, which must not be changed
+     * @throws IllegalStateException if the walls are kept off the heap
+     */
+    long[] getWallPlane(int wall) {
+        if (offHeap != null) {
+            throw new IllegalStateException("The walls of this maze are off the heap");
+        }
+        return walls[wall];
+    }
+
+    /**
+     * Determines whether the walls of this maze are kept off the heap
+     *
+     * @return whether the walls are off the heap
+     */
+    public boolean isOffHeap() {
+        return offHeap != null;
+    }
+
+    /**
+     * Returns the amount of words each row takes up in a wall plane
+     *
+     * @return the amount of words per row
+     */
+    public int getWordsPerRow() {
+        return wordsPerRow;
+    }
+
+    /**
+     * Determines whether the given cell is a dead end, which means that it
+     * has three or more solid walls.
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @return whether the cell is a dead end
+     * @see #getDeadEndWord(int, int)
+     */
+    public boolean isDeadEnd(int r, int c) {
+        return Integer.bitCount(getWalls(r, c)) >= 3;
+    }
+
+    /**
+     * Finds which of 64 consecutive cells of a row are dead ends, all at
+     * once: a cell has three or more solid walls when two opposite walls are
+     * both solid and so is one of the other two.
+     *
+     * @param r    the row
+     * @param word the index of the word in the row
+     * @return the dead ends, where bit i belongs to column
+     * {@code word * 64 + i}; the bits past the last column are clear
+     */
+    public long getDeadEndWord(int r, int word) {
+        long idx = index(r, word);
+        long n = getWord(NORTH, idx), e = getWord(EAST, idx), s = getWord(SOUTH, idx), w = getWord(WEST, idx);
+        return (n & s & (e | w) | e & w & (n | s)) & validBits(word);
+    }
+
+    /**
+     * Counts the dead ends of this maze a word at a time.
+     *
+     * @return the amount of cells with three or more solid walls
+     */
+    public long countDeadEnds() {
+        long count = 0;
+        for (int r = 0; r < height; r++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                count += Long.bitCount(getDeadEndWord(r, w));
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Finds a wall whose two sides disagree, or a wall on the edge of the
+     * maze that is open. Each word of cells is compared with the words of
+     * its neighbors shifted into line, so 64 cells are checked at a time.
+     * Walls changed one side at a time with
+     * {@link #setWall(int, int, int, boolean)} can leave a maze like this.
+     *
+     * @return the index ({@code row * width + column}) of the first cell with
+     * such a wall, or -1 if every wall is consistent
+     */
+    public long findAsymmetry() {
+        return findAsymmetry(0, height);
+    }
+
+    /**
+     * Finds a wall whose two sides disagree, or an open wall on the edge of
+     * the maze, in the given rows.
+     *
+     * @param fromRow the first row to check
+     * @param toRow   the row after the last row to check
+     * @return the index of the first cell with such a wall, or -1
+     * @see #findAsymmetry()
+     */
+    long findAsymmetry(int fromRow, int toRow) {
+        int last = wordsPerRow - 1;
+        for (int r = fromRow; r < toRow; r++) {
+            for (int w = 0; w < wordsPerRow; w++) {
+                long idx = index(r, w);
+                long north = getWord(NORTH, idx), east = getWord(EAST, idx),
+                        south = getWord(SOUTH, idx), west = getWord(WEST, idx);
+                // the sides facing this word, shifted into line with it; the
+                // edges of the maze stand in as solid walls
+                long above = r > 0 ? getWord(SOUTH, idx - wordsPerRow) : -1L;
+                long below = r < height - 1 ? getWord(NORTH, idx + wordsPerRow) : -1L;
+                long right = west >>> 1 | (w < last ? getWord(WEST, idx + 1) << 63 : 0);
+                if (w == last) {
+                    right |= 1L << (width - 1);
+                }
+                long left = east << 1 | (w > 0 ? getWord(EAST, idx - 1) >>> 63 : 1);
+
+                long bad = (north ^ above | south ^ below | east ^ right | west ^ left) & validBits(w);
+                if (bad != 0) {
+                    return (long) r * width + (w << 6) + Long.numberOfTrailingZeros(bad);
+                }
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the bits of a word of a row that belong to cells
+     *
+     * @param word the index of the word in the row
+     * @return the bits that belong to cells
+     */
+    private long validBits(int word) {
+        int bits = width - (word << 6);
+        return bits >= 64 ? -1L : (1L << bits) - 1;
+    }
+
+    /**
+     * Sets the bit of the given cell in the given wall plane without logging
+     * the change
+     *
+     * @param wall the wall plane to change
+     * @param r    the row of the cell
+     * @param c    the column of the cell
+     * @param set  whether the bit should be set
+     */
+    private void setBit(int wall, int r, int c, boolean set) {
+        long idx = index(r, c >>> 6);
+        long word = getWord(wall, idx);
+        word = set ? word | 1L << c : word & ~(1L << c);
+        if (offHeap == null) {
+            walls[wall][(int) idx] = word;
+        } else {
+            offHeap.set(wall, idx, word);
+        }
+    }
+
+    /**
+     * Returns the seed that the current layout of this maze was generated from
+     *
+     * @return the seed of this maze
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * Returns the amount of rows in this maze. This is not
+     * {@link Component#getHeight()}, which is in pixels.
+     *
+     * @return the height of this maze, in cells
+     */
+    public int getRows() {
+        return height;
+    }
+
+    /**
+     * Returns the amount of columns in this maze. This is not
+     * {@link Component#getWidth()}, which is in pixels.
+     *
+     * @return the width of this maze, in cells
+     */
+    public int getColumns() {
+        return width;
     }
 
     /**
@@ -0,0 +1,406 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes a maze of any size to a grayscale PNG image, as it would be painted
+ * by {@link Maze#paint(Graphics)}, without ever holding the whole image in
+ * memory. The image is cut into horizontal strips that are painted, filtered
+ * and compressed in parallel, each into deflate blocks that stand on their
+ * own, and written out in order as they are done. Memory use is bounded by a
+ * few strips per worker, however big the maze is.
+ *
+ * @author Jed Wang
+ */
+public final class MazeExporter {
+
+    /**
+     * The blank space around the maze, in pixels
+     */
+    public static final int MARGIN = 10;
+
+    /**
+     * About how many pixels each strip holds
+     */
+    private static final int STRIP_PIXELS = 1 << 23;
+
+    /**
+     * The most strips waiting to be written per worker
+     */
+    private static final int QUEUED_PER_WORKER = 2;
+
+    /**
+     * The eight bytes every PNG image starts with
+     */
+    private static final byte[] SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+
+    /**
+     * The largest prime below 2<sup>16</sup>, which Adler-32 sums are taken
+     * modulo
+     */
+    private static final int ADLER_BASE = 65521;
+
+    /**
+     * PNG filter types: none, and the difference from the row above
+     */
+    private static final byte FILTER_NONE = 0, FILTER_UP = 2;
+
+    /**
+     * A strip of the image, compressed
+     */
+    private static final class Strip {
+
+        /**
+         * The compressed strip, in its first {@link #length} bytes
+         */
+        private final byte[] data;
+
+        /**
+         * The amount of compressed bytes
+         */
+        private final int length;
+
+        /**
+         * The Adler-32 checksum of the strip before it was compressed
+         */
+        private final long adler;
+
+        /**
+         * The amount of bytes the strip had before it was compressed
+         */
+        private final long rawLength;
+
+        /**
+         * Creates a new Strip.
+         *
+         * @param data      the compressed strip
+         * @param length    the amount of compressed bytes
+         * @param adler     the checksum of the strip before compression
+         * @param rawLength the amount of bytes before compression
+         */
+        private Strip(byte[] data, int length, long adler, long rawLength) {
+            this.data = data;
+            this.length = length;
+            this.adler = adler;
+            this.rawLength = rawLength;
+        }
+    }
+
+    /**
+     * The buffers a worker paints and compresses strips with
+     */
+    private final class Worker {
+
+        /**
+         * The image strips are painted in
+         */
+        private final BufferedImage image = new BufferedImage(imageWidth, stripHeight,
+                BufferedImage.TYPE_BYTE_GRAY);
+
+        /**
+         * The filtered rows of a strip, each led by its filter type
+         */
+        private final byte[] raw = new byte[(imageWidth + 1) * stripHeight];
+
+        /**
+         * The compressor, which writes raw deflate blocks
+         */
+        private final Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+
+        /**
+         * Paints, filters and compresses a strip.
+         *
+         * @param index the index of the strip
+         * @return the compressed strip
+         */
+        private Strip encode(int index) {
+            int top = index * stripHeight, rows = Math.min(stripHeight, imageHeight - top);
+
+            Graphics2D g2D = image.createGraphics();
+            g2D.setColor(Color.WHITE);
+            g2D.fillRect(0, 0, imageWidth, stripHeight);
+            g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+            g2D.translate(MARGIN, MARGIN - top);
+            // the rows of cells under the strip, and one more on either side
+            // for the walls that reach into it
+            int fromRow = Math.max(0, Math.floorDiv(top - MARGIN, Cell.WIDTH) - 1);
+            int toRow = Math.min(maze.getRows(), Math.floorDiv(top + rows - MARGIN, Cell.WIDTH) + 2);
+            if (fromRow < toRow) {
+                maze.paint(g2D, fromRow, toRow);
+            }
+            g2D.dispose();
+
+            byte[] pixels = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+            int length = 0;
+            for (int y = 0; y < rows; y++) {
+                int row = y * imageWidth;
+                // the first row of a strip does not look at the strip above,
+                // so that strips can be filtered independently
+                if (y == 0) {
+                    raw[length++] = FILTER_NONE;
+                    System.arraycopy(pixels, row, raw, length, imageWidth);
+                    length += imageWidth;
+                } else {
+                    raw[length++] = FILTER_UP;
+                    for (int x = 0; x < imageWidth; x++) {
+                        raw[length++] = (byte) (pixels[row + x] - pixels[row - imageWidth + x]);
+                    }
+                }
+            }
+
+            Adler32 adler = new Adler32();
+            adler.update(raw, 0, length);
+            return compress(length, index == stripCount - 1, adler.getValue());
+        }
+
+        /**
+         * Compresses the filtered rows of a strip. Every strip but the last
+         * ends with a full flush, which aligns it to a byte and lets the next
+         * strip be compressed without it; the last one ends the stream.
+         *
+         * @param length the amount of filtered bytes
+         * @param last   whether this is the last strip
+         * @param adler  the checksum of the filtered bytes
+         * @return the compressed strip
+         */
+        private Strip compress(int length, boolean last, long adler) {
+            deflater.reset();
+            deflater.setInput(raw, 0, length);
+            if (last) {
+                deflater.finish();
+            }
+
+            byte[] out = new byte[Math.max(1024, length / 8)];
+            int size = 0;
+            while (true) {
+                if (size == out.length) {
+                    out = Arrays.copyOf(out, out.length * 2);
+                }
+                size += deflater.deflate(out, size, out.length - size,
+                        last ? Deflater.NO_FLUSH : Deflater.FULL_FLUSH);
+                // a flush is done once it leaves room in the buffer
+                if (last ? deflater.finished() : size < out.length && deflater.needsInput()) {
+                    break;
+                }
+            }
+            return new Strip(out, size, adler, length);
+        }
+    }
+
+    /**
+     * The maze to export
+     */
+    private final Maze maze;
+
+    /**
+     * The dimensions of the image
+     */
+    private final int imageWidth, imageHeight;
+
+    /**
+     * The height of a strip, in pixels
+     */
+    private final int stripHeight;
+
+    /**
+     * The amount of strips
+     */
+    private final int stripCount;
+
+    /**
+     * Creates a new MazeExporter.
+     *
+     * @param maze the maze to export
+     */
+    public MazeExporter(Maze maze) {
+        this.maze = maze;
+        long width = (long) maze.getColumns() * Cell.WIDTH + 2 * MARGIN,
+                height = (long) maze.getRows() * Cell.WIDTH + 2 * MARGIN;
+        if (width > Integer.MAX_VALUE / 2 || height > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("The maze is too big to export: "
+                    + maze.getRows() + "x" + maze.getColumns());
+        }
+        imageWidth = (int) width;
+        imageHeight = (int) height;
+        // whole rows of cells, so that strips look alike
+        long stripCells = Math.max(1, STRIP_PIXELS / (width * Cell.WIDTH));
+        stripHeight = (int) Math.min(imageHeight, stripCells * Cell.WIDTH);
+        stripCount = (imageHeight + stripHeight - 1) / stripHeight;
+    }
+
+    /**
+     * Writes the image of the maze to the given file, replacing it if it
+     * already exists.
+     *
+     * @param path    the file to write to
+     * @param workers the amount of threads that paint and compress strips
+     * @throws IOException          if the file cannot be written
+     * @throws InterruptedException if interrupted while waiting for a strip
+     */
+    public void export(Path path, int workers) throws IOException, InterruptedException {
+        ThreadLocal<Worker> local = ThreadLocal.withInitial(Worker::new);
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "maze-exporter");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            channel.write(ByteBuffer.wrap(SIGNATURE));
+
+            ByteBuffer header = ByteBuffer.allocate(13);
+            header.putInt(imageWidth).putInt(imageHeight);
+            // 8 bit grayscale, deflate, adaptive filtering, not interlaced
+            header.put((byte) 8).put((byte) 0).put((byte) 0).put((byte) 0).put((byte) 0);
+            writeChunk(channel, "IHDR", header.array(), header.position());
+
+            // the zlib header: deflate with a 32K window and default compression
+            writeChunk(channel, "IDAT", new byte[]{0x78, (byte) 0x9C}, 2);
+
+            Deque<Future<Strip>> pending = new ArrayDeque<>();
+            int next = 0;
+            long adler = 1;
+            while (next < stripCount || !pending.isEmpty()) {
+                while (next < stripCount && pending.size() < workers * QUEUED_PER_WORKER) {
+                    int index = next++;
+                    pending.add(executor.submit(() -> local.get().encode(index)));
+                }
+
+                Strip strip;
+                try {
+                    strip = pending.remove().get();
+                } catch (ExecutionException e) {
+                    throw new IOException("A strip could not be encoded", e.getCause());
+                }
+                writeChunk(channel, "IDAT", strip.data, strip.length);
+                adler = combineAdler(adler, strip.adler, strip.rawLength);
+            }
+
+            writeChunk(channel, "IDAT", ByteBuffer.allocate(4).putInt((int) adler).array(), 4);
+            writeChunk(channel, "IEND", new byte[0], 0);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Writes a PNG chunk.
+     *
+     * @param channel the channel to write to
+     * @param type    the type of the chunk
+     * @param data    the data of the chunk, in its first {@code length} bytes
+     * @param length  the length of the data
+     * @throws IOException if the chunk cannot be written
+     */
+    private static void writeChunk(FileChannel channel, String type, byte[] data, int length)
+            throws IOException {
+        byte[] typeBytes = type.getBytes(StandardCharsets.US_ASCII);
+        CRC32 crc = new CRC32();
+        crc.update(typeBytes);
+        crc.update(data, 0, length);
+
+        ByteBuffer head = ByteBuffer.allocate(8).putInt(length).put(typeBytes);
+        head.flip();
+        ByteBuffer tail = ByteBuffer.allocate(4).putInt((int) crc.getValue());
+        tail.flip();
+        ByteBuffer[] buffers = {head, ByteBuffer.wrap(data, 0, length), tail};
+        while (tail.hasRemaining()) {
+            channel.write(buffers);
+        }
+    }
+
+    /**
+     * Combines the Adler-32 checksums of two pieces of data into the checksum
+     * of the two one after the other, as zlib's {@code adler32_combine} does.
+     *
+     * @param first       the checksum of the first piece
+     * @param second      the checksum of the second piece
+     * @param secondBytes the length of the second piece
+     * @return the checksum of both pieces
+     */
+    static long combineAdler(long first, long second, long secondBytes) {
+        long rem = secondBytes % ADLER_BASE;
+        long sum1 = first & 0xFFFF;
+        long sum2 = rem * sum1 % ADLER_BASE;
+        sum1 += (second & 0xFFFF) + ADLER_BASE - 1;
+        sum2 += (first >>> 16 & 0xFFFF) + (second >>> 16 & 0xFFFF) + ADLER_BASE - rem;
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum1 >= ADLER_BASE) {
+            sum1 -= ADLER_BASE;
+        }
+        if (sum2 >= (long) ADLER_BASE << 1) {
+            sum2 -= (long) ADLER_BASE << 1;
+        }
+        if (sum2 >= ADLER_BASE) {
+            sum2 -= ADLER_BASE;
+        }
+        return sum1 | sum2 << 16;
+    }
+
+    /**
+     * Returns the width of the image
+     *
+     * @return the width of the image, in pixels
+     */
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    /**
+     * Returns the height of the image
+     *
+     * @return the height of the image, in pixels
+     */
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * Generates a maze and exports it.
+     *
+     * @param args the size of the maze, the file to write to, and optionally
+     *             the seed of the maze (random by default)
+     * @throws IOException          if the file cannot be written
+     * @throws InterruptedException if interrupted while exporting
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 2) {
+            System.err.println("Usage: MazeExporter <size> <file> [seed]");
+            return;
+        }
+        System.setProperty("java.awt.headless", "true");
+        int size = Integer.parseInt(args[0]);
+
+        long start = System.nanoTime();
+        Maze maze = args.length > 2 ? new Maze(size, size, Long.parseLong(args[2])) : new Maze(size, size);
+        System.out.printf("Generated a %dx%d maze in %.1f s%n", size, size, (System.nanoTime() - start) / 1e9);
+
+        start = System.nanoTime();
+        MazeExporter exporter = new MazeExporter(maze);
+        int workers = Runtime.getRuntime().availableProcessors();
+        exporter.export(Paths.get(args[1]), workers);
+        System.out.printf("Exported a %dx%d image in %.1f s with %d workers%n", exporter.getImageWidth(),
+                exporter.getImageHeight(), (System.nanoTime() - start) / 1e9, workers);
+    }
+}
@@ -0,0 +1,117 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * A bounded pool of mazes generated in the background, so that a new game can
+ * start without waiting for its maze to be generated. The pool only generates
+ * mazes when it is asked to {@link #fill()} it, so the caller decides when the
+ * work happens, for example while a game-over screen is shown.
+ *
+ * @author Jed Wang
+ */
+public final class MazePool implements AutoCloseable {
+
+    /**
+     * The dimensions of the mazes
+     */
+    private final int height, width;
+
+    /**
+     * The most mazes that are kept ready or being generated
+     */
+    private final int capacity;
+
+    /**
+     * The threads that generate the mazes
+     */
+    private final ExecutorService executor;
+
+    /**
+     * The mazes that are ready or being generated, oldest first
+     */
+    private final Deque<CompletableFuture<Maze>> mazes = new ArrayDeque<>();
+
+    /**
+     * Creates a new MazePool. No mazes are generated until it is filled.
+     *
+     * @param height   the height of the mazes
+     * @param width    the width of the mazes
+     * @param capacity the most mazes to keep ready
+     */
+    public MazePool(int height, int width, int capacity) {
+        if (height < 1 || width < 1) {
+            throw new IllegalArgumentException("Invalid dimensions: " + height + "x" + width);
+        }
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        this.height = height;
+        this.width = width;
+        this.capacity = capacity;
+
+        int threads = Math.min(capacity, Runtime.getRuntime().availableProcessors());
+        executor = Executors.newFixedThreadPool(threads, r -> {
+            Thread thread = new Thread(r, "maze-generator");
+            // never keeps the application running
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts generating mazes until the pool holds as many as it can.
+     */
+    public synchronized void fill() {
+        while (mazes.size() < capacity) {
+            mazes.add(generate());
+        }
+    }
+
+    /**
+     * Takes the oldest maze out of the pool. If the pool is empty, a maze
+     * starts being generated for the caller.
+     *
+     * @return the maze, which may still be being generated
+     */
+    public synchronized CompletableFuture<Maze> take() {
+        CompletableFuture<Maze> maze = mazes.poll();
+        return maze == null ? generate() : maze;
+    }
+
+    /**
+     * Returns the amount of mazes in the pool that are ready to be used
+     *
+     * @return the amount of mazes that are ready
+     */
+    public synchronized int getReadyCount() {
+        int ready = 0;
+        for (CompletableFuture<Maze> maze : mazes) {
+            if (maze.isDone() && !maze.isCompletedExceptionally()) {
+                ready++;
+            }
+        }
+        return ready;
+    }
+
+    /**
+     * Starts generating a maze.
+     *
+     * @return the maze being generated
+     */
+    private CompletableFuture<Maze> generate() {
+        return CompletableFuture.supplyAsync(() -> new Maze(height, width), executor);
+    }
+
+    /**
+     * Stops generating mazes. Mazes that were being generated are abandoned.
+     */
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,604 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.IntStream;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Paints views of a maze at any zoom in about the same time, from painting
+ * the walls of a few cells close up to showing a maze of billions of cells
+ * whole. Zoomed out, the maze is drawn from a pyramid of grayscale images in
+ * square tiles of {@link #TILE_SIZE} pixels. The bottom level has
+ * {@link #CELL_PIXELS} pixels per cell, one for the cell and one for the wall
+ * beside it, and is made straight from the walls; each level above has half
+ * the pixels of the one below on each side, every pixel the average of four
+ * below it, so walls fade to gray as they grow too thin to see instead of
+ * flickering. A view is drawn from the sharpest level with no more pixels
+ * than the screen, magnified to the nearest pixel: every pixel on screen
+ * shows one pixel of a tile, which already averages the walls under it, and
+ * a view never needs more than a screenful of tiles however much of the maze
+ * it shows. Scaling smoothly would be several times slower and show nothing
+ * more. Close up, where a cell is at least {@link #VECTOR_CELL_PIXELS} pixels
+ * wide, the walls of the cells in view are painted as
+ * {@link Maze#paint(Graphics)} would.<br>
+ * Tiles are made when a view first needs them, on background threads, with
+ * the four tiles under a tile made in parallel, and the most recently used
+ * of them are kept. Until a tile is ready, the view shows the nearest tile
+ * above it that is. When the walls change, every tile is made again, and
+ * tiles that were being made from the old walls are not kept. A tile that
+ * several threads need at once, such as one under two tiles being made, is
+ * only made by one of them.<br>
+ * A pyramid may be used from any amount of threads.
+ *
+ * @author Jed Wang
+ */
+public final class MazePyramid {
+
+    /**
+     * The side of a tile, in pixels
+     */
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * The pixels per cell on each side at the bottom level
+     */
+    public static final int CELL_PIXELS = 2;
+
+    /**
+     * The fewest pixels per cell on screen at which walls are painted rather
+     * than drawn from tiles
+     */
+    public static final double VECTOR_CELL_PIXELS = 8;
+
+    /**
+     * The gray of a pixel with a wall, and of one without
+     */
+    private static final byte WALL = 0, OPEN = (byte) 0xFF;
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The size of the bottom level, in pixels
+     */
+    private final long imageWidth, imageHeight;
+
+    /**
+     * The amount of levels; the top one fits in a single tile
+     */
+    private final int levels;
+
+    /**
+     * The most tiles kept
+     */
+    private final int maxTiles;
+
+    /**
+     * The tiles that are kept, by {@link #key(int, int, int)}, from the least
+     * to the most recently used
+     */
+    private final Map<Long, BufferedImage> tiles;
+
+    /**
+     * The tiles being made in the background
+     */
+    private final Set<Long> loading = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The tiles being made, by {@link #key(int, int, int)}, for threads that
+     * need them to wait for
+     */
+    private final Map<Long, Making> making = new ConcurrentHashMap<>();
+
+    /**
+     * The version of the walls the tiles were made from, only used while
+     * holding the lock of {@link #tiles}
+     */
+    private long version;
+
+    /**
+     * What to run when a tile made in the background is ready, or null
+     */
+    private volatile Runnable onLoad = null;
+
+    /**
+     * Creates a new MazePyramid. No tiles are made until they are needed.
+     *
+     * @param maze     the maze
+     * @param maxTiles the most tiles to keep, each of which takes
+     *                 {@code TILE_SIZE * TILE_SIZE} bytes
+     */
+    public MazePyramid(Maze maze, int maxTiles) {
+        if (maxTiles < 1) {
+            throw new IllegalArgumentException("Invalid amount of tiles: " + maxTiles);
+        }
+        this.maze = maze;
+        this.maxTiles = maxTiles;
+        imageWidth = (long) maze.getColumns() * CELL_PIXELS + 1;
+        imageHeight = (long) maze.getRows() * CELL_PIXELS + 1;
+        int count = 1;
+        while (Math.max(imageWidth, imageHeight) > (long) TILE_SIZE << (count - 1)) {
+            count++;
+        }
+        levels = count;
+        version = maze.getVersion();
+        tiles = new LinkedHashMap<Long, BufferedImage>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, BufferedImage> eldest) {
+                return size() > MazePyramid.this.maxTiles;
+            }
+        };
+    }
+
+    /**
+     * Paints a view of the maze: a rectangle of the given size in screen
+     * pixels, starting at the origin of the Graphics2D object, that shows the
+     * maze from the given cell position at the given zoom. Tiles that are not
+     * ready yet are asked for, and the view is painted from coarser ones in
+     * the meantime.
+     *
+     * @param g2D        the Graphics2D object to paint with
+     * @param viewWidth  the width of the view, in pixels
+     * @param viewHeight the height of the view, in pixels
+     * @param row        the row at the top edge of the view, which may be
+     *                   fractional
+     * @param col        the column at the left edge of the view
+     * @param cellPixels the pixels per cell on screen
+     * @return whether the view was painted at its full detail
+     */
+    public boolean paint(Graphics2D g2D, int viewWidth, int viewHeight, double row, double col, double cellPixels) {
+        if (!(cellPixels > 0)) {
+            throw new IllegalArgumentException("Invalid zoom: " + cellPixels);
+        }
+        Graphics2D g = (Graphics2D) g2D.create();
+        try {
+            g.clipRect(0, 0, viewWidth, viewHeight);
+            g.setColor(Color.WHITE);
+            g.fillRect(0, 0, viewWidth, viewHeight);
+            if (cellPixels >= VECTOR_CELL_PIXELS) {
+                paintWalls(g, viewWidth, viewHeight, row, col, cellPixels);
+                return true;
+            }
+            return paintTiles(g, viewWidth, viewHeight, row, col, cellPixels);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Paints the walls of the cells in view.
+     *
+     * @param g          the Graphics2D object to paint with
+     * @param viewWidth  the width of the view
+     * @param viewHeight the height of the view
+     * @param row        the row at the top edge
+     * @param col        the column at the left edge
+     * @param cellPixels the pixels per cell on screen
+     */
+    private void paintWalls(Graphics2D g, int viewWidth, int viewHeight, double row, double col,
+                            double cellPixels) {
+        double scale = cellPixels / Cell.WIDTH;
+        g.scale(scale, scale);
+        g.translate(-col * Cell.WIDTH, -row * Cell.WIDTH);
+        // one more cell on every side for the walls that reach into view
+        int fromRow = (int) Math.max(0, Math.floor(row) - 1);
+        int toRow = (int) Math.min(maze.getRows(), Math.ceil(row + viewHeight / cellPixels) + 1);
+        int fromCol = (int) Math.max(0, Math.floor(col) - 1);
+        int toCol = (int) Math.min(maze.getColumns(), Math.ceil(col + viewWidth / cellPixels) + 1);
+        if (fromRow < toRow && fromCol < toCol) {
+            maze.paintWalls(g, fromRow, toRow, fromCol, toCol);
+        }
+    }
+
+    /**
+     * Paints the view from the tiles of the level that suits the zoom.
+     *
+     * @param g          the Graphics2D object to paint with
+     * @param viewWidth  the width of the view
+     * @param viewHeight the height of the view
+     * @param row        the row at the top edge
+     * @param col        the column at the left edge
+     * @param cellPixels the pixels per cell on screen
+     * @return whether every tile was ready
+     */
+    private boolean paintTiles(Graphics2D g, int viewWidth, int viewHeight, double row, double col,
+                               double cellPixels) {
+        checkVersion();
+        // the finest level with at most a pixel per pixel of the view
+        int level = 0;
+        while (level + 1 < levels && (double) CELL_PIXELS / (1 << level) > cellPixels) {
+            level++;
+        }
+        double levelCellPixels = (double) CELL_PIXELS / (1 << level);
+        double scale = cellPixels / levelCellPixels;
+        double left = col * levelCellPixels, top = row * levelCellPixels;
+        long levelWidth = ceilShift(imageWidth, level), levelHeight = ceilShift(imageHeight, level);
+        int fromTx = (int) Math.max(0, Math.floor(left / TILE_SIZE));
+        int toTx = (int) Math.min(ceilShift(levelWidth, 8) - 1, Math.floor((left + viewWidth / scale) / TILE_SIZE));
+        int fromTy = (int) Math.max(0, Math.floor(top / TILE_SIZE));
+        int toTy = (int) Math.min(ceilShift(levelHeight, 8) - 1, Math.floor((top + viewHeight / scale) / TILE_SIZE));
+
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_NEAREST_NEIGHBOR);
+        boolean complete = true;
+        for (int ty = fromTy; ty <= toTy; ty++) {
+            for (int tx = fromTx; tx <= toTx; tx++) {
+                // where the tile goes on screen
+                int x1 = (int) Math.round((tx * (double) TILE_SIZE - left) * scale);
+                int y1 = (int) Math.round((ty * (double) TILE_SIZE - top) * scale);
+                int x2 = (int) Math.round(((tx + 1) * (double) TILE_SIZE - left) * scale);
+                int y2 = (int) Math.round(((ty + 1) * (double) TILE_SIZE - top) * scale);
+                BufferedImage tile = getCached(level, ty, tx);
+                if (tile != null) {
+                    g.drawImage(tile, x1, y1, x2, y2, 0, 0, TILE_SIZE, TILE_SIZE, null);
+                    continue;
+                }
+                complete = false;
+                request(level, ty, tx);
+                // the part of the nearest tile above that covers this one
+                for (int up = 1; level + up < levels; up++) {
+                    BufferedImage above = getCached(level + up, ty >> up, tx >> up);
+                    if (above != null) {
+                        int size = TILE_SIZE >> up;
+                        int sx = (tx & ((1 << up) - 1)) * size, sy = (ty & ((1 << up) - 1)) * size;
+                        g.drawImage(above, x1, y1, x2, y2, sx, sy, sx + Math.max(1, size), sy + Math.max(1, size),
+                                null);
+                        break;
+                    }
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Returns a tile, making it and any tiles under it that are needed if it
+     * is not kept. The tiles under it are made in parallel. If the walls
+     * change while it is made, it shows some of the old walls and is not
+     * kept.
+     *
+     * @param level the level, from 0 at the bottom
+     * @param ty    the row of the tile in its level
+     * @param tx    the column of the tile in its level
+     * @return the tile, in 8-bit gray
+     */
+    public BufferedImage getTile(int level, int ty, int tx) {
+        if (level < 0 || level >= levels || ty < 0 || tx < 0) {
+            throw new IndexOutOfBoundsException("No tile " + ty + ", " + tx + " at level " + level);
+        }
+        return getTile(level, ty, tx, checkVersion());
+    }
+
+    /**
+     * Returns a tile, waiting for it if another thread is making it, or
+     * making it and keeping it if the walls are still those of the given
+     * version.
+     *
+     * @param level the level
+     * @param ty    the row of the tile
+     * @param tx    the column of the tile
+     * @param made  the version of the walls the tile is made from
+     * @return the tile
+     */
+    private BufferedImage getTile(int level, int ty, int tx, long made) {
+        BufferedImage tile = getCached(level, ty, tx);
+        if (tile != null) {
+            return tile;
+        }
+        long key = key(level, ty, tx);
+        Making mine = new Making(made);
+        while (true) {
+            Making other = making.putIfAbsent(key, mine);
+            if (other == null) {
+                break;
+            } else if (other.version == made) {
+                // only waits for tiles below, which never wait for this one
+                return other.tile.join();
+            } else if (other.version > made) {
+                // made from older walls than another thread is, so it is not
+                // kept and not shared
+                return makeTile(level, ty, tx, made);
+            } else if (making.replace(key, other, mine)) {
+                break;
+            }
+        }
+        try {
+            // it may have been kept between looking for it and claiming it
+            tile = getCached(level, ty, tx);
+            if (tile == null) {
+                tile = makeTile(level, ty, tx, made);
+                synchronized (tiles) {
+                    if (version == made && maze.getVersion() == made) {
+                        tiles.put(key, tile);
+                    }
+                }
+            }
+            mine.tile.complete(tile);
+            return tile;
+        } catch (RuntimeException | Error e) {
+            mine.tile.completeExceptionally(e);
+            throw e;
+        } finally {
+            making.remove(key, mine);
+        }
+    }
+
+    /**
+     * Makes a tile from the walls, or from the tiles under it.
+     *
+     * @param level the level
+     * @param ty    the row of the tile
+     * @param tx    the column of the tile
+     * @param made  the version of the walls the tile is made from
+     * @return the tile
+     */
+    private BufferedImage makeTile(int level, int ty, int tx, long made) {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = ((DataBufferByte) tile.getRaster().getDataBuffer()).getData();
+        if (level == 0) {
+            paintBottom(pixels, ty, tx);
+        } else {
+            long tilesWide = ceilShift(ceilShift(imageWidth, level - 1), 8),
+                    tilesHigh = ceilShift(ceilShift(imageHeight, level - 1), 8);
+            BufferedImage[] below = IntStream.range(0, 4).parallel()
+                    .mapToObj(i -> {
+                        int by = ty * 2 + (i >> 1), bx = tx * 2 + (i & 1);
+                        return by < tilesHigh && bx < tilesWide ? getTile(level - 1, by, bx, made) : null;
+                    })
+                    .toArray(BufferedImage[]::new);
+            for (int i = 0; i < 4; i++) {
+                shrink(below[i], pixels, (i >> 1) * (TILE_SIZE / 2), (i & 1) * (TILE_SIZE / 2));
+            }
+        }
+        return tile;
+    }
+
+    /**
+     * Makes a tile of the bottom level from the walls. Cell (r, c) is pixel
+     * {@code (2r + 1, 2c + 1)}, which is open; the pixels beside it on each
+     * side are its walls, and the pixels at the corners are posts, which are
+     * solid when any wall meets them.
+     *
+     * @param pixels the pixels of the tile
+     * @param ty     the row of the tile
+     * @param tx     the column of the tile
+     */
+    private void paintBottom(byte[] pixels, int ty, int tx) {
+        long top = (long) ty * TILE_SIZE, left = (long) tx * TILE_SIZE;
+        for (int y = 0; y < TILE_SIZE; y++) {
+            long py = top + y;
+            int i = (int) (py >> 1);
+            boolean wallRow = (py & 1) == 0;
+            for (int x = 0, at = y * TILE_SIZE; x < TILE_SIZE; x++, at++) {
+                long px = left + x;
+                if (py >= imageHeight || px >= imageWidth) {
+                    pixels[at] = OPEN;
+                    continue;
+                }
+                int j = (int) (px >> 1);
+                boolean wallCol = (px & 1) == 0;
+                boolean solid;
+                if (wallRow && wallCol) {
+                    solid = horizontal(i, j - 1) || horizontal(i, j) || vertical(i - 1, j) || vertical(i, j);
+                } else if (wallRow) {
+                    solid = horizontal(i, j);
+                } else if (wallCol) {
+                    solid = vertical(i, j);
+                } else {
+                    solid = false;
+                }
+                pixels[at] = solid ? WALL : OPEN;
+            }
+        }
+    }
+
+    /**
+     * Returns whether the wall above cell (i, j) is painted, from either side
+     *
+     * @param i the row, up to the height to mean below the last row
+     * @param j the column
+     * @return whether the wall is solid
+     */
+    private boolean horizontal(int i, int j) {
+        if (j < 0 || j >= maze.getColumns()) {
+            return false;
+        }
+        return i < maze.getRows() && maze.getWall(i, j, NORTH) || i > 0 && maze.getWall(i - 1, j, SOUTH);
+    }
+
+    /**
+     * Returns whether the wall to the left of cell (i, j) is painted, from
+     * either side
+     *
+     * @param i the row
+     * @param j the column, up to the width to mean past the last column
+     * @return whether the wall is solid
+     */
+    private boolean vertical(int i, int j) {
+        if (i < 0 || i >= maze.getRows()) {
+            return false;
+        }
+        return j < maze.getColumns() && maze.getWall(i, j, WEST) || j > 0 && maze.getWall(i, j - 1, EAST);
+    }
+
+    /**
+     * Averages every square of four pixels of a tile into one pixel of a
+     * quarter of the tile above.
+     *
+     * @param below  the tile below, or null if it is past the edge of the
+     *               maze
+     * @param pixels the pixels of the tile above
+     * @param top    the first row of the quarter
+     * @param left   the first column of the quarter
+     */
+    private static void shrink(BufferedImage below, byte[] pixels, int top, int left) {
+        int half = TILE_SIZE / 2;
+        if (below == null) {
+            for (int y = 0; y < half; y++) {
+                int at = (top + y) * TILE_SIZE + left;
+                Arrays.fill(pixels, at, at + half, OPEN);
+            }
+            return;
+        }
+        byte[] from = ((DataBufferByte) below.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < half; y++) {
+            int at = (top + y) * TILE_SIZE + left, src = 2 * y * TILE_SIZE;
+            for (int x = 0; x < half; x++, at++, src += 2) {
+                int sum = (from[src] & 0xFF) + (from[src + 1] & 0xFF)
+                        + (from[src + TILE_SIZE] & 0xFF) + (from[src + TILE_SIZE + 1] & 0xFF);
+                pixels[at] = (byte) ((sum + 2) >> 2);
+            }
+        }
+    }
+
+    /**
+     * Makes a tile in the background, unless it is already being made.
+     *
+     * @param level the level
+     * @param ty    the row of the tile
+     * @param tx    the column of the tile
+     */
+    private void request(int level, int ty, int tx) {
+        long key = key(level, ty, tx);
+        if (!loading.add(key)) {
+            return;
+        }
+        CompletableFuture.runAsync(() -> getTile(level, ty, tx)).whenComplete((ignored, e) -> {
+            loading.remove(key);
+            if (e != null) {
+                e.printStackTrace();
+            }
+            Runnable listener = onLoad;
+            if (listener != null) {
+                listener.run();
+            }
+        });
+    }
+
+    /**
+     * Returns a tile if it is kept
+     *
+     * @param level the level
+     * @param ty    the row of the tile
+     * @param tx    the column of the tile
+     * @return the tile, or null
+     */
+    private BufferedImage getCached(int level, int ty, int tx) {
+        synchronized (tiles) {
+            return tiles.get(key(level, ty, tx));
+        }
+    }
+
+    /**
+     * Forgets every tile if the walls have changed since they were made.
+     *
+     * @return the version of the walls now
+     */
+    private long checkVersion() {
+        synchronized (tiles) {
+            long now = maze.getVersion();
+            if (now != version) {
+                tiles.clear();
+                version = now;
+            }
+            return now;
+        }
+    }
+
+    /**
+     * Sets what to run whenever a tile that a view asked for is ready, such
+     * as painting the view again. It is run on the thread that made the tile.
+     *
+     * @param onLoad what to run, or null
+     */
+    public void setOnLoad(Runnable onLoad) {
+        this.onLoad = onLoad;
+    }
+
+    /**
+     * Returns the amount of levels
+     *
+     * @return the amount of levels; the top one is a single tile
+     */
+    public int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Returns the amount of tiles kept
+     *
+     * @return the amount of tiles kept
+     */
+    public int getTileCount() {
+        synchronized (tiles) {
+            return tiles.size();
+        }
+    }
+
+    /**
+     * Returns the maze
+     *
+     * @return the maze
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * A tile being made
+     */
+    private static final class Making {
+
+        /**
+         * The version of the walls it is made from
+         */
+        private final long version;
+
+        /**
+         * The tile, once it is made
+         */
+        private final CompletableFuture<BufferedImage> tile = new CompletableFuture<>();
+
+        /**
+         * Creates a new Making.
+         *
+         * @param version the version of the walls the tile is made from
+         */
+        private Making(long version) {
+            this.version = version;
+        }
+    }
+
+    /**
+     * Packs the position of a tile into a key.
+     *
+     * @param level the level
+     * @param ty    the row of the tile
+     * @param tx    the column of the tile
+     * @return the key
+     */
+    private static long key(int level, int ty, int tx) {
+        return (long) level << 58 | (long) ty << 29 | tx;
+    }
+
+    /**
+     * Divides by a power of two, rounding up.
+     *
+     * @param value the value
+     * @param shift the power of two
+     * @return the value divided by {@code 2^shift}, rounded up
+     */
+    private static long ceilShift(long value, int shift) {
+        return (value + (1L << shift) - 1) >> shift;
+    }
+}
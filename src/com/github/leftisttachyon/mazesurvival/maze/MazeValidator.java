@@ -0,0 +1,367 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Checks that a maze is well formed: both sides of every wall agree, the
+ * edges are closed, and every cell can be reached from every other one.<br>
+ * The maze is cut into square tiles that are checked in parallel. Each tile
+ * joins its cells with a union-find over a small array of its own and then
+ * keeps only the labels of the cells along its edges, so memory does not grow
+ * with the cells of the maze but with the cells along tile edges. The tiles
+ * are then joined along their shared edges with a second union-find over the
+ * regions of all the tiles. A maze of 100 million cells needs a few hundred
+ * kilobytes per thread and a few megabytes for the edges.<br>
+ * Run with assertions enabled, every maze checks itself after it is
+ * generated.
+ *
+ * @author Jed Wang
+ */
+public final class MazeValidator {
+
+    /**
+     * The side of a tile, in cells; a multiple of 64 so that tiles start at
+     * the start of a word
+     */
+    public static final int TILE = 256;
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The amount of rows and columns of tiles
+     */
+    private final int tileRows, tileCols;
+
+    /**
+     * The region of each cell along the top, bottom, left and right edge of
+     * each tile, numbered within the tile
+     */
+    private final int[][] top, bottom, left, right;
+
+    /**
+     * The amount of regions in each tile
+     */
+    private final int[] regions;
+
+    /**
+     * The first cell found with a wall whose sides disagree, or -1
+     */
+    private long asymmetry = -1;
+
+    /**
+     * The amount of connected regions of the maze
+     */
+    private long components;
+
+    /**
+     * Creates a new MazeValidator.
+     *
+     * @param maze the maze to check
+     */
+    private MazeValidator(Maze maze) {
+        this.maze = maze;
+        height = maze.getRows();
+        width = maze.getColumns();
+        tileRows = (height + TILE - 1) / TILE;
+        tileCols = (width + TILE - 1) / TILE;
+        int tiles = Math.multiplyExact(tileRows, tileCols);
+        top = new int[tiles][];
+        bottom = new int[tiles][];
+        left = new int[tiles][];
+        right = new int[tiles][];
+        regions = new int[tiles];
+    }
+
+    /**
+     * Checks a maze.
+     *
+     * @param maze the maze to check
+     * @return the results
+     */
+    public static MazeValidator validate(Maze maze) {
+        MazeValidator validator = new MazeValidator(maze);
+        validator.checkSymmetry();
+        ThreadLocal<int[]> scratch = ThreadLocal.withInitial(() -> new int[TILE * TILE]);
+        IntStream.range(0, validator.regions.length).parallel()
+                .forEach(tile -> validator.joinTile(tile, scratch.get()));
+        validator.joinTiles();
+        return validator;
+    }
+
+    /**
+     * Checks a maze, and throws an exception if it is not well formed.
+     *
+     * @param maze the maze to check
+     * @return true, so that this can be asserted
+     * @throws IllegalStateException if the maze is not well formed
+     */
+    public static boolean check(Maze maze) {
+        MazeValidator validator = validate(maze);
+        if (validator.asymmetry >= 0) {
+            throw new IllegalStateException("The walls of (" + validator.asymmetry / validator.width
+                    + ", " + validator.asymmetry % validator.width + ") do not match its neighbors");
+        }
+        if (validator.components != 1) {
+            throw new IllegalStateException("The maze is split into " + validator.components + " regions");
+        }
+        return true;
+    }
+
+    /**
+     * Looks for walls whose sides disagree, in bands of rows in parallel.
+     */
+    private void checkSymmetry() {
+        asymmetry = IntStream.range(0, tileRows).parallel()
+                .mapToLong(band -> maze.findAsymmetry(band * TILE, Math.min(height, (band + 1) * TILE)))
+                .filter(cell -> cell >= 0)
+                .min().orElse(-1);
+    }
+
+    /**
+     * Finds the regions of a tile and labels the cells along its edges.
+     * Two cells are joined when the wall on the east or south side of the
+     * first is open; once the walls are known to agree, that is the same as
+     * looking at both sides.
+     *
+     * @param tile   the index of the tile
+     * @param parent a scratch array of at least {@code TILE * TILE} ints
+     */
+    private void joinTile(int tile, int[] parent) {
+        int r0 = tile / tileCols * TILE, c0 = tile % tileCols * TILE;
+        int th = Math.min(TILE, height - r0), tw = Math.min(TILE, width - c0);
+        int w0 = c0 >>> 6, words = (tw + 63) >>> 6;
+
+        for (int i = 0; i < th * tw; i++) {
+            parent[i] = i;
+        }
+        for (int r = 0; r < th; r++) {
+            for (int w = 0; w < words; w++) {
+                int bits = Math.min(64, tw - (w << 6));
+                long valid = bits == 64 ? -1L : (1L << bits) - 1;
+                // the open walls of 64 cells, leaving out those that lead
+                // out of the tile
+                long east = ~maze.getWallWord(EAST, r0 + r, w0 + w) & valid;
+                if (w == words - 1) {
+                    east &= ~(1L << (bits - 1));
+                }
+                long south = r + 1 < th ? ~maze.getWallWord(SOUTH, r0 + r, w0 + w) & valid : 0;
+
+                int base = r * tw + (w << 6);
+                while (east != 0) {
+                    int bit = Long.numberOfTrailingZeros(east);
+                    east &= east - 1;
+                    union(parent, base + bit, base + bit + 1);
+                }
+                while (south != 0) {
+                    int bit = Long.numberOfTrailingZeros(south);
+                    south &= south - 1;
+                    union(parent, base + bit, base + bit + tw);
+                }
+            }
+        }
+
+        // numbers the regions; a root is replaced by -1 - its number
+        int count = 0;
+        for (int i = 0; i < th * tw; i++) {
+            if (parent[i] == i) {
+                parent[i] = -1 - count++;
+            }
+        }
+        regions[tile] = count;
+
+        int[] t = new int[tw], b = new int[tw], l = new int[th], rt = new int[th];
+        for (int c = 0; c < tw; c++) {
+            t[c] = label(parent, c);
+            b[c] = label(parent, (th - 1) * tw + c);
+        }
+        for (int r = 0; r < th; r++) {
+            l[r] = label(parent, r * tw);
+            rt[r] = label(parent, r * tw + tw - 1);
+        }
+        top[tile] = t;
+        bottom[tile] = b;
+        left[tile] = l;
+        right[tile] = rt;
+    }
+
+    /**
+     * Joins the regions of neighboring tiles where the walls between them
+     * are open, and counts the regions of the whole maze.
+     */
+    private void joinTiles() {
+        int[] offsets = new int[regions.length + 1];
+        long total = 0;
+        for (int i = 0; i < regions.length; i++) {
+            offsets[i] = (int) total;
+            total += regions[i];
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many regions to join: " + total);
+        }
+        offsets[regions.length] = (int) total;
+
+        int[] parent = new int[(int) total];
+        for (int i = 0; i < parent.length; i++) {
+            parent[i] = i;
+        }
+        long joined = 0;
+        for (int tile = 0; tile < regions.length; tile++) {
+            int r0 = tile / tileCols * TILE, c0 = tile % tileCols * TILE;
+            int th = Math.min(TILE, height - r0), tw = Math.min(TILE, width - c0);
+            if (c0 + tw < width) {
+                int next = tile + 1;
+                for (int r = 0; r < th; r++) {
+                    if (!maze.getWall(r0 + r, c0 + tw - 1, EAST)
+                            && union(parent, offsets[tile] + right[tile][r], offsets[next] + left[next][r])) {
+                        joined++;
+                    }
+                }
+            }
+            if (r0 + th < height) {
+                int below = tile + tileCols;
+                for (int c = 0; c < tw; c++) {
+                    if (!maze.getWall(r0 + th - 1, c0 + c, SOUTH)
+                            && union(parent, offsets[tile] + bottom[tile][c], offsets[below] + top[below][c])) {
+                        joined++;
+                    }
+                }
+            }
+        }
+        components = total - joined;
+    }
+
+    /**
+     * Returns the number of the region of a cell once the roots have been
+     * numbered
+     *
+     * @param parent the union-find of the tile
+     * @param i      the cell, within the tile
+     * @return the number of its region
+     */
+    private static int label(int[] parent, int i) {
+        while (parent[i] >= 0) {
+            i = parent[i];
+        }
+        return -1 - parent[i];
+    }
+
+    /**
+     * Finds the root of an element, halving the path on the way.
+     *
+     * @param parent the union-find
+     * @param i      the element
+     * @return its root
+     */
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * Joins the sets of two elements.
+     *
+     * @param parent the union-find
+     * @param a      one element
+     * @param b      the other element
+     * @return whether they were in different sets
+     */
+    private static boolean union(int[] parent, int a, int b) {
+        a = find(parent, a);
+        b = find(parent, b);
+        if (a == b) {
+            return false;
+        }
+        parent[a] = b;
+        return true;
+    }
+
+    /**
+     * Returns whether the maze is well formed
+     *
+     * @return whether the walls agree and the maze is connected
+     */
+    public boolean isValid() {
+        return asymmetry < 0 && components == 1;
+    }
+
+    /**
+     * Returns the first cell found with a wall whose sides disagree, or
+     * that has an open wall on the edge of the maze
+     *
+     * @return the index ({@code row * width + column}) of the cell, or -1 if
+     * every wall is consistent
+     */
+    public long getAsymmetry() {
+        return asymmetry;
+    }
+
+    /**
+     * Returns the amount of connected regions of the maze
+     *
+     * @return the amount of regions, which is 1 for a well formed maze
+     */
+    public long getComponents() {
+        return components;
+    }
+
+    /**
+     * Generates a maze, checks it and prints how long it took, then breaks
+     * it in two ways and checks that both are caught.
+     *
+     * @param args the size of the maze (4096 by default) and the seed
+     *             (random by default)
+     */
+    public static void main(String[] args) {
+        int size = args.length > 0 ? Integer.parseInt(args[0]) : 4096;
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : new Random().nextLong();
+
+        long start = System.nanoTime();
+        Maze maze = new Maze(size, size, seed);
+        double generateMillis = (System.nanoTime() - start) / 1e6;
+
+        // warms up
+        validate(maze);
+        start = System.nanoTime();
+        MazeValidator result = validate(maze);
+        double millis = (System.nanoTime() - start) / 1e6;
+        System.out.printf("%dx%d: valid %b, %d regions, checked in %.1f ms (generated in %.1f ms, "
+                        + "%.1f ns per cell)%n", size, size, result.isValid(), result.getComponents(), millis,
+                generateMillis, millis * 1e6 / ((double) size * size));
+
+        // walls in a cell, which splits it off from the rest
+        Random r = new Random(seed);
+        int row = r.nextInt(size), col = r.nextInt(size);
+        for (int dir = 0; dir < 4; dir++) {
+            int nr = row + dy(dir), nc = col + dx(dir);
+            if (nr >= 0 && nc >= 0 && nr < size && nc < size) {
+                maze.setPassage(row, col, dir, true);
+            }
+        }
+        result = validate(maze);
+        System.out.printf("walled in (%d, %d): valid %b, %d regions%n", row, col, result.isValid(),
+                result.getComponents());
+
+        // opens one side of a wall only
+        row = r.nextInt(size);
+        col = r.nextInt(size - 1);
+        maze.setWall(row, col, EAST, !maze.getWall(row, col, EAST));
+        result = validate(maze);
+        long bad = result.getAsymmetry();
+        System.out.printf("one side of (%d, %d) east changed: valid %b, first mismatch at (%d, %d)%n",
+                row, col, result.isValid(), bad / size, bad % size);
+    }
+}
@@ -0,0 +1,97 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The wall planes of a maze, kept outside the Java heap in direct buffers.
+ * Words are addressed by long indices, so a plane can hold more than
+ * {@code Integer.MAX_VALUE} words; since a buffer is indexed by an int, each
+ * plane is split into buffers of {@link #CHUNK_WORDS} words. The heap only
+ * holds the buffer objects, a handful even for mazes of billions of cells, so
+ * the garbage collector has nothing to copy or compact however large the
+ * maze is.<br>
+ * The memory is freed once the buffers are collected, and counts against
+ * {@code -XX:MaxDirectMemorySize}, which defaults to the largest heap size.
+ *
+ * @author Jed Wang
+ */
+final class OffHeapPlanes {
+
+    /**
+     * The bits of {@link #CHUNK_WORDS}
+     */
+    private static final int CHUNK_SHIFT = 27;
+
+    /**
+     * The amount of words in each buffer, which is a gigabyte of memory
+     */
+    static final long CHUNK_WORDS = 1L << CHUNK_SHIFT;
+
+    /**
+     * The bits of a word index that select a word within its buffer
+     */
+    private static final long CHUNK_MASK = CHUNK_WORDS - 1;
+
+    /**
+     * The buffers, indexed by direction, then by chunk
+     */
+    private final ByteBuffer[][] chunks;
+
+    /**
+     * Allocates the planes. Their contents are unspecified until
+     * {@link #fill(long)} is called.
+     *
+     * @param words the amount of words in each plane
+     */
+    OffHeapPlanes(long words) {
+        if (words < 1) {
+            throw new IllegalArgumentException("Invalid plane size: " + words);
+        }
+        int count = (int) ((words + CHUNK_MASK) >>> CHUNK_SHIFT);
+        chunks = new ByteBuffer[4][count];
+        for (int wall = 0; wall < 4; wall++) {
+            for (int i = 0; i < count; i++) {
+                long size = Math.min(CHUNK_WORDS, words - ((long) i << CHUNK_SHIFT));
+                chunks[wall][i] = ByteBuffer.allocateDirect((int) size << 3).order(ByteOrder.nativeOrder());
+            }
+        }
+    }
+
+    /**
+     * Returns a word of a plane
+     *
+     * @param wall the plane to read
+     * @param idx  the index of the word
+     * @return the word
+     */
+    long get(int wall, long idx) {
+        return chunks[wall][(int) (idx >>> CHUNK_SHIFT)].getLong((int) (idx & CHUNK_MASK) << 3);
+    }
+
+    /**
+     * Changes a word of a plane.
+     *
+     * @param wall the plane to change
+     * @param idx  the index of the word
+     * @param word the new word
+     */
+    void set(int wall, long idx, long word) {
+        chunks[wall][(int) (idx >>> CHUNK_SHIFT)].putLong((int) (idx & CHUNK_MASK) << 3, word);
+    }
+
+    /**
+     * Sets every word of every plane to the same value.
+     *
+     * @param word the value
+     */
+    void fill(long word) {
+        for (ByteBuffer[] plane : chunks) {
+            for (ByteBuffer chunk : plane) {
+                for (int pos = 0, end = chunk.capacity(); pos < end; pos += 8) {
+                    chunk.putLong(pos, word);
+                }
+            }
+        }
+    }
+}
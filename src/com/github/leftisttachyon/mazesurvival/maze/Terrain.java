@@ -0,0 +1,201 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.awt.*;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * The ground of a maze: how many moves it takes to get out of each cell. Most
+ * cells are floor, which takes one move like a maze without terrain, while
+ * patches of mud and pools of water hold a dot back for longer. The cost of
+ * a path is the sum of the costs of the cells it leaves, so the cell it ends
+ * in does not count.<br>
+ * Terrain is laid over a maze after it is generated, with
+ * {@link Maze#setTerrain(Terrain)}, and does not change afterwards, so it is
+ * safe to read from any amount of threads.
+ *
+ * @author Jed Wang
+ */
+public final class Terrain {
+
+    /**
+     * The cost of a cell of floor
+     */
+    public static final int FLOOR = 1;
+
+    /**
+     * The cost of a cell of mud
+     */
+    public static final int MUD = 2;
+
+    /**
+     * The cost of a cell of water
+     */
+    public static final int WATER = 3;
+
+    /**
+     * The highest cost a cell can have
+     */
+    public static final int MAX_COST = Byte.MAX_VALUE;
+
+    /**
+     * The largest radius of a patch laid by {@link #generate(int, int, long, double)}
+     */
+    private static final int MAX_PATCH_RADIUS = 3;
+
+    /**
+     * The colors mud and water are painted in
+     */
+    private static final Color MUD_COLOR = new Color(196, 164, 120), WATER_COLOR = new Color(140, 180, 235);
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The cost of each cell, indexed by {@code row * width + column}
+     */
+    private final byte[] costs;
+
+    /**
+     * The highest cost of any cell
+     */
+    private final int maxCost;
+
+    /**
+     * Creates terrain with the given costs.
+     *
+     * @param height the height of the maze
+     * @param width  the width of the maze
+     * @param costs  the cost of each cell, indexed by
+     *               {@code row * width + column}, each from {@link #FLOOR} to
+     *               {@link #MAX_COST}; the array is copied
+     */
+    public Terrain(int height, int width, byte[] costs) {
+        if (height < 1 || width < 1 || costs.length != (long) height * width) {
+            throw new IllegalArgumentException("Invalid terrain: " + height + "x" + width + ", "
+                    + costs.length + " costs");
+        }
+        this.height = height;
+        this.width = width;
+        this.costs = costs.clone();
+        int max = FLOOR;
+        for (byte cost : this.costs) {
+            if (cost < FLOOR) {
+                throw new IllegalArgumentException("Invalid cost: " + cost);
+            }
+            max = Math.max(max, cost);
+        }
+        this.maxCost = max;
+    }
+
+    /**
+     * Generates terrain of round patches of mud, some of them around a pool
+     * of water, until the given share of the cells is covered. The same seed
+     * always gives the same terrain.
+     *
+     * @param height   the height of the maze
+     * @param width    the width of the maze
+     * @param seed     the seed for the placement of the patches
+     * @param coverage the share of the cells to cover, at least 0 and less
+     *                 than 1
+     * @return the new terrain
+     */
+    public static Terrain generate(int height, int width, long seed, double coverage) {
+        if (!(coverage >= 0 && coverage < 1)) {
+            throw new IllegalArgumentException("Invalid coverage: " + coverage);
+        }
+        byte[] costs = new byte[Math.multiplyExact(height, width)];
+        Arrays.fill(costs, (byte) FLOOR);
+        long goal = (long) Math.ceil(coverage * costs.length), covered = 0;
+        Random r = new Random(seed);
+        while (covered < goal) {
+            int centerR = r.nextInt(height), centerC = r.nextInt(width);
+            int radius = 1 + r.nextInt(MAX_PATCH_RADIUS);
+            for (int dr = -radius; dr <= radius; dr++) {
+                for (int dc = -radius; dc <= radius; dc++) {
+                    int row = centerR + dr, col = centerC + dc, d2 = dr * dr + dc * dc;
+                    if (row < 0 || col < 0 || row >= height || col >= width || d2 > radius * radius) {
+                        continue;
+                    }
+                    // the middle of a wide patch is water
+                    int cost = radius > 1 && d2 < (radius - 1) * (radius - 1) ? WATER : MUD;
+                    int cell = row * width + col;
+                    if (costs[cell] == FLOOR) {
+                        covered++;
+                    }
+                    costs[cell] = (byte) Math.max(costs[cell], cost);
+                }
+            }
+        }
+        return new Terrain(height, width, costs);
+    }
+
+    /**
+     * Returns the cost of the given cell: the moves it takes to leave it
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     * @return the cost of the cell
+     */
+    public int getCost(int r, int c) {
+        return costs[r * width + c];
+    }
+
+    /**
+     * Returns the cost of a cell by its index
+     *
+     * @param cell the index of the cell, {@code row * width + column}
+     * @return the cost of the cell
+     */
+    int getCost(int cell) {
+        return costs[cell];
+    }
+
+    /**
+     * Returns the highest cost of any cell
+     *
+     * @return the highest cost
+     */
+    public int getMaxCost() {
+        return maxCost;
+    }
+
+    /**
+     * Returns the height of the maze
+     *
+     * @return the height of the maze
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the maze
+     *
+     * @return the width of the maze
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Paints the mud and water in the given rows.
+     *
+     * @param g2D     the Graphics2D object to paint with
+     * @param fromRow the first row to paint
+     * @param toRow   the row after the last one to paint
+     */
+    public void paint(Graphics2D g2D, int fromRow, int toRow) {
+        for (int r = fromRow; r < toRow; r++) {
+            for (int c = 0; c < width; c++) {
+                int cost = costs[r * width + c];
+                if (cost > FLOOR) {
+                    g2D.setColor(cost == MUD ? MUD_COLOR : WATER_COLOR);
+                    g2D.fillRect(c * Cell.WIDTH, r * Cell.WIDTH, Cell.WIDTH, Cell.WIDTH);
+                }
+            }
+        }
+    }
+}
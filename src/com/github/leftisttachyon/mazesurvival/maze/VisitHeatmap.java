@@ -0,0 +1,311 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Counts how often dots enter each cell of mazes of one size, to show where
+ * the user and each AI spend their time. Each dot counts into its own
+ * track.<br>
+ * A game counts its visits into plain int arrays from {@link #newCounts()},
+ * which only the thread running the game touches, and adds them to the
+ * heatmap all at once when it ends. Counting a move is a single array
+ * increment, and games running at the same time only ever meet in that one
+ * add, like the cells of a {@code LongAdder} with a cell per game.<br>
+ * A heatmap can be written out as CSV or as PNG images, and drawn over a maze
+ * with {@link Maze#setOverlay(VisitHeatmap, int)}. All methods may be called
+ * by any thread.
+ *
+ * @author Jed Wang
+ */
+public final class VisitHeatmap {
+
+    /**
+     * The track that stands for the sum of every track
+     */
+    public static final int ALL = -1;
+
+    /**
+     * The most opaque an overlay gets, out of 255
+     */
+    private static final int OVERLAY_ALPHA = 160;
+
+    /**
+     * The dimensions of the mazes
+     */
+    private final int height, width;
+
+    /**
+     * The names of the tracks
+     */
+    private final List<String> tracks;
+
+    /**
+     * The visits to each cell, indexed by track, then by
+     * {@code row * width + column}
+     */
+    private final long[][] counts;
+
+    /**
+     * The amount of games added
+     */
+    private long games = 0;
+
+    /**
+     * The visits last painted, which are not changed once made, or null if
+     * none have been
+     */
+    private long[] painted = null;
+
+    /**
+     * The track of {@link #painted}
+     */
+    private int paintedTrack;
+
+    /**
+     * The amount of games added when {@link #painted} was summed, and its
+     * most visits to a cell
+     */
+    private long paintedGames = -1, paintedMax;
+
+    /**
+     * Creates a new, empty VisitHeatmap.
+     *
+     * @param height the height of the mazes
+     * @param width  the width of the mazes
+     * @param tracks the names of the tracks, such as the dots of a game
+     */
+    public VisitHeatmap(int height, int width, List<String> tracks) {
+        if (height < 1 || width < 1 || tracks.isEmpty()) {
+            throw new IllegalArgumentException("Invalid heatmap: " + height + "x" + width + ", " + tracks);
+        }
+        this.height = height;
+        this.width = width;
+        this.tracks = Collections.unmodifiableList(tracks);
+        counts = new long[tracks.size()][Math.multiplyExact(height, width)];
+    }
+
+    /**
+     * Returns new arrays for a game to count its visits in, one per track,
+     * each indexed by {@code row * width + column}
+     *
+     * @return the arrays for a game, all zero
+     */
+    public int[][] newCounts() {
+        return new int[counts.length][counts[0].length];
+    }
+
+    /**
+     * Adds the visits counted by a game.
+     *
+     * @param visits the arrays from {@link #newCounts()}
+     */
+    public synchronized void add(int[][] visits) {
+        if (visits.length != counts.length) {
+            throw new IllegalArgumentException("Expected " + counts.length + " tracks, not " + visits.length);
+        }
+        for (int track = 0; track < counts.length; track++) {
+            long[] total = counts[track];
+            int[] game = visits[track];
+            for (int i = 0; i < total.length; i++) {
+                total[i] += game[i];
+            }
+        }
+        games++;
+    }
+
+    /**
+     * Returns the visits to every cell
+     *
+     * @param track the track, or {@link #ALL} for all of them
+     * @return a copy of the visits, indexed by {@code row * width + column}
+     */
+    public synchronized long[] getVisits(int track) {
+        if (track != ALL) {
+            return counts[track].clone();
+        }
+        long[] sum = new long[counts[0].length];
+        for (long[] trackCounts : counts) {
+            for (int i = 0; i < sum.length; i++) {
+                sum[i] += trackCounts[i];
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the amount of games added
+     *
+     * @return the amount of games
+     */
+    public synchronized long getGames() {
+        return games;
+    }
+
+    /**
+     * Returns the names of the tracks
+     *
+     * @return the names of the tracks
+     */
+    public List<String> getTracks() {
+        return tracks;
+    }
+
+    /**
+     * Returns the height of the mazes
+     *
+     * @return the height of the mazes
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the mazes
+     *
+     * @return the width of the mazes
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Writes the visits as CSV: a header, then a line per cell with its row,
+     * its column, its visits in each track and their total.
+     *
+     * @param file the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void writeCsv(Path file) throws IOException {
+        long[][] snapshot = new long[counts.length][];
+        synchronized (this) {
+            for (int track = 0; track < snapshot.length; track++) {
+                snapshot[track] = counts[track].clone();
+            }
+        }
+        try (BufferedWriter out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            out.write("row,column," + String.join(",", tracks) + ",total\n");
+            StringBuilder line = new StringBuilder();
+            for (int r = 0, cell = 0; r < height; r++) {
+                for (int c = 0; c < width; c++, cell++) {
+                    line.setLength(0);
+                    line.append(r).append(',').append(c);
+                    long total = 0;
+                    for (long[] track : snapshot) {
+                        line.append(',').append(track[cell]);
+                        total += track[cell];
+                    }
+                    line.append(',').append(total).append('\n');
+                    out.write(line.toString());
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws the visits of a track as an image, a square of pixels per cell,
+     * going from black through red and yellow to white on a log scale.
+     *
+     * @param track the track, or {@link #ALL}
+     * @param scale the side of the square of each cell, in pixels
+     * @return the image
+     */
+    public BufferedImage toImage(int track, int scale) {
+        long[] visits = getVisits(track);
+        long max = Arrays.stream(visits).max().orElse(0);
+        BufferedImage image = new BufferedImage(width * scale, height * scale, BufferedImage.TYPE_INT_RGB);
+        for (int r = 0, cell = 0; r < height; r++) {
+            for (int c = 0; c < width; c++, cell++) {
+                float heat = heat(visits[cell], max);
+                // black to red to yellow to white, a third of the way each
+                int red = Math.min(255, (int) (heat * 3 * 255));
+                int green = Math.max(0, Math.min(255, (int) ((heat * 3 - 1) * 255)));
+                int blue = Math.max(0, Math.min(255, (int) ((heat * 3 - 2) * 255)));
+                int rgb = red << 16 | green << 8 | blue;
+                for (int y = r * scale; y < (r + 1) * scale; y++) {
+                    for (int x = c * scale; x < (c + 1) * scale; x++) {
+                        image.setRGB(x, y, rgb);
+                    }
+                }
+            }
+        }
+        return image;
+    }
+
+    /**
+     * Writes the CSV and an image of every track and of all of them into a
+     * directory, as {@code heatmap.csv}, {@code heatmap-<track>.png} and
+     * {@code heatmap-all.png}.
+     *
+     * @param dir   the directory, which is created if needed
+     * @param scale the side of the square of each cell in the images
+     * @throws IOException if a file cannot be written
+     */
+    public void writeTo(Path dir, int scale) throws IOException {
+        Files.createDirectories(dir);
+        writeCsv(dir.resolve("heatmap.csv"));
+        for (int track = ALL; track < tracks.size(); track++) {
+            String name = track == ALL ? "all" : tracks.get(track);
+            ImageIO.write(toImage(track, scale), "png", dir.resolve("heatmap-" + name + ".png").toFile());
+        }
+    }
+
+    /**
+     * Shades the cells of the given rows by their visits, in translucent red
+     * that is more opaque the more a cell was visited, on a log scale.
+     *
+     * @param g2D     the Graphics2D object to paint with
+     * @param track   the track, or {@link #ALL}
+     * @param fromRow the first row to paint
+     * @param toRow   the row after the last one to paint
+     */
+    public void paint(Graphics2D g2D, int track, int fromRow, int toRow) {
+        long[] visits;
+        long max;
+        // the visits only change when a game is added, so every frame and
+        // every strip of an export until then shares one copy
+        synchronized (this) {
+            if (painted == null || paintedTrack != track || paintedGames != games) {
+                painted = getVisits(track);
+                paintedTrack = track;
+                paintedGames = games;
+                paintedMax = Arrays.stream(painted).max().orElse(0);
+            }
+            visits = painted;
+            max = paintedMax;
+        }
+        if (max == 0) {
+            return;
+        }
+        for (int r = fromRow; r < toRow; r++) {
+            for (int c = 0; c < width; c++) {
+                long count = visits[r * width + c];
+                if (count > 0) {
+                    g2D.setColor(new Color(255, 0, 0, Math.round(heat(count, max) * OVERLAY_ALPHA)));
+                    g2D.fillRect(c * Cell.WIDTH, r * Cell.WIDTH, Cell.WIDTH, Cell.WIDTH);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns how hot a cell is, on a log scale so that rarely visited cells
+     * still show
+     *
+     * @param count the visits to the cell
+     * @param max   the most visits to any cell
+     * @return the heat, from 0 to 1
+     */
+    private static float heat(long count, long max) {
+        return max == 0 ? 0 : (float) (Math.log1p(count) / Math.log1p(max));
+    }
+}
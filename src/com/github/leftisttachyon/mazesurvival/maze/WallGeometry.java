@@ -0,0 +1,283 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.awt.*;
+import java.util.Arrays;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * The walls of a rectangle of a maze as merged line segments. Every wall
+ * between two cells is one segment however many sides of it are solid, and
+ * walls in a line with nothing between them are merged into one segment, so
+ * a maze is drawn with several times fewer lines than the sides of its
+ * cells. The segments are kept as runs of columns along each horizontal line
+ * between rows, and runs of rows along each vertical line between columns,
+ * so that the segments of any part of the rectangle can be found without
+ * looking at the rest. Each is drawn with its own line: stroking them all as
+ * one path is several times slower than drawing the lines one by one, as
+ * Java2D strokes and fills a path as a single shape.<br>
+ * A WallGeometry is made from the walls the maze had at its
+ * {@link #getVersion() version}, and does not change with them.
+ *
+ * @author Jed Wang
+ */
+public final class WallGeometry {
+
+    /**
+     * The maze
+     */
+    private final Maze maze;
+
+    /**
+     * The version of the walls this geometry was made from
+     */
+    private final long version;
+
+    /**
+     * The rows and columns the geometry covers, from the first to the one
+     * after the last
+     */
+    private final int fromRow, toRow, fromCol, toCol;
+
+    /**
+     * Where the runs along each horizontal line start in {@link #hFrom} and
+     * {@link #hTo}, from the line above {@link #fromRow}, with one more entry
+     * for the end
+     */
+    private final int[] hOffsets;
+
+    /**
+     * The first column of each horizontal run, and the column after its last
+     */
+    private final int[] hFrom, hTo;
+
+    /**
+     * Where the runs along each vertical line start in {@link #vFrom} and
+     * {@link #vTo}, from the line left of {@link #fromCol}, with one more
+     * entry for the end
+     */
+    private final int[] vOffsets;
+
+    /**
+     * The first row of each vertical run, and the row after its last
+     */
+    private final int[] vFrom, vTo;
+
+    /**
+     * Creates a new WallGeometry for the walls of the cells in the given rows
+     * and columns of a maze. A wall is solid when either side of it is.
+     *
+     * @param maze    the maze
+     * @param fromRow the first row
+     * @param toRow   the row after the last one
+     * @param fromCol the first column
+     * @param toCol   the column after the last one
+     */
+    public WallGeometry(Maze maze, int fromRow, int toRow, int fromCol, int toCol) {
+        if (fromRow < 0 || fromCol < 0 || toRow > maze.getRows() || toCol > maze.getColumns()
+                || fromRow > toRow || fromCol > toCol) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + fromRow + "-" + toRow
+                    + ", " + fromCol + "-" + toCol);
+        }
+        this.maze = maze;
+        // read first, so walls changed while reading make this look stale
+        this.version = maze.getVersion();
+        this.fromRow = fromRow;
+        this.toRow = toRow;
+        this.fromCol = fromCol;
+        this.toCol = toCol;
+
+        Runs runs = new Runs();
+        for (int i = fromRow; i <= toRow; i++) {
+            int start = -1;
+            for (int j = fromCol; j < toCol; j++) {
+                boolean solid = i < maze.getRows() && maze.getWall(i, j, NORTH)
+                        || i > 0 && maze.getWall(i - 1, j, SOUTH);
+                if (solid && start < 0) {
+                    start = j;
+                } else if (!solid && start >= 0) {
+                    runs.add(i - fromRow, start, j);
+                    start = -1;
+                }
+            }
+            if (start >= 0) {
+                runs.add(i - fromRow, start, toCol);
+            }
+        }
+        hOffsets = new int[toRow - fromRow + 2];
+        hFrom = new int[runs.size];
+        hTo = new int[runs.size];
+        runs.sort(hOffsets, hFrom, hTo);
+
+        // the vertical runs are followed down all the lines at once
+        runs = new Runs();
+        int[] starts = new int[toCol - fromCol + 1];
+        Arrays.fill(starts, -1);
+        for (int i = fromRow; i < toRow; i++) {
+            for (int j = fromCol; j <= toCol; j++) {
+                boolean solid = j < maze.getColumns() && maze.getWall(i, j, WEST)
+                        || j > 0 && maze.getWall(i, j - 1, EAST);
+                int line = j - fromCol;
+                if (solid && starts[line] < 0) {
+                    starts[line] = i;
+                } else if (!solid && starts[line] >= 0) {
+                    runs.add(line, starts[line], i);
+                    starts[line] = -1;
+                }
+            }
+        }
+        for (int line = 0; line < starts.length; line++) {
+            if (starts[line] >= 0) {
+                runs.add(line, starts[line], toRow);
+            }
+        }
+        vOffsets = new int[toCol - fromCol + 2];
+        vFrom = new int[runs.size];
+        vTo = new int[runs.size];
+        runs.sort(vOffsets, vFrom, vTo);
+    }
+
+    /**
+     * Paints the walls of the cells in the given rows and columns, which
+     * must be within the ones this geometry covers, with the stroke and color
+     * of the Graphics2D object, where they would be if the maze were painted
+     * whole. Runs that go past them are cut short.
+     *
+     * @param g2D     the Graphics2D object to paint with
+     * @param fromRow the first row
+     * @param toRow   the row after the last one
+     * @param fromCol the first column
+     * @param toCol   the column after the last one
+     */
+    public void paint(Graphics2D g2D, int fromRow, int toRow, int fromCol, int toCol) {
+        if (fromRow < this.fromRow || fromCol < this.fromCol || toRow > this.toRow || toCol > this.toCol
+                || fromRow > toRow || fromCol > toCol) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + fromRow + "-" + toRow
+                    + ", " + fromCol + "-" + toCol);
+        }
+        if (fromRow == toRow || fromCol == toCol) {
+            return;
+        }
+        for (int i = fromRow, y = fromRow * Cell.WIDTH; i <= toRow; i++, y += Cell.WIDTH) {
+            int line = i - this.fromRow, end = hOffsets[line + 1];
+            for (int k = firstRun(hOffsets[line], end, hTo, fromCol); k < end && hFrom[k] < toCol; k++) {
+                g2D.drawLine(Math.max(hFrom[k], fromCol) * Cell.WIDTH, y,
+                        Math.min(hTo[k], toCol) * Cell.WIDTH, y);
+            }
+        }
+        for (int j = fromCol, x = fromCol * Cell.WIDTH; j <= toCol; j++, x += Cell.WIDTH) {
+            int line = j - this.fromCol, end = vOffsets[line + 1];
+            for (int k = firstRun(vOffsets[line], end, vTo, fromRow); k < end && vFrom[k] < toRow; k++) {
+                g2D.drawLine(x, Math.max(vFrom[k], fromRow) * Cell.WIDTH,
+                        x, Math.min(vTo[k], toRow) * Cell.WIDTH);
+            }
+        }
+    }
+
+    /**
+     * Finds the first run of a line that ends after the given row or column.
+     *
+     * @param from the index of the first run of the line
+     * @param to   the index after the last run of the line
+     * @param ends the ends of the runs, which go up along the line
+     * @param at   the row or column
+     * @return the index of the first run that ends after it, or {@code to}
+     */
+    private static int firstRun(int from, int to, int[] ends, int at) {
+        while (from < to) {
+            int mid = (from + to) >>> 1;
+            if (ends[mid] > at) {
+                to = mid;
+            } else {
+                from = mid + 1;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Returns the amount of segments
+     *
+     * @return the amount of merged runs of walls
+     */
+    public int getSegmentCount() {
+        return hFrom.length + vFrom.length;
+    }
+
+    /**
+     * Returns the version of the walls this geometry was made from
+     *
+     * @return the version of the maze when this was made
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * Returns the maze
+     *
+     * @return the maze
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * A growing list of runs, each on a line
+     */
+    private static final class Runs {
+
+        /**
+         * The line, start and end of each run
+         */
+        private int[] lines = new int[64], froms = new int[64], tos = new int[64];
+
+        /**
+         * The amount of runs
+         */
+        private int size = 0;
+
+        /**
+         * Adds a run.
+         *
+         * @param line the line it is on
+         * @param from where it starts
+         * @param to   where it ends
+         */
+        void add(int line, int from, int to) {
+            if (size == lines.length) {
+                lines = Arrays.copyOf(lines, size * 2);
+                froms = Arrays.copyOf(froms, size * 2);
+                tos = Arrays.copyOf(tos, size * 2);
+            }
+            lines[size] = line;
+            froms[size] = from;
+            tos[size] = to;
+            size++;
+        }
+
+        /**
+         * Sorts the runs by line, keeping the order of the runs on each line,
+         * with a counting sort.
+         *
+         * @param offsets the array to put where each line starts in, one
+         *                longer than the amount of lines
+         * @param from    the array to put the starts in
+         * @param to      the array to put the ends in
+         */
+        void sort(int[] offsets, int[] from, int[] to) {
+            for (int i = 0; i < size; i++) {
+                offsets[lines[i] + 1]++;
+            }
+            for (int line = 1; line < offsets.length; line++) {
+                offsets[line] += offsets[line - 1];
+            }
+            int[] next = Arrays.copyOf(offsets, offsets.length - 1);
+            for (int i = 0; i < size; i++) {
+                int at = next[lines[i]]++;
+                from[at] = froms[i];
+                to[at] = tos[i];
+            }
+        }
+    }
+}
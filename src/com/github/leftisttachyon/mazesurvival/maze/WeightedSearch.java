@@ -0,0 +1,235 @@
+package com.github.leftisttachyon.mazesurvival.maze;
+
+import java.util.Arrays;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * Finds the cheapest paths through a maze with {@link Terrain}, with
+ * Dijkstra's algorithm over a bucket queue (Dial's algorithm). Costs are
+ * small integers, so instead of a heap the cells waiting to be settled are
+ * kept in one bucket per cost, in a ring of {@code maxCost + 1} buckets: a
+ * cell reached at cost d goes in bucket {@code d % buckets}, and the buckets
+ * are emptied in order. No cell is ever pushed more than one ring ahead of
+ * the bucket being emptied, so each push and pop is an array access, and a
+ * cell whose cost has dropped since it was pushed is skipped when it comes
+ * up. On a maze without terrain every bucket but one is empty, and the search
+ * is a plain breadth-first search.<br>
+ * The costs are measured to a destination, from every cell around it, so one
+ * search gives the cost from each neighbor of a dot to where it is heading.
+ * The cost of a path is the sum of the costs of the cells it leaves, as
+ * {@link Terrain} describes. Two cells are connected when neither side of
+ * the wall between them is solid.<br>
+ * A WeightedSearch reads the terrain the maze had when it was created. It
+ * can be reused for any amount of searches, but not by more than one thread
+ * at a time.
+ *
+ * @author Jed Wang
+ */
+public final class WeightedSearch {
+
+    /**
+     * The maze being searched
+     */
+    private final Maze maze;
+
+    /**
+     * The terrain of the maze, or null if every cell is floor
+     */
+    private final Terrain terrain;
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The best cost found so far from each cell, which is only meaningful for
+     * cells whose {@link #marks} are the current {@link #mark}
+     */
+    private final int[] costs;
+
+    /**
+     * The search each cell was last reached in
+     */
+    private final int[] marks;
+
+    /**
+     * The current search
+     */
+    private int mark = 0;
+
+    /**
+     * The ring of buckets of cells waiting to be settled, indexed by cost
+     * modulo the amount of buckets
+     */
+    private final int[][] buckets;
+
+    /**
+     * The amount of cells in each bucket
+     */
+    private final int[] bucketSizes;
+
+    /**
+     * The cells whose costs are being searched for
+     */
+    private int[] targets = new int[4];
+
+    /**
+     * Creates a new WeightedSearch for the current terrain of a maze.
+     *
+     * @param maze the maze to search
+     */
+    public WeightedSearch(Maze maze) {
+        this.maze = maze;
+        this.terrain = maze.getTerrain();
+        this.height = maze.getRows();
+        this.width = maze.getColumns();
+        int cells = Math.multiplyExact(height, width);
+        costs = new int[cells];
+        marks = new int[cells];
+        int ring = (terrain == null ? Terrain.FLOOR : terrain.getMaxCost()) + 1;
+        buckets = new int[ring][16];
+        bucketSizes = new int[ring];
+    }
+
+    /**
+     * Returns the cost of the cheapest path between two cells
+     *
+     * @param fromR the starting row
+     * @param fromC the starting column
+     * @param toR   the ending row
+     * @param toC   the ending column
+     * @return the cost of the cheapest path, or -1 if there is none
+     */
+    public int cost(int fromR, int fromC, int toR, int toC) {
+        int[] out = new int[1];
+        costs(toR, toC, new int[]{fromR}, new int[]{fromC}, 1, out);
+        return out[0];
+    }
+
+    /**
+     * Finds the costs of the cheapest paths from several cells to one cell.
+     * The search stops as soon as all of them are settled.
+     *
+     * @param toR   the row of the destination
+     * @param toC   the column of the destination
+     * @param rows  the rows of the cells to find the costs from
+     * @param cols  the columns of the cells to find the costs from
+     * @param count the amount of cells to find the costs from
+     * @param out   the array to put the costs in, with -1 for cells that
+     *              cannot reach the destination
+     */
+    public void costs(int toR, int toC, int[] rows, int[] cols, int count, int[] out) {
+        checkCell(toR, toC);
+        if (targets.length < count) {
+            targets = new int[count];
+        }
+        for (int i = 0; i < count; i++) {
+            checkCell(rows[i], cols[i]);
+            targets[i] = rows[i] * width + cols[i];
+        }
+        if (++mark == 0) {
+            // the marks have wrapped around, so old ones could pass for new
+            Arrays.fill(marks, 0);
+            mark = 1;
+        }
+        Arrays.fill(bucketSizes, 0);
+
+        int ring = buckets.length;
+        int start = toR * width + toC;
+        costs[start] = 0;
+        marks[start] = mark;
+        push(0, start);
+        int pending = 1, remaining = count;
+        search:
+        for (int cost = 0; pending > 0; cost++) {
+            int b = cost % ring;
+            int[] bucket = buckets[b];
+            // costs are less than the amount of buckets, so nothing is
+            // pushed into the bucket being emptied
+            for (int i = 0, size = bucketSizes[b]; i < size; i++) {
+                int cell = bucket[i];
+                pending--;
+                if (costs[cell] != cost) {
+                    continue;
+                }
+                for (int t = 0; t < count; t++) {
+                    if (targets[t] == cell && --remaining == 0) {
+                        break search;
+                    }
+                }
+
+                int r = cell / width, c = cell - r * width;
+                int walls = maze.getWalls(r, c);
+                for (int dir = 0; dir < 4; dir++) {
+                    int nr = r + dy(dir), nc = c + dx(dir);
+                    if ((walls & 1 << dir) != 0 || nr < 0 || nc < 0 || nr >= height || nc >= width
+                            || maze.getWall(nr, nc, opposite(dir))) {
+                        continue;
+                    }
+                    int neighbor = nr * width + nc;
+                    // the path from the neighbor leaves the neighbor
+                    int next = cost + (terrain == null ? Terrain.FLOOR : terrain.getCost(neighbor));
+                    if (marks[neighbor] != mark || next < costs[neighbor]) {
+                        marks[neighbor] = mark;
+                        costs[neighbor] = next;
+                        push(next % ring, neighbor);
+                        pending++;
+                    }
+                }
+            }
+            bucketSizes[b] = 0;
+        }
+
+        for (int i = 0; i < count; i++) {
+            out[i] = marks[targets[i]] == mark ? costs[targets[i]] : -1;
+        }
+    }
+
+    /**
+     * Adds a cell to a bucket.
+     *
+     * @param b    the index of the bucket
+     * @param cell the cell
+     */
+    private void push(int b, int cell) {
+        int size = bucketSizes[b];
+        if (size == buckets[b].length) {
+            buckets[b] = Arrays.copyOf(buckets[b], size * 2);
+        }
+        buckets[b][size] = cell;
+        bucketSizes[b] = size + 1;
+    }
+
+    /**
+     * Checks that a cell is in the maze.
+     *
+     * @param r the row of the cell
+     * @param c the column of the cell
+     */
+    private void checkCell(int r, int c) {
+        if (r < 0 || c < 0 || r >= height || c >= width) {
+            throw new IndexOutOfBoundsException("indexes out of bounds: " + r
+                    + ", " + c);
+        }
+    }
+
+    /**
+     * Returns the maze being searched
+     *
+     * @return the maze
+     */
+    public Maze getMaze() {
+        return maze;
+    }
+
+    /**
+     * Returns the terrain the costs are measured over
+     *
+     * @return the terrain, or null if every cell is floor
+     */
+    public Terrain getTerrain() {
+        return terrain;
+    }
+}
@@ -0,0 +1,521 @@
+package com.github.leftisttachyon.mazesurvival.net;
+
+import com.github.leftisttachyon.mazesurvival.game.AIScheduler;
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+import com.github.leftisttachyon.mazesurvival.maze.MazePool;
+import com.github.leftisttachyon.mazesurvival.maze.VisitHeatmap;
+import com.github.leftisttachyon.mazesurvival.telemetry.Telemetry;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A server that runs games for its clients, which only show what they are
+ * sent. A single thread accepts clients, reads their moves, advances every
+ * game once per tick and sends out snapshots, all over non-blocking channels.
+ * The messages are described in {@link Protocol}. Nothing slow runs on that
+ * thread: mazes are generated ahead of time by a {@link MazePool}, and a
+ * client that arrives before one is ready starts once it is, while the games
+ * of every other client go on. The AIs of each game plan on that thread
+ * alone, since the games themselves are many.
+ *
+ * @author Jed Wang
+ */
+public final class GameServer implements Runnable, Closeable {
+
+    /**
+     * The amount of tick durations kept for statistics
+     */
+    private static final int TICK_HISTORY = 1 << 16;
+
+    /**
+     * The most mazes generated ahead of the clients that will play in them
+     */
+    private static final int MAZE_POOL_SIZE = 4;
+
+    /**
+     * The selector all channels are registered with
+     */
+    private final Selector selector;
+
+    /**
+     * The channel clients connect to
+     */
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The sessions being played
+     */
+    private final List<Session> sessions = new ArrayList<>();
+
+    /**
+     * The mazes for the games to come
+     */
+    private final MazePool mazes = new MazePool(Game.MAZE_HEIGHT, Game.MAZE_WIDTH, MAZE_POOL_SIZE);
+
+    /**
+     * The clients that have been accepted and are waiting for their mazes
+     */
+    private final Set<SocketChannel> waiting = ConcurrentHashMap.newKeySet();
+
+    /**
+     * The games whose mazes are ready, to be started on the thread running
+     * the server
+     */
+    private final Queue<Runnable> arrivals = new ConcurrentLinkedQueue<>();
+
+    /**
+     * A buffer to encode payloads in
+     */
+    private final ByteBuffer scratch = ByteBuffer.allocate(1 << 16);
+
+    /**
+     * The durations of the latest ticks, in nanoseconds
+     */
+    private final long[] tickNanos = new long[TICK_HISTORY];
+
+    /**
+     * The amount of ticks that have been run
+     */
+    private volatile long ticks = 0;
+
+    /**
+     * The amount of bytes that have been sent
+     */
+    private volatile long bytesSent = 0;
+
+    /**
+     * The amount of sessions being played
+     */
+    private volatile int sessionCount = 0;
+
+    /**
+     * The time each tick of a game may spend moving its AIs, in
+     * microseconds, or 0 for no limit
+     */
+    private final long aiBudget = Long.getLong(Game.AI_BUDGET_PROPERTY, 0);
+
+    /**
+     * The amount of AI budget overruns and fallback moves in the games that
+     * have ended
+     */
+    private volatile long aiOverruns = 0, aiFallbacks = 0;
+
+    /**
+     * The telemetry the games are reported to, or null if there is none
+     */
+    private final Telemetry telemetry = Telemetry.fromProperties();
+
+    /**
+     * The heatmap the games add their visits to, or null if there is none
+     */
+    private final VisitHeatmap heatmap = Game.heatmapFromProperties();
+
+    /**
+     * Stores whether the server should keep running
+     */
+    private boolean running = true;
+
+    /**
+     * The thread running the server, or null if it has not been run
+     */
+    private Thread runner;
+
+    /**
+     * Creates a new GameServer listening on the given address. The server
+     * only starts accepting clients once it is run.
+     *
+     * @param address the address to listen on
+     * @throws IOException if the address cannot be bound
+     */
+    public GameServer(InetSocketAddress address) throws IOException {
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        try {
+            serverChannel.configureBlocking(false);
+            serverChannel.bind(address);
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            mazes.close();
+            serverChannel.close();
+            selector.close();
+            if (telemetry != null) {
+                telemetry.close();
+            }
+            throw e;
+        }
+        mazes.fill();
+    }
+
+    /**
+     * Runs the server on the given port, or 7777 if none is given.
+     *
+     * @param args the command line arguments
+     * @throws IOException if the server cannot be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 7777;
+        try (GameServer server = new GameServer(new InetSocketAddress(port))) {
+            System.out.println("Listening on port " + server.getPort());
+            server.run();
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            if (!running || runner != null) {
+                return;
+            }
+            runner = Thread.currentThread();
+        }
+
+        long tickLength = TimeUnit.MILLISECONDS.toNanos(Game.TICK_MILLIS),
+                nextTick = System.nanoTime() + tickLength;
+        try {
+            while (isRunning()) {
+                long wait = nextTick - System.nanoTime();
+                if (wait > 0) {
+                    selector.select(Math.max(1, TimeUnit.NANOSECONDS.toMillis(wait)));
+                } else {
+                    selector.selectNow();
+                }
+                startArrivals();
+                handleSelected();
+
+                long now = System.nanoTime();
+                if (now - nextTick >= 0) {
+                    tick();
+                    tickNanos[(int) (ticks % TICK_HISTORY)] = System.nanoTime() - now;
+                    ticks++;
+
+                    nextTick += tickLength;
+                    if (now - nextTick > tickLength * 10) {
+                        // too far behind to catch up
+                        nextTick = now + tickLength;
+                    }
+                }
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } finally {
+            closeAll();
+        }
+    }
+
+    /**
+     * Returns whether the server should keep running
+     *
+     * @return whether the server should keep running
+     */
+    private synchronized boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Handles the channels that are ready.
+     *
+     * @throws IOException if a client cannot be accepted
+     */
+    private void handleSelected() throws IOException {
+        Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+        while (it.hasNext()) {
+            SelectionKey key = it.next();
+            it.remove();
+            if (!key.isValid()) {
+                continue;
+            }
+
+            if (key.isAcceptable()) {
+                accept();
+                continue;
+            }
+
+            Session session = (Session) key.attachment();
+            try {
+                if (key.isReadable() && !session.read()) {
+                    close(session);
+                    continue;
+                }
+                if (key.isWritable()) {
+                    bytesSent += session.flush(key);
+                    if (session.isDone()) {
+                        close(session);
+                    }
+                }
+            } catch (IOException e) {
+                close(session);
+            }
+        }
+    }
+
+    /**
+     * Accepts every client waiting to connect and starts a game for each once
+     * its maze is ready.
+     *
+     * @throws IOException if the server channel fails
+     */
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.socket().setTcpNoDelay(true);
+            } catch (IOException e) {
+                closeQuietly(channel);
+                continue;
+            }
+            SocketChannel client = channel;
+            waiting.add(client);
+            mazes.take().whenComplete((maze, e) -> {
+                arrivals.add(() -> start(client, maze));
+                selector.wakeup();
+            });
+        }
+        // the pool is topped up in the background
+        mazes.fill();
+    }
+
+    /**
+     * Starts the games whose mazes have become ready.
+     */
+    private void startArrivals() {
+        Runnable arrival;
+        while ((arrival = arrivals.poll()) != null) {
+            arrival.run();
+        }
+    }
+
+    /**
+     * Starts a game for a client that has been accepted.
+     *
+     * @param channel the channel to the client
+     * @param maze    the maze to play in, or null if it could not be
+     *                generated
+     */
+    private void start(SocketChannel channel, Maze maze) {
+        waiting.remove(channel);
+        if (maze == null || !isRunning()) {
+            closeQuietly(channel);
+            return;
+        }
+        try {
+            Game game = new Game(maze, new Random().nextLong());
+            game.getDots().setParallel(false);
+            game.setAIBudget(aiBudget);
+            if (telemetry != null) {
+                game.setTelemetry(telemetry);
+            }
+            if (heatmap != null) {
+                game.setHeatmap(heatmap);
+            }
+            Session session = new Session(channel, game, scratch);
+            SelectionKey key = channel.register(selector, SelectionKey.OP_READ, session);
+            sessions.add(session);
+            sessionCount = sessions.size();
+            bytesSent += session.flush(key);
+        } catch (IOException e) {
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * Advances every game by a tick and sends out the snapshots.
+     */
+    private void tick() {
+        Iterator<Session> it = sessions.iterator();
+        while (it.hasNext()) {
+            Session session = it.next();
+            SelectionKey key = session.getChannel().keyFor(selector);
+            try {
+                session.tick(scratch);
+                bytesSent += session.flush(key);
+                if (session.isDone()) {
+                    it.remove();
+                    retire(session);
+                }
+            } catch (IOException e) {
+                it.remove();
+                retire(session);
+            }
+        }
+        sessionCount = sessions.size();
+    }
+
+    /**
+     * Closes the given session.
+     *
+     * @param session the session to close
+     */
+    private void close(Session session) {
+        sessions.remove(session);
+        sessionCount = sessions.size();
+        retire(session);
+    }
+
+    /**
+     * Closes the channel of a session that has been removed, adds its visits
+     * to the heatmap and adds up its AI budget statistics.
+     *
+     * @param session the session to retire
+     */
+    private void retire(Session session) {
+        closeQuietly(session.getChannel());
+        session.getGame().flushVisits();
+        AIScheduler scheduler = session.getGame().getAIScheduler();
+        if (scheduler != null) {
+            aiOverruns += scheduler.getOverruns();
+            aiFallbacks += scheduler.getFallbacks();
+        }
+    }
+
+    /**
+     * Closes the given channel, ignoring any failure.
+     *
+     * @param channel the channel to close
+     */
+    private static void closeQuietly(Closeable channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            // nothing else can be done with it
+        }
+    }
+
+    /**
+     * Closes every channel of this server.
+     */
+    private void closeAll() {
+        for (Session session : sessions) {
+            retire(session);
+        }
+        sessions.clear();
+        sessionCount = 0;
+        mazes.close();
+        for (SocketChannel channel : waiting) {
+            closeQuietly(channel);
+        }
+        waiting.clear();
+        arrivals.clear();
+
+        closeQuietly(serverChannel);
+        closeQuietly(selector);
+        if (telemetry != null) {
+            telemetry.close();
+        }
+        if (heatmap != null) {
+            Game.writeHeatmap(heatmap);
+        }
+    }
+
+    /**
+     * Stops the server. If the server is running, the thread running it
+     * releases its channels on its way out.
+     */
+    @Override
+    public void close() {
+        synchronized (this) {
+            running = false;
+            if (runner == null) {
+                closeAll();
+                return;
+            }
+        }
+        selector.wakeup();
+    }
+
+    /**
+     * Returns the port this server is listening on
+     *
+     * @return the port this server is listening on
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * Returns the amount of ticks that have been run
+     *
+     * @return the amount of ticks that have been run
+     */
+    public long getTicks() {
+        return ticks;
+    }
+
+    /**
+     * Returns the amount of bytes that have been sent
+     *
+     * @return the amount of bytes that have been sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the amount of sessions being played
+     *
+     * @return the amount of sessions being played
+     */
+    public int getSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * Returns the amount of ticks that went over their AI budget in the games
+     * that have ended
+     *
+     * @return the amount of AI budget overruns
+     */
+    public long getAIOverruns() {
+        return aiOverruns;
+    }
+
+    /**
+     * Returns the amount of moves AIs made in their last direction because
+     * they ran out of time, in the games that have ended
+     *
+     * @return the amount of AI fallback moves
+     */
+    public long getAIFallbacks() {
+        return aiFallbacks;
+    }
+
+    /**
+     * Returns the time each tick of a game may spend moving its AIs
+     *
+     * @return the AI budget in microseconds, or 0 for no limit
+     */
+    public long getAIBudget() {
+        return aiBudget;
+    }
+
+    /**
+     * Returns the durations of the latest ticks, sorted in ascending order.
+     * Only meaningful once the server has stopped, as the running server keeps
+     * overwriting them.
+     *
+     * @return the durations of the latest ticks, in nanoseconds
+     */
+    public long[] getSortedTickNanos() {
+        long[] copy = Arrays.copyOf(tickNanos, (int) Math.min(ticks, TICK_HISTORY));
+        Arrays.sort(copy);
+        return copy;
+    }
+}
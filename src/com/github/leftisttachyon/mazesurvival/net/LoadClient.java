@@ -0,0 +1,286 @@
+package com.github.leftisttachyon.mazesurvival.net;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a {@link GameServer} on localhost and plays many sessions against it
+ * at once from a single thread, then reports how long the server took per
+ * tick and how many bytes each session was sent per tick. Sessions whose
+ * game ends are replaced, so the load stays constant.
+ *
+ * @author Jed Wang
+ */
+public final class LoadClient {
+
+    /**
+     * A session played by the load client
+     */
+    private static final class Connection {
+
+        /**
+         * The channel to the server
+         */
+        private final SocketChannel channel;
+
+        /**
+         * The game as rebuilt from the frames of the server
+         */
+        private final RemoteGame game = new RemoteGame();
+
+        /**
+         * The buffer frames from the server are read into
+         */
+        private final ByteBuffer in = ByteBuffer.allocate(1 << 14);
+
+        /**
+         * Creates a new Connection.
+         *
+         * @param channel the channel to the server
+         */
+        private Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    /**
+     * The address of the server
+     */
+    private final InetSocketAddress address;
+
+    /**
+     * The selector all connections are registered with
+     */
+    private final Selector selector;
+
+    /**
+     * The open connections
+     */
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * A buffer holding an input frame
+     */
+    private final ByteBuffer input = ByteBuffer.allocate(3);
+
+    /**
+     * The random object that picks the moves
+     */
+    private final Random random = new Random();
+
+    /**
+     * The amount of bytes and frames received
+     */
+    private long mazeBytes, mazeFrames, snapshotBytes, snapshotFrames;
+
+    /**
+     * The amount of games that ended
+     */
+    private int gamesEnded = 0;
+
+    /**
+     * Creates a new LoadClient.
+     *
+     * @param address the address of the server
+     * @throws IOException if the selector cannot be opened
+     */
+    private LoadClient(InetSocketAddress address) throws IOException {
+        this.address = address;
+        this.selector = Selector.open();
+    }
+
+    /**
+     * Runs the load test.
+     *
+     * @param args the amount of sessions (300 by default) and the amount of
+     *             seconds to run for (10 by default)
+     * @throws Exception if the test fails
+     */
+    public static void main(String[] args) throws Exception {
+        int sessions = args.length > 0 ? Integer.parseInt(args[0]) : 300;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+
+        GameServer server = new GameServer(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+        Thread serverThread = new Thread(server, "game-server");
+        serverThread.start();
+
+        LoadClient client = new LoadClient(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), server.getPort()));
+        long ticksBefore = server.getTicks();
+        client.run(sessions, TimeUnit.SECONDS.toNanos(seconds));
+        long ticks = server.getTicks() - ticksBefore;
+
+        server.close();
+        serverThread.join();
+
+        long[] nanos = server.getSortedTickNanos();
+        System.out.printf("sessions: %d, seconds: %d, ticks: %d, games ended: %d%n",
+                sessions, seconds, ticks, client.gamesEnded);
+        System.out.printf("tick latency (ms): mean %.3f, p50 %.3f, p99 %.3f, p99.9 %.3f, max %.3f%n",
+                mean(nanos) / 1e6, percentile(nanos, 0.5) / 1e6, percentile(nanos, 0.99) / 1e6,
+                percentile(nanos, 0.999) / 1e6, nanos.length == 0 ? 0 : nanos[nanos.length - 1] / 1e6);
+        System.out.printf("bytes per tick per session: %.2f (%d snapshots), bytes per tick: %.1f%n",
+                (double) client.snapshotBytes / Math.max(1, client.snapshotFrames), client.snapshotFrames,
+                (double) client.snapshotBytes / Math.max(1, ticks));
+        System.out.printf("bytes per maze: %.1f (%d mazes)%n",
+                (double) client.mazeBytes / Math.max(1, client.mazeFrames), client.mazeFrames);
+        if (server.getAIBudget() > 0) {
+            System.out.printf("AI budget: %d us, overruns: %d, fallback moves: %d%n",
+                    server.getAIBudget(), server.getAIOverruns(), server.getAIFallbacks());
+        }
+    }
+
+    /**
+     * Keeps the given amount of sessions playing for the given amount of time.
+     *
+     * @param sessions the amount of sessions
+     * @param duration how long to play, in nanoseconds
+     * @throws IOException if a connection cannot be opened
+     */
+    private void run(int sessions, long duration) throws IOException {
+        for (int i = 0; i < sessions; i++) {
+            connect();
+        }
+
+        long end = System.nanoTime() + duration,
+                tickLength = TimeUnit.MILLISECONDS.toNanos(Game.TICK_MILLIS),
+                nextTick = System.nanoTime();
+        while (System.nanoTime() - end < 0) {
+            selector.select(Game.TICK_MILLIS);
+
+            Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+            while (it.hasNext()) {
+                SelectionKey key = it.next();
+                it.remove();
+                Connection connection = (Connection) key.attachment();
+                if (!key.isValid() || read(connection)) {
+                    continue;
+                }
+
+                // the server ended the session
+                key.cancel();
+                connection.channel.close();
+                connections.remove(connection);
+                gamesEnded++;
+                connect();
+            }
+
+            if (System.nanoTime() - nextTick >= 0) {
+                nextTick += tickLength;
+                for (Connection connection : connections) {
+                    // about one move every 15 ticks
+                    if (random.nextInt(15) == 0) {
+                        try {
+                            sendMove(connection, random.nextInt(4));
+                        } catch (IOException e) {
+                            // the server closed it, which the next read notices
+                        }
+                    }
+                }
+            }
+        }
+
+        for (Connection connection : connections) {
+            connection.channel.close();
+        }
+        selector.close();
+    }
+
+    /**
+     * Opens a new connection to the server.
+     *
+     * @throws IOException if the connection cannot be opened
+     */
+    private void connect() throws IOException {
+        SocketChannel channel = SocketChannel.open(address);
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+        Connection connection = new Connection(channel);
+        channel.register(selector, SelectionKey.OP_READ, connection);
+        connections.add(connection);
+    }
+
+    /**
+     * Reads and applies the frames the server sent.
+     *
+     * @param connection the connection to read from
+     * @return whether the connection is still open
+     * @throws IOException if the connection fails
+     */
+    private boolean read(Connection connection) throws IOException {
+        int read = connection.channel.read(connection.in);
+        connection.in.flip();
+        ByteBuffer frame;
+        int start = connection.in.position();
+        while ((frame = Protocol.nextFrame(connection.in)) != null) {
+            int size = connection.in.position() - start;
+            start = connection.in.position();
+            if (frame.get(0) == Protocol.MAZE && connection.game.getHeight() == 0) {
+                mazeBytes += size;
+                mazeFrames++;
+            } else {
+                snapshotBytes += size;
+                snapshotFrames++;
+            }
+            connection.game.apply(frame);
+        }
+        connection.in.compact();
+        return read >= 0;
+    }
+
+    /**
+     * Sends a move to the server.
+     *
+     * @param connection the connection to send it over
+     * @param direction  the direction of the move
+     * @throws IOException if the connection fails
+     */
+    private void sendMove(Connection connection, int direction) throws IOException {
+        input.clear();
+        input.put((byte) 2).put(Protocol.INPUT).put((byte) direction).flip();
+        // tiny frames practically never fill up the socket buffer
+        while (input.hasRemaining()) {
+            connection.channel.write(input);
+        }
+    }
+
+    /**
+     * Returns the mean of the given values
+     *
+     * @param values the values
+     * @return the mean of the values
+     */
+    private static double mean(long[] values) {
+        double sum = 0;
+        for (long value : values) {
+            sum += value;
+        }
+        return values.length == 0 ? 0 : sum / values.length;
+    }
+
+    /**
+     * Returns the given percentile of the given sorted values
+     *
+     * @param sorted   the values, sorted in ascending order
+     * @param fraction the percentile, between 0 and 1
+     * @return the percentile
+     */
+    private static double percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.floor(sorted.length * fraction))];
+    }
+}
@@ -0,0 +1,215 @@
+package com.github.leftisttachyon.mazesurvival.net;
+
+import com.github.leftisttachyon.mazesurvival.io.VarInts;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.awt.*;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * The binary protocol spoken between the game server and its clients.<br>
+ * Every message is a frame: a variable-length int holding the length of the
+ * rest of the frame, a type byte and the payload.<br>
+ * A client only sends {@link #INPUT} frames, holding a single direction byte.
+ * The server first sends a {@link #MAZE} frame: the height and width of the
+ * maze and the amount of dots as variable-length ints, followed by two bits
+ * per cell in row-major order, least significant bit first, which tell
+ * whether the east and the south wall of the cell are solid. The outer walls
+ * are always solid and are not sent. Then every tick the server sends a
+ * {@link #SNAPSHOT} frame: the ticks since the last snapshot, a
+ * variable-length int holding the length in bytes of the set of dots that
+ * moved shifted left by one and ORed with whether the game is over, the set
+ * itself with a bit per dot, least significant bit first and without its
+ * trailing zero bytes, and the zigzag-encoded x and y deltas of each dot that
+ * moved. The user dot is dot 0, the AIs follow; every dot starts at (0, 0),
+ * so the first snapshot moves them all to where they are.
+ *
+ * @author Jed Wang
+ */
+final class Protocol {
+
+    /**
+     * The type of a frame holding a user move
+     */
+    static final byte INPUT = 1;
+
+    /**
+     * The type of a frame holding the maze
+     */
+    static final byte MAZE = 1;
+
+    /**
+     * The type of a frame holding a snapshot of the dots
+     */
+    static final byte SNAPSHOT = 2;
+
+    /**
+     * The largest frame either side accepts
+     */
+    static final int MAX_FRAME = 1 << 20;
+
+    /**
+     * All static methods
+     */
+    private Protocol() {
+    }
+
+    /**
+     * Writes a frame whose payload is the remaining content of the given
+     * buffer.
+     *
+     * @param out     the buffer to write to
+     * @param type    the type of the frame
+     * @param payload the payload of the frame
+     */
+    static void putFrame(ByteBuffer out, byte type, ByteBuffer payload) {
+        VarInts.putVarInt(out, payload.remaining() + 1);
+        out.put(type);
+        out.put(payload);
+    }
+
+    /**
+     * Returns the most bytes a frame with the given payload length takes up
+     *
+     * @param payloadLength the length of the payload
+     * @return the most bytes the frame takes up
+     */
+    static int frameSize(int payloadLength) {
+        return VarInts.sizeOf(payloadLength + 1) + 1 + payloadLength;
+    }
+
+    /**
+     * Reads the next complete frame from the given buffer. If the buffer does
+     * not hold a complete frame, its position is left unchanged.
+     *
+     * @param in the buffer to read from
+     * @return a buffer holding the frame, starting with its type byte, or null
+     * if the buffer does not hold a complete frame
+     * @throws IllegalArgumentException if the frame is malformed or too large
+     */
+    static ByteBuffer nextFrame(ByteBuffer in) {
+        int start = in.position();
+        int length;
+        try {
+            length = VarInts.getVarInt(in);
+        } catch (BufferUnderflowException e) {
+            in.position(start);
+            return null;
+        }
+        if (length < 1 || length > MAX_FRAME) {
+            throw new IllegalArgumentException("Invalid frame length: " + length);
+        }
+        if (in.remaining() < length) {
+            in.position(start);
+            return null;
+        }
+
+        ByteBuffer frame = in.slice();
+        frame.limit(length);
+        in.position(in.position() + length);
+        return frame;
+    }
+
+    /**
+     * Writes the walls of the given maze as a maze payload.
+     *
+     * @param out  the buffer to write to
+     * @param maze the maze to write
+     * @param dots the amount of dots in the game
+     */
+    static void putMaze(ByteBuffer out, Maze maze, int dots) {
+        Dimension dim = maze.getDimensions();
+        VarInts.putVarInt(out, dim.height);
+        VarInts.putVarInt(out, dim.width);
+        VarInts.putVarInt(out, dots);
+
+        int bits = 0, count = 0;
+        for (int r = 0; r < dim.height; r++) {
+            for (int c = 0; c < dim.width; c++) {
+                if (maze.getCell(r, c).getWall(EAST)) {
+                    bits |= 1 << count;
+                }
+                if (maze.getCell(r, c).getWall(SOUTH)) {
+                    bits |= 2 << count;
+                }
+                count += 2;
+                if (count == 8) {
+                    out.put((byte) bits);
+                    bits = 0;
+                    count = 0;
+                }
+            }
+        }
+        if (count > 0) {
+            out.put((byte) bits);
+        }
+    }
+
+    /**
+     * Returns the length of the maze payload of a maze of the given size
+     *
+     * @param height the height of the maze
+     * @param width  the width of the maze
+     * @param dots   the amount of dots in the game
+     * @return the length of the maze payload
+     */
+    static int mazeSize(int height, int width, int dots) {
+        return VarInts.sizeOf(height) + VarInts.sizeOf(width) + VarInts.sizeOf(dots)
+                + (int) (((long) height * width * 2 + 7) / 8);
+    }
+
+    /**
+     * Writes a snapshot payload holding the changes between the given
+     * positions.
+     *
+     * @param out       the buffer to write to
+     * @param tickDelta the ticks since the last snapshot
+     * @param over      whether the game is over
+     * @param prevXs    the previous x-coordinates of the dots
+     * @param prevYs    the previous y-coordinates of the dots
+     * @param xs        the current x-coordinates of the dots
+     * @param ys        the current y-coordinates of the dots
+     */
+    static void putSnapshot(ByteBuffer out, int tickDelta, boolean over,
+                            int[] prevXs, int[] prevYs, int[] xs, int[] ys) {
+        // the length of the set of dots that moved, up to the last one
+        int length = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] != prevXs[i] || ys[i] != prevYs[i]) {
+                length = i / 8 + 1;
+            }
+        }
+
+        VarInts.putVarInt(out, tickDelta);
+        VarInts.putVarInt(out, length << 1 | (over ? 1 : 0));
+        for (int b = 0; b < length; b++) {
+            int bits = 0;
+            for (int i = b * 8; i < Math.min(xs.length, b * 8 + 8); i++) {
+                if (xs[i] != prevXs[i] || ys[i] != prevYs[i]) {
+                    bits |= 1 << (i & 7);
+                }
+            }
+            out.put((byte) bits);
+        }
+        for (int i = 0; i < xs.length; i++) {
+            if (xs[i] != prevXs[i] || ys[i] != prevYs[i]) {
+                VarInts.putVarInt(out, VarInts.zigzag(xs[i] - prevXs[i]));
+                VarInts.putVarInt(out, VarInts.zigzag(ys[i] - prevYs[i]));
+            }
+        }
+    }
+
+    /**
+     * Returns the most bytes a snapshot payload for the given amount of dots
+     * takes up
+     *
+     * @param dots the amount of dots
+     * @return the most bytes the snapshot payload takes up
+     */
+    static int maxSnapshotSize(int dots) {
+        return VarInts.MAX_INT_BYTES * (2 + dots * 2) + (dots + 7) / 8;
+    }
+}
@@ -0,0 +1,179 @@
+package com.github.leftisttachyon.mazesurvival.net;
+
+import com.github.leftisttachyon.mazesurvival.io.VarInts;
+
+import java.nio.ByteBuffer;
+
+import static com.github.leftisttachyon.mazesurvival.maze.Cell.*;
+
+/**
+ * The state of a game run by a {@link GameServer}, as rebuilt by a client from
+ * the frames the server sends.
+ *
+ * @author Jed Wang
+ */
+public final class RemoteGame {
+
+    /**
+     * The dimensions of the maze, or 0 before the maze has been received
+     */
+    private int height, width;
+
+    /**
+     * The packed east and south walls of the maze, as sent by the server
+     */
+    private byte[] walls;
+
+    /**
+     * The positions of the dots; the user dot comes first
+     */
+    private int[] xs = new int[0], ys = new int[0];
+
+    /**
+     * The tick of the last snapshot
+     */
+    private int tick = 0;
+
+    /**
+     * Stores whether the game is over or not
+     */
+    private boolean over = false;
+
+    /**
+     * Applies a frame sent by the server.
+     *
+     * @param frame the frame, starting with its type byte
+     * @throws IllegalArgumentException if the frame is malformed
+     */
+    public void apply(ByteBuffer frame) {
+        byte type = frame.get();
+        switch (type) {
+            case Protocol.MAZE:
+                height = VarInts.getVarInt(frame);
+                width = VarInts.getVarInt(frame);
+                int count = VarInts.getVarInt(frame);
+                if (count < 0 || count > Protocol.MAX_FRAME) {
+                    throw new IllegalArgumentException("Invalid amount of dots: " + count);
+                }
+                xs = new int[count];
+                ys = new int[count];
+                walls = new byte[frame.remaining()];
+                frame.get(walls);
+                break;
+            case Protocol.SNAPSHOT:
+                tick += VarInts.getVarInt(frame);
+                int flags = VarInts.getVarInt(frame);
+                over = (flags & 1) != 0;
+
+                int length = flags >>> 1;
+                if (length > (xs.length + 7) / 8) {
+                    throw new IllegalArgumentException("Too many dots moved: " + length + " bytes for "
+                            + xs.length + " dots");
+                }
+                byte[] moved = new byte[length];
+                frame.get(moved);
+                for (int i = 0; i < length * 8; i++) {
+                    if ((moved[i >>> 3] & 1 << (i & 7)) == 0) {
+                        continue;
+                    }
+                    if (i >= xs.length) {
+                        throw new IllegalArgumentException("Dot " + i + " moved, but there are only "
+                                + xs.length);
+                    }
+                    xs[i] += VarInts.unzigzag(VarInts.getVarInt(frame));
+                    ys[i] += VarInts.unzigzag(VarInts.getVarInt(frame));
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown frame type: " + type);
+        }
+    }
+
+    /**
+     * Returns the solidity of the given wall of the given cell
+     *
+     * @param r    the row of the cell
+     * @param c    the column of the cell
+     * @param wall the wall to get
+     * @return the solidity of the given wall
+     */
+    public boolean getWall(int r, int c, int wall) {
+        switch (wall) {
+            case NORTH:
+                return r == 0 || getWall(r - 1, c, SOUTH);
+            case WEST:
+                return c == 0 || getWall(r, c - 1, EAST);
+            case EAST:
+            case SOUTH:
+                int bit = (r * width + c) * 2 + (wall == SOUTH ? 1 : 0);
+                return (walls[bit >>> 3] & 1 << (bit & 7)) != 0;
+            default:
+                throw new IllegalArgumentException("Invalid wall: " + wall);
+        }
+    }
+
+    /**
+     * Returns the height of the maze
+     *
+     * @return the height of the maze
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the maze
+     *
+     * @return the width of the maze
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the amount of dots in the game
+     *
+     * @return the amount of dots, or 0 before the maze has been received
+     */
+    public int getDotCount() {
+        return xs.length;
+    }
+
+    /**
+     * Returns the x-coordinate of the given dot
+     *
+     * @param dot the index of the dot; the user dot is 0
+     * @return the x-coordinate of the dot
+     */
+    public int getX(int dot) {
+        return xs[dot];
+    }
+
+    /**
+     * Returns the y-coordinate of the given dot
+     *
+     * @param dot the index of the dot; the user dot is 0
+     * @return the y-coordinate of the dot
+     */
+    public int getY(int dot) {
+        return ys[dot];
+    }
+
+    /**
+     * Returns the tick of the last snapshot
+     *
+     * @return the tick of the last snapshot
+     */
+    public int getTick() {
+        return tick;
+    }
+
+    /**
+     * Returns whether the game is over or not
+     *
+     * @return whether the game is over or not
+     */
+    public boolean isOver() {
+        return over;
+    }
+}
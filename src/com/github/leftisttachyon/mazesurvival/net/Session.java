@@ -0,0 +1,232 @@
+package com.github.leftisttachyon.mazesurvival.net;
+
+import com.github.leftisttachyon.mazesurvival.game.AIDot;
+import com.github.leftisttachyon.mazesurvival.game.Dot;
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+
+/**
+ * A game being played by a client of the game server. Only the selector
+ * thread of the server touches a session.
+ *
+ * @author Jed Wang
+ */
+final class Session {
+
+    /**
+     * The most bytes that may wait to be sent to a client before it is
+     * dropped for not keeping up
+     */
+    private static final int MAX_PENDING = 1 << 16;
+
+    /**
+     * The channel to the client
+     */
+    private final SocketChannel channel;
+
+    /**
+     * The game being played
+     */
+    private final Game game;
+
+    /**
+     * The buffer that frames from the client are read into
+     */
+    private final ByteBuffer in = ByteBuffer.allocate(256);
+
+    /**
+     * The buffer of bytes waiting to be sent to the client, in write mode
+     */
+    private ByteBuffer out;
+
+    /**
+     * The positions of the dots in the last snapshot sent
+     */
+    private final int[] sentXs, sentYs;
+
+    /**
+     * The positions of the dots now
+     */
+    private final int[] xs, ys;
+
+    /**
+     * The tick of the last snapshot sent
+     */
+    private int sentTick = 0;
+
+    /**
+     * Stores whether the session should be closed once everything has been
+     * sent
+     */
+    private boolean closing = false;
+
+    /**
+     * Creates a new session and queues the maze and the first snapshot.
+     *
+     * @param channel the channel to the client
+     * @param game    the game to play
+     * @param scratch a buffer to encode payloads in
+     */
+    Session(SocketChannel channel, Game game, ByteBuffer scratch) {
+        this.channel = channel;
+        this.game = game;
+
+        int dots = game.getDots().getAIs().size() + 1;
+        sentXs = new int[dots];
+        sentYs = new int[dots];
+        xs = new int[dots];
+        ys = new int[dots];
+
+        int height = game.getMaze().getDimensions().height,
+                width = game.getMaze().getDimensions().width;
+        out = ByteBuffer.allocate(Math.max(4096, Protocol.frameSize(Protocol.mazeSize(height, width, dots))
+                + Protocol.frameSize(Protocol.maxSnapshotSize(dots))));
+
+        scratch.clear();
+        Protocol.putMaze(scratch, game.getMaze(), dots);
+        scratch.flip();
+        Protocol.putFrame(out, Protocol.MAZE, scratch);
+        queueSnapshot(scratch);
+    }
+
+    /**
+     * Reads and applies the moves the client sent.
+     *
+     * @return whether the client is still connected
+     * @throws IOException if the channel cannot be read
+     */
+    boolean read() throws IOException {
+        int read = channel.read(in);
+        in.flip();
+        try {
+            ByteBuffer frame;
+            while ((frame = Protocol.nextFrame(in)) != null) {
+                if (frame.get() == Protocol.INPUT && frame.hasRemaining()) {
+                    int direction = frame.get();
+                    if (direction >= Cell.NORTH && direction <= Cell.WEST) {
+                        game.moveUser(direction);
+                    }
+                }
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        } finally {
+            in.compact();
+        }
+        // a full buffer holds a frame larger than any a client should send
+        return read >= 0 && in.hasRemaining();
+    }
+
+    /**
+     * Advances the game by a tick and queues a snapshot. Once the game is
+     * over, the session is closed after the last snapshot is sent.
+     *
+     * @param scratch a buffer to encode payloads in
+     */
+    void tick(ByteBuffer scratch) {
+        if (closing) {
+            return;
+        }
+
+        game.tick();
+        queueSnapshot(scratch);
+        if (game.isOver()) {
+            closing = true;
+        }
+    }
+
+    /**
+     * Queues a snapshot of the positions of the dots.
+     *
+     * @param scratch a buffer to encode payloads in
+     */
+    private void queueSnapshot(ByteBuffer scratch) {
+        Dot user = game.getDots().getUserDot();
+        xs[0] = user.getX();
+        ys[0] = user.getY();
+        List<AIDot> ais = game.getDots().getAIs();
+        for (int i = 0; i < ais.size(); i++) {
+            xs[i + 1] = ais.get(i).getX();
+            ys[i + 1] = ais.get(i).getY();
+        }
+
+        scratch.clear();
+        Protocol.putSnapshot(scratch, game.getTick() - sentTick, game.isOver(),
+                sentXs, sentYs, xs, ys);
+        scratch.flip();
+
+        int size = Protocol.frameSize(scratch.remaining());
+        if (out.remaining() < size) {
+            if (out.position() + size > MAX_PENDING) {
+                // the client is not keeping up
+                closing = true;
+                out.clear();
+                return;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.min(MAX_PENDING, out.capacity() * 2));
+            out.flip();
+            out = bigger.put(out);
+        }
+        Protocol.putFrame(out, Protocol.SNAPSHOT, scratch);
+
+        System.arraycopy(xs, 0, sentXs, 0, xs.length);
+        System.arraycopy(ys, 0, sentYs, 0, ys.length);
+        sentTick = game.getTick();
+    }
+
+    /**
+     * Sends as much of what is queued as the channel takes, and updates the
+     * interest of the given key accordingly.
+     *
+     * @param key the key of the channel
+     * @return the amount of bytes sent
+     * @throws IOException if the channel cannot be written to
+     */
+    int flush(SelectionKey key) throws IOException {
+        out.flip();
+        int written = 0;
+        if (out.hasRemaining()) {
+            written = channel.write(out);
+        }
+        boolean pending = out.hasRemaining();
+        out.compact();
+
+        key.interestOps(pending ? SelectionKey.OP_READ | SelectionKey.OP_WRITE
+                : SelectionKey.OP_READ);
+        return written;
+    }
+
+    /**
+     * Returns whether the session is done: its game is over or its client is
+     * too slow, and nothing is left to send
+     *
+     * @return whether the session is done
+     */
+    boolean isDone() {
+        return closing && out.position() == 0;
+    }
+
+    /**
+     * Returns the game being played
+     *
+     * @return the game being played
+     */
+    Game getGame() {
+        return game;
+    }
+
+    /**
+     * Returns the channel to the client
+     *
+     * @return the channel to the client
+     */
+    SocketChannel getChannel() {
+        return channel;
+    }
+}
@@ -0,0 +1,259 @@
+package com.github.leftisttachyon.mazesurvival.replay;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.io.VarInts;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A recorded game: the seeds it was created from and the moves the user made.
+ * <br>
+ * A replay file starts with a header made of the magic bytes {@code MSRP}, the
+ * format version, the height and width of the maze as variable-length ints,
+ * then the maze seed and the spawn seed as 8-byte big-endian longs. The header
+ * is followed by records, each a single variable-length int holding the ticks
+ * since the previous record shifted left by three bits, ORed with the record
+ * type: a direction for a user move, or {@link #END} for the end of the game.
+ *
+ * @author Jed Wang
+ */
+public final class Replay {
+
+    /**
+     * The magic bytes at the start of each replay file
+     */
+    static final int MAGIC = 0x4D535250;
+
+    /**
+     * The version of the replay format
+     */
+    static final int VERSION = 1;
+
+    /**
+     * The record type that marks the end of a game
+     */
+    static final int END = 4;
+
+    /**
+     * The amount of bits of a record that hold its type
+     */
+    static final int TYPE_BITS = 3;
+
+    /**
+     * The dimensions of the maze
+     */
+    private final int height, width;
+
+    /**
+     * The seeds the game was created from
+     */
+    private final long mazeSeed, spawnSeed;
+
+    /**
+     * The tick each move was made at
+     */
+    private final int[] ticks;
+
+    /**
+     * The direction of each move
+     */
+    private final int[] directions;
+
+    /**
+     * The tick the game ended at, or -1 if the recording stopped before the
+     * game ended
+     */
+    private final int endTick;
+
+    /**
+     * Creates a new Replay.
+     *
+     * @param height     the height of the maze
+     * @param width      the width of the maze
+     * @param mazeSeed   the seed the maze was generated from
+     * @param spawnSeed  the seed the dots were placed with
+     * @param ticks      the tick each move was made at
+     * @param directions the direction of each move
+     * @param endTick    the tick the game ended at, or -1 if unknown
+     */
+    public Replay(int height, int width, long mazeSeed, long spawnSeed,
+                  int[] ticks, int[] directions, int endTick) {
+        if (ticks.length != directions.length) {
+            throw new IllegalArgumentException("ticks and directions differ in length");
+        }
+
+        this.height = height;
+        this.width = width;
+        this.mazeSeed = mazeSeed;
+        this.spawnSeed = spawnSeed;
+        this.ticks = ticks.clone();
+        this.directions = directions.clone();
+        this.endTick = endTick;
+    }
+
+    /**
+     * Reads a replay from the given file.
+     *
+     * @param path the file to read from
+     * @return the replay that was read
+     * @throws IOException if the file cannot be read or is not a replay
+     */
+    public static Replay read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return read(channel);
+        }
+    }
+
+    /**
+     * Reads a replay from the given channel, until the end of the channel.
+     *
+     * @param channel the channel to read from
+     * @return the replay that was read
+     * @throws IOException if the channel cannot be read or does not contain a
+     *                     replay
+     */
+    public static Replay read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (channel.read(buffer) >= 0) {
+            if (!buffer.hasRemaining()) {
+                buffer = ByteBuffer.allocate(buffer.capacity() * 2)
+                        .put((ByteBuffer) buffer.flip());
+            }
+        }
+        buffer.flip();
+
+        try {
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a replay file");
+            }
+            int version = VarInts.getVarInt(buffer);
+            if (version != VERSION) {
+                throw new IOException("Unsupported replay version: " + version);
+            }
+
+            int height = VarInts.getVarInt(buffer), width = VarInts.getVarInt(buffer);
+            long mazeSeed = buffer.getLong(), spawnSeed = buffer.getLong();
+
+            int[] ticks = new int[64], directions = new int[64];
+            int size = 0, tick = 0, endTick = -1;
+            while (buffer.hasRemaining()) {
+                int record = VarInts.getVarInt(buffer);
+                tick += record >>> TYPE_BITS;
+                int type = record & ((1 << TYPE_BITS) - 1);
+                if (type == END) {
+                    endTick = tick;
+                    break;
+                }
+                if (type > END) {
+                    throw new IOException("Unknown record type: " + type);
+                }
+
+                if (size == ticks.length) {
+                    ticks = Arrays.copyOf(ticks, size * 2);
+                    directions = Arrays.copyOf(directions, size * 2);
+                }
+                ticks[size] = tick;
+                directions[size] = type;
+                size++;
+            }
+
+            return new Replay(height, width, mazeSeed, spawnSeed,
+                    Arrays.copyOf(ticks, size), Arrays.copyOf(directions, size),
+                    endTick);
+        } catch (BufferUnderflowException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt replay", e);
+        }
+    }
+
+    /**
+     * Creates a new game in the state the recorded game started in
+     *
+     * @return a new game in the starting state of the recorded game
+     */
+    public Game createGame() {
+        return new Game(new Maze(height, width, mazeSeed), spawnSeed);
+    }
+
+    /**
+     * Returns the height of the maze
+     *
+     * @return the height of the maze
+     */
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Returns the width of the maze
+     *
+     * @return the width of the maze
+     */
+    public int getWidth() {
+        return width;
+    }
+
+    /**
+     * Returns the seed the maze was generated from
+     *
+     * @return the seed the maze was generated from
+     */
+    public long getMazeSeed() {
+        return mazeSeed;
+    }
+
+    /**
+     * Returns the seed the dots were placed with
+     *
+     * @return the seed the dots were placed with
+     */
+    public long getSpawnSeed() {
+        return spawnSeed;
+    }
+
+    /**
+     * Returns the amount of recorded moves
+     *
+     * @return the amount of recorded moves
+     */
+    public int getMoveCount() {
+        return ticks.length;
+    }
+
+    /**
+     * Returns the tick the given move was made at
+     *
+     * @param move the index of the move
+     * @return the tick the move was made at
+     */
+    public int getMoveTick(int move) {
+        return ticks[move];
+    }
+
+    /**
+     * Returns the direction of the given move
+     *
+     * @param move the index of the move
+     * @return the direction of the move
+     */
+    public int getMoveDirection(int move) {
+        return directions[move];
+    }
+
+    /**
+     * Returns the tick the game ended at
+     *
+     * @return the tick the game ended at, or -1 if the recording stopped
+     * before the game ended
+     */
+    public int getEndTick() {
+        return endTick;
+    }
+}
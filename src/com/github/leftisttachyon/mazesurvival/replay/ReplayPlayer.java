@@ -0,0 +1,132 @@
+package com.github.leftisttachyon.mazesurvival.replay;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Re-simulates a recorded game, either one tick at a time, in real time or as
+ * fast as possible.
+ *
+ * @author Jed Wang
+ */
+public final class ReplayPlayer {
+
+    /**
+     * The replay being played
+     */
+    private final Replay replay;
+
+    /**
+     * The game the replay is simulated in
+     */
+    private final Game game;
+
+    /**
+     * The index of the next move to apply
+     */
+    private int nextMove = 0;
+
+    /**
+     * Creates a new ReplayPlayer.
+     *
+     * @param replay the replay to play
+     */
+    public ReplayPlayer(Replay replay) {
+        this.replay = replay;
+        this.game = replay.createGame();
+    }
+
+    /**
+     * Applies the moves recorded for the current tick, then advances the game
+     * by a tick.
+     *
+     * @return whether there is anything left to play
+     */
+    public boolean step() {
+        if (isFinished()) {
+            return false;
+        }
+
+        int tick = game.getTick();
+        while (nextMove < replay.getMoveCount() && replay.getMoveTick(nextMove) == tick) {
+            game.moveUser(replay.getMoveDirection(nextMove++));
+        }
+        int end = replay.getEndTick();
+        if (!game.isOver() && (end < 0 || tick < end)) {
+            game.tick();
+        }
+
+        return !isFinished();
+    }
+
+    /**
+     * Plays the rest of the replay as fast as possible.
+     *
+     * @return the game in its final state
+     */
+    public Game fastForward() {
+        while (step()) {
+            // keep going
+        }
+        return game;
+    }
+
+    /**
+     * Plays the rest of the replay in real time, blocking until it is done.
+     *
+     * @param onTick called after every tick, may be null
+     * @return the game in its final state
+     * @throws InterruptedException if interrupted while waiting for the next
+     *                              tick
+     */
+    public Game playRealTime(Runnable onTick) throws InterruptedException {
+        long tickNanos = TimeUnit.MILLISECONDS.toNanos(Game.TICK_MILLIS),
+                next = System.nanoTime();
+        boolean more = true;
+        while (more) {
+            more = step();
+            if (onTick != null) {
+                onTick.run();
+            }
+
+            next += tickNanos;
+            long wait = next - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+        }
+        return game;
+    }
+
+    /**
+     * Returns whether the whole replay has been played. A replay is over when
+     * the game is over or its recorded end has been reached and every move
+     * has been applied.
+     *
+     * @return whether the whole replay has been played
+     */
+    public boolean isFinished() {
+        int end = replay.getEndTick();
+        return game.isOver() || (end >= 0 && game.getTick() >= end
+                && nextMove == replay.getMoveCount());
+    }
+
+    /**
+     * Returns the game the replay is simulated in
+     *
+     * @return the game the replay is simulated in
+     */
+    public Game getGame() {
+        return game;
+    }
+
+    /**
+     * Returns the replay being played
+     *
+     * @return the replay being played
+     */
+    public Replay getReplay() {
+        return replay;
+    }
+}
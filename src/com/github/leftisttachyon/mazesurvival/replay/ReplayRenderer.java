@@ -0,0 +1,215 @@
+package com.github.leftisttachyon.mazesurvival.replay;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+import com.github.leftisttachyon.mazesurvival.game.RenderSnapshot;
+import com.github.leftisttachyon.mazesurvival.maze.Cell;
+import com.github.leftisttachyon.mazesurvival.maze.Maze;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Renders a replay to a sequence of PNG images without a window. The calling
+ * thread re-simulates the game and takes a snapshot every few ticks, and a
+ * pool of workers paints the snapshots and encodes them, so simulation runs
+ * ahead of encoding and encoding uses every core. Frames are painted with the
+ * same code and layout as the window, and are named {@code frame-000000.png}
+ * onwards.<br>
+ * Works with {@code java.awt.headless=true}.
+ *
+ * @author Jed Wang
+ */
+public final class ReplayRenderer {
+
+    /**
+     * The most frames waiting to be encoded per worker, which bounds how far
+     * simulation runs ahead and how much memory the snapshots take
+     */
+    private static final int QUEUED_PER_WORKER = 8;
+
+    /**
+     * The replay to render
+     */
+    private final Replay replay;
+
+    /**
+     * The ticks between frames
+     */
+    private final int frameTicks;
+
+    /**
+     * The amount of workers that paint and encode frames
+     */
+    private final int workers;
+
+    /**
+     * Creates a new ReplayRenderer.
+     *
+     * @param replay     the replay to render
+     * @param frameTicks the ticks between frames; 2 gives 50 frames a second
+     * @param workers    the amount of workers that paint and encode frames
+     */
+    public ReplayRenderer(Replay replay, int frameTicks, int workers) {
+        if (frameTicks < 1) {
+            throw new IllegalArgumentException("Invalid ticks between frames: " + frameTicks);
+        }
+        if (workers < 1) {
+            throw new IllegalArgumentException("Invalid amount of workers: " + workers);
+        }
+        this.replay = replay;
+        this.frameTicks = frameTicks;
+        this.workers = workers;
+    }
+
+    /**
+     * Renders the replay into the given directory, which is created if it
+     * does not exist.
+     *
+     * @param dir the directory to write the frames to
+     * @return the amount of frames written
+     * @throws IOException          if a frame cannot be written
+     * @throws InterruptedException if interrupted while waiting for the
+     *                              workers
+     */
+    public int render(Path dir) throws IOException, InterruptedException {
+        Files.createDirectories(dir);
+
+        ReplayPlayer player = new ReplayPlayer(replay);
+        Game game = player.getGame();
+        Dimension dim = game.getMaze().getDimensions();
+        // the size of the window, which leaves room for the time above the maze
+        int width = dim.width * Cell.WIDTH + 40, height = dim.height * Cell.WIDTH + 50;
+
+        // each worker paints the maze once and copies it under every frame
+        Maze maze = game.getMaze();
+        ThreadLocal<Canvas> canvases = ThreadLocal.withInitial(() -> new Canvas(maze, width, height));
+        ExecutorService executor = Executors.newFixedThreadPool(workers, r -> {
+            Thread thread = new Thread(r, "frame-encoder");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore queued = new Semaphore(workers * QUEUED_PER_WORKER);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        int frames = 0;
+        try {
+            while (failure.get() == null) {
+                boolean finished = player.isFinished();
+                if (game.getTick() % frameTicks == 0 || finished) {
+                    RenderSnapshot snapshot = new RenderSnapshot(game, finished);
+                    Path file = dir.resolve(String.format("frame-%06d.png", frames++));
+                    queued.acquire();
+                    executor.execute(() -> {
+                        try {
+                            canvases.get().write(snapshot, file);
+                        } catch (IOException | RuntimeException e) {
+                            failure.compareAndSet(null, e);
+                        } finally {
+                            queued.release();
+                        }
+                    });
+                }
+                if (finished) {
+                    break;
+                }
+                player.step();
+            }
+        } finally {
+            executor.shutdown();
+            executor.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        }
+
+        Throwable t = failure.get();
+        if (t instanceof IOException) {
+            throw (IOException) t;
+        } else if (t != null) {
+            throw new IOException("A frame could not be rendered", t);
+        }
+        return frames;
+    }
+
+    /**
+     * The images a worker paints frames in
+     */
+    private static final class Canvas {
+
+        /**
+         * The background and maze, painted once
+         */
+        private final BufferedImage background;
+
+        /**
+         * The frame being painted
+         */
+        private final BufferedImage frame;
+
+        /**
+         * The font the time is drawn in
+         */
+        private final Font font = new Font("Consolas", Font.PLAIN, 15);
+
+        /**
+         * Creates a new Canvas.
+         *
+         * @param maze   the maze to paint
+         * @param width  the width of the frames
+         * @param height the height of the frames
+         */
+        private Canvas(Maze maze, int width, int height) {
+            background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            frame = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+
+            Graphics2D g2D = background.createGraphics();
+            setHints(g2D);
+            g2D.setColor(Color.WHITE);
+            g2D.fillRect(0, 0, width, height);
+            g2D.translate(20, 30);
+            maze.paint(g2D);
+            g2D.dispose();
+        }
+
+        /**
+         * Paints a snapshot and writes it out as a PNG image.
+         *
+         * @param snapshot the snapshot to paint
+         * @param file     the file to write to
+         * @throws IOException if the file cannot be written
+         */
+        private void write(RenderSnapshot snapshot, Path file) throws IOException {
+            Graphics2D g2D = frame.createGraphics();
+            g2D.drawImage(background, 0, 0, null);
+            setHints(g2D);
+            g2D.setFont(font);
+            g2D.setColor(Color.BLACK);
+            g2D.drawString(Game.formatTime(snapshot.getTick()), 20, 20);
+            g2D.translate(20, 30);
+            snapshot.paintDots(g2D);
+            g2D.dispose();
+
+            if (!ImageIO.write(frame, "png", file.toFile())) {
+                throw new IOException("No PNG encoder is available");
+            }
+        }
+
+        /**
+         * Sets the same rendering hints as the window uses.
+         *
+         * @param g2D the Graphics2D object to set the hints of
+         */
+        private static void setHints(Graphics2D g2D) {
+            g2D.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            g2D.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package com.github.leftisttachyon.mazesurvival.replay;
+
+import com.github.leftisttachyon.mazesurvival.io.VarInts;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Records a game to a channel in the format described in {@link Replay}.
+ * Records are buffered and only written out when the buffer fills up, when
+ * the game ends or when this writer is flushed or closed.
+ *
+ * @author Jed Wang
+ */
+public final class ReplayWriter implements Closeable {
+
+    /**
+     * The channel to write to
+     */
+    private final WritableByteChannel channel;
+
+    /**
+     * The buffer that records are gathered in
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(4096);
+
+    /**
+     * The tick of the last record
+     */
+    private int lastTick = 0;
+
+    /**
+     * Stores whether the end of the game has been written
+     */
+    private boolean ended = false;
+
+    /**
+     * Creates a new ReplayWriter and writes the header of the replay.
+     *
+     * @param channel   the channel to write to
+     * @param height    the height of the maze
+     * @param width     the width of the maze
+     * @param mazeSeed  the seed the maze was generated from
+     * @param spawnSeed the seed the dots were placed with
+     * @throws IOException if the header cannot be written
+     */
+    public ReplayWriter(WritableByteChannel channel, int height, int width,
+                        long mazeSeed, long spawnSeed) throws IOException {
+        this.channel = channel;
+
+        buffer.putInt(Replay.MAGIC);
+        VarInts.putVarInt(buffer, Replay.VERSION);
+        VarInts.putVarInt(buffer, height);
+        VarInts.putVarInt(buffer, width);
+        buffer.putLong(mazeSeed);
+        buffer.putLong(spawnSeed);
+    }
+
+    /**
+     * Creates a new ReplayWriter that writes to the given file, replacing it if
+     * it already exists.
+     *
+     * @param path      the file to write to
+     * @param height    the height of the maze
+     * @param width     the width of the maze
+     * @param mazeSeed  the seed the maze was generated from
+     * @param spawnSeed the seed the dots were placed with
+     * @return the new ReplayWriter
+     * @throws IOException if the file cannot be opened
+     */
+    public static ReplayWriter open(Path path, int height, int width,
+                                    long mazeSeed, long spawnSeed) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            return new ReplayWriter(channel, height, width, mazeSeed, spawnSeed);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Records a move of the user.
+     *
+     * @param tick      the tick the move was made at
+     * @param direction the direction of the move
+     * @throws IOException if the buffer had to be flushed and could not be
+     */
+    public void writeMove(int tick, int direction) throws IOException {
+        if (direction < 0 || direction >= Replay.END) {
+            throw new IllegalArgumentException("Invalid direction: " + direction);
+        }
+        writeRecord(tick, direction);
+    }
+
+    /**
+     * Records the end of the game and flushes this writer. Nothing may be
+     * recorded afterwards.
+     *
+     * @param tick the tick the game ended at
+     * @throws IOException if this writer cannot be flushed
+     */
+    public void writeEnd(int tick) throws IOException {
+        writeRecord(tick, Replay.END);
+        ended = true;
+        flush();
+    }
+
+    /**
+     * Writes a single record.
+     *
+     * @param tick the tick of the record
+     * @param type the type of the record
+     * @throws IOException if the buffer had to be flushed and could not be
+     */
+    private void writeRecord(int tick, int type) throws IOException {
+        if (ended) {
+            throw new IllegalStateException("The end of the game has already been written");
+        }
+        if (tick < lastTick) {
+            throw new IllegalArgumentException("Ticks must not decrease: " + tick + " < " + lastTick);
+        }
+
+        if (buffer.remaining() < VarInts.MAX_INT_BYTES) {
+            flush();
+        }
+        VarInts.putVarInt(buffer, (tick - lastTick) << Replay.TYPE_BITS | type);
+        lastTick = tick;
+    }
+
+    /**
+     * Writes all buffered records to the channel.
+     *
+     * @throws IOException if the records cannot be written
+     */
+    public void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package com.github.leftisttachyon.mazesurvival.telemetry;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded queue of telemetry events that any amount of threads offer to and
+ * a single thread drains, without locks or allocation. Each event is a fixed
+ * amount of longs stored in place in one array, and each slot has a sequence
+ * number that tells whether it holds an event that is ready to be read.
+ * Closing the queue marks its tail, so an event is either offered before the
+ * queue is closed and drained, or refused.
+ *
+ * @author Jed Wang
+ */
+final class EventQueue {
+
+    /**
+     * The amount of longs in an event
+     */
+    static final int FIELDS = 6;
+
+    /**
+     * The fields of the events, {@link #FIELDS} per slot
+     */
+    private final long[] fields;
+
+    /**
+     * The sequence number of each slot: equal to the position a producer may
+     * claim it at, or one past the position once the event in it is ready
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The mask that turns a position into the index of a slot
+     */
+    private final int mask;
+
+    /**
+     * The bit of {@link #tail} that is set once the queue is closed
+     */
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    /**
+     * The position of the next event to offer, with {@link #CLOSED} set once
+     * no more may be offered
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The position of the next event to drain, only used by the consumer
+     */
+    private long head = 0;
+
+    /**
+     * Creates a new EventQueue.
+     *
+     * @param capacity the most events the queue holds, rounded up to a power
+     *                 of two
+     */
+    EventQueue(int capacity) {
+        if (capacity < 1 || capacity > 1 << 26) {
+            throw new IllegalArgumentException("Invalid capacity: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        fields = new long[size * FIELDS];
+        sequences = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            sequences.set(i, i);
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Adds an event to the queue. May be called by any thread.
+     *
+     * @param type the type of the event
+     * @param a    the first field of the event
+     * @param b    the second field of the event
+     * @param c    the third field of the event
+     * @param d    the fourth field of the event
+     * @param e    the fifth field of the event
+     * @return whether the event was added; false if the queue is full or
+     * closed
+     */
+    boolean offer(long type, long a, long b, long c, long d, long e) {
+        long pos;
+        int slot;
+        while (true) {
+            pos = tail.get();
+            if (pos < 0) {
+                return false;
+            }
+            slot = (int) pos & mask;
+            long diff = sequences.get(slot) - pos;
+            if (diff == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    break;
+                }
+            } else if (diff < 0) {
+                // the consumer has not freed the slot of the last lap yet
+                return false;
+            }
+        }
+
+        int base = slot * FIELDS;
+        fields[base] = type;
+        fields[base + 1] = a;
+        fields[base + 2] = b;
+        fields[base + 3] = c;
+        fields[base + 4] = d;
+        fields[base + 5] = e;
+        // publishes the fields written above
+        sequences.lazySet(slot, pos + 1);
+        return true;
+    }
+
+    /**
+     * Copies the oldest event into the given array and removes it from the
+     * queue. Must only be called by the consumer thread.
+     *
+     * @param event the array to copy the {@link #FIELDS} fields of the event
+     *              into
+     * @return whether there was an event
+     */
+    boolean poll(long[] event) {
+        int slot = (int) head & mask;
+        if (sequences.get(slot) != head + 1) {
+            return false;
+        }
+
+        System.arraycopy(fields, slot * FIELDS, event, 0, FIELDS);
+        // frees the slot for the next lap
+        sequences.lazySet(slot, head + mask + 1);
+        head++;
+        return true;
+    }
+
+    /**
+     * Stops the queue from taking any more events. Must only be called by the
+     * consumer thread.
+     *
+     * @return the position after the last event that was offered, which
+     * {@link #pollBefore(long, long[])} drains up to
+     */
+    long close() {
+        while (true) {
+            long pos = tail.get();
+            if (pos < 0 || tail.compareAndSet(pos, pos | CLOSED)) {
+                return pos & ~CLOSED;
+            }
+        }
+    }
+
+    /**
+     * Copies the oldest event into the given array and removes it from the
+     * queue, if it is before the given position, waiting for a producer that
+     * has claimed its slot to finish writing it. Must only be called by the
+     * consumer thread.
+     *
+     * @param end   the position to stop at, as returned by {@link #close()}
+     * @param event the array to copy the {@link #FIELDS} fields of the event
+     *              into
+     * @return whether there was an event before the position
+     */
+    boolean pollBefore(long end, long[] event) {
+        while (head < end) {
+            if (poll(event)) {
+                return true;
+            }
+            Thread.yield();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,600 @@
+package com.github.leftisttachyon.mazesurvival.telemetry;
+
+import com.github.leftisttachyon.mazesurvival.io.VarInts;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Streams events about games to files in the background. Recording an event
+ * never blocks: events go into a bounded queue, and a single writer thread
+ * drains it in batches into a buffer that is written out to the current file.
+ * Events that arrive while the queue is full are dropped and counted. Files
+ * are rotated once they reach a size, and are named
+ * {@code telemetry-<start time>-<n>.<format>}.<br>
+ * Files are either JSON lines, with one object per event, or binary, where
+ * each file starts with {@link #MAGIC} and {@link #VERSION} as a varint and
+ * each event is its type as a byte followed by its fields as varints, in the
+ * order the JSON objects list them. The game is zigzag encoded, distances are
+ * zigzag encoded and the seeds are written as plain longs.<br>
+ * All record methods may be called by any thread.
+ *
+ * @author Jed Wang
+ */
+public final class Telemetry implements AutoCloseable {
+
+    /**
+     * The system property that names the directory to write telemetry to.
+     * No telemetry is written if it is not set.
+     */
+    public static final String DIR_PROPERTY = "mazesurvival.telemetry";
+
+    /**
+     * The system property that sets the format of the telemetry files, either
+     * {@code jsonl} (the default) or {@code binary}
+     */
+    public static final String FORMAT_PROPERTY = "mazesurvival.telemetry.format";
+
+    /**
+     * The first four bytes of every binary telemetry file: "MSTL"
+     */
+    public static final int MAGIC = 0x4D53544C;
+
+    /**
+     * The version of the binary format
+     */
+    public static final int VERSION = 1;
+
+    /**
+     * The type of the event of a game starting: the height and width of the
+     * maze, the maze seed and the spawn seed
+     */
+    public static final int GAME_START = 0;
+
+    /**
+     * The type of the event of a tick: how long it took, in nanoseconds
+     */
+    public static final int TICK = 1;
+
+    /**
+     * The type of the event of the user moving: the direction
+     */
+    public static final int USER_MOVE = 2;
+
+    /**
+     * The type of the event of an AI moving: the index of the AI, the
+     * direction or -1 if it could not move, and its distance to its target
+     * afterwards or -1 if it moved without a search
+     */
+    public static final int AI_MOVE = 3;
+
+    /**
+     * The type of the event of a frame being painted: how long it took, in
+     * nanoseconds. Paints do not belong to a game.
+     */
+    public static final int PAINT = 4;
+
+    /**
+     * The type of the event of a game ending: how long the user survived, in
+     * milliseconds
+     */
+    public static final int GAME_END = 5;
+
+    /**
+     * The type of the event written when the telemetry is closed: the amount
+     * of events that were dropped
+     */
+    public static final int DROPPED = 6;
+
+    /**
+     * The names of the types of events in JSON
+     */
+    private static final String[] TYPE_NAMES = {"game_start", "tick", "user_move", "ai_move",
+            "paint", "game_end", "dropped"};
+
+    /**
+     * The formats telemetry can be written in
+     */
+    public enum Format {
+        /**
+         * One JSON object per line
+         */
+        JSONL("jsonl"),
+        /**
+         * Varint encoded records
+         */
+        BINARY("bin");
+
+        /**
+         * The extension of files in this format
+         */
+        private final String extension;
+
+        /**
+         * Creates a new Format.
+         *
+         * @param extension the extension of files in this format
+         */
+        Format(String extension) {
+            this.extension = extension;
+        }
+    }
+
+    /**
+     * The size of the buffer events are gathered in
+     */
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    /**
+     * The most bytes a single event takes in either format
+     */
+    private static final int MAX_EVENT_BYTES = 256;
+
+    /**
+     * How long the writer waits when there are no events, in nanoseconds
+     */
+    private static final long IDLE_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * The events waiting to be written
+     */
+    private final EventQueue queue;
+
+    /**
+     * The directory the files are written to
+     */
+    private final Path dir;
+
+    /**
+     * The format of the files
+     */
+    private final Format format;
+
+    /**
+     * The size at which a file is rotated, in bytes
+     */
+    private final long rotateBytes;
+
+    /**
+     * The time this telemetry started, which names its files
+     */
+    private final long startMillis = System.currentTimeMillis();
+
+    /**
+     * The thread that writes the events
+     */
+    private final Thread writer;
+
+    /**
+     * The ids handed out to games
+     */
+    private final AtomicInteger gameIds = new AtomicInteger();
+
+    /**
+     * The amount of events dropped because the queue was full or could not
+     * be written
+     */
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The amount of events written, only changed by the writer thread
+     */
+    private volatile long written = 0;
+
+    /**
+     * The amount of events in the buffer, only used by the writer thread
+     */
+    private int buffered = 0;
+
+    /**
+     * Stores whether this telemetry has been closed
+     */
+    private volatile boolean closed = false;
+
+    /**
+     * The buffer events are gathered in, only used by the writer thread
+     */
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+    /**
+     * A builder to format JSON in, only used by the writer thread
+     */
+    private final StringBuilder line = new StringBuilder(MAX_EVENT_BYTES);
+
+    /**
+     * The file being written, or null if the last one could not be written
+     */
+    private FileChannel channel;
+
+    /**
+     * The amount of bytes written to the current file
+     */
+    private long fileBytes = 0;
+
+    /**
+     * The amount of files opened
+     */
+    private int files = 0;
+
+    /**
+     * Creates a new Telemetry and opens its first file.
+     *
+     * @param dir         the directory to write to, which is created if it
+     *                    does not exist
+     * @param format      the format to write in
+     * @param capacity    the most events that may wait to be written
+     * @param rotateBytes the size at which a file is rotated, in bytes
+     * @throws IOException if the first file cannot be opened
+     */
+    public Telemetry(Path dir, Format format, int capacity, long rotateBytes) throws IOException {
+        if (rotateBytes < 1) {
+            throw new IllegalArgumentException("Invalid rotation size: " + rotateBytes);
+        }
+        this.queue = new EventQueue(capacity);
+        this.dir = dir;
+        this.format = format;
+        this.rotateBytes = rotateBytes;
+
+        Files.createDirectories(dir);
+        openNext();
+
+        writer = new Thread(this::drain, "telemetry-writer");
+        // never keeps the application running; close() flushes what is left
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Creates a Telemetry as set by the system properties, with room for a
+     * million waiting events and 64 MB files.
+     *
+     * @return the new Telemetry, or null if no directory is set or the first
+     * file cannot be opened
+     * @see #DIR_PROPERTY
+     * @see #FORMAT_PROPERTY
+     */
+    public static Telemetry fromProperties() {
+        String dir = System.getProperty(DIR_PROPERTY);
+        if (dir == null) {
+            return null;
+        }
+        String format = System.getProperty(FORMAT_PROPERTY, "jsonl");
+        try {
+            return new Telemetry(Paths.get(dir), Format.valueOf(format.toUpperCase(Locale.ROOT)),
+                    1 << 20, 64L << 20);
+        } catch (IllegalArgumentException | IOException e) {
+            e.printStackTrace();
+            return null;
+        }
+    }
+
+    /**
+     * Records the start of a game.
+     *
+     * @param height    the height of the maze
+     * @param width     the width of the maze
+     * @param mazeSeed  the seed the maze was generated from
+     * @param spawnSeed the seed the dots were placed with
+     * @return the id of the game, to record its other events with
+     */
+    public int gameStarted(int height, int width, long mazeSeed, long spawnSeed) {
+        int game = gameIds.getAndIncrement();
+        record(GAME_START, game, 0, (long) height << 32 | width, mazeSeed, spawnSeed);
+        return game;
+    }
+
+    /**
+     * Records a tick of a game.
+     *
+     * @param game  the id of the game
+     * @param tick  the tick
+     * @param nanos how long the tick took, in nanoseconds
+     */
+    public void tick(int game, int tick, long nanos) {
+        record(TICK, game, tick, nanos, 0, 0);
+    }
+
+    /**
+     * Records a move of the user.
+     *
+     * @param game      the id of the game
+     * @param tick      the tick the move was made at
+     * @param direction the direction of the move
+     */
+    public void userMove(int game, int tick, int direction) {
+        record(USER_MOVE, game, tick, direction, 0, 0);
+    }
+
+    /**
+     * Records a move of an AI.
+     *
+     * @param game      the id of the game
+     * @param tick      the tick the move was made at
+     * @param ai        the index of the AI
+     * @param direction the direction of the move, or -1 if it could not move
+     * @param distance  the distance to its target after the move, or -1 if it
+     *                  moved without a search
+     */
+    public void aiMove(int game, int tick, int ai, int direction, int distance) {
+        record(AI_MOVE, game, tick, ai, direction, distance);
+    }
+
+    /**
+     * Records a frame being painted.
+     *
+     * @param tick  the tick of the frame
+     * @param nanos how long painting took, in nanoseconds
+     */
+    public void paint(int tick, long nanos) {
+        record(PAINT, -1, tick, nanos, 0, 0);
+    }
+
+    /**
+     * Records the end of a game.
+     *
+     * @param game   the id of the game
+     * @param tick   the tick the game ended at
+     * @param millis how long the user survived, in milliseconds
+     */
+    public void gameEnded(int game, int tick, long millis) {
+        record(GAME_END, game, tick, millis, 0, 0);
+    }
+
+    /**
+     * Adds an event to the queue, or counts it as dropped if the queue is
+     * full or this telemetry has been closed.
+     *
+     * @param type the type of the event
+     * @param game the id of the game
+     * @param tick the tick
+     * @param a    the first field of the event
+     * @param b    the second field of the event
+     * @param c    the third field of the event
+     */
+    private void record(int type, int game, int tick, long a, long b, long c) {
+        if (closed || !queue.offer(type, game, tick, a, b, c)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Writes events until this telemetry is closed and every event has been
+     * written. Run by the writer thread.
+     */
+    private void drain() {
+        long[] event = new long[EventQueue.FIELDS];
+        while (true) {
+            // once closed, the queue refuses anything it would not drain, so
+            // every event is either written or counted as dropped
+            boolean last = closed;
+            long end = last ? queue.close() : 0;
+            int count = 0;
+            while (last ? queue.pollBefore(end, event) : queue.poll(event)) {
+                encode(event);
+                count++;
+                if (buffer.remaining() < MAX_EVENT_BYTES) {
+                    flush();
+                }
+            }
+
+            if (last) {
+                long lost = dropped.get();
+                if (lost > 0) {
+                    encode(new long[]{DROPPED, -1, 0, lost, 0, 0});
+                }
+                flush();
+                closeChannel();
+                return;
+            }
+            if (count == 0) {
+                flush();
+                LockSupport.parkNanos(this, IDLE_NANOS);
+            }
+        }
+    }
+
+    /**
+     * Adds an event to the buffer.
+     *
+     * @param event the fields of the event
+     */
+    private void encode(long[] event) {
+        if (format == Format.BINARY) {
+            encodeBinary(event);
+        } else {
+            encodeJson(event);
+        }
+        buffered++;
+    }
+
+    /**
+     * Adds an event to the buffer as a binary record.
+     *
+     * @param event the fields of the event
+     */
+    private void encodeBinary(long[] event) {
+        int type = (int) event[0];
+        buffer.put((byte) type);
+        VarInts.putVarInt(buffer, VarInts.zigzag((int) event[1]));
+        VarInts.putVarInt(buffer, (int) event[2]);
+        switch (type) {
+            case GAME_START:
+                VarInts.putVarInt(buffer, (int) (event[3] >>> 32));
+                VarInts.putVarInt(buffer, (int) event[3]);
+                buffer.putLong(event[4]);
+                buffer.putLong(event[5]);
+                break;
+            case AI_MOVE:
+                VarInts.putVarInt(buffer, (int) event[3]);
+                VarInts.putVarInt(buffer, VarInts.zigzag((int) event[4]));
+                VarInts.putVarInt(buffer, VarInts.zigzag((int) event[5]));
+                break;
+            default:
+                // a single count or duration, which does not need a long
+                VarInts.putVarInt(buffer, (int) Math.min(event[3], Integer.MAX_VALUE));
+                break;
+        }
+    }
+
+    /**
+     * Adds an event to the buffer as a line of JSON.
+     *
+     * @param event the fields of the event
+     */
+    private void encodeJson(long[] event) {
+        int type = (int) event[0];
+        line.setLength(0);
+        line.append("{\"type\":\"").append(TYPE_NAMES[type]).append('"');
+        if (event[1] >= 0) {
+            line.append(",\"game\":").append(event[1]);
+        }
+        if (type != DROPPED) {
+            line.append(",\"tick\":").append(event[2]);
+        }
+        switch (type) {
+            case GAME_START:
+                line.append(",\"height\":").append(event[3] >>> 32)
+                        .append(",\"width\":").append((int) event[3])
+                        .append(",\"mazeSeed\":").append(event[4])
+                        .append(",\"spawnSeed\":").append(event[5]);
+                break;
+            case TICK:
+            case PAINT:
+                line.append(",\"nanos\":").append(event[3]);
+                break;
+            case USER_MOVE:
+                line.append(",\"direction\":").append(event[3]);
+                break;
+            case AI_MOVE:
+                line.append(",\"ai\":").append(event[3])
+                        .append(",\"direction\":").append(event[4])
+                        .append(",\"distance\":").append(event[5]);
+                break;
+            case GAME_END:
+                line.append(",\"millis\":").append(event[3]);
+                break;
+            case DROPPED:
+                line.append(",\"count\":").append(event[3]);
+                break;
+        }
+        line.append("}\n");
+
+        // everything written is ASCII
+        for (int i = 0; i < line.length(); i++) {
+            buffer.put((byte) line.charAt(i));
+        }
+    }
+
+    /**
+     * Writes the buffer to the current file, and rotates the file if it has
+     * grown too big. Events that cannot be written are counted as dropped.
+     */
+    private void flush() {
+        if (buffer.position() == 0) {
+            return;
+        }
+        buffer.flip();
+        boolean rotate = false;
+        if (channel != null) {
+            try {
+                while (buffer.hasRemaining()) {
+                    fileBytes += channel.write(buffer);
+                }
+                written += buffered;
+                rotate = fileBytes >= rotateBytes;
+            } catch (IOException e) {
+                e.printStackTrace();
+                closeChannel();
+            }
+        }
+        if (channel == null) {
+            dropped.addAndGet(buffered);
+        }
+        buffered = 0;
+        buffer.clear();
+
+        if (rotate) {
+            closeChannel();
+            try {
+                openNext();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Opens the next file and writes its header.
+     *
+     * @throws IOException if the file cannot be opened
+     */
+    private void openNext() throws IOException {
+        Path path = dir.resolve("telemetry-" + startMillis + "-" + files++ + "." + format.extension);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        fileBytes = 0;
+        if (format == Format.BINARY) {
+            buffer.putInt(MAGIC);
+            VarInts.putVarInt(buffer, VERSION);
+        }
+    }
+
+    /**
+     * Closes the current file, ignoring any failure.
+     */
+    private void closeChannel() {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        channel = null;
+    }
+
+    /**
+     * Returns the amount of events that were dropped because the queue was
+     * full or they could not be written
+     *
+     * @return the amount of dropped events
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Returns the amount of events that have been written out
+     *
+     * @return the amount of written events
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    /**
+     * Writes every event recorded so far and closes the file. Events recorded
+     * afterwards are dropped.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        LockSupport.unpark(writer);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
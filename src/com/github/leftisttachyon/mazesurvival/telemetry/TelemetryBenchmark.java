@@ -0,0 +1,125 @@
+package com.github.leftisttachyon.mazesurvival.telemetry;
+
+import com.github.leftisttachyon.mazesurvival.game.Game;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * Measures how much telemetry slows down ticks. Games are played without a
+ * window by a user who tries to move every tick, so every tick reports a tick
+ * event and most report a move, and the latencies of the ticks are compared
+ * with and without telemetry.
+ *
+ * @author Jed Wang
+ */
+public final class TelemetryBenchmark {
+
+    /**
+     * This class is not to be instantiated.
+     */
+    private TelemetryBenchmark() {
+    }
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args the amount of ticks to time in each run (1000000 by
+     *             default) and the format to write in (jsonl by default)
+     * @throws IOException if the telemetry files cannot be written
+     */
+    public static void main(String[] args) throws IOException {
+        int ticks = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        Telemetry.Format format = args.length > 1
+                ? Telemetry.Format.valueOf(args[1].toUpperCase(Locale.ROOT)) : Telemetry.Format.JSONL;
+        Path dir = Files.createTempDirectory("telemetry");
+
+        // warms up both paths
+        run(null, ticks / 10);
+        try (Telemetry telemetry = new Telemetry(dir, format, 1 << 20, 64L << 20)) {
+            run(telemetry, ticks / 10);
+        }
+
+        System.out.printf("%-10s %9s %9s %9s %9s %9s%n", "telemetry", "p50 (ns)", "p99 (ns)",
+                "p99.9 (ns)", "max (ns)", "mean (ns)");
+        print("off", run(null, ticks));
+
+        Telemetry telemetry = new Telemetry(dir, format, 1 << 20, 64L << 20);
+        long[] nanos = run(telemetry, ticks);
+        telemetry.close();
+        print(format.name().toLowerCase(Locale.ROOT), nanos);
+
+        long bytes = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                bytes += Files.size(file);
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+        System.out.printf("%d events written, %d dropped, %d bytes in total%n",
+                telemetry.getWritten(), telemetry.getDropped(), bytes);
+    }
+
+    /**
+     * Plays games until the given amount of ticks have passed, starting a new
+     * one whenever one ends.
+     *
+     * @param telemetry the telemetry to report to, or null for none
+     * @param ticks     the amount of ticks to play
+     * @return how long each tick took, with the moves before it, in
+     * nanoseconds
+     */
+    private static long[] run(Telemetry telemetry, int ticks) {
+        long[] nanos = new long[ticks];
+        Random r = new Random(ticks);
+        Game game = null;
+        for (int i = 0; i < ticks; i++) {
+            if (game == null || game.isOver()) {
+                game = new Game(r.nextLong(), r.nextLong());
+                if (telemetry != null) {
+                    game.setTelemetry(telemetry);
+                }
+            }
+
+            long start = System.nanoTime();
+            game.moveUser(r.nextInt(4));
+            game.tick();
+            nanos[i] = System.nanoTime() - start;
+        }
+        return nanos;
+    }
+
+    /**
+     * Prints the percentiles of the given tick latencies.
+     *
+     * @param name  the name of the run
+     * @param nanos the tick latencies, in nanoseconds
+     */
+    private static void print(String name, long[] nanos) {
+        long total = 0;
+        for (long n : nanos) {
+            total += n;
+        }
+        Arrays.sort(nanos);
+        System.out.printf("%-10s %9d %9d %9d %9d %9d%n", name, percentile(nanos, 0.5),
+                percentile(nanos, 0.99), percentile(nanos, 0.999), nanos[nanos.length - 1],
+                total / nanos.length);
+    }
+
+    /**
+     * Returns a percentile of the given sorted values.
+     *
+     * @param sorted the values, sorted
+     * @param p      the percentile, between 0 and 1
+     * @return the percentile
+     */
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (p * sorted.length))];
+    }
+}